@@ -0,0 +1,68 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.  
+ */
+package com.onbelay.dagnabit.dagmodel.model;
+
+import com.onbelay.dagnabit.dagmodel.components.DagModelImpl;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Load star shaped graphs (one hub with many children) and check that the build time grows linearly with the fan-out.
+ * The ratio asserted is deliberately generous, a quadratic build would be 64 times slower for the larger model.
+ * Timed on the wall clock, so run with the benchmark task rather than with the unit tests.
+ *
+ */
+public class DagModelLoadBenchmark {
+	private static Logger logger = LoggerFactory.getLogger(DagModelLoadBenchmark.class);
+
+	private static final int SMALL_FAN_OUT = 25_000;
+	private static final int LARGE_FAN_OUT = SMALL_FAN_OUT * 8;
+	
+	@Test
+	public void testStarGraphLoadsInLinearTime() {
+		
+		// warm up
+		loadStar(SMALL_FAN_OUT);
+		loadStar(SMALL_FAN_OUT);
+		
+		long small = loadStar(SMALL_FAN_OUT);
+		long large = loadStar(LARGE_FAN_OUT);
+		
+		logger.info("star " + SMALL_FAN_OUT + ": " + small / 1_000_000 + "ms, star " + LARGE_FAN_OUT + ": " + large / 1_000_000 + "ms");
+		
+		assertTrue("Star graph load is not linear", large < Math.max(small, 1_000_000) * 32);
+	}
+	
+	private long loadStar(int fanOut) {
+		long start = System.nanoTime();
+		
+		DagModel model = new DagModelImpl("star");
+		DagNode hub = model.addNode("hub");
+		for (int i = 0; i < fanOut; i++) {
+			DagNode child = model.addNode("child" + i);
+			model.addRelationship(hub, "contains", child);
+		}
+		
+		long elapsed = System.nanoTime() - start;
+		assertEquals(fanOut, model.getRelationships().size());
+		return elapsed;
+	}
+
+}
@@ -0,0 +1,366 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import com.onbelay.dagnabit.dagmodel.exception.DagGraphException;
+import com.onbelay.dagnabit.dagmodel.model.*;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Common base for DagModel implementations.
+ * The navigators and finders only depend on the topology methods declared here so they run unchanged
+ * against any representation of the model (mutable, frozen, etc.).
+ */
+public abstract class AbstractDagModel implements DagModel {
+
+	private String modelName;
+
+	private DagWeightMode weightMode = DagWeightMode.DECIMAL;
+
+	protected AbstractDagModel(String modelName) {
+		this.modelName = modelName;
+	}
+
+	protected AbstractDagModel(String modelName, DagWeightMode weightMode) {
+		this.modelName = modelName;
+		this.weightMode = weightMode;
+	}
+
+	@Override
+	public int compareTo(DagModel in) {
+		return modelName.compareTo(in.getModelName());
+	}
+
+	@Override
+	public String getModelName() {
+		return modelName;
+	}
+
+	@Override
+	public DagWeightMode getWeightMode() {
+		return weightMode;
+	}
+
+	@Override
+    public DagNodeNavigator navigate() {
+    	return new DagNodeNavigatorImpl(this);
+    }
+
+    @Override
+    public LinkAnalyser analyse() {
+    	return new LinkAnalyserImpl(this);
+    }
+
+    @Override
+    public ShortestPathFinder createShortestPathFinder(DagRelationshipType dagRelationshipType) {
+    	return new DagShortestPathRouteFinder(this, dagRelationshipType);
+    }
+
+    @Override
+    public MinimumSpanningTreeFinder createMinimumSpanningTreeFinder(DagRelationshipType linkType) {
+    	return new DagMinimumSpanningTreeFinder(this, linkType);
+    }
+
+    @Override
+    public MinimumSpanningTreeFinder createMinimumSpanningTreeFinder(
+    		DagRelationshipType linkType,
+    		Predicate<DagNode> filterNodePredicate) {
+
+    	return new DagMinimumSpanningTreeFinder(
+    			this,
+    			linkType,
+    			filterNodePredicate);
+    }
+
+    @Override
+    public MinimumSpanningTreeFinder createMinimumSpanningTreeFinder(
+    		DagRelationshipType linkType,
+    		DagRelationshipType mstLinkType) {
+
+    	return new DagMinimumSpanningTreeFinder(
+    			this,
+    			linkType,
+    			mstLinkType);
+    }
+
+    @Override
+    public MinimumSpanningTreeFinder createMinimumSpanningTreeFinder(
+    		DagRelationshipType linkType,
+    		DagRelationshipType mstLinkType,
+    		Predicate<DagNode> filterNodePredicate) {
+
+    	return new DagMinimumSpanningTreeFinder(
+    			this,
+    			linkType,
+    			mstLinkType,
+    			filterNodePredicate);
+    }
+
+
+    @Override
+    public LinkRouteFinder createDagLinkRouteFinder(
+    		DagRelationshipType dagRelationshipType) {
+
+    	return new DagLinkRouteFinder(
+    			this,
+				dagRelationshipType);
+    }
+
+    @Override
+    public LinkRouteFinder createDagLinkRouteFinder(
+    		DagRelationshipType dagRelationshipType,
+    		DagContext context,
+    		NodeVisitor nodeVisitor) {
+
+    	return new DagLinkRouteFinder(
+    			this,
+				dagRelationshipType,
+    			context,
+    			nodeVisitor);
+    }
+
+    @Override
+    public LinkRouteFinder createDagLinkRouteFinder(
+    		DagRelationshipType dagRelationshipType,
+    		DagContext context,
+    		NodeVisitor nodeVisitor,
+    		BiPredicate<DagContext, DagNode> endPredicate,
+    		Predicate<DagRelationship> filterLinkPredicate,
+    		Predicate<DagNode> filterNodePredicate) {
+
+    	return new DagLinkRouteFinder(
+    			this,
+				dagRelationshipType,
+    			context,
+    			nodeVisitor,
+    			endPredicate,
+    			filterLinkPredicate,
+    			filterNodePredicate);
+    }
+
+
+    @Override
+    public LinkRouteFinder createDagLinkRouteFinder(
+    		DagRelationshipType dagRelationshipType,
+    		DagNodeCategory dagNodeCategory) {
+
+    	return new DagLinkRouteFinder(
+    			this,
+				dagRelationshipType,
+				dagNodeCategory);
+    }
+
+    @Override
+    public Stream<DagNode> nodeStream() {
+    	return getNodeImplementations().stream().map(node -> (DagNode) node);
+    }
+
+    @Override
+    public Stream<DagRelationship> relationshipStream(DagRelationshipType relationshipType) {
+    	return getNodeImplementations()
+    			.stream()
+    			.flatMap(node -> StreamSupport
+    					.stream(getFromThisNodeConnectors(node, relationshipType).spliterator(), false)
+    					.map(connector -> (DagRelationship) connector.getRelationship(relationshipType)));
+    }
+
+    @Override
+    public List<DagNode> getNodes(DagNodeCategory category) {
+    	return getNodes().stream().filter(categoryFilter(category)).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<DagNode> findRootNodes(DagNodeCategory category) {
+    	return findRootNodes().stream().filter(categoryFilter(category)).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<DagNode> findLeafNodes(DagNodeCategory category) {
+    	return findLeafNodes().stream().filter(categoryFilter(category)).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<DagNode> findRootNodes(DagRelationshipType relationshipType) {
+    	return getNodes().stream()
+    			.filter(n -> hasConnectors(n, relationshipType, true) && hasConnectors(n, relationshipType, false) == false)
+    			.collect(Collectors.toList());
+    }
+
+    @Override
+    public List<DagNode> findLeafNodes(DagRelationshipType relationshipType) {
+    	return getNodes().stream()
+    			.filter(n -> hasConnectors(n, relationshipType, false) && hasConnectors(n, relationshipType, true) == false)
+    			.collect(Collectors.toList());
+    }
+
+    /**
+     * Return true if the node has connectors of the relationshipType leaving it (isFrom) or arriving at it.
+     */
+    protected boolean hasConnectors(DagNode node, DagRelationshipType relationshipType, boolean isFrom) {
+    	DagNodeImpl found = resolveNode(node);
+    	if (found == null)
+    		return false;
+
+    	if (isFrom)
+    		return getFromThisNodeConnectors(found, relationshipType).iterator().hasNext();
+    	else
+    		return getToThisNodeConnectors(found, relationshipType).iterator().hasNext();
+    }
+
+    /**
+     * Return a predicate matching the nodes of this model in the category.
+     * The category is resolved by name once, each node is then matched on the ordinal of its category.
+     * @param category - matched by name.
+     * @return a predicate
+     */
+    protected Predicate<DagNode> categoryFilter(DagNodeCategory category) {
+    	DagNodeCategory registered = getNodeCategory(category.getCategoryName());
+    	if (registered == null)
+    		return node -> false;
+
+    	int ordinal = registered.getOrdinal();
+    	if (ordinal < 0)
+    		return node -> node.getCategory().equals(registered);
+
+    	return node -> node.getCategory().getOrdinal() == ordinal;
+    }
+
+    @Override
+    public DagModel freeze() {
+    	return new DagModelSnapshot(this);
+    }
+
+    @Override
+    public DagFootprint footprint() {
+    	DagFootprintEstimator estimator = new DagFootprintEstimator();
+    	estimateFootprint(estimator);
+    	return estimator.getFootprint();
+    }
+
+    /**
+     * Add the structures of this model to the estimator. Unless overridden this walks the nodes,
+     * which add their connectors and relationships, and the names of the relationshipTypes and categories.
+     * Models add the indexes they keep.
+     */
+    protected void estimateFootprint(DagFootprintEstimator estimator) {
+    	for (DagNodeImpl node : getNodeImplementations())
+    		estimator.addNode(node);
+
+    	for (DagRelationshipType type : getRelationshipTypes()) {
+    		estimator.add(DagFootprint.Part.RELATIONSHIPS, DagFootprintEstimator.object(1, 4));
+    		estimator.addName(type.getName());
+    	}
+    	for (DagNodeCategory category : getNodeCategories()) {
+    		estimator.add(DagFootprint.Part.NODES, DagFootprintEstimator.object(1, 4));
+    		estimator.addName(category.getCategoryName());
+    	}
+    }
+
+    /**
+     * Return a read-only view of the model as it is now. Unless overridden this is the same as freeze().
+     */
+    @Override
+    public DagModel snapshot() {
+    	return freeze();
+    }
+
+    /**
+     * Return the internal node identified by name.
+     * @param name - node name
+     * @return null or the node.
+     */
+    protected abstract DagNodeImpl getNodeImplementation(String name);
+
+    /**
+     * Return the internal node identified by id.
+     * @param nodeId - node id
+     * @return null or the node.
+     */
+    protected abstract DagNodeImpl getNodeImplementation(int nodeId);
+
+    /**
+     * Return all the internal nodes held by this model in id order.
+     * @return
+     */
+    protected abstract Collection<DagNodeImpl> getNodeImplementations();
+
+    /**
+     * Return the number of node ids allocated by this model. Arrays indexed by node id are sized with this.
+     * @return
+     */
+    protected abstract int getNodeCount();
+
+    @Override
+    public DagNode getNode(int nodeId) {
+    	return getNodeImplementation(nodeId);
+    }
+
+    /**
+     * Resolve a node passed in through the public api to the internal node.
+     * Nodes owned by this model are resolved by id, any other node falls back to a lookup by name.
+     * @param node
+     * @return null or the node.
+     */
+    protected DagNodeImpl resolveNode(DagNode node) {
+    	DagNodeImpl found = getNodeImplementation(node.getId());
+    	if (found == node)
+    		return found;
+
+    	return getNodeImplementation(node.getName());
+    }
+
+    /**
+     * Return the internal node identified by id.
+     * @param nodeId - node id
+     * @return the node
+     * @throws DagGraphException if there is no node with the id
+     */
+    protected DagNodeImpl getRequiredNodeImplementation(int nodeId) {
+    	DagNodeImpl found = getNodeImplementation(nodeId);
+    	if (found == null)
+    		throw new DagGraphException("No node with id " + nodeId);
+
+    	return found;
+    }
+
+    /**
+     * Return the connectors leaving the node that carry the given relationshipType.
+     * @param node - node to navigate from
+     * @param relationshipType - only connectors with this relationshipType are returned.
+     * @return zero or more connectors
+     */
+    protected abstract Iterable<DagNodeConnector> getFromThisNodeConnectors(
+    		DagNodeImpl node,
+    		DagRelationshipType relationshipType);
+
+    /**
+     * Return the connectors arriving at the node that carry the given relationshipType.
+     * @param node - node to navigate to
+     * @param relationshipType - only connectors with this relationshipType are returned.
+     * @return zero or more connectors
+     */
+    protected abstract Iterable<DagNodeConnector> getToThisNodeConnectors(
+    		DagNodeImpl node,
+    		DagRelationshipType relationshipType);
+
+}
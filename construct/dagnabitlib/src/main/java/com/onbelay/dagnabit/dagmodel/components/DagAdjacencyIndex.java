@@ -0,0 +1,129 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import com.onbelay.dagnabit.dagmodel.model.DagWeightMode;
+
+/**
+ * Immutable compressed sparse row (CSR) adjacency for one relationshipType in one direction.
+ * The edges of node i are found at positions offsets[i] to offsets[i + 1] - 1 of the targets, weights and connectors arrays.
+ * Weights are copied when the index is built, as fixed point longs in the FIXED_POINT DagWeightMode and as doubles otherwise.
+ *
+ */
+public class DagAdjacencyIndex {
+
+	private final int[] offsets;
+	private final int[] targets;
+	private final double[] weights;
+	private final long[] fixedPointWeights;
+	private final DagNodeConnector[] connectors;
+
+	/**
+	 * @param weights - null if fixedPointWeights are given.
+	 * @param fixedPointWeights - null if weights are given.
+	 */
+	protected DagAdjacencyIndex(
+			int[] offsets,
+			int[] targets,
+			double[] weights,
+			long[] fixedPointWeights,
+			DagNodeConnector[] connectors) {
+
+		this.offsets = offsets;
+		this.targets = targets;
+		this.weights = weights;
+		this.fixedPointWeights = fixedPointWeights;
+		this.connectors = connectors;
+	}
+
+	long estimateBytes() {
+		return DagFootprintEstimator.object(5, 0)
+				+ DagFootprintEstimator.array(4, offsets.length)
+				+ DagFootprintEstimator.array(4, targets.length)
+				+ DagFootprintEstimator.array(8, targets.length)
+				+ DagFootprintEstimator.referenceArray(connectors.length);
+	}
+
+	/**
+	 * Return the number of edges held by this index.
+	 * @return
+	 */
+	public int size() {
+		return targets.length;
+	}
+
+	/**
+	 * Return the number of edges leaving (or arriving at) the node.
+	 * @param nodeId
+	 * @return
+	 */
+	public int getDegree(int nodeId) {
+		return offsets[nodeId + 1] - offsets[nodeId];
+	}
+
+	/**
+	 * Return the position of the first edge of the node.
+	 * @param nodeId
+	 * @return
+	 */
+	public int getStart(int nodeId) {
+		return offsets[nodeId];
+	}
+
+	/**
+	 * Return the position after the last edge of the node.
+	 * @param nodeId
+	 * @return
+	 */
+	public int getEnd(int nodeId) {
+		return offsets[nodeId + 1];
+	}
+
+	/**
+	 * Return the id of the node at the other end of the edge at position.
+	 * @param position
+	 * @return
+	 */
+	public int getTarget(int position) {
+		return targets[position];
+	}
+
+	public double getWeight(int position) {
+		if (weights == null)
+			return DagWeightMode.fixedPointToDouble(fixedPointWeights[position]);
+		return weights[position];
+	}
+
+	public long getFixedPointWeight(int position) {
+		if (fixedPointWeights == null)
+			return DagWeightMode.toFixedPoint(weights[position]);
+		return fixedPointWeights[position];
+	}
+
+	/**
+	 * Compare the weights of the edges at two positions, as the relationship weights would be compared.
+	 */
+	int compareWeights(int position, int otherPosition) {
+		if (fixedPointWeights == null)
+			return Double.compare(weights[position], weights[otherPosition]);
+		return Long.compare(fixedPointWeights[position], fixedPointWeights[otherPosition]);
+	}
+
+	public DagNodeConnector getConnector(int position) {
+		return connectors[position];
+	}
+
+}
@@ -0,0 +1,1101 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import com.onbelay.dagnabit.dagmodel.exception.DagGraphException;
+import com.onbelay.dagnabit.dagmodel.model.*;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A DagModel that can be read and changed by many threads at once.
+ *
+ * Each node holds its connectors in immutable arrays, one for each side of the node, partitioned by relationshipType.
+ * A change creates new arrays and publishes them through a volatile field, so readers (navigators, finders, analysers)
+ * never lock and always see a complete set of connectors for a node: either before or after a change, never part way through.
+ * A connector gaining a relationshipType is replaced by a copy rather than changed in place.
+ *
+ * Writers adding relationships lock a stripe chosen by node id for each end of the relationship, so writers to unrelated nodes run in parallel.
+ * Nodes are added under a single lock. Copy-on-write makes adding a relationship cost O(degree) of its nodes, which suits models read far more than they are changed.
+ *
+ * Versions and snapshots: every change is stamped with the model's current version and pushed onto a short chain of ConnectorSides kept by each node.
+ * snapshot() returns a read-only view pinned to the current version in constant time. It shares the nodes' arrays with the model
+ * and reads, for each node, the newest ConnectorSide no newer than its version, so a long running analysis sees a fixed model while changes continue.
+ * Relationships added through a Batch are applied together when it is committed and a snapshot sees all or none of them.
+ * Live reads through the model itself see each change as it is made.
+ * Sides no longer visible to any snapshot are pruned as nodes are changed. A snapshot is released when it is closed or garbage collected.
+ * Versions cover the topology (nodes and connectors), weights and data set on shared items are not versioned.
+ *
+ * Differences from DagModelImpl:
+ * <ul>
+ * <li> adding a node name already in the model returns the existing node.
+ * <li> adding the same relationship twice returns the existing relationship.
+ * <li> getRelationships() returns a copy of the relationships added so far, getNodes() a read-only list of the nodes added so far.
+ * <li> nodes and relationships cannot be removed.
+ * </ul>
+ */
+public class DagConcurrentModel extends AbstractDagModel {
+
+	private static final int STRIPES = 64;
+
+	private static final DagNodeConnector[] NO_CONNECTORS = new DagNodeConnector[0];
+
+	private final ConcurrentHashMap<String, ConcurrentNode> nodeMap = new ConcurrentHashMap<>();
+
+	private final Object nodeLock = new Object();
+	private volatile NodeTable nodeTable = new NodeTable(new ConcurrentNode[16], 0);
+
+	private final ConcurrentHashMap<String, DagNodeCategory> nodeCategoryMap = new ConcurrentHashMap<>();
+	private final AtomicInteger nodeCategoryOrdinals = new AtomicInteger();
+	private final DagNodeCategory defaultNodeCategory;
+
+	private final ConcurrentHashMap<String, DagRelationshipType> relationshipTypeMap = new ConcurrentHashMap<>();
+	private final AtomicInteger relationshipTypeOrdinals = new AtomicInteger();
+	private final DagRelationshipType defaultRelationshipType;
+
+	private final ConcurrentLinkedQueue<DagRelationship> relationships = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<DagRelationship> defaultRelationships = new ConcurrentLinkedQueue<>();
+
+	private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+	// Changes hold the read lock while they are applied, snapshot() holds the write lock to start a new version.
+	private final ReentrantReadWriteLock versionLock = new ReentrantReadWriteLock();
+	private long version;
+
+	// Versions pinned by open snapshots and the number of snapshots pinning each.
+	private final ConcurrentSkipListMap<Long, Integer> pinnedVersions = new ConcurrentSkipListMap<>();
+	private final Set<PinnedVersion> pins = ConcurrentHashMap.newKeySet();
+	private final ReferenceQueue<Snapshot> releasedSnapshots = new ReferenceQueue<>();
+
+	public DagConcurrentModel(String modelName) {
+		this(modelName, DagRelationshipType.DEFAULT_TYPE, DagWeightMode.DECIMAL);
+	}
+
+	public DagConcurrentModel(String modelName, String defaultRelationshipName) {
+		this(modelName, defaultRelationshipName, DagWeightMode.DECIMAL);
+	}
+
+	public DagConcurrentModel(String modelName, DagWeightMode weightMode) {
+		this(modelName, DagRelationshipType.DEFAULT_TYPE, weightMode);
+	}
+
+	public DagConcurrentModel(String modelName, String defaultRelationshipName, DagWeightMode weightMode) {
+		super(modelName, weightMode);
+
+		defaultNodeCategory = registerNodeCategory(DagNodeCategory.DEFAULT_TYPE);
+
+		defaultRelationshipType = getRelationshipType(defaultRelationshipName);
+
+		for (int i = 0; i < STRIPES; i++)
+			stripes[i] = new ReentrantLock();
+	}
+
+	@Override
+	public DagNode addNode(String nodeName) {
+		return addNode(nodeName, defaultNodeCategory);
+	}
+
+	@Override
+	public DagNode addNode(String nodeName, String categoryName) {
+		return addNode(nodeName, registerNodeCategory(categoryName));
+	}
+
+	private DagNodeCategory registerNodeCategory(String categoryName) {
+		return nodeCategoryMap.computeIfAbsent(
+				categoryName,
+				name -> new DagNodeCategory(name, nodeCategoryOrdinals.getAndIncrement()));
+	}
+
+	private DagNode addNode(String nodeName, DagNodeCategory category) {
+		ConcurrentNode node = nodeMap.get(nodeName);
+		if (node != null)
+			return node;
+
+		synchronized (nodeLock) {
+			node = nodeMap.get(nodeName);
+			if (node != null)
+				return node;
+
+			NodeTable table = nodeTable;
+			ConcurrentNode[] nodes = table.nodes;
+			if (table.count == nodes.length)
+				nodes = Arrays.copyOf(nodes, nodes.length * 2);
+
+			node = new ConcurrentNode(nodeName, category, table.count);
+			nodes[table.count] = node;
+			nodeMap.put(nodeName, node);
+			nodeTable = new NodeTable(nodes, table.count + 1);
+			return node;
+		}
+	}
+
+	@Override
+	public DagRelationship addDefaultRelationship(DagNode fromNode, DagNode toNode) {
+		return addRelationship(requiredNode(fromNode), defaultRelationshipType, requiredNode(toNode));
+	}
+
+	@Override
+	public DagRelationship addRelationship(DagNode fromNode, String relationshipTypeName, DagNode toNode) {
+		return addRelationship(requiredNode(fromNode), getRelationshipType(relationshipTypeName), requiredNode(toNode));
+	}
+
+	@Override
+	public DagRelationship addInverse(DagRelationship dagRelationship) {
+		DagRelationship inverse = addRelationship(
+				requiredNode(dagRelationship.getToNode()),
+				getRelationshipType(dagRelationship.getRelationshipType().getName()),
+				requiredNode(dagRelationship.getFromNode()));
+
+		((DagItemImpl) inverse).copyWeight(dagRelationship);
+		return inverse;
+	}
+
+	/**
+	 * Not supported, versions and snapshots of the concurrent model assume the topology only grows.
+	 */
+	@Override
+	public boolean removeRelationship(DagRelationship relationship) {
+		throw new DagGraphException("A concurrent model does not support removal");
+	}
+
+	/**
+	 * Not supported, versions and snapshots of the concurrent model assume the topology only grows.
+	 */
+	@Override
+	public boolean removeNode(DagNode node) {
+		throw new DagGraphException("A concurrent model does not support removal");
+	}
+
+	private ConcurrentNode requiredNode(DagNode node) {
+		DagNodeImpl found = resolveNode(node);
+		if (found == null)
+			throw new DagGraphException("Node " + node.getName() + " is not in model " + getModelName());
+		return (ConcurrentNode) found;
+	}
+
+	private DagRelationship addRelationship(ConcurrentNode fromNode, DagRelationshipType type, ConcurrentNode toNode) {
+		versionLock.readLock().lock();
+		try {
+			return applyRelationship(fromNode, type, toNode, version, oldestVisibleVersion());
+		} finally {
+			versionLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Add the relationship, stamping the changed ConnectorSides with the version. Called holding the read lock of the versionLock.
+	 * @param oldestVisible - sides older than the newest one at or before this version are pruned.
+	 */
+	private DagRelationship applyRelationship(
+			ConcurrentNode fromNode,
+			DagRelationshipType type,
+			ConcurrentNode toNode,
+			long changeVersion,
+			long oldestVisible) {
+
+		ReentrantLock first = stripes[Math.min(stripe(fromNode), stripe(toNode))];
+		ReentrantLock second = stripes[Math.max(stripe(fromNode), stripe(toNode))];
+
+		DagRelationshipImpl relationship;
+		first.lock();
+		try {
+			if (second != first)
+				second.lock();
+			try {
+				ConnectorSide fromSide = fromNode.fromVersions.side;
+				ConnectorSide toSide = toNode.toVersions.side;
+
+				DagNodeConnector existing = fromSide.find(toNode, true);
+				DagNodeConnector connector;
+				if (existing == null) {
+					connector = new DagNodeConnector(fromNode, type, toNode);
+					fromSide = fromSide.add(connector, type);
+					toSide = toSide.add(connector, type);
+				} else if (existing.hasRelationship(type)) {
+					return existing.getRelationship(type);
+				} else {
+					connector = existing.withRelationship(type);
+					fromSide = fromSide.replace(existing, connector, type);
+					toSide = toSide.replace(existing, connector, type);
+				}
+				fromNode.fromVersions = SideVersion.push(fromNode.fromVersions, fromSide, changeVersion, oldestVisible);
+				toNode.toVersions = SideVersion.push(toNode.toVersions, toSide, changeVersion, oldestVisible);
+				relationship = connector.getRelationship(type);
+			} finally {
+				if (second != first)
+					second.unlock();
+			}
+		} finally {
+			first.unlock();
+		}
+
+		if (type == defaultRelationshipType)
+			defaultRelationships.add(relationship);
+		else
+			relationships.add(relationship);
+		return relationship;
+	}
+
+	/**
+	 * Return a read-only view of the model pinned to its current version. Changes made after this call are not seen by the view.
+	 * Close the snapshot when done with it so older versions can be pruned, an unclosed snapshot is released when it is garbage collected.
+	 * @return a snapshot
+	 */
+	@Override
+	public Snapshot snapshot() {
+		releaseCollectedSnapshots();
+
+		versionLock.writeLock().lock();
+		try {
+			Snapshot snapshot = new Snapshot(version, nodeTable);
+			version++;
+			return snapshot;
+		} finally {
+			versionLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Return a compiled read-only copy (see DagModelSnapshot) of the current version of the model.
+	 */
+	@Override
+	public DagModel freeze() {
+		try (Snapshot snapshot = snapshot()) {
+			return new DagModelSnapshot(snapshot);
+		}
+	}
+
+	/**
+	 * Start a batch of relationships that are added together when the batch is committed.
+	 * @return a new batch
+	 */
+	public Batch newBatch() {
+		return new Batch();
+	}
+
+	/**
+	 * Remove every ConnectorSide no longer visible to an open snapshot. Sides are also pruned from a node whenever it is changed,
+	 * so this is only needed to release memory held by nodes that have not changed since a snapshot was closed.
+	 */
+	public void pruneVersions() {
+		releaseCollectedSnapshots();
+
+		versionLock.readLock().lock();
+		try {
+			long oldestVisible = oldestVisibleVersion();
+			for (DagNodeImpl node : getNodeImplementations()) {
+				ConcurrentNode concurrentNode = (ConcurrentNode) node;
+				concurrentNode.fromVersions.prune(oldestVisible);
+				concurrentNode.toVersions.prune(oldestVisible);
+			}
+		} finally {
+			versionLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Return the number of ConnectorSides held by the node for open snapshots and the model, at least 2 (one for each side).
+	 */
+	int getVersionCount(DagNode node) {
+		ConcurrentNode concurrentNode = (ConcurrentNode) resolveNode(node);
+		return concurrentNode.fromVersions.length() + concurrentNode.toVersions.length();
+	}
+
+	/**
+	 * The oldest version an open snapshot can read. Called holding the versionLock.
+	 */
+	private long oldestVisibleVersion() {
+		Map.Entry<Long, Integer> oldest = pinnedVersions.firstEntry();
+		return oldest == null ? version : oldest.getKey();
+	}
+
+	private void releaseCollectedSnapshots() {
+		for (Object collected = releasedSnapshots.poll(); collected != null; collected = releasedSnapshots.poll())
+			((PinnedVersion) collected).release();
+	}
+
+	private static int stripe(DagNodeImpl node) {
+		return node.getId() & (STRIPES - 1);
+	}
+
+	@Override
+	public DagRelationshipType getRelationshipType(String relationshipTypeName) {
+		return relationshipTypeMap.computeIfAbsent(
+				relationshipTypeName,
+				name -> new DagRelationshipType(name, relationshipTypeOrdinals.getAndIncrement()));
+	}
+
+	@Override
+	public DagRelationshipType getDefaultRelationshipType() {
+		return defaultRelationshipType;
+	}
+
+	@Override
+	public List<DagRelationshipType> getRelationshipTypes() {
+		ArrayList<DagRelationshipType> types = new ArrayList<>(relationshipTypeMap.values());
+		types.sort(Comparator.comparingInt(DagRelationshipType::getOrdinal));
+		return types;
+	}
+
+	@Override
+	public DagNodeCategory getNodeCategory(String category) {
+		return nodeCategoryMap.get(category);
+	}
+
+	@Override
+	public List<DagNodeCategory> getNodeCategories() {
+		return new ArrayList<>(nodeCategoryMap.values());
+	}
+
+	@Override
+	public DagNode getNode(String name) {
+		return nodeMap.get(name);
+	}
+
+	@Override
+	public List<DagNode> getNodes() {
+		// entries below count are never changed, so the view needs no copy
+		NodeTable table = nodeTable;
+		return Collections.unmodifiableList(Arrays.<DagNode>asList(table.nodes).subList(0, table.count));
+	}
+
+	@Override
+	public List<DagNode> findRootNodes() {
+		ArrayList<DagNode> roots = new ArrayList<>();
+		for (DagNodeImpl node : getNodeImplementations()) {
+			if (node.isRoot())
+				roots.add(node);
+		}
+		return roots;
+	}
+
+	@Override
+	public List<DagNode> findLeafNodes() {
+		ArrayList<DagNode> leaves = new ArrayList<>();
+		for (DagNodeImpl node : getNodeImplementations()) {
+			if (node.isLeaf())
+				leaves.add(node);
+		}
+		return leaves;
+	}
+
+	@Override
+	public List<DagNode> findSolitaryNodes() {
+		ArrayList<DagNode> solitary = new ArrayList<>();
+		for (DagNodeImpl node : getNodeImplementations()) {
+			if (node.hasNoConnectors())
+				solitary.add(node);
+		}
+		return solitary;
+	}
+
+	/**
+	 * Add the node and name maps, the node table and the relationship queues to the nodes and connectors.
+	 */
+	@Override
+	protected void estimateFootprint(DagFootprintEstimator estimator) {
+		super.estimateFootprint(estimator);
+
+		NodeTable table = nodeTable;
+		estimator.add(
+				DagFootprint.Part.INDEXES,
+				DagFootprintEstimator.hashMap(nodeMap.size())
+						+ DagFootprintEstimator.object(1, 4)
+						+ DagFootprintEstimator.referenceArray(table.nodes.length)
+						+ DagFootprintEstimator.hashMap(nodeCategoryMap.size())
+						+ DagFootprintEstimator.hashMap(relationshipTypeMap.size()));
+
+		// a queue node holds the item and the next node
+		estimator.add(DagFootprint.Part.INDEXES, (long) (relationships.size() + defaultRelationships.size()) * DagFootprintEstimator.object(2, 0));
+	}
+
+	/**
+	 * Return a copy of the relationships, other than those of the default relationshipType, added so far.
+	 */
+	@Override
+	public List<DagRelationship> getRelationships() {
+		return new ArrayList<>(relationships);
+	}
+
+	@Override
+	public List<DagRelationship> getRelationships(DagNode fromNode) {
+		ArrayList<DagRelationship> list = new ArrayList<>();
+		for (DagNodeConnector connector : ((ConcurrentNode) resolveNode(fromNode)).fromVersions.side.get(defaultRelationshipType))
+			list.add(connector.getRelationship(defaultRelationshipType));
+		return list;
+	}
+
+	@Override
+	public DagRelationship getDefaultRelationship(DagNode fromNode, DagNode toNode) {
+		DagNodeImpl from = resolveNode(fromNode);
+		DagNodeImpl to = resolveNode(toNode);
+		if (from == null || to == null)
+			return null;
+
+		DagNodeConnector connector = from.findFromThisNodeConnectorTo(to);
+		if (connector == null)
+			return null;
+
+		return connector.getRelationship(defaultRelationshipType);
+	}
+
+	@Override
+	protected DagNodeImpl getNodeImplementation(String name) {
+		return nodeMap.get(name);
+	}
+
+	@Override
+	protected DagNodeImpl getNodeImplementation(int nodeId) {
+		NodeTable table = nodeTable;
+		if (nodeId < 0 || nodeId >= table.count)
+			return null;
+		return table.nodes[nodeId];
+	}
+
+	@Override
+	protected Collection<DagNodeImpl> getNodeImplementations() {
+		NodeTable table = nodeTable;
+		return Collections.unmodifiableList(Arrays.<DagNodeImpl>asList(table.nodes).subList(0, table.count));
+	}
+
+	@Override
+	protected int getNodeCount() {
+		return nodeTable.count;
+	}
+
+	@Override
+	protected Iterable<DagNodeConnector> getFromThisNodeConnectors(DagNodeImpl node, DagRelationshipType relationshipType) {
+		return node.getFromThisNodeConnectors(relationshipType);
+	}
+
+	@Override
+	protected Iterable<DagNodeConnector> getToThisNodeConnectors(DagNodeImpl node, DagRelationshipType relationshipType) {
+		return node.getToThisNodeConnectors(relationshipType);
+	}
+
+	/**
+	 * The nodes of the model and the number of ids given out. Replaced as a whole when a node is added.
+	 */
+	private static final class NodeTable {
+		private final ConcurrentNode[] nodes;
+		private final int count;
+
+		private NodeTable(ConcurrentNode[] nodes, int count) {
+			this.nodes = nodes;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * The connectors on one side of a node, all of them and partitioned by relationshipType. Never changed once published.
+	 */
+	private static final class ConnectorSide {
+
+		private static final ConnectorSide EMPTY = new ConnectorSide(NO_CONNECTORS, new DagRelationshipType[0], new DagNodeConnector[0][]);
+
+		private final DagNodeConnector[] connectors;
+		private final DagRelationshipType[] types;
+		private final DagNodeConnector[][] partitions;
+
+		private ConnectorSide(DagNodeConnector[] connectors, DagRelationshipType[] types, DagNodeConnector[][] partitions) {
+			this.connectors = connectors;
+			this.types = types;
+			this.partitions = partitions;
+		}
+
+		private List<DagNodeConnector> all() {
+			return Collections.unmodifiableList(Arrays.asList(connectors));
+		}
+
+		private List<DagNodeConnector> get(DagRelationshipType type) {
+			int position = findType(type);
+			if (position < 0)
+				return Collections.emptyList();
+			return Collections.unmodifiableList(Arrays.asList(partitions[position]));
+		}
+
+		private DagNodeConnector find(DagNodeImpl node, boolean isFrom) {
+			int nodeId = node.getId();
+			for (DagNodeConnector connector : connectors) {
+				if ((isFrom ? connector.getToNode() : connector.getFromNode()).getId() == nodeId)
+					return connector;
+			}
+			return null;
+		}
+
+		/**
+		 * Return a side with a new connector carrying the type.
+		 */
+		private ConnectorSide add(DagNodeConnector connector, DagRelationshipType type) {
+			DagNodeConnector[] expanded = Arrays.copyOf(connectors, connectors.length + 1);
+			expanded[connectors.length] = connector;
+			return withPartition(expanded, partitions.clone(), connector, type);
+		}
+
+		/**
+		 * Return a side with the connector replaced by a copy that also carries the type.
+		 */
+		private ConnectorSide replace(DagNodeConnector existing, DagNodeConnector connector, DagRelationshipType type) {
+			DagNodeConnector[] replaced = connectors.clone();
+			replaced[indexOf(replaced, existing)] = connector;
+
+			DagNodeConnector[][] replacedPartitions = partitions.clone();
+			for (int i = 0; i < replacedPartitions.length; i++) {
+				int position = indexOf(replacedPartitions[i], existing);
+				if (position >= 0) {
+					replacedPartitions[i] = replacedPartitions[i].clone();
+					replacedPartitions[i][position] = connector;
+				}
+			}
+			return withPartition(replaced, replacedPartitions, connector, type);
+		}
+
+		private ConnectorSide withPartition(
+				DagNodeConnector[] newConnectors,
+				DagNodeConnector[][] newPartitions,
+				DagNodeConnector connector,
+				DagRelationshipType type) {
+
+			DagRelationshipType[] newTypes = types;
+			int position = findType(type);
+			if (position < 0) {
+				position = types.length;
+				newTypes = Arrays.copyOf(types, position + 1);
+				newTypes[position] = type;
+				newPartitions = Arrays.copyOf(newPartitions, position + 1);
+				newPartitions[position] = NO_CONNECTORS;
+			}
+
+			DagNodeConnector[] partition = Arrays.copyOf(newPartitions[position], newPartitions[position].length + 1);
+			partition[partition.length - 1] = connector;
+			newPartitions[position] = partition;
+
+			return new ConnectorSide(newConnectors, newTypes, newPartitions);
+		}
+
+		private int findType(DagRelationshipType type) {
+			for (int i = 0; i < types.length; i++) {
+				if (types[i] == type)
+					return i;
+			}
+			for (int i = 0; i < types.length; i++) {
+				if (types[i].equals(type))
+					return i;
+			}
+			return -1;
+		}
+
+		private static int indexOf(DagNodeConnector[] connectors, DagNodeConnector connector) {
+			for (int i = 0; i < connectors.length; i++) {
+				if (connectors[i] == connector)
+					return i;
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * A ConnectorSide and the version it was created at, linked to the side it replaced.
+	 */
+	private static final class SideVersion {
+
+		private static final SideVersion INITIAL = new SideVersion(Long.MIN_VALUE, ConnectorSide.EMPTY, null);
+
+		private final long version;
+		private final ConnectorSide side;
+		private volatile SideVersion previous;
+
+		private SideVersion(long version, ConnectorSide side, SideVersion previous) {
+			this.version = version;
+			this.side = side;
+			this.previous = previous;
+		}
+
+		/**
+		 * Return a new head holding the side. A head created at the same version is replaced, no snapshot can have seen it.
+		 */
+		private static SideVersion push(SideVersion head, ConnectorSide side, long version, long oldestVisible) {
+			SideVersion pushed = new SideVersion(version, side, head.version == version ? head.previous : head);
+			pushed.prune(oldestVisible);
+			return pushed;
+		}
+
+		/**
+		 * Return the newest side created at or before the version.
+		 */
+		private ConnectorSide at(long atVersion) {
+			SideVersion sideVersion = this;
+			while (sideVersion.version > atVersion) {
+				sideVersion = sideVersion.previous;
+				if (sideVersion == null)
+					throw new DagGraphException("Snapshot version " + atVersion + " has been released");
+			}
+			return sideVersion.side;
+		}
+
+		/**
+		 * Drop the sides older than the newest one at or before oldestVisible.
+		 */
+		private void prune(long oldestVisible) {
+			for (SideVersion sideVersion = this; sideVersion != null; sideVersion = sideVersion.previous) {
+				if (sideVersion.version <= oldestVisible) {
+					sideVersion.previous = null;
+					return;
+				}
+			}
+		}
+
+		private int length() {
+			int length = 0;
+			for (SideVersion sideVersion = this; sideVersion != null; sideVersion = sideVersion.previous)
+				length++;
+			return length;
+		}
+	}
+
+	/**
+	 * Pins the version of a snapshot until the snapshot is closed or garbage collected.
+	 */
+	private final class PinnedVersion extends WeakReference<Snapshot> {
+
+		private final long pinnedVersion;
+		private final AtomicBoolean isReleased = new AtomicBoolean();
+
+		private PinnedVersion(Snapshot snapshot, long pinnedVersion) {
+			super(snapshot, releasedSnapshots);
+			this.pinnedVersion = pinnedVersion;
+			pins.add(this);
+			pinnedVersions.merge(pinnedVersion, 1, Integer::sum);
+		}
+
+		private void release() {
+			if (isReleased.compareAndSet(false, true)) {
+				pins.remove(this);
+				pinnedVersions.computeIfPresent(pinnedVersion, (v, count) -> count == 1 ? null : count - 1);
+			}
+		}
+	}
+
+	/**
+	 * Relationships added to the model together when the batch is committed.
+	 * A snapshot sees either all of a committed batch or none of it. A batch is filled by one thread and committed once.
+	 */
+	public final class Batch {
+
+		private final ArrayList<ConcurrentNode> fromNodes = new ArrayList<>();
+		private final ArrayList<DagRelationshipType> types = new ArrayList<>();
+		private final ArrayList<ConcurrentNode> toNodes = new ArrayList<>();
+
+		private boolean isCommitted = false;
+
+		private Batch() {
+		}
+
+		public Batch addRelationship(DagNode fromNode, String relationshipTypeName, DagNode toNode) {
+			return add(fromNode, getRelationshipType(relationshipTypeName), toNode);
+		}
+
+		public Batch addDefaultRelationship(DagNode fromNode, DagNode toNode) {
+			return add(fromNode, defaultRelationshipType, toNode);
+		}
+
+		private Batch add(DagNode fromNode, DagRelationshipType type, DagNode toNode) {
+			if (isCommitted)
+				throw new DagGraphException("Batch has already been committed");
+
+			fromNodes.add(requiredNode(fromNode));
+			types.add(type);
+			toNodes.add(requiredNode(toNode));
+			return this;
+		}
+
+		/**
+		 * Add the relationships to the model as one version.
+		 * @return the relationships, in the order they were added to the batch.
+		 */
+		public List<DagRelationship> commit() {
+			if (isCommitted)
+				throw new DagGraphException("Batch has already been committed");
+			isCommitted = true;
+
+			ArrayList<DagRelationship> added = new ArrayList<>(types.size());
+			versionLock.readLock().lock();
+			try {
+				long oldestVisible = oldestVisibleVersion();
+				for (int i = 0; i < types.size(); i++)
+					added.add(applyRelationship(fromNodes.get(i), types.get(i), toNodes.get(i), version, oldestVisible));
+			} finally {
+				versionLock.readLock().unlock();
+			}
+			return added;
+		}
+	}
+
+	/**
+	 * A read-only view of the model pinned to a version. Nodes, connectors and relationships are shared with the model.
+	 * Calls on the nodes themselves (isLeaf(), isRoot(), ...) answer for the live model, the methods of the snapshot answer for its version.
+	 */
+	public final class Snapshot extends AbstractDagModel implements AutoCloseable {
+
+		private final long snapshotVersion;
+		private final NodeTable table;
+		private final PinnedVersion pin;
+
+		private Snapshot(long snapshotVersion, NodeTable table) {
+			super(DagConcurrentModel.this.getModelName(), DagConcurrentModel.this.getWeightMode());
+			this.snapshotVersion = snapshotVersion;
+			this.table = table;
+			this.pin = new PinnedVersion(this, snapshotVersion);
+		}
+
+		public long getVersion() {
+			return snapshotVersion;
+		}
+
+		/**
+		 * Release the version so the model can prune it. The snapshot cannot be used once closed.
+		 */
+		@Override
+		public void close() {
+			pin.release();
+		}
+
+		@Override
+		public DagModel snapshot() {
+			return this;
+		}
+
+		private ConnectorSide fromSide(DagNodeImpl node) {
+			return ((ConcurrentNode) node).fromVersions.at(snapshotVersion);
+		}
+
+		private ConnectorSide toSide(DagNodeImpl node) {
+			return ((ConcurrentNode) node).toVersions.at(snapshotVersion);
+		}
+
+		@Override
+		protected DagNodeImpl getNodeImplementation(String name) {
+			ConcurrentNode node = nodeMap.get(name);
+			if (node == null || node.getId() >= table.count)
+				return null;
+			return node;
+		}
+
+		@Override
+		protected DagNodeImpl getNodeImplementation(int nodeId) {
+			if (nodeId < 0 || nodeId >= table.count)
+				return null;
+			return table.nodes[nodeId];
+		}
+
+		@Override
+		protected Collection<DagNodeImpl> getNodeImplementations() {
+			return Collections.unmodifiableList(Arrays.<DagNodeImpl>asList(table.nodes).subList(0, table.count));
+		}
+
+		@Override
+		protected int getNodeCount() {
+			return table.count;
+		}
+
+		@Override
+		protected Iterable<DagNodeConnector> getFromThisNodeConnectors(DagNodeImpl node, DagRelationshipType relationshipType) {
+			return fromSide(node).get(relationshipType);
+		}
+
+		@Override
+		protected Iterable<DagNodeConnector> getToThisNodeConnectors(DagNodeImpl node, DagRelationshipType relationshipType) {
+			return toSide(node).get(relationshipType);
+		}
+
+		@Override
+		public DagNode getNode(String name) {
+			return getNodeImplementation(name);
+		}
+
+		@Override
+		public List<DagNode> getNodes() {
+			return new ArrayList<>(getNodeImplementations());
+		}
+
+		@Override
+		public List<DagNode> findRootNodes() {
+			ArrayList<DagNode> roots = new ArrayList<>();
+			for (DagNodeImpl node : getNodeImplementations()) {
+				if (fromSide(node).connectors.length > 0 && toSide(node).connectors.length == 0)
+					roots.add(node);
+			}
+			return roots;
+		}
+
+		@Override
+		public List<DagNode> findLeafNodes() {
+			ArrayList<DagNode> leaves = new ArrayList<>();
+			for (DagNodeImpl node : getNodeImplementations()) {
+				if (fromSide(node).connectors.length == 0 && toSide(node).connectors.length > 0)
+					leaves.add(node);
+			}
+			return leaves;
+		}
+
+		@Override
+		public List<DagNode> findSolitaryNodes() {
+			ArrayList<DagNode> solitary = new ArrayList<>();
+			for (DagNodeImpl node : getNodeImplementations()) {
+				if (fromSide(node).connectors.length == 0 && toSide(node).connectors.length == 0)
+					solitary.add(node);
+			}
+			return solitary;
+		}
+
+		@Override
+		public DagRelationshipType getDefaultRelationshipType() {
+			return defaultRelationshipType;
+		}
+
+		@Override
+		public List<DagRelationshipType> getRelationshipTypes() {
+			return DagConcurrentModel.this.getRelationshipTypes();
+		}
+
+		@Override
+		public DagRelationshipType getRelationshipType(String relationshipTypeName) {
+			DagRelationshipType type = relationshipTypeMap.get(relationshipTypeName);
+			return type == null ? new DagRelationshipType(relationshipTypeName) : type;
+		}
+
+		@Override
+		public DagNodeCategory getNodeCategory(String category) {
+			return nodeCategoryMap.get(category);
+		}
+
+		@Override
+		public List<DagNodeCategory> getNodeCategories() {
+			return DagConcurrentModel.this.getNodeCategories();
+		}
+
+		/**
+		 * Return the relationships, other than those of the default relationshipType, in from node order.
+		 */
+		@Override
+		public List<DagRelationship> getRelationships() {
+			ArrayList<DagRelationship> list = new ArrayList<>();
+			for (DagNodeImpl node : getNodeImplementations()) {
+				for (DagNodeConnector connector : fromSide(node).connectors) {
+					for (DagRelationshipImpl relationship : connector.getRelationships()) {
+						if (relationship.getRelationshipType() != defaultRelationshipType)
+							list.add(relationship);
+					}
+				}
+			}
+			return list;
+		}
+
+		@Override
+		public List<DagRelationship> getRelationships(DagNode fromNode) {
+			ArrayList<DagRelationship> list = new ArrayList<>();
+			for (DagNodeConnector connector : fromSide(resolveNode(fromNode)).get(defaultRelationshipType))
+				list.add(connector.getRelationship(defaultRelationshipType));
+			return list;
+		}
+
+		@Override
+		public DagRelationship getDefaultRelationship(DagNode fromNode, DagNode toNode) {
+			DagNodeImpl from = resolveNode(fromNode);
+			DagNodeImpl to = resolveNode(toNode);
+			if (from == null || to == null)
+				return null;
+
+			DagNodeConnector connector = fromSide(from).find(to, true);
+			if (connector == null)
+				return null;
+			return connector.getRelationship(defaultRelationshipType);
+		}
+
+		@Override
+		public DagNode addNode(String nodeName) {
+			throw new DagGraphException("Snapshot is read-only");
+		}
+
+		@Override
+		public DagNode addNode(String nodeName, String category) {
+			throw new DagGraphException("Snapshot is read-only");
+		}
+
+		@Override
+		public DagRelationship addDefaultRelationship(DagNode fromNode, DagNode toNode) {
+			throw new DagGraphException("Snapshot is read-only");
+		}
+
+		@Override
+		public DagRelationship addRelationship(DagNode fromNode, String relationshipTypeName, DagNode toNode) {
+			throw new DagGraphException("Snapshot is read-only");
+		}
+
+		@Override
+		public DagRelationship addInverse(DagRelationship dagRelationship) {
+			throw new DagGraphException("Snapshot is read-only");
+		}
+
+		@Override
+		public boolean removeRelationship(DagRelationship relationship) {
+			throw new DagGraphException("Snapshot is read-only");
+		}
+
+		@Override
+		public boolean removeNode(DagNode node) {
+			throw new DagGraphException("Snapshot is read-only");
+		}
+	}
+
+	/**
+	 * A node whose connectors are held in ConnectorSides published through volatile fields.
+	 * Connectors can only be added through the model.
+	 */
+	private class ConcurrentNode extends DagNodeImpl {
+
+		private volatile SideVersion fromVersions = SideVersion.INITIAL;
+		private volatile SideVersion toVersions = SideVersion.INITIAL;
+
+		private ConcurrentNode(String name, DagNodeCategory category, int id) {
+			super(name, category);
+			setId(id);
+			setWeightMode(DagConcurrentModel.this.getWeightMode());
+		}
+
+		@Override
+		public void addFromThisNodeConnector(DagNodeConnector r) {
+			throw new DagGraphException("Add relationships to a concurrent model through the model");
+		}
+
+		@Override
+		public DagNodeConnector addFromThisNodeRelationshipToNode(DagRelationshipType dagRelationshipType, DagNodeImpl toNode) {
+			throw new DagGraphException("Add relationships to a concurrent model through the model");
+		}
+
+		@Override
+		public DagNodeConnector addToThisNodeRelationshipFromNode(DagNodeConnector fromSide) {
+			throw new DagGraphException("Add relationships to a concurrent model through the model");
+		}
+
+		/**
+		 * Add the node and every ConnectorSide still chained to it, including those kept for snapshots.
+		 */
+		@Override
+		void estimateFootprint(DagFootprintEstimator estimator) {
+			super.estimateFootprint(estimator);
+			for (SideVersion version = fromVersions; version != null; version = version.previous)
+				estimateFootprint(estimator, version);
+			for (SideVersion version = toVersions; version != null; version = version.previous)
+				estimateFootprint(estimator, version);
+		}
+
+		private void estimateFootprint(DagFootprintEstimator estimator, SideVersion version) {
+			if (version == SideVersion.INITIAL)
+				return;
+
+			// the version, then its side
+			estimator.add(DagFootprint.Part.INDEXES, DagFootprintEstimator.object(2, 8) + DagFootprintEstimator.object(3, 0));
+			ConnectorSide side = version.side;
+			estimator.add(DagFootprint.Part.CONNECTORS, DagFootprintEstimator.referenceArray(side.connectors.length));
+			long partitionBytes = DagFootprintEstimator.referenceArray(side.types.length) + DagFootprintEstimator.referenceArray(side.partitions.length);
+			for (DagNodeConnector[] partition : side.partitions)
+				partitionBytes += DagFootprintEstimator.referenceArray(partition.length);
+			estimator.add(DagFootprint.Part.INDEXES, partitionBytes);
+
+			for (DagNodeConnector connector : side.connectors)
+				estimator.addConnector(connector);
+		}
+
+		@Override
+		long shallowBytes() {
+			// adds fromVersions, toVersions and the enclosing model
+			return DagFootprintEstimator.object(14, 12);
+		}
+
+		@Override
+		public boolean hasFromThisNodeConnectors() {
+			return fromVersions.side.connectors.length > 0;
+		}
+
+		@Override
+		public boolean hasToThisNodeConnectors() {
+			return toVersions.side.connectors.length > 0;
+		}
+
+		@Override
+		public boolean isLeaf() {
+			return hasFromThisNodeConnectors() == false && hasToThisNodeConnectors();
+		}
+
+		@Override
+		public boolean isRoot() {
+			return hasFromThisNodeConnectors() && hasToThisNodeConnectors() == false;
+		}
+
+		@Override
+		public boolean hasNoConnectors() {
+			return hasFromThisNodeConnectors() == false && hasToThisNodeConnectors() == false;
+		}
+
+		@Override
+		public DagNodeConnector findFromThisNodeConnectorTo(DagNodeImpl toNode) {
+			return fromVersions.side.find(toNode, true);
+		}
+
+		@Override
+		public DagNodeConnector findToThisNodeConnectorFrom(DagNodeImpl fromNode) {
+			return toVersions.side.find(fromNode, false);
+		}
+
+		@Override
+		public List<DagNodeConnector> getFromThisNodeConnectors() {
+			return fromVersions.side.all();
+		}
+
+		@Override
+		public List<DagNodeConnector> getToThisNodeConnectors() {
+			return toVersions.side.all();
+		}
+
+		@Override
+		public List<DagNodeConnector> getFromThisNodeConnectors(DagRelationshipType relationshipType) {
+			return fromVersions.side.get(relationshipType);
+		}
+
+		@Override
+		public List<DagNodeConnector> getToThisNodeConnectors(DagRelationshipType relationshipType) {
+			return toVersions.side.get(relationshipType);
+		}
+
+		@Override
+		public List<DagNodeConnector> getSortedFromThisNodeConnectors(Comparator<DagNodeConnector> sorter) {
+			ArrayList<DagNodeConnector> sorted = new ArrayList<>(fromVersions.side.all());
+			sorted.sort(sorter);
+			return sorted;
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash index from a node id to the position in a DagConnectorList of the connector joining it.
+ * Kept by a DagConnectorList once the number of connectors makes a linear scan expensive.
+ *
+ */
+class DagConnectorIndex {
+
+	private static final int EMPTY = -1;
+
+	private int[] keys;
+	private int[] values;
+	private int size;
+	private int mask;
+
+	DagConnectorIndex(int expectedSize) {
+		int capacity = 16;
+		while (capacity < expectedSize * 2)
+			capacity <<= 1;
+
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+		Arrays.fill(keys, EMPTY);
+	}
+
+	long estimateBytes() {
+		return DagFootprintEstimator.object(2, 8) + DagFootprintEstimator.array(4, keys.length) + DagFootprintEstimator.array(4, values.length);
+	}
+
+	private static int hash(int nodeId) {
+		int h = nodeId * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Return the position of the connector for the node id.
+	 * @param nodeId
+	 * @return -1 if there is none.
+	 */
+	int get(int nodeId) {
+		int slot = hash(nodeId) & mask;
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == nodeId)
+				return values[slot];
+			slot = (slot + 1) & mask;
+		}
+		return EMPTY;
+	}
+
+	/**
+	 * Add or replace the position of the connector for the node id.
+	 * @param nodeId
+	 * @param position
+	 */
+	void put(int nodeId, int position) {
+		if ((size + 1) * 2 > keys.length)
+			rehash(keys.length << 1);
+
+		int slot = hash(nodeId) & mask;
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == nodeId) {
+				values[slot] = position;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = nodeId;
+		values[slot] = position;
+		size++;
+	}
+
+	/**
+	 * Remove the connector for the node id, moving back any entries that probed past its slot.
+	 * @param nodeId
+	 */
+	void remove(int nodeId) {
+		int hole = hash(nodeId) & mask;
+		while (keys[hole] != nodeId) {
+			if (keys[hole] == EMPTY)
+				return;
+			hole = (hole + 1) & mask;
+		}
+
+		for (int slot = (hole + 1) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+			int home = hash(keys[slot]) & mask;
+			if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+				keys[hole] = keys[slot];
+				values[hole] = values[slot];
+				hole = slot;
+			}
+		}
+		keys[hole] = EMPTY;
+		size--;
+	}
+
+	int size() {
+		return size;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+
+		allocate(capacity);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY)
+				put(oldKeys[i], oldValues[i]);
+		}
+	}
+
+}
@@ -0,0 +1,161 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The connectors on one side of a node, joining it to distinct nodes, in the order they were added.
+ * Once the list holds more than a few connectors it keeps a DagConnectorIndex from the node at the other end to the position of its connector,
+ * so a connector is found and removed in constant time. Removal moves the last connector into the gap rather than shifting the list.
+ *
+ */
+class DagConnectorList extends AbstractList<DagNodeConnector> implements RandomAccess {
+
+	/**
+	 * Number of connectors before lookups switch from a linear scan to a DagConnectorIndex
+	 */
+	static final int INDEX_THRESHOLD = 8;
+
+	// true if the connectors lead from the node, so are keyed by their toNode
+	private final boolean isFrom;
+
+	private DagNodeConnector[] slots;
+	private int size;
+	private DagConnectorIndex index;
+
+	DagConnectorList(boolean isFrom) {
+		this.isFrom = isFrom;
+		slots = new DagNodeConnector[4];
+	}
+
+	DagConnectorList(boolean isFrom, List<DagNodeConnector> connectors) {
+		this.isFrom = isFrom;
+		slots = connectors.toArray(new DagNodeConnector[Math.max(4, connectors.size())]);
+		size = connectors.size();
+		if (size > INDEX_THRESHOLD)
+			reindex();
+	}
+
+	private int key(DagNodeConnector connector) {
+		return isFrom ? connector.getToNode().getId() : connector.getFromNode().getId();
+	}
+
+	@Override
+	public DagNodeConnector get(int position) {
+		if (position < 0 || position >= size)
+			throw new IndexOutOfBoundsException("Index " + position + " size " + size);
+		return slots[position];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Add the connector to the end of the list.
+	 */
+	@Override
+	public boolean add(DagNodeConnector connector) {
+		if (size == slots.length)
+			slots = Arrays.copyOf(slots, slots.length * 2);
+		slots[size++] = connector;
+		modCount++;
+
+		if (index != null)
+			index.put(key(connector), size - 1);
+		else if (size > INDEX_THRESHOLD)
+			reindex();
+		return true;
+	}
+
+	/**
+	 * Return the connector joining the node with the id.
+	 * @param nodeId
+	 * @return null if there is none.
+	 */
+	DagNodeConnector find(int nodeId) {
+		if (index != null) {
+			int position = index.get(nodeId);
+			return position < 0 ? null : slots[position];
+		}
+
+		for (int i = 0; i < size; i++) {
+			if (key(slots[i]) == nodeId)
+				return slots[i];
+		}
+		return null;
+	}
+
+	/**
+	 * Remove the connector, moving the last connector into its position.
+	 * @return false if the connector is not in the list.
+	 */
+	boolean removeConnector(DagNodeConnector connector) {
+		int position = positionOf(connector);
+		if (position < 0)
+			return false;
+
+		DagNodeConnector last = slots[--size];
+		slots[size] = null;
+		if (index != null)
+			index.remove(key(connector));
+		if (position < size) {
+			slots[position] = last;
+			if (index != null)
+				index.put(key(last), position);
+		}
+		modCount++;
+		return true;
+	}
+
+	private int positionOf(DagNodeConnector connector) {
+		if (index != null) {
+			int position = index.get(key(connector));
+			return position >= 0 && slots[position] == connector ? position : -1;
+		}
+
+		for (int i = 0; i < size; i++) {
+			if (slots[i] == connector)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Rebuild the index after the ids of the nodes at the other end have changed (see DagModelImpl.compact()).
+	 */
+	void reindex() {
+		if (index == null && size <= INDEX_THRESHOLD)
+			return;
+
+		index = new DagConnectorIndex(size);
+		for (int i = 0; i < size; i++)
+			index.put(key(slots[i]), i);
+	}
+
+	long estimateBytes() {
+		long bytes = DagFootprintEstimator.object(2, 9) + DagFootprintEstimator.referenceArray(slots.length);
+		if (index != null)
+			bytes += index.estimateBytes();
+		return bytes;
+	}
+
+}
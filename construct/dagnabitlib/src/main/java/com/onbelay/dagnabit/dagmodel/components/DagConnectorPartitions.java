@@ -0,0 +1,109 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import com.onbelay.dagnabit.dagmodel.model.DagRelationshipType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The connectors on one side of a node partitioned by relationshipType.
+ * A connector carrying several relationshipTypes appears in the partition of each of them, in the order the relationships were added
+ * until one is removed (see DagConnectorList).
+ * Models hold few relationshipTypes so the partitions are found by a scan of a small array.
+ *
+ */
+class DagConnectorPartitions {
+
+	// true if the connectors lead from the node
+	private final boolean isFrom;
+
+	private DagRelationshipType[] types = new DagRelationshipType[0];
+	private DagConnectorList[] partitions = new DagConnectorList[0];
+
+	DagConnectorPartitions(boolean isFrom) {
+		this.isFrom = isFrom;
+	}
+
+	/**
+	 * Return the connectors carrying the relationshipType.
+	 * @param relationshipType
+	 * @return an empty list if there are none.
+	 */
+	List<DagNodeConnector> get(DagRelationshipType relationshipType) {
+		int position = find(relationshipType);
+		if (position < 0)
+			return Collections.emptyList();
+
+		return partitions[position];
+	}
+
+	long estimateBytes() {
+		long bytes = DagFootprintEstimator.object(2, 1)
+				+ DagFootprintEstimator.referenceArray(types.length)
+				+ DagFootprintEstimator.referenceArray(partitions.length);
+		for (DagConnectorList partition : partitions)
+			bytes += partition.estimateBytes();
+		return bytes;
+	}
+
+	void add(DagRelationshipType relationshipType, DagNodeConnector connector) {
+		int position = find(relationshipType);
+		if (position < 0) {
+			position = types.length;
+			types = Arrays.copyOf(types, position + 1);
+			partitions = Arrays.copyOf(partitions, position + 1);
+			types[position] = relationshipType;
+			partitions[position] = new DagConnectorList(isFrom);
+		}
+		partitions[position].add(connector);
+	}
+
+	/**
+	 * Remove the connector from the partition of the relationshipType.
+	 * @return true if the connector was in the partition.
+	 */
+	boolean remove(DagRelationshipType relationshipType, DagNodeConnector connector) {
+		int position = find(relationshipType);
+		if (position < 0)
+			return false;
+
+		return partitions[position].removeConnector(connector);
+	}
+
+	/**
+	 * Rebuild the index of each partition after node ids have changed.
+	 */
+	void reindex() {
+		for (DagConnectorList partition : partitions)
+			partition.reindex();
+	}
+
+	private int find(DagRelationshipType relationshipType) {
+		for (int i = 0; i < types.length; i++) {
+			if (types[i] == relationshipType)
+				return i;
+		}
+		for (int i = 0; i < types.length; i++) {
+			if (types[i].equals(relationshipType))
+				return i;
+		}
+		return -1;
+	}
+
+}
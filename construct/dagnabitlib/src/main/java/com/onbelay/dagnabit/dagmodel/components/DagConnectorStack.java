@@ -0,0 +1,119 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The work stack of a depth first traversal, in place of one recursive call per node, so the depth of a traversal is bounded by the heap rather than the thread's stack.
+ * Each frame holds a node and the connectors still to be followed from it. The connectors of all frames are held in one array,
+ * the top frame's connectors at its end, so pushing a frame copies only that node's connectors.
+ * A flag is kept with each frame for the traversal's own use.
+ *
+ */
+class DagConnectorStack {
+
+	private DagNodeImpl[] nodes = new DagNodeImpl[16];
+
+	// position in connectors of the first and the next connector of each frame
+	private int[] firstConnectors = new int[16];
+	private int[] nextConnectors = new int[16];
+
+	private boolean[] flags = new boolean[16];
+
+	private DagNodeConnector[] connectors = new DagNodeConnector[64];
+	private int connectorCount;
+
+	private int depth;
+
+	/**
+	 * Push a frame for the node, to follow the connectors in the order given.
+	 */
+	void push(DagNodeImpl node, Iterable<DagNodeConnector> nodeConnectors) {
+		if (depth == nodes.length) {
+			nodes = Arrays.copyOf(nodes, depth * 2);
+			firstConnectors = Arrays.copyOf(firstConnectors, depth * 2);
+			nextConnectors = Arrays.copyOf(nextConnectors, depth * 2);
+			flags = Arrays.copyOf(flags, depth * 2);
+		}
+
+		nodes[depth] = node;
+		firstConnectors[depth] = connectorCount;
+		nextConnectors[depth] = connectorCount;
+		flags[depth] = false;
+		depth++;
+
+		for (DagNodeConnector connector : nodeConnectors) {
+			if (connectorCount == connectors.length)
+				connectors = Arrays.copyOf(connectors, connectorCount * 2);
+			connectors[connectorCount++] = connector;
+		}
+	}
+
+	/**
+	 * Sort the connectors of the top frame still to be followed. The sort is stable.
+	 */
+	void sort(Comparator<DagNodeConnector> comparator) {
+		Arrays.sort(connectors, nextConnectors[depth - 1], connectorCount, comparator);
+	}
+
+	/**
+	 * Pop the top frame with any of its connectors not yet followed.
+	 */
+	void pop() {
+		depth--;
+		int first = firstConnectors[depth];
+		Arrays.fill(connectors, first, connectorCount, null);
+		connectorCount = first;
+		nodes[depth] = null;
+	}
+
+	boolean isEmpty() {
+		return depth == 0;
+	}
+
+	/**
+	 * Return the number of frames.
+	 */
+	int size() {
+		return depth;
+	}
+
+	DagNodeImpl getNode() {
+		return nodes[depth - 1];
+	}
+
+	/**
+	 * Return true if the top frame has a connector still to be followed.
+	 */
+	boolean hasNext() {
+		return nextConnectors[depth - 1] < connectorCount;
+	}
+
+	DagNodeConnector next() {
+		return connectors[nextConnectors[depth - 1]++];
+	}
+
+	boolean isFlagged() {
+		return flags[depth - 1];
+	}
+
+	void setFlagged(boolean isFlagged) {
+		flags[depth - 1] = isFlagged;
+	}
+
+}
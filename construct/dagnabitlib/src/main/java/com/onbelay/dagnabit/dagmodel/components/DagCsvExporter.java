@@ -0,0 +1,268 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import com.onbelay.dagnabit.dagmodel.exception.DagGraphException;
+import com.onbelay.dagnabit.dagmodel.model.*;
+import com.onbelay.dagnabit.enums.TransactionErrorCode;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+
+/**
+ * Writes the nodes and relationships of a model to the CSV files read by DagCsvImporter.
+ * <ul>
+ * <li> node file: name,category,weight,referenceNo in node id order.
+ * <li> relationship file: from,type,to,weight by from node, including default relationships.
+ * </ul>
+ * Each file starts with a header line. Fields holding a comma or double quote are quoted.
+ * The importer reads a line at a time, so a name holding a line break cannot be exported.
+ * Lines are encoded straight into a buffer written to the file channel, weights held as primitives are written without creating a BigDecimal.
+ *
+ */
+public class DagCsvExporter {
+
+	private static final byte[] NODE_HEADER = "name,category,weight,referenceNo\n".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] RELATIONSHIP_HEADER = "from,type,to,weight\n".getBytes(StandardCharsets.US_ASCII);
+
+	private final AbstractDagModel model;
+
+	private FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+	public DagCsvExporter(DagModel model) {
+		if (model instanceof AbstractDagModel == false)
+			throw new DagGraphException("Only models created by this library can be exported");
+		this.model = (AbstractDagModel) model;
+	}
+
+	/**
+	 * Write the node file.
+	 * @param path - the file is created or replaced.
+	 * @throws DagGraphException with the NODE_FILE_WRITE_FAILED error code if the file cannot be written or a name holds a line break.
+	 */
+	public void writeNodes(Path path) {
+		try {
+			open(path);
+			buffer.put(NODE_HEADER);
+			for (int i = 0; i < model.getNodeCount(); i++) {
+				DagNodeImpl node = model.getNodeImplementation(i);
+				if (node == null)
+					continue;
+
+				writeText(node.getName());
+				writeByte(',');
+				writeText(node.getCategory().getCategoryName());
+				writeByte(',');
+				writeWeight(node);
+				writeByte(',');
+				if (node.getReferenceNo() != null)
+					writeLong(node.getReferenceNo());
+				writeByte('\n');
+			}
+			close();
+		} catch (IOException e) {
+			abort();
+			throw new DagGraphException(TransactionErrorCode.NODE_FILE_WRITE_FAILED, "Unable to write " + path, e);
+		}
+	}
+
+	/**
+	 * Write the relationship file.
+	 * @param path - the file is created or replaced.
+	 * @throws DagGraphException with the RELATIONSHIP_FILE_WRITE_FAILED error code if the file cannot be written or a name holds a line break.
+	 */
+	public void writeRelationships(Path path) {
+		LinkedHashMap<String, DagRelationshipType> types = new LinkedHashMap<>();
+		types.put(model.getDefaultRelationshipType().getName(), model.getDefaultRelationshipType());
+		for (DagRelationshipType type : model.getRelationshipTypes())
+			types.putIfAbsent(type.getName(), type);
+
+		try {
+			open(path);
+			buffer.put(RELATIONSHIP_HEADER);
+			for (int i = 0; i < model.getNodeCount(); i++) {
+				DagNodeImpl node = model.getNodeImplementation(i);
+				if (node == null)
+					continue;
+
+				for (DagRelationshipType type : types.values()) {
+					for (DagNodeConnector connector : model.getFromThisNodeConnectors(node, type)) {
+						writeText(node.getName());
+						writeByte(',');
+						writeText(type.getName());
+						writeByte(',');
+						writeText(connector.getToNode().getName());
+						writeByte(',');
+						writeWeight(connector.getRelationship(type));
+						writeByte('\n');
+					}
+				}
+			}
+			close();
+		} catch (IOException e) {
+			abort();
+			throw new DagGraphException(TransactionErrorCode.RELATIONSHIP_FILE_WRITE_FAILED, "Unable to write " + path, e);
+		}
+	}
+
+	private void open(Path path) throws IOException {
+		channel = FileChannel.open(
+				path,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+		buffer.clear();
+	}
+
+	private void close() throws IOException {
+		flush();
+		channel.close();
+		channel = null;
+	}
+
+	private void abort() {
+		try {
+			if (channel != null)
+				channel.close();
+		} catch (IOException e) {
+			// already failing
+		}
+		channel = null;
+	}
+
+	private void writeWeight(DagItem item) throws IOException {
+		switch (model.getWeightMode()) {
+		case DOUBLE:
+			writeText(Double.toString(item.getWeightAsDouble()));
+			break;
+		case FIXED_POINT:
+			writeFixedPoint(item.getFixedPointWeight());
+			break;
+		default:
+			BigDecimal weight = item.getWeight();
+			if (weight != null)
+				writeText(weight.toPlainString());
+		}
+	}
+
+	/**
+	 * Write a FIXED_POINT weight as a decimal, dropping trailing zeros from the fraction.
+	 */
+	private void writeFixedPoint(long weight) throws IOException {
+		long scale = 1;
+		for (int i = 0; i < DagWeightMode.FIXED_POINT_SCALE; i++)
+			scale *= 10;
+
+		long whole = weight / scale;
+		long fraction = Math.abs(weight % scale);
+		if (weight < 0 && whole == 0)
+			writeByte('-');
+		writeLong(whole);
+		if (fraction == 0)
+			return;
+
+		writeByte('.');
+		for (long digit = scale / 10; fraction > 0; digit /= 10) {
+			writeByte((char) ('0' + fraction / digit));
+			fraction %= digit;
+		}
+	}
+
+	private void writeLong(long value) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			writeText(Long.toString(value));
+			return;
+		}
+		ensureRemaining(20);
+		if (value < 0) {
+			buffer.put((byte) '-');
+			value = -value;
+		}
+		long digit = 1;
+		while (digit <= value / 10)
+			digit *= 10;
+		for (; digit > 0; digit /= 10) {
+			buffer.put((byte) ('0' + value / digit));
+			value %= digit;
+		}
+	}
+
+	/**
+	 * Write a field, quoting it when it holds a comma or double quote.
+	 * ASCII text is copied a char at a time, other text is encoded as UTF-8.
+	 */
+	private void writeText(String text) throws IOException {
+		boolean isQuoted = false;
+		boolean isAscii = true;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == ',' || c == '"')
+				isQuoted = true;
+			else if (c == '\n' || c == '\r')
+				throw new IOException("Line break in name " + text.replace("\n", "\\n").replace("\r", "\\r"));
+			else if (c >= 0x80)
+				isAscii = false;
+		}
+
+		if (isQuoted)
+			writeByte('"');
+
+		if (isAscii) {
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				writeByte(c);
+				if (c == '"')
+					writeByte(c);
+			}
+		} else {
+			byte[] bytes = (isQuoted ? text.replace("\"", "\"\"") : text).getBytes(StandardCharsets.UTF_8);
+			for (int offset = 0; offset < bytes.length; ) {
+				ensureRemaining(1);
+				int length = Math.min(buffer.remaining(), bytes.length - offset);
+				buffer.put(bytes, offset, length);
+				offset += length;
+			}
+		}
+
+		if (isQuoted)
+			writeByte('"');
+	}
+
+	private void writeByte(char c) throws IOException {
+		ensureRemaining(1);
+		buffer.put((byte) c);
+	}
+
+	private void ensureRemaining(int bytes) throws IOException {
+		if (buffer.remaining() < bytes)
+			flush();
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+}
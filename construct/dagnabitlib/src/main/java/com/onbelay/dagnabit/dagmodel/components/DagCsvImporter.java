@@ -0,0 +1,690 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import com.onbelay.dagnabit.dagmodel.exception.DagGraphException;
+import com.onbelay.dagnabit.dagmodel.model.DagWeightMode;
+import com.onbelay.dagnabit.enums.TransactionErrorCode;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Reads nodes and relationships from CSV files into a DagModelBuilder.
+ * <ul>
+ * <li> node file: name,category,weight,referenceNo - only the name is required.
+ * <li> relationship file: from,type,to,weight - the weight is optional.
+ * </ul>
+ * The first line of each file is a header and is skipped, blank lines are skipped. Fields may be enclosed in double quotes,
+ * with a double quote inside a quoted field written twice. A field cannot span lines. Files are read as UTF-8.
+ * Nodes named in the relationship file that are not in the node file are added with the default category.
+ *
+ * A file is mapped a chunk at a time, each chunk ending at a line end. Chunks are tokenized in parallel (field boundaries,
+ * hashes of the names and primitive weights) without creating any objects per line. The tokenized chunks are then added to
+ * the builder in file order, so node ids are given in the order names first appear. A name is only decoded to a String the first time it is seen.
+ * In the DECIMAL DagWeightMode each relationship weight is still created as a BigDecimal.
+ *
+ * Errors in a file are reported as a DagGraphException with the INVALID_FILE error code and the line number.
+ */
+public class DagCsvImporter {
+
+	public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+
+	private static final int FIELDS = 4;
+
+	private static final int NAME = 0;
+	private static final int CATEGORY = 1;
+	private static final int NODE_WEIGHT = 2;
+	private static final int REFERENCE_NO = 3;
+
+	private static final int FROM = 0;
+	private static final int TYPE = 1;
+	private static final int TO = 2;
+	private static final int WEIGHT = 3;
+
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private final DagModelBuilder builder;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	private final NameTable nodeNames = new NameTable();
+
+	private final NameTable typeNames = new NameTable();
+	private final ArrayList<String> typeNameStrings = new ArrayList<>();
+
+	private final NameTable categoryNames = new NameTable();
+	private final ArrayList<String> categoryNameStrings = new ArrayList<>();
+
+	public DagCsvImporter(DagModelBuilder builder) {
+		this.builder = builder;
+	}
+
+	/**
+	 * Set the number of chunks tokenized at the same time. The default is the number of processors.
+	 * @param parallelism
+	 * @return this importer
+	 */
+	public DagCsvImporter setParallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new DagGraphException("Parallelism must be at least 1");
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Set the number of bytes mapped for each chunk. A chunk is extended when a single line is longer.
+	 * @param chunkSize - the default is DEFAULT_CHUNK_SIZE
+	 * @return this importer
+	 */
+	public DagCsvImporter setChunkSize(int chunkSize) {
+		if (chunkSize < 1)
+			throw new DagGraphException("Chunk size must be at least 1");
+		this.chunkSize = chunkSize;
+		return this;
+	}
+
+	/**
+	 * Add the nodes in a node file (name,category,weight,referenceNo) to the builder.
+	 * @param path
+	 * @return this importer
+	 * @throws DagGraphException with the INVALID_FILE error code if the file cannot be read or a line is invalid.
+	 */
+	public DagCsvImporter readNodes(Path path) {
+		read(path, false);
+		return this;
+	}
+
+	/**
+	 * Add the relationships in a relationship file (from,type,to,weight) to the builder.
+	 * @param path
+	 * @return this importer
+	 * @throws DagGraphException with the INVALID_FILE error code if the file cannot be read or a line is invalid.
+	 */
+	public DagCsvImporter readRelationships(Path path) {
+		read(path, true);
+		return this;
+	}
+
+	private void read(Path path, boolean isRelationshipFile) {
+		boolean parseWeights = isRelationshipFile && builder.getWeightMode() != DagWeightMode.DECIMAL;
+
+		ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			long linesRead = 0;
+
+			while (position < size) {
+				ArrayList<Callable<Chunk>> batch = new ArrayList<>(parallelism);
+				while (position < size && batch.size() < parallelism) {
+					ByteBuffer bytes = mapChunk(channel, position, size);
+					boolean skipHeader = position == 0;
+					batch.add(() -> new Chunk(bytes, skipHeader, parseWeights));
+					position += bytes.limit();
+				}
+
+				for (Chunk chunk : tokenize(pool, batch)) {
+					if (chunk.errorLine > 0)
+						throw invalid(chunk.errorMessage, path, linesRead + chunk.errorLine);
+
+					if (isRelationshipFile)
+						addRelationships(chunk, path, linesRead);
+					else
+						addNodes(chunk, path, linesRead);
+					linesRead += chunk.lineCount;
+				}
+			}
+		} catch (IOException e) {
+			throw new DagGraphException(TransactionErrorCode.INVALID_FILE, "Unable to read " + path, e);
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+		}
+	}
+
+	/**
+	 * Map the next chunk, ending it after the last line end it holds.
+	 */
+	private ByteBuffer mapChunk(FileChannel channel, long position, long size) throws IOException {
+		long length = chunkSize;
+		while (true) {
+			length = Math.min(length, Math.min(size - position, Integer.MAX_VALUE));
+			ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			if (position + length == size)
+				return bytes;
+
+			for (int i = (int) length - 1; i >= 0; i--) {
+				if (bytes.get(i) == '\n') {
+					bytes.limit(i + 1);
+					return bytes;
+				}
+			}
+			if (length == Integer.MAX_VALUE)
+				throw new DagGraphException(TransactionErrorCode.INVALID_FILE, "Line too long at byte " + position);
+			length = Math.min(Integer.MAX_VALUE, length * 2);
+		}
+	}
+
+	private static List<Chunk> tokenize(ForkJoinPool pool, List<Callable<Chunk>> batch) {
+		ArrayList<Chunk> chunks = new ArrayList<>(batch.size());
+		try {
+			if (pool == null) {
+				for (Callable<Chunk> task : batch)
+					chunks.add(task.call());
+			} else {
+				for (Future<Chunk> future : pool.invokeAll(batch))
+					chunks.add(future.get());
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new DagGraphException(TransactionErrorCode.SYSTEM_FAILURE, "Unable to read chunk", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DagGraphException(TransactionErrorCode.SYSTEM_FAILURE, "Interrupted while reading", e);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new DagGraphException(TransactionErrorCode.SYSTEM_FAILURE, "Unable to read chunk", e);
+		}
+		return chunks;
+	}
+
+	private void addNodes(Chunk chunk, Path path, long firstLine) {
+		for (int row = 0; row < chunk.rowCount; row++) {
+			int field = row * FIELDS;
+			long line = firstLine + chunk.lines[row];
+
+			if (chunk.isEmpty(field + NAME))
+				throw invalid("Missing node name", path, line);
+
+			String categoryName = chunk.isEmpty(field + CATEGORY) ? null : categoryName(chunk, field + CATEGORY);
+
+			int nodeId = nodeNames.find(chunk, field + NAME);
+			if (nodeId < 0) {
+				String name = chunk.decode(field + NAME);
+				nodeId = categoryName == null ? builder.addNode(name) : builder.addNode(name, categoryName);
+				nodeNames.put(chunk, field + NAME, nodeId);
+			} else if (categoryName != null) {
+				builder.addNode(chunk.decode(field + NAME), categoryName);
+			}
+
+			if (chunk.isEmpty(field + NODE_WEIGHT) == false)
+				builder.setNodeWeight(nodeId, parseDecimal(chunk, field + NODE_WEIGHT, path, line));
+
+			if (chunk.isEmpty(field + REFERENCE_NO) == false) {
+				long referenceNo;
+				try {
+					referenceNo = parseLong(chunk.bytes, chunk.starts[field + REFERENCE_NO], chunk.ends[field + REFERENCE_NO]);
+				} catch (NumberFormatException e) {
+					referenceNo = Long.MIN_VALUE;
+				}
+				if (referenceNo < Integer.MIN_VALUE || referenceNo > Integer.MAX_VALUE)
+					throw invalid("Invalid referenceNo", path, line);
+				builder.setNodeReferenceNo(nodeId, (int) referenceNo);
+			}
+		}
+	}
+
+	private void addRelationships(Chunk chunk, Path path, long firstLine) {
+		for (int row = 0; row < chunk.rowCount; row++) {
+			int field = row * FIELDS;
+			long line = firstLine + chunk.lines[row];
+
+			if (chunk.isEmpty(field + FROM) || chunk.isEmpty(field + TYPE) || chunk.isEmpty(field + TO))
+				throw invalid("A relationship needs a from node, type and to node", path, line);
+
+			int fromNodeId = nodeId(chunk, field + FROM);
+			String typeName = typeName(chunk, field + TYPE);
+			int toNodeId = nodeId(chunk, field + TO);
+
+			if (chunk.isEmpty(field + WEIGHT))
+				builder.addRelationship(fromNodeId, typeName, toNodeId);
+			else if (chunk.weights == null)
+				builder.addRelationship(fromNodeId, typeName, toNodeId, parseDecimal(chunk, field + WEIGHT, path, line));
+			else
+				builder.addRelationship(fromNodeId, typeName, toNodeId, chunk.weights[row]);
+		}
+	}
+
+	private int nodeId(Chunk chunk, int field) {
+		int nodeId = nodeNames.find(chunk, field);
+		if (nodeId < 0) {
+			nodeId = builder.addNode(chunk.decode(field));
+			nodeNames.put(chunk, field, nodeId);
+		}
+		return nodeId;
+	}
+
+	private String typeName(Chunk chunk, int field) {
+		return intern(typeNames, typeNameStrings, chunk, field);
+	}
+
+	private String categoryName(Chunk chunk, int field) {
+		return intern(categoryNames, categoryNameStrings, chunk, field);
+	}
+
+	private static String intern(NameTable table, ArrayList<String> strings, Chunk chunk, int field) {
+		int code = table.find(chunk, field);
+		if (code < 0) {
+			code = strings.size();
+			strings.add(chunk.decode(field));
+			table.put(chunk, field, code);
+		}
+		return strings.get(code);
+	}
+
+	private static BigDecimal parseDecimal(Chunk chunk, int field, Path path, long line) {
+		try {
+			return new BigDecimal(ascii(chunk.bytes, chunk.starts[field], chunk.ends[field]));
+		} catch (NumberFormatException e) {
+			throw invalid("Invalid weight", path, line);
+		}
+	}
+
+	private static DagGraphException invalid(String message, Path path, long line) {
+		return new DagGraphException(TransactionErrorCode.INVALID_FILE, message + " on line " + line + " of " + path);
+	}
+
+	/**
+	 * Parse an integer without creating a String.
+	 * @throws NumberFormatException if the bytes are not an integer or it is out of the range of a long.
+	 */
+	static long parseLong(ByteBuffer bytes, int start, int end) {
+		boolean isNegative = false;
+		int i = start;
+		if (i < end && (bytes.get(i) == '-' || bytes.get(i) == '+'))
+			isNegative = bytes.get(i++) == '-';
+		if (i == end)
+			throw new NumberFormatException("No digits");
+
+		long value = 0;
+		for (; i < end; i++) {
+			int digit = bytes.get(i) - '0';
+			if (digit < 0 || digit > 9)
+				throw new NumberFormatException("Not a digit");
+			if (value < (Long.MIN_VALUE + digit) / 10)
+				throw new NumberFormatException("Out of range");
+			value = value * 10 - digit;
+		}
+		if (isNegative == false) {
+			if (value == Long.MIN_VALUE)
+				throw new NumberFormatException("Out of range");
+			value = -value;
+		}
+		return value;
+	}
+
+	/**
+	 * Parse a decimal number, with an optional exponent, without creating a String.
+	 * Numbers with up to 15 significant digits and a small exponent are converted exactly with one multiplication or division,
+	 * others fall back to Double.parseDouble.
+	 * @throws NumberFormatException if the bytes are not a number.
+	 */
+	static double parseDouble(ByteBuffer bytes, int start, int end) {
+		int i = start;
+		boolean isNegative = false;
+		if (i < end && (bytes.get(i) == '-' || bytes.get(i) == '+'))
+			isNegative = bytes.get(i++) == '-';
+
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean isFraction = false;
+		boolean hasDigits = false;
+		for (; i < end; i++) {
+			byte b = bytes.get(i);
+			if (b >= '0' && b <= '9') {
+				hasDigits = true;
+				if (mantissa == 0 && b == '0') {
+					if (isFraction)
+						scale--;
+					continue;
+				}
+				if (digits < 18) {
+					mantissa = mantissa * 10 + (b - '0');
+					digits++;
+					if (isFraction)
+						scale--;
+				} else if (isFraction == false) {
+					scale++;
+				}
+			} else if (b == '.' && isFraction == false) {
+				isFraction = true;
+			} else {
+				break;
+			}
+		}
+		if (hasDigits == false)
+			throw new NumberFormatException("No digits");
+
+		if (i < end) {
+			byte b = bytes.get(i);
+			if (b != 'e' && b != 'E')
+				throw new NumberFormatException("Not a number");
+			scale += (int) parseLong(bytes, i + 1, end);
+		}
+
+		double value;
+		if (mantissa == 0)
+			value = 0;
+		else if (digits <= 15 && scale >= 0 && scale <= 22)
+			value = mantissa * POWERS_OF_TEN[scale];
+		else if (digits <= 15 && scale < 0 && scale >= -22)
+			value = mantissa / POWERS_OF_TEN[-scale];
+		else
+			return Double.parseDouble(new String(ascii(bytes, start, end)));
+
+		return isNegative ? -value : value;
+	}
+
+	private static char[] ascii(ByteBuffer bytes, int start, int end) {
+		char[] chars = new char[end - start];
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = (char) bytes.get(start + i);
+		return chars;
+	}
+
+	/**
+	 * The fields of the lines in one chunk of a file, as positions in the mapped bytes.
+	 */
+	private static class Chunk {
+
+		private final ByteBuffer bytes;
+
+		private int rowCount;
+		private int[] starts = new int[FIELDS * 64];
+		private int[] ends = new int[FIELDS * 64];
+		private int[] hashes = new int[FIELDS * 64];
+		// fields holding an escaped double quote
+		private final BitSet escaped = new BitSet();
+		// line number of each row within the chunk
+		private int[] lines = new int[64];
+		private double[] weights;
+
+		private int lineCount;
+
+		private int errorLine;
+		private String errorMessage;
+
+		private Chunk(ByteBuffer bytes, boolean skipHeader, boolean parseWeights) {
+			this.bytes = bytes;
+			if (parseWeights)
+				weights = new double[64];
+
+			int position = 0;
+			if (skipHeader) {
+				while (position < bytes.limit() && bytes.get(position) != '\n')
+					position++;
+				position++;
+				lineCount = 1;
+			}
+			while (position < bytes.limit() && errorLine == 0) {
+				lineCount++;
+				position = tokenizeLine(position);
+			}
+		}
+
+		private boolean isEmpty(int field) {
+			return starts[field] == ends[field];
+		}
+
+		private String decode(int field) {
+			int start = starts[field];
+			byte[] text = new byte[ends[field] - start];
+			bytes.get(start, text);
+
+			if (escaped.get(field)) {
+				int length = 0;
+				for (int i = 0; i < text.length; i++) {
+					text[length++] = text[i];
+					if (text[i] == '"')
+						i++;
+				}
+				text = Arrays.copyOf(text, length);
+			}
+			return new String(text, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Record the fields of the line at position, skipping blank lines.
+		 * @return the position of the next line.
+		 */
+		private int tokenizeLine(int position) {
+			int limit = bytes.limit();
+			if (rowCount * FIELDS == starts.length)
+				grow();
+
+			int first = rowCount * FIELDS;
+			int field = 0;
+			while (true) {
+				if (field == FIELDS) {
+					fail("Too many fields");
+					return limit;
+				}
+
+				int index = first + field;
+				int hash = 0;
+				int start;
+				int end;
+				if (position < limit && bytes.get(position) == '"') {
+					start = ++position;
+					while (true) {
+						if (position == limit) {
+							fail("Unterminated quoted field");
+							return limit;
+						}
+						byte b = bytes.get(position);
+						if (b == '"') {
+							if (position + 1 < limit && bytes.get(position + 1) == '"') {
+								escaped.set(index);
+								hash = 31 * hash + b;
+								position += 2;
+								continue;
+							}
+							break;
+						}
+						if (b == '\n') {
+							fail("Unterminated quoted field");
+							return limit;
+						}
+						hash = 31 * hash + b;
+						position++;
+					}
+					end = position++;
+					if (position < limit && bytes.get(position) == '\r')
+						position++;
+					if (position < limit && bytes.get(position) != ',' && bytes.get(position) != '\n') {
+						fail("Unexpected character after quoted field");
+						return limit;
+					}
+				} else {
+					start = position;
+					while (position < limit) {
+						byte b = bytes.get(position);
+						if (b == ',' || b == '\n')
+							break;
+						if (b == '\r' && (position + 1 == limit || bytes.get(position + 1) == '\n'))
+							break;
+						hash = 31 * hash + b;
+						position++;
+					}
+					end = position;
+					if (position < limit && bytes.get(position) == '\r')
+						position++;
+				}
+
+				starts[index] = start;
+				ends[index] = end;
+				hashes[index] = hash;
+				field++;
+
+				if (position < limit && bytes.get(position) == ',') {
+					position++;
+					continue;
+				}
+				position++;
+				break;
+			}
+
+			if (field == 1 && starts[first] == ends[first] && escaped.get(first) == false)
+				return position;
+
+			for (int i = field; i < FIELDS; i++) {
+				starts[first + i] = 0;
+				ends[first + i] = 0;
+			}
+
+			lines[rowCount] = lineCount;
+			if (weights != null) {
+				int weight = first + WEIGHT;
+				if (starts[weight] != ends[weight]) {
+					try {
+						weights[rowCount] = parseDouble(bytes, starts[weight], ends[weight]);
+					} catch (NumberFormatException e) {
+						fail("Invalid weight");
+						return limit;
+					}
+				}
+			}
+			rowCount++;
+			return position;
+		}
+
+		private void fail(String message) {
+			errorLine = lineCount;
+			errorMessage = message;
+		}
+
+		private void grow() {
+			starts = Arrays.copyOf(starts, starts.length * 2);
+			ends = Arrays.copyOf(ends, ends.length * 2);
+			hashes = Arrays.copyOf(hashes, hashes.length * 2);
+			lines = Arrays.copyOf(lines, lines.length * 2);
+			if (weights != null)
+				weights = Arrays.copyOf(weights, weights.length * 2);
+		}
+
+	}
+
+	/**
+	 * An open addressing hash table from the bytes of a name to an int, so a name seen before is found without decoding it.
+	 */
+	private static class NameTable {
+
+		private byte[] keys = new byte[1 << 12];
+		private int keysLength;
+
+		private int[] keyOffsets = new int[64];
+		private int[] keyLengths = new int[64];
+		private int[] keyHashes = new int[64];
+		private int[] values = new int[64];
+		private int size;
+
+		// entry + 1, 0 for an empty slot
+		private int[] slots = new int[128];
+
+		int find(Chunk chunk, int field) {
+			int hash = chunk.hashes[field];
+			int mask = slots.length - 1;
+			for (int slot = mix(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+				int entry = slots[slot] - 1;
+				if (keyHashes[entry] == hash && matches(entry, chunk.bytes, chunk.starts[field], chunk.ends[field]))
+					return values[entry];
+			}
+			return -1;
+		}
+
+		void put(Chunk chunk, int field, int value) {
+			int start = chunk.starts[field];
+			int length = chunk.ends[field] - start;
+
+			if (size == values.length) {
+				int capacity = size * 2;
+				keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+				keyLengths = Arrays.copyOf(keyLengths, capacity);
+				keyHashes = Arrays.copyOf(keyHashes, capacity);
+				values = Arrays.copyOf(values, capacity);
+			}
+			if (keysLength + length > keys.length)
+				keys = Arrays.copyOf(keys, Math.max(keys.length * 2, keysLength + length));
+
+			chunk.bytes.get(start, keys, keysLength, length);
+			keyOffsets[size] = keysLength;
+			keyLengths[size] = length;
+			keyHashes[size] = chunk.hashes[field];
+			values[size] = value;
+			keysLength += length;
+			size++;
+
+			if (size * 2 > slots.length) {
+				slots = new int[slots.length * 2];
+				for (int entry = 0; entry < size; entry++)
+					insert(entry);
+			} else {
+				insert(size - 1);
+			}
+		}
+
+		private int findSlot(int entry) {
+			int mask = slots.length - 1;
+			int slot = mix(keyHashes[entry]) & mask;
+			while (slots[slot] != 0 && slots[slot] != entry + 1)
+				slot = (slot + 1) & mask;
+			return slot;
+		}
+
+		private void insert(int entry) {
+			slots[findSlot(entry)] = entry + 1;
+		}
+
+		private boolean matches(int entry, ByteBuffer bytes, int start, int end) {
+			if (keyLengths[entry] != end - start)
+				return false;
+
+			int offset = keyOffsets[entry];
+			for (int i = start; i < end; i++) {
+				if (keys[offset++] != bytes.get(i))
+					return false;
+			}
+			return true;
+		}
+
+		private static int mix(int hash) {
+			hash *= 0x9E3779B9;
+			return hash ^ (hash >>> 16);
+		}
+
+	}
+
+}
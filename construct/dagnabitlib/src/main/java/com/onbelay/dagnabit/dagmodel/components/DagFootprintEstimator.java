@@ -0,0 +1,154 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import com.onbelay.dagnabit.dagmodel.model.DagFootprint;
+import com.onbelay.dagnabit.dagmodel.model.DagFootprint.Part;
+
+import java.math.BigDecimal;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Builds a DagFootprint by walking the structures of a model and adding the size of each object from its field layout.
+ * Sizes assume a 64 bit HotSpot JVM: 12 byte object headers, 16 byte array headers, objects aligned to 8 bytes and
+ * 4 byte (compressed) references when the heap is under 32GB, 8 byte references otherwise.
+ * Objects that may be reached more than once, such as connectors, relationships, names and weights, are counted once.
+ * ArrayList and HashMap capacities are not visible, so they are sized as if exactly full.
+ *
+ */
+class DagFootprintEstimator {
+
+	static final int OBJECT_HEADER = 12;
+	static final int ARRAY_HEADER = 16;
+	static final int REFERENCE = Runtime.getRuntime().maxMemory() < (32L << 30) ? 4 : 8;
+
+	private DagFootprint footprint = new DagFootprint();
+
+	private Set<Object> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	/**
+	 * Return the size of an object with the given number of reference fields and bytes of primitive fields.
+	 */
+	static long object(int references, int primitiveBytes) {
+		return align(OBJECT_HEADER + references * REFERENCE + primitiveBytes);
+	}
+
+	static long array(int elementBytes, int length) {
+		return align(ARRAY_HEADER + (long) elementBytes * length);
+	}
+
+	static long referenceArray(int length) {
+		return array(REFERENCE, length);
+	}
+
+	static long arrayList(int size) {
+		return object(1, 8) + referenceArray(size);
+	}
+
+	static long hashMap(int size) {
+		int capacity = 16;
+		while (capacity * 3 < size * 4)
+			capacity <<= 1;
+		return object(4, 16) + referenceArray(capacity) + size * object(3, 4);
+	}
+
+	static long bitSet(BitSet bits) {
+		return object(1, 8) + array(8, bits.size() / 64);
+	}
+
+	void add(Part part, long bytes) {
+		footprint.add(part, bytes);
+	}
+
+	void addMapped(long bytes) {
+		footprint.addMappedBytes(bytes);
+	}
+
+	/**
+	 * Return true the first time the object is seen.
+	 */
+	private boolean isFirstVisit(Object object) {
+		return counted.add(object);
+	}
+
+	void addNode(DagNodeImpl node) {
+		footprint.addNode();
+		node.estimateFootprint(this);
+	}
+
+	void addConnector(DagNodeConnector connector) {
+		if (isFirstVisit(connector) == false)
+			return;
+
+		footprint.addConnector();
+		connector.estimateFootprint(this);
+	}
+
+	void addRelationship(DagRelationshipImpl relationship) {
+		if (isFirstVisit(relationship) == false)
+			return;
+
+		footprint.addRelationship();
+		relationship.estimateFootprint(this);
+	}
+
+	void addName(String name) {
+		if (name == null || isFirstVisit(name) == false)
+			return;
+
+		boolean isLatin1 = true;
+		for (int i = 0; i < name.length() && isLatin1; i++)
+			isLatin1 = name.charAt(i) < 256;
+
+		// value, hash, coder and hashIsZero
+		add(Part.NAMES, object(1, 6) + array(1, isLatin1 ? name.length() : name.length() * 2));
+	}
+
+	void addWeight(BigDecimal weight) {
+		if (weight == null || isFirstVisit(weight) == false)
+			return;
+
+		// intVal, stringCache, scale, precision and intCompact
+		long bytes = object(2, 16);
+		int bitLength = weight.unscaledValue().bitLength();
+		if (bitLength > 63) {
+			// signum, mag and four cached ints of the BigInteger
+			bytes += object(1, 20) + array(4, (bitLength + 31) / 32);
+		}
+		add(Part.WEIGHTS, bytes);
+	}
+
+	/**
+	 * Add the holder of an item's DagData and referenceNo, and the referenceNo.
+	 */
+	void addAttributes(Integer referenceNo) {
+		add(Part.DATA, object(2, 0));
+		if (referenceNo != null && isFirstVisit(referenceNo))
+			add(Part.DATA, object(0, 4));
+	}
+
+	DagFootprint getFootprint() {
+		return footprint;
+	}
+
+}
@@ -16,15 +16,24 @@
 package com.onbelay.dagnabit.dagmodel.components;
 
 import com.onbelay.dagnabit.dagmodel.model.DagData;
+import com.onbelay.dagnabit.dagmodel.model.DagItem;
+import com.onbelay.dagnabit.dagmodel.model.DagWeightMode;
 
 import java.math.BigDecimal;
 
 public abstract class DagItemImpl {
 	
     protected String name;
-    private DagData data;
+    private DagWeightMode weightMode = DagWeightMode.DECIMAL;
+    
+    // Weight in the DECIMAL mode
     private BigDecimal weight = BigDecimal.ONE;
-    private Integer referenceNo;
+    
+    // Weight in the primitive modes, the raw double bits for DOUBLE or the scaled value for FIXED_POINT
+    private long primitiveWeight;
+    
+    // Optional data and referenceNo, only allocated when one of them is set.
+    private DagItemAttributes attributes;
 
 	protected DagItemImpl(String name) {
 		super();
@@ -41,28 +50,167 @@ public abstract class DagItemImpl {
 	
     
     public DagData getData() {
-		return data;
+		if (attributes == null)
+			return null;
+		return attributes.data;
 	}
 
 	public void setData(DagData data) {
-		this.data = data;
+		if (attributes == null) {
+			if (data == null)
+				return;
+			attributes = new DagItemAttributes();
+		}
+		attributes.data = data;
 	}
 
 
     public Integer getReferenceNo() {
-        return referenceNo;
+    	if (attributes == null)
+    		return null;
+        return attributes.referenceNo;
     }
 
     public void setReferenceNo(Integer referenceNo) {
-        this.referenceNo = referenceNo;
+		if (attributes == null) {
+			if (referenceNo == null)
+				return;
+			attributes = new DagItemAttributes();
+		}
+        attributes.referenceNo = referenceNo;
     }
 
+    public DagWeightMode getWeightMode() {
+    	return weightMode;
+    }
+    
+    /**
+     * Change how the weight is held, keeping its current value. Called by the model when the item is created.
+     */
+    void setWeightMode(DagWeightMode weightMode) {
+    	if (this.weightMode == weightMode)
+    		return;
+    	
+    	BigDecimal current = getWeight();
+    	this.weightMode = weightMode;
+    	this.weight = null;
+    	setWeight(current);
+    }
+    
     public BigDecimal getWeight() {
-		return weight;
+    	switch (weightMode) {
+    	case DOUBLE:
+    		return BigDecimal.valueOf(Double.longBitsToDouble(primitiveWeight));
+    	case FIXED_POINT:
+    		return DagWeightMode.fromFixedPoint(primitiveWeight);
+    	default:
+    		return weight;
+    	}
 	}
 
+	/**
+	 * Set the weight. In the primitive modes a null weight is held as zero.
+	 */
 	public void setWeight(BigDecimal weight) {
-		this.weight = weight;
+		switch (weightMode) {
+		case DOUBLE:
+			primitiveWeight = Double.doubleToRawLongBits(weight == null ? 0 : weight.doubleValue());
+			break;
+		case FIXED_POINT:
+			primitiveWeight = weight == null ? 0 : DagWeightMode.toFixedPoint(weight);
+			break;
+		default:
+			this.weight = weight;
+		}
+	}
+
+	public void setWeight(double weight) {
+		switch (weightMode) {
+		case DOUBLE:
+			primitiveWeight = Double.doubleToRawLongBits(weight);
+			break;
+		case FIXED_POINT:
+			primitiveWeight = DagWeightMode.toFixedPoint(weight);
+			break;
+		default:
+			this.weight = BigDecimal.valueOf(weight);
+		}
+	}
+
+	public double getWeightAsDouble() {
+		switch (weightMode) {
+		case DOUBLE:
+			return Double.longBitsToDouble(primitiveWeight);
+		case FIXED_POINT:
+			return DagWeightMode.fixedPointToDouble(primitiveWeight);
+		default:
+			return weight == null ? 0 : weight.doubleValue();
+		}
+	}
+
+	public long getFixedPointWeight() {
+		switch (weightMode) {
+		case DOUBLE:
+			return DagWeightMode.toFixedPoint(Double.longBitsToDouble(primitiveWeight));
+		case FIXED_POINT:
+			return primitiveWeight;
+		default:
+			return weight == null ? 0 : DagWeightMode.toFixedPoint(weight);
+		}
+	}
+
+	/**
+	 * Set the weight from a value scaled by 10^DagWeightMode.FIXED_POINT_SCALE.
+	 */
+	void setFixedPointWeight(long weight) {
+		if (weightMode == DagWeightMode.FIXED_POINT)
+			primitiveWeight = weight;
+		else
+			setWeight(DagWeightMode.fromFixedPoint(weight));
+	}
+
+	/**
+	 * Copy the weight of another item through the cheapest representation for this item's mode.
+	 */
+	void copyWeight(DagItem item) {
+		switch (weightMode) {
+		case DOUBLE:
+			setWeight(item.getWeightAsDouble());
+			break;
+		case FIXED_POINT:
+			primitiveWeight = item.getFixedPointWeight();
+			break;
+		default:
+			setWeight(item.getWeight());
+		}
+	}
+
+	/**
+	 * Copy the name, weight, data and referenceNo of another item. The data itself is shared.
+	 */
+	void copyItem(DagItemImpl item) {
+		name = item.name;
+		if (weightMode == item.weightMode) {
+			weight = item.weight;
+			primitiveWeight = item.primitiveWeight;
+		} else {
+			setWeight(item.getWeight());
+		}
+		if (item.attributes != null) {
+			setData(item.attributes.data);
+			setReferenceNo(item.attributes.referenceNo);
+		}
+	}
+
+	/**
+	 * Add the name, weight and attributes of this item to the estimator. Subclasses add the item itself.
+	 */
+	void estimateFootprint(DagFootprintEstimator estimator) {
+		estimator.addName(name);
+		if (weightMode == DagWeightMode.DECIMAL)
+			estimator.addWeight(weight);
+		if (attributes != null)
+			estimator.addAttributes(attributes.referenceNo);
 	}
 
 	
@@ -70,6 +218,7 @@ public abstract class DagItemImpl {
     public int hashCode() {
         final int prime = 31;
         int result = 1;
+        String name = getName();
         result = prime * result + ((name == null) ? 0 : name.hashCode());
         return result;
     }
@@ -83,18 +232,24 @@ public abstract class DagItemImpl {
             return false;
         if (getClass() != obj.getClass())
             return false;
-        DagNodeImpl other = (DagNodeImpl) obj;
+        DagItemImpl other = (DagItemImpl) obj;
+        String name = getName();
         if (name == null) {
-            if (other.name != null)
+            if (other.getName() != null)
                 return false;
-        } else if (!name.equals(other.name))
+        } else if (!name.equals(other.getName()))
             return false;
         return true;
     }
     
     public String toString() {
-        return name;
+        return getName();
+    }
+    
+    
+    private static class DagItemAttributes {
+    	private DagData data;
+    	private Integer referenceNo;
     }
-
 
 }
@@ -24,6 +24,8 @@ import java.util.*;
 import java.util.function.BiPredicate;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The DagLinkRouteFinder finds routes between nodes.
@@ -33,6 +35,8 @@ import java.util.stream.Collectors;
  * <li> linkType - all if not specified 
  * <li> toNode - all if not specified.
  * </ul>
+ * The state of each search is held by the search itself, so a route finder may be used by several threads at once
+ * provided its visitor and context are thread-safe and the model is not changed.
  * 
  * @author lefeu
  *
@@ -40,24 +44,29 @@ import java.util.stream.Collectors;
 public class DagLinkRouteFinder implements LinkRouteFinder {
 	private static final Logger logger = LoggerFactory.getLogger(DagLinkRouteFinder.class);
 
-	private DagModelImpl model;
+	// Defaults that let a search over a DagModelSnapshot read only the target ids of its DagAdjacencyIndex.
+	static final Predicate<DagRelationship> ALL_RELATIONSHIPS = c -> true;
+	static final Predicate<DagNode> ALL_NODES = c -> true;
+	static final NodeVisitor NO_VISITOR = (c, s, l, e) -> { ; };
+
+	private AbstractDagModel model;
 
 	private DagRelationshipType relationshipType;
 	
-	private Predicate<DagRelationship> filterLinkPredicate = c -> true;
+	private Predicate<DagRelationship> filterLinkPredicate = ALL_RELATIONSHIPS;
 	
-	private Predicate<DagNode> filterNodePredicate = c -> true;
+	private Predicate<DagNode> filterNodePredicate = ALL_NODES;
 	
 	private BiPredicate<DagContext, DagNode> endPredicate;
 	
-	private NodeVisitor nodeVisitor = (c, s, l, e) -> { ; };
+	private NodeVisitor nodeVisitor = NO_VISITOR;
 
 	private boolean noBacktracking = true;
 	
 	private DagContext context = new DagMapContext();
 	
 	protected DagLinkRouteFinder(
-			DagModelImpl model,
+			AbstractDagModel model,
 			DagRelationshipType relationshipType) {
 		
 		this.model = model;
@@ -69,7 +78,7 @@ public class DagLinkRouteFinder implements LinkRouteFinder {
 	
 	
 	protected DagLinkRouteFinder(
-			DagModelImpl model,
+			AbstractDagModel model,
 			DagRelationshipType relationshipType,
 			DagContext context,
 			NodeVisitor nodeVisitor) {
@@ -86,7 +95,7 @@ public class DagLinkRouteFinder implements LinkRouteFinder {
 	}
 
 	protected DagLinkRouteFinder(
-			DagModelImpl model,
+			AbstractDagModel model,
 			DagRelationshipType relationshipType,
 			Predicate<DagNode> filterNodePredicate) {
 		super();
@@ -101,7 +110,7 @@ public class DagLinkRouteFinder implements LinkRouteFinder {
 
 
 	protected DagLinkRouteFinder(
-			DagModelImpl model,
+			AbstractDagModel model,
 			DagRelationshipType relationshipType,
 			DagContext context,
 			NodeVisitor nodeVisitor,
@@ -136,7 +145,7 @@ public class DagLinkRouteFinder implements LinkRouteFinder {
 	 * @param filterNodePredicate - required, return true to navigate as default
 	 */
 	protected DagLinkRouteFinder(
-			DagModelImpl model,
+			AbstractDagModel model,
 			DagRelationshipType relationshipType,
 			Predicate<DagRelationship> filterLinkPredicate,
 			Predicate<DagNode> filterNodePredicate) {
@@ -161,7 +170,7 @@ public class DagLinkRouteFinder implements LinkRouteFinder {
 	 * @param dagNodeCategory - required. restricts the toNode to navigate to.
 	 */
 	protected DagLinkRouteFinder(
-			DagModelImpl model,
+			AbstractDagModel model,
 			DagRelationshipType relationshipType,
 			DagNodeCategory dagNodeCategory) {
 		
@@ -169,7 +178,7 @@ public class DagLinkRouteFinder implements LinkRouteFinder {
 		this.model = model;
 		
 		if (dagNodeCategory != null) {
-			this.filterNodePredicate = c ->  c.getCategory().equals(dagNodeCategory);
+			this.filterNodePredicate = model.categoryFilter(dagNodeCategory);
 		}
 		
 		if (relationshipType == null)
@@ -211,6 +220,14 @@ public class DagLinkRouteFinder implements LinkRouteFinder {
 		return result.getPaths();
 	}
 	
+	@Override
+	public List<DagNodePath> findAllPathsFrom(int startNodeId) {
+		
+		NodeSearchResult result = discoverFromRelationships(startNodeId);
+		
+		return result.getPaths();
+	}
+	
 	@Override
 	public List<DagNodePath> findAllPathsTo(DagNode startingNode) {
 		
@@ -218,6 +235,47 @@ public class DagLinkRouteFinder implements LinkRouteFinder {
 		return navResult.getPaths();	
 	}
 	
+	@Override
+	public List<DagNodePath> findAllPathsTo(int startingNodeId) {
+		
+		NodeSearchResult navResult = discoverToRelationships(startingNodeId);
+		return navResult.getPaths();	
+	}
+	
+	@Override
+	public Iterator<DagNodePath> pathIteratorFrom(DagNode startNode) {
+		return new PathIterator(model.resolveNode(startNode), true, false);
+	}
+
+	@Override
+	public Stream<DagNodePath> pathStreamFrom(DagNode startNode) {
+		return stream(pathIteratorFrom(startNode));
+	}
+
+	@Override
+	public Iterator<DagNodePath> pathIteratorTo(DagNode startNode) {
+		return new PathIterator(model.resolveNode(startNode), false, false);
+	}
+
+	@Override
+	public Stream<DagNodePath> pathStreamTo(DagNode startNode) {
+		return stream(pathIteratorTo(startNode));
+	}
+
+	@Override
+	public Stream<DagNodePath> cycleStreamFrom(DagNode startNode) {
+		return stream(new PathIterator(model.resolveNode(startNode), true, true));
+	}
+
+	/**
+	 * Return an ordered, sequential stream over the paths of the iterator.
+	 */
+	static Stream<DagNodePath> stream(Iterator<DagNodePath> iterator) {
+		return StreamSupport.stream(
+				Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+				false);
+	}
+	
 	@Override
 	public List<DagNodePath> findPathsStartingFromEndingAt(DagNode startNode, DagNode endNode) {
 		
@@ -257,29 +315,283 @@ public class DagLinkRouteFinder implements LinkRouteFinder {
 	
 	@Override
 	public List<DagNode> findDescendants(DagNode startNode) {
-		DagNodeImpl rootNode = model.getNodeImplementation(startNode.getName());
+		return findDescendants(model.resolveNode(startNode));
+	}
+
+	@Override
+	public List<DagNode> findDescendants(int startNodeId) {
+		return findDescendants(model.getRequiredNodeImplementation(startNodeId));
+	}
+
+	private List<DagNode> findDescendants(DagNodeImpl rootNode) {
+		return findReachable(rootNode, true);
+	}
+
+	@Override
+	public List<DagNode> findAncestors(DagNode startNode) {
+		return findReachable(model.resolveNode(startNode), false);
+	}
+
+	@Override
+	public List<DagNode> findAncestors(int startNodeId) {
+		return findReachable(model.getRequiredNodeImplementation(startNodeId), false);
+	}
+
+	/**
+	 * Return the nodes reached from the startNode depth first, following the from relationships if isFrom and the to relationships otherwise.
+	 * Each node is followed once, so the search is linear in the nodes and relationships reached rather than in the paths between them.
+	 * The nodeVisitor is called for every relationship followed and the endPredicate stops the search at the nodes it accepts.
+	 * @return the nodes in the order they are first reached, not including the startNode.
+	 */
+	private List<DagNode> findReachable(DagNodeImpl startNode, boolean isFrom) {
+		DagAdjacencyIndex index = unfilteredIndex(isFrom);
+		if (index != null)
+			return findReachable(index, startNode);
 		
-		DagNodeSearchState searchState = new DagNodeSearchState(
-				relationshipType,
-				rootNode);
+		BitSet visited = new BitSet(model.getNodeCount());
+		visited.set(startNode.getId());
+		List<DagNode> nodes = new ArrayList<DagNode>();
+		
+		DagConnectorStack stack = new DagConnectorStack();
+		stack.push(startNode, connectorsOf(startNode, isFrom));
+		
+		while (stack.isEmpty() == false) {
+			
+			if (stack.hasNext() == false) {
+				stack.pop();
+				continue;
+			}
+			
+			DagNodeConnector connector = stack.next();
+			DagNodeImpl node = isFrom ? connector.getToNode() : connector.getFromNode();
+			
+			if (isFollowed(connector, node) == false)
+				continue;
+			
+			boolean isUnvisited = visited.get(node.getId()) == false;
+			if (isUnvisited) {
+				visited.set(node.getId());
+				nodes.add(node);
+			}
+			
+			// as in followFromRelationship, an end node also ends the search of the node it was reached from
+			if (endPredicate != null && endPredicate.test(context, node))
+				stack.pop();
+			else if (isUnvisited)
+				stack.push(node, connectorsOf(node, isFrom));
+		}
+		
+		return nodes;
+	}
 
-		followFromRelationship(searchState);
+	/**
+	 * As findReachable, reading only the offsets and target ids of the index of a snapshot when there is nothing to filter, visit or end the search.
+	 */
+	private List<DagNode> findReachable(DagAdjacencyIndex index, DagNodeImpl startNode) {
+		BitSet visited = new BitSet(model.getNodeCount());
+		visited.set(startNode.getId());
+		List<DagNode> nodes = new ArrayList<DagNode>();
+		
+		// next and end positions in the index of the nodes being followed
+		int[] nexts = new int[16];
+		int[] ends = new int[16];
+		int depth = 0;
+		nexts[0] = index.getStart(startNode.getId());
+		ends[0] = index.getEnd(startNode.getId());
+		
+		while (depth >= 0) {
+			if (nexts[depth] == ends[depth]) {
+				depth--;
+				continue;
+			}
+			
+			int target = index.getTarget(nexts[depth]++);
+			if (visited.get(target))
+				continue;
+			
+			visited.set(target);
+			nodes.add(model.getNodeImplementation(target));
+			
+			depth++;
+			if (depth == nexts.length) {
+				nexts = Arrays.copyOf(nexts, depth * 2);
+				ends = Arrays.copyOf(ends, depth * 2);
+			}
+			nexts[depth] = index.getStart(target);
+			ends[depth] = index.getEnd(target);
+		}
+		
+		return nodes;
+	}
+
+	@Override
+	public List<List<DagNode>> findLevelsFrom(DagNode startNode, int maxDepth) {
+		return findLevels(List.of(startNode), true, maxDepth);
+	}
 
-		HashSet<DagNode> nodes = new HashSet<DagNode>();
+	@Override
+	public List<List<DagNode>> findLevelsFrom(List<DagNode> startNodes, int maxDepth) {
+		return findLevels(startNodes, true, maxDepth);
+	}
+
+	@Override
+	public List<List<DagNode>> findLevelsTo(DagNode startNode, int maxDepth) {
+		return findLevels(List.of(startNode), false, maxDepth);
+	}
+
+	@Override
+	public List<List<DagNode>> findLevelsTo(List<DagNode> startNodes, int maxDepth) {
+		return findLevels(startNodes, false, maxDepth);
+	}
+
+	/**
+	 * Search breadth first from the startNodes a level at a time, following the from relationships if isFrom and the to relationships otherwise.
+	 * Each node is placed at the level of the fewest relationships leading to it from any startNode, and the nodes at maxDepth are not followed.
+	 * The search ends at the first node accepted by the endPredicate, which is the last node of the last level.
+	 * @return the startNodes followed by the nodes one, two and more relationships away. Levels are never empty.
+	 */
+	private List<List<DagNode>> findLevels(List<DagNode> startNodes, boolean isFrom, int maxDepth) {
+		if (maxDepth < 0)
+			throw new DagGraphException("maxDepth must not be negative: " + maxDepth);
+		
+		BitSet visited = new BitSet(model.getNodeCount());
+		List<DagNode> level = new ArrayList<DagNode>();
+		for (DagNode startNode : startNodes) {
+			DagNodeImpl node = model.resolveNode(startNode);
+			if (visited.get(node.getId()) == false) {
+				visited.set(node.getId());
+				level.add(node);
+			}
+		}
 		
-		for (DagNodeVector v : searchState.getVectors()) {
-			for (DagNodeConnector c : v.getConnectors()) {
-				nodes.add(c.getToNode());
+		List<List<DagNode>> levels = new ArrayList<List<DagNode>>();
+		levels.add(level);
+		
+		DagAdjacencyIndex index = unfilteredIndex(isFrom);
+		if (index != null) {
+			findLevels(index, levels, visited, maxDepth);
+			return levels;
+		}
+		
+		while (levels.size() <= maxDepth) {
+			List<DagNode> nextLevel = new ArrayList<DagNode>();
+			
+			for (DagNode levelNode : level) {
+				for (DagNodeConnector connector : connectorsOf((DagNodeImpl) levelNode, isFrom)) {
+					DagNodeImpl node = isFrom ? connector.getToNode() : connector.getFromNode();
+					
+					if (isFollowed(connector, node) == false)
+						continue;
+					
+					boolean isEnd = endPredicate != null && endPredicate.test(context, node);
+					
+					if (visited.get(node.getId()) == false) {
+						visited.set(node.getId());
+						nextLevel.add(node);
+					}
+					
+					if (isEnd) {
+						if (nextLevel.isEmpty() == false)
+							levels.add(nextLevel);
+						return levels;
+					}
+				}
+			}
+			
+			if (nextLevel.isEmpty())
+				break;
+			
+			levels.add(nextLevel);
+			level = nextLevel;
+		}
+		
+		return levels;
+	}
+
+	/**
+	 * As findLevels, adding the levels after the first read from the offsets and target ids of the index of a snapshot.
+	 */
+	private void findLevels(DagAdjacencyIndex index, List<List<DagNode>> levels, BitSet visited, int maxDepth) {
+		List<DagNode> level = levels.get(0);
+		
+		while (levels.size() <= maxDepth) {
+			List<DagNode> nextLevel = new ArrayList<DagNode>();
+			
+			for (DagNode levelNode : level) {
+				int end = index.getEnd(levelNode.getId());
+				for (int position = index.getStart(levelNode.getId()); position < end; position++) {
+					int target = index.getTarget(position);
+					if (visited.get(target) == false) {
+						visited.set(target);
+						nextLevel.add(model.getNodeImplementation(target));
+					}
+				}
 			}
+			
+			if (nextLevel.isEmpty())
+				break;
+			
+			levels.add(nextLevel);
+			level = nextLevel;
 		}
+	}
+
+	/**
+	 * Return the index of the relationshipType in the direction if the model is a DagModelSnapshot and no filter,
+	 * nodeVisitor or endPredicate needs the connectors, otherwise null.
+	 */
+	private DagAdjacencyIndex unfilteredIndex(boolean isFrom) {
+		if (model instanceof DagModelSnapshot == false)
+			return null;
+		if (filterLinkPredicate != ALL_RELATIONSHIPS || filterNodePredicate != ALL_NODES || nodeVisitor != NO_VISITOR || endPredicate != null)
+			return null;
+		
+		DagModelSnapshot snapshot = (DagModelSnapshot) model;
+		return isFrom ? snapshot.getFromIndex(relationshipType) : snapshot.getToIndex(relationshipType);
+	}
+
+	/**
+	 * Return the nodes of all levels after the first, the nodes reached from the startNodes in order of their distance from them.
+	 */
+	static List<DagNode> withoutStartNodes(List<List<DagNode>> levels) {
+		List<DagNode> nodes = new ArrayList<DagNode>();
+		for (int i = 1; i < levels.size(); i++)
+			nodes.addAll(levels.get(i));
+		return nodes;
+	}
+
+	private Iterable<DagNodeConnector> connectorsOf(DagNodeImpl node, boolean isFrom) {
+		if (isFrom)
+			return model.getFromThisNodeConnectors(node, relationshipType);
+		else
+			return model.getToThisNodeConnectors(node, relationshipType);
+	}
+
+	/**
+	 * Return true if the connector to the node passes the filters, calling the nodeVisitor if it does.
+	 */
+	private boolean isFollowed(DagNodeConnector connector, DagNodeImpl node) {
+		if (filterLinkPredicate.test(connector.getRelationship(relationshipType)) == false)
+			return false;
+		
+		if (filterNodePredicate.test(node) == false)
+			return false;
 		
-		return nodes.stream().collect(Collectors.toList());
+		nodeVisitor.accept(context, connector.getFromNode(), connector.getRelationship(relationshipType), connector.getToNode());
+		return true;
 	}
 
 	@Override
 	public NodeSearchResult discoverFromRelationships(DagNode rootNodeIn) {
+		return discoverFromRelationships(model.resolveNode(rootNodeIn));
+	}
 
-		DagNodeImpl rootNode = model.getNodeImplementation(rootNodeIn.getName());
+	@Override
+	public NodeSearchResult discoverFromRelationships(int rootNodeId) {
+		return discoverFromRelationships(model.getRequiredNodeImplementation(rootNodeId));
+	}
+
+	private NodeSearchResult discoverFromRelationships(DagNodeImpl rootNode) {
 		
 		DagNodeSearchState searchState = new DagNodeSearchState(
 				relationshipType,
@@ -312,28 +624,33 @@ public class DagLinkRouteFinder implements LinkRouteFinder {
 	 */
 	@Override
 	public List<DagNode> findDescendantsBreadthFirst(DagNode rootNodeIn) {
+		return findDescendantsBreadthFirst(model.resolveNode(rootNodeIn));
+	}
 
-		DagNodeImpl rootNode = model.getNodeImplementation(rootNodeIn.getName());
-		
-		DagNodeSearchState searchState = new DagNodeSearchState(
-				relationshipType,
-				rootNode);
+	@Override
+	public List<DagNode> findDescendantsBreadthFirst(int rootNodeId) {
+		return findDescendantsBreadthFirst(model.getRequiredNodeImplementation(rootNodeId));
+	}
 
-		ArrayList<DagNodeImpl> startingNodes = new ArrayList<DagNodeImpl>();
-		startingNodes.add(rootNode);
-		moveFromRelationship(startingNodes, searchState);
-		
-		DagNodeVector v = searchState.getVector();
-		return v.fetchDagNodesBreadthFirst(rootNodeIn);
+	private List<DagNode> findDescendantsBreadthFirst(DagNodeImpl rootNode) {
+		return withoutStartNodes(findLevels(List.of(rootNode), true, Integer.MAX_VALUE));
 	}
 
 	@Override
 	public DagNodeSearchResult discoverToRelationships(DagNode startingNode) {
+		return discoverToRelationships(model.resolveNode(startingNode));
+	}
 
+	@Override
+	public DagNodeSearchResult discoverToRelationships(int startingNodeId) {
+		return discoverToRelationships(model.getRequiredNodeImplementation(startingNodeId));
+	}
+
+	private DagNodeSearchResult discoverToRelationships(DagNodeImpl startingNode) {
 
 		DagNodeSearchState searchState = new DagNodeSearchState(
 				relationshipType,
-				model.getNodeImplementation(startingNode.getName()));
+				startingNode);
 
 		followToRelationship(searchState);
 
@@ -369,7 +686,7 @@ public class DagLinkRouteFinder implements LinkRouteFinder {
 		
 		DagNodeSearchState searchState = new DagNodeSearchState(
 				relationshipType,
-				model.getNodeImplementation(startingNode.getName()),
+				model.resolveNode(startingNode),
 				endingNode);
 
 		followToRelationship(searchState);
@@ -386,174 +703,254 @@ public class DagLinkRouteFinder implements LinkRouteFinder {
 		return searchResult;
 	}
 
+	/**
+	 * Follow the relationships from the current node depth first, backtracking over the single path held by the searchState.
+	 * A vector is fixed where a path ends and a cycle where a relationship returns to a node on the path.
+	 * The endPredicate ends the path at the first node it accepts.
+	 * The nodes still to be followed are held on a DagConnectorStack rather than the thread's stack, so the depth of the search is not limited by it.
+	 * The flag of each frame records whether the last relationship followed from its node continued the path.
+	 */
 	private void followFromRelationship(DagNodeSearchState searchState) {
-		DagNodeImpl currentNode = searchState.getCurrentNode();
-		boolean foundNextLink = false;
-		
-		if (searchState.isHalting())
-			return;
-		
-		if (currentNode.hasFromThisNodeConnectors()) {
+		DagConnectorStack stack = new DagConnectorStack();
+		stack.push(searchState.getCurrentNode(), model.getFromThisNodeConnectors(searchState.getCurrentNode(), relationshipType));
+		followFromRelationship(stack, searchState, false);
+	}
 
-			for (DagNodeConnector connector : currentNode.getFromThisNodeConnectors()) {
-				
-				if (connector.hasRelationship(relationshipType) == false)
-					continue;
-				
-				if (filterLinkPredicate.test(connector.getRelationship(relationshipType)) == false)
-					continue;
-				
-				
-				if (filterNodePredicate.test(connector.getToNode()) == false) {
-					continue;
+	/**
+	 * Continue the search held by the stack and searchState. If isSuspending the search stops as soon as a vector or cycle is found,
+	 * to be resumed by a later call once they have been taken.
+	 */
+	private void followFromRelationship(DagConnectorStack stack, DagNodeSearchState searchState, boolean isSuspending) {
+		
+		while (stack.isEmpty() == false && (isSuspending == false || searchState.hasResults() == false)) {
+			
+			if (stack.hasNext() == false) {
+				if (stack.isFlagged() == false)
+					searchState.fixCurrentVector();
+				backtrack(stack, searchState);
+				continue;
+			}
+			
+			DagNodeConnector connector = stack.next();
+			
+			if (filterLinkPredicate.test(connector.getRelationship(relationshipType)) == false)
+				continue;
+			
+			
+			if (filterNodePredicate.test(connector.getToNode()) == false) {
+				continue;
+			}
+			
+			if (noBacktracking) {
+				if (searchState.hasPreviousNode()) {
+					if (searchState.getPreviousNode().equals(connector.getToNode()))
+						continue;
 				}
+			}
+			
+			nodeVisitor.accept(context, connector.getFromNode(), connector.getRelationship(relationshipType), connector.getToNode());
+			
+			stack.setFlagged(true);
+			
+			if (endPredicate != null) {
 				
-				if (noBacktracking) {
-					if (searchState.hasPreviousNode()) {
-						if (searchState.getPreviousNode().equals(connector.getToNode()))
-							continue;
-					}
+				if (endPredicate.test(context, connector.getToNode())) {
+					searchState.fixCurrentVector(connector);
+					backtrack(stack, searchState);
+					continue;
 				}
 				
-				nodeVisitor.accept(context, connector.getFromNode(), connector.getRelationship(relationshipType), connector.getToNode());
-				
-				foundNextLink = true;
-				
-				if (endPredicate != null) {
-					
-					if (endPredicate.test(context, connector.getToNode())) {
-						foundNextLink = false;
-						searchState.setHalting(true);
-						searchState.addNodeRelationshipLink(connector);
-						searchState.fixCurrentVector();
-						return;
-					}
-					
-				}
-					
+			}
 				
-				if (searchState.hasVisited(connector.getToNode().getName())) {
-					searchState.addCycle(searchState.getVector(), connector, relationshipType);
-					foundNextLink = false;
-				} else {
-					followFromRelationship(new DagNodeSearchState(searchState, connector.getToNode(), connector));
-				}
+			
+			if (searchState.hasVisited(connector.getToNode().getId())) {
+				searchState.addCycle(connector);
+				stack.setFlagged(false);
+			} else {
+				searchState.descend(connector, connector.getToNode());
+				stack.push(connector.getToNode(), model.getFromThisNodeConnectors(connector.getToNode(), relationshipType));
 			}
 		}
-		
-		if (foundNextLink == false)
-			searchState.fixCurrentVector();
-		
 
 	}
-
-	private void moveFromRelationship(List<DagNodeImpl> startingNodes, DagNodeSearchState searchState) {
-		
-		
-		List<DagNodeImpl> endingNodes = new ArrayList<DagNodeImpl>();
-		
-		if (searchState.isHalting())
-			return;
 	
+	/**
+	 * Leave the node of the top frame, returning the searchState to the node before it.
+	 */
+	private static void backtrack(DagConnectorStack stack, DagNodeSearchState searchState) {
+		stack.pop();
+		if (stack.isEmpty() == false)
+			searchState.ascend();
+	}
+
+	/**
+	 * Follow the relationships to the current node depth first, see followFromRelationship.
+	 */
+	private void followToRelationship(DagNodeSearchState searchState) {
+		DagConnectorStack stack = new DagConnectorStack();
+		stack.push(searchState.getCurrentNode(), model.getToThisNodeConnectors(searchState.getCurrentNode(), relationshipType));
+		followToRelationship(stack, searchState, false);
+	}
+
+	private void followToRelationship(DagConnectorStack stack, DagNodeSearchState searchState, boolean isSuspending) {
 		
-		for (DagNodeImpl currentNode : startingNodes) {
+		while (stack.isEmpty() == false && (isSuspending == false || searchState.hasResults() == false)) {
 			
-			if (currentNode.hasFromThisNodeConnectors()) {
-	
-				for (DagNodeConnector connector : currentNode.getFromThisNodeConnectors()) {
-					
-					if (connector.hasRelationship(relationshipType) == false)
-						continue;
-					
-					if (filterLinkPredicate.test(connector.getRelationship(relationshipType)) == false)
-						continue;
-					
-					if (filterNodePredicate.test(connector.getToNode()) == false) {
-						continue;
-					}
-					
-					nodeVisitor.accept(context, connector.getFromNode(), connector.getRelationship(relationshipType), connector.getToNode());
-					
-					searchState.addNodeRelationshipLink(connector);
-					
-					if (endPredicate != null) {
-						
-						if (endPredicate.test(context, connector.getToNode())) {
-							searchState.setHalting(true);
-							searchState.addNodeRelationshipLink(connector);
-							return;
-						}
-							
-						
-					}
-					
-					if (searchState.hasVisited(connector.getToNode().getName())) {
-						searchState.addCycle(searchState.getVector(), connector, relationshipType);
-					} else {
-						endingNodes.add(connector.getToNode());
-					}
+			if (stack.hasNext() == false) {
+				if (stack.isFlagged() == false)
+					searchState.fixCurrentVector();
+				backtrack(stack, searchState);
+				continue;
+			}
+			
+			DagNodeConnector connector = stack.next();
+			
+			if (filterLinkPredicate.test(connector.getRelationship(relationshipType)) == false)
+				continue;
+			
+			if (filterNodePredicate.test(connector.getFromNode()) == false) {
+				continue;
+			}
+			
+			nodeVisitor.accept(context, connector.getFromNode(), connector.getRelationship(relationshipType), connector.getToNode());
+			
+			stack.setFlagged(true);
+			
+			if (endPredicate != null) {
+				
+				if (endPredicate.test(context, connector.getFromNode())) {
+					searchState.fixCurrentVector(connector);
+					backtrack(stack, searchState);
+					continue;
 				}
+					
+				
+			}
+			
+			if (searchState.hasVisited(connector.getFromNode().getId())) {
+				searchState.addCycle(connector);
+				stack.setFlagged(false);
+			} else {
+				searchState.descend(connector, connector.getFromNode());
+				stack.push(connector.getFromNode(), model.getToThisNodeConnectors(connector.getFromNode(), relationshipType));
 			}
 		}
-		
-		if ( (searchState.isHalting() == false) && (endingNodes.isEmpty() == false) )
-			moveFromRelationship(endingNodes, searchState);
 
 	}
 
 
-	private void followToRelationship(DagNodeSearchState searchState) {
-		DagNodeImpl currentNode = searchState.getCurrentNode();
+	/**
+	 * Returns the paths of a depth first search as they are found, suspending the search between them.
+	 * The paths and their order are those of findAllPathsFrom, findAllPathsTo or the cycles of discoverFromRelationships.
+	 * Each vector is dropped once its paths have been returned and the stack and searchState once the search is done,
+	 * so only the path being followed is held rather than every path found.
+	 */
+	private class PathIterator implements Iterator<DagNodePath> {
+		
+		private boolean isFrom;
+		
+		private boolean isCycles;
+		
+		private DagConnectorStack stack = new DagConnectorStack();
 		
-		boolean foundNextLink = false;
+		private DagNodeSearchState searchState;
 		
-		if (searchState.isHalting())
-			return;
+		private ArrayDeque<DagNodeVector> found = new ArrayDeque<DagNodeVector>();
 		
-		if (currentNode.hasToThisNodeConnectors()) {
+		// the vector whose paths from the start node are being returned, one for each of its connectors as in DagNodeVector.createFromPaths
+		private DagNodeVector vector;
+		
+		private DagNodePath lastPath;
+		
+		private int pathLength;
+		
+		private DagNodePath nextPath;
+		
+		private PathIterator(DagNodeImpl startNode, boolean isFrom, boolean isCycles) {
+			this.isFrom = isFrom;
+			this.isCycles = isCycles;
+			searchState = new DagNodeSearchState(relationshipType, startNode);
+			if (isFrom)
+				stack.push(startNode, model.getFromThisNodeConnectors(startNode, relationshipType));
+			else
+				stack.push(startNode, model.getToThisNodeConnectors(startNode, relationshipType));
+		}
 
-			for (DagNodeConnector connector : currentNode.getToThisNodeConnectors()) {
-				
-				if (connector.hasRelationship(relationshipType) == false)
-					continue;
+		@Override
+		public boolean hasNext() {
+			if (nextPath == null)
+				nextPath = findNextPath();
+			return nextPath != null;
+		}
+
+		@Override
+		public DagNodePath next() {
+			if (hasNext() == false)
+				throw new NoSuchElementException();
+			
+			DagNodePath path = nextPath;
+			nextPath = null;
+			return path;
+		}
+		
+		private DagNodePath findNextPath() {
+			while (true) {
 				
-				if (filterLinkPredicate.test(connector.getRelationship(relationshipType)) == false)
-					continue;
+				if (vector != null) {
+					if (pathLength < vector.getConnectors().size())
+						return nextFromPath();
+					vector = null;
+					lastPath = null;
+				}
 				
-				if (filterNodePredicate.test(connector.getFromNode()) == false) {
+				DagNodeVector foundVector = found.poll();
+				if (foundVector != null) {
+					if (isCycles)
+						return foundVector.createPath();
+					if (isFrom == false)
+						return foundVector.createToPaths().get(0);
+					vector = foundVector;
+					pathLength = 0;
 					continue;
 				}
 				
-				nodeVisitor.accept(context, connector.getFromNode(), connector.getRelationship(relationshipType), connector.getToNode());
+				if (searchState == null)
+					return null;
 				
-				foundNextLink = true;
-				
-				if (endPredicate != null) {
-					
-					if (endPredicate.test(context, connector.getFromNode())) {
-						foundNextLink = false;
-						searchState.setHalting(true);
-						searchState.addNodeRelationshipLink(connector);
-						searchState.fixCurrentVector();
-						return;
-					}
-						
-					
+				if (stack.isEmpty()) {
+					stack = null;
+					searchState = null;
+					return null;
 				}
 				
-				if (searchState.hasVisited(connector.getFromNode().getName())) {
-					searchState.addCycle(searchState.getVector(), connector, relationshipType);
-					foundNextLink = false;
-				} else {
-					followToRelationship(new DagNodeSearchState(searchState, connector.getFromNode(), connector));
-				}
+				if (isFrom)
+					followFromRelationship(stack, searchState, true);
+				else
+					followToRelationship(stack, searchState, true);
+				
+				found.addAll(isCycles ? searchState.getCycles() : searchState.getVectors());
+				searchState.clearResults();
 			}
 		}
 		
-		if (foundNextLink == false)
-			searchState.fixCurrentVector();
+		private DagNodePath nextFromPath() {
+			DagNodeConnector connector = vector.getConnectors().get(pathLength++);
+			
+			if (lastPath == null)
+				lastPath = new DagNodePath(
+						vector.getFromNode(),
+						connector.getRelationship(relationshipType),
+						connector.getToNode());
+			else
+				lastPath = new DagNodePath(
+						vector.getFromNode(),
+						lastPath,
+						connector.getRelationship(relationshipType),
+						connector.getToNode());
+			
+			return lastPath;
+		}
 		
-
 	}
 
 
@@ -0,0 +1,749 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import com.onbelay.dagnabit.dagmodel.exception.DagGraphException;
+import com.onbelay.dagnabit.dagmodel.model.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A read-only DagModel whose topology lives in a memory-mapped file rather than on the heap.
+ * The file is a versioned snapshot holding node names, categories, weights, reference numbers and optionally DagData and, for each relationshipType,
+ * a forward and reverse compressed sparse row (CSR) layout of long offsets and int target ids. Relationship attributes are held once, against the forward edge.
+ * Opening a file only maps it, without parsing any records, so large models load immediately and the pages are shared by every process mapping the same file.
+ *
+ * Nodes, connectors and relationships are materialized on demand each time they are reached, node names and data are only decoded when read.
+ * Materialized items are views: setting a weight or data on them does not change the file. Use toModel() to load a mutable copy.
+ *
+ * Write a model with DagMappedModel.write(model, path) and map it with DagMappedModel.open(path).
+ * DagData is written and read through a DagDataSerializer, without one it is left out.
+ */
+public class DagMappedModel extends AbstractDagModel {
+
+	static final int MAGIC = 0x4441474D;
+	static final int VERSION = 2;
+
+	// magic, version, nodeCount, categoryCount, typeCount, weightMode, sectionCount
+	static final int HEADER_SIZE = 7 * 4;
+
+	// offset, length and CRC32 of each section
+	static final int DIRECTORY_ENTRY_SIZE = 3 * 8;
+
+	static final int NULL_REFERENCE_NO = Integer.MIN_VALUE;
+
+	static final int MODEL_NAME = 0;
+	static final int NODE_NAME_OFFSETS = 1;
+	static final int NODE_NAME_BYTES = 2;
+	static final int NODE_NAME_ORDER = 3;
+	static final int NODE_CATEGORIES = 4;
+	static final int NODE_WEIGHTS = 5;
+	static final int NODE_REFERENCE_NOS = 6;
+	static final int NODE_DATA_OFFSETS = 7;
+	static final int NODE_DATA_BYTES = 8;
+	static final int CATEGORY_NAME_OFFSETS = 9;
+	static final int CATEGORY_NAME_BYTES = 10;
+	static final int TYPE_NAME_OFFSETS = 11;
+	static final int TYPE_NAME_BYTES = 12;
+	static final int FIRST_ADJACENCY_SECTION = 13;
+
+	// Sections of each relationshipType, relative to its first section
+	static final int FROM_OFFSETS = 0;
+	static final int FROM_TARGETS = 1;
+	static final int FROM_WEIGHTS = 2;
+	static final int FROM_REFERENCE_NOS = 3;
+	static final int FROM_DATA_OFFSETS = 4;
+	static final int FROM_DATA_BYTES = 5;
+	static final int TO_OFFSETS = 6;
+	static final int TO_SOURCES = 7;
+	static final int TO_POSITIONS = 8;
+	static final int SECTIONS_PER_TYPE = 9;
+
+	private DagDataSerializer serializer;
+
+	private DagMappedSection[] sections;
+	private long[] checksums;
+
+	private int nodeCount;
+
+	private DagMappedSection nodeNameOffsets;
+	private DagMappedSection nodeNameBytes;
+	private DagMappedSection nodeNameOrder;
+	private DagMappedSection nodeCategories;
+	private DagMappedSection nodeWeights;
+	private DagMappedSection nodeReferenceNos;
+	private DagMappedSection nodeDataOffsets;
+	private DagMappedSection nodeDataBytes;
+
+	private DagNodeCategory[] categories;
+	private DagRelationshipType[] types;
+
+	private MappedAdjacency[] fromAdjacencies;
+	private MappedAdjacency[] toAdjacencies;
+
+	private DagMappedModel(String modelName, DagWeightMode weightMode) {
+		super(modelName, weightMode);
+	}
+
+	/**
+	 * Map a model written by DagMappedModel.write. DagData is not read.
+	 * @param path
+	 * @return a read-only model
+	 * @throws DagGraphException if the file cannot be read or is not a mapped model file of this version.
+	 */
+	public static DagMappedModel open(Path path) {
+		return open(path, null);
+	}
+
+	/**
+	 * Map a model written by DagMappedModel.write.
+	 * @param path
+	 * @param serializer - reads the DagData of nodes and relationships when it is asked for, or null to leave it out.
+	 * @return a read-only model
+	 * @throws DagGraphException if the file cannot be read or is not a mapped model file of this version.
+	 */
+	public static DagMappedModel open(Path path, DagDataSerializer serializer) {
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), HEADER_SIZE));
+			if (header.limit() < HEADER_SIZE || header.getInt(0) != MAGIC)
+				throw new DagGraphException("Not a mapped model file: " + path);
+			if (header.getInt(4) != VERSION)
+				throw new DagGraphException("Unsupported mapped model version " + header.getInt(4) + " in " + path);
+
+			int nodeCount = header.getInt(8);
+			int categoryCount = header.getInt(12);
+			int typeCount = header.getInt(16);
+			int weightModeOrdinal = header.getInt(20);
+			int sectionCount = header.getInt(24);
+
+			if (weightModeOrdinal < 0 || weightModeOrdinal >= DagWeightMode.values().length)
+				throw new DagGraphException("Corrupt header in " + path);
+			DagWeightMode weightMode = DagWeightMode.values()[weightModeOrdinal];
+
+			if (sectionCount != FIRST_ADJACENCY_SECTION + typeCount * SECTIONS_PER_TYPE)
+				throw new DagGraphException("Corrupt section directory in " + path);
+
+			DagMappedSection directory = new DagMappedSection(channel, HEADER_SIZE, sectionCount * (long) DIRECTORY_ENTRY_SIZE);
+			DagMappedSection[] sections = new DagMappedSection[sectionCount];
+			long[] checksums = new long[sectionCount];
+			for (int i = 0; i < sectionCount; i++) {
+				long offset = directory.getLong(i * 3);
+				long length = directory.getLong(i * 3 + 1);
+				if (offset < 0 || length < 0 || offset + length > channel.size())
+					throw new DagGraphException("Corrupt section directory in " + path);
+
+				sections[i] = new DagMappedSection(channel, offset, length);
+				checksums[i] = directory.getLong(i * 3 + 2);
+			}
+
+			byte[] modelName = new byte[(int) sections[MODEL_NAME].length()];
+			sections[MODEL_NAME].getBytes(0, modelName);
+
+			DagMappedModel model = new DagMappedModel(new String(modelName, StandardCharsets.UTF_8), weightMode);
+			model.serializer = serializer;
+			model.sections = sections;
+			model.checksums = checksums;
+			model.nodeCount = nodeCount;
+			model.nodeNameOffsets = sections[NODE_NAME_OFFSETS];
+			model.nodeNameBytes = sections[NODE_NAME_BYTES];
+			model.nodeNameOrder = sections[NODE_NAME_ORDER];
+			model.nodeCategories = sections[NODE_CATEGORIES];
+			model.nodeWeights = sections[NODE_WEIGHTS];
+			model.nodeReferenceNos = sections[NODE_REFERENCE_NOS];
+			model.nodeDataOffsets = sections[NODE_DATA_OFFSETS];
+			model.nodeDataBytes = sections[NODE_DATA_BYTES];
+
+			String[] categoryNames = readStrings(sections[CATEGORY_NAME_OFFSETS], sections[CATEGORY_NAME_BYTES], categoryCount);
+			model.categories = new DagNodeCategory[categoryCount];
+			for (int i = 0; i < categoryCount; i++)
+				model.categories[i] = new DagNodeCategory(categoryNames[i], i);
+
+			String[] typeNames = readStrings(sections[TYPE_NAME_OFFSETS], sections[TYPE_NAME_BYTES], typeCount);
+			model.types = new DagRelationshipType[typeCount];
+			model.fromAdjacencies = new MappedAdjacency[typeCount];
+			model.toAdjacencies = new MappedAdjacency[typeCount];
+			for (int i = 0; i < typeCount; i++) {
+				model.types[i] = new DagRelationshipType(typeNames[i], i);
+				int first = FIRST_ADJACENCY_SECTION + i * SECTIONS_PER_TYPE;
+				model.fromAdjacencies[i] = new MappedAdjacency(
+						sections[first + FROM_OFFSETS],
+						sections[first + FROM_TARGETS],
+						null);
+				model.toAdjacencies[i] = new MappedAdjacency(
+						sections[first + TO_OFFSETS],
+						sections[first + TO_SOURCES],
+						sections[first + TO_POSITIONS]);
+			}
+			return model;
+
+		} catch (IOException e) {
+			throw new DagGraphException("Unable to map model file: " + path, e);
+		}
+	}
+
+	private static String[] readStrings(DagMappedSection offsets, DagMappedSection bytes, int count) {
+		String[] strings = new String[count];
+		for (int i = 0; i < count; i++)
+			strings[i] = readString(offsets, bytes, i);
+
+		return strings;
+	}
+
+	private static String readString(DagMappedSection offsets, DagMappedSection bytes, long index) {
+		long start = offsets.getLong(index);
+		byte[] value = new byte[(int) (offsets.getLong(index + 1) - start)];
+		bytes.getBytes(start, value);
+		return new String(value, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write the model to a file that can be mapped with DagMappedModel.open. DagData is not written.
+	 * @param model - a model created by this library
+	 * @param path - the file is created or atomically replaced.
+	 * @throws DagGraphException if the file cannot be written.
+	 */
+	public static void write(DagModel model, Path path) {
+		write(model, path, null);
+	}
+
+	/**
+	 * Write the model to a file that can be mapped with DagMappedModel.open.
+	 * The model is streamed to the file rather than copied, so it can be written while in use provided it is not being changed.
+	 * Weights are written as doubles, or as fixed point longs when the model uses the FIXED_POINT DagWeightMode.
+	 * @param model - a model created by this library
+	 * @param path - the file is created or atomically replaced.
+	 * @param serializer - writes the DagData of nodes and relationships, or null to leave it out.
+	 * @throws DagGraphException if the file cannot be written.
+	 */
+	public static void write(DagModel model, Path path, DagDataSerializer serializer) {
+		if (model instanceof AbstractDagModel == false)
+			throw new DagGraphException("Only models created by this library can be written");
+
+		try {
+			new DagMappedModelWriter((AbstractDagModel) model, serializer).write(path);
+		} catch (IOException e) {
+			throw new DagGraphException("Unable to write model file: " + path, e);
+		}
+	}
+
+	/**
+	 * Check every section of the file against the CRC32 recorded when it was written. This reads the whole file.
+	 * @throws DagGraphException naming the first section that does not match.
+	 */
+	public void verifyChecksums() {
+		for (int i = 0; i < sections.length; i++) {
+			if (sections[i].checksum() != checksums[i])
+				throw new DagGraphException("Checksum mismatch in section " + i + " of mapped model " + getModelName());
+		}
+	}
+
+	/**
+	 * Load the mapped model into a new DagModelImpl, with the same nodes, categories, relationshipTypes, weights, reference numbers and data.
+	 * Nodes keep their ids unless the file holds the slots of removed nodes, in which case the nodes are given consecutive ids in the same order.
+	 * Relationships are added one relationshipType at a time.
+	 * @return a mutable model
+	 */
+	public DagModelImpl toModel() {
+		DagModelImpl model = new DagModelImpl(getModelName(), types[0].getName(), getWeightMode());
+		model.ensureNodeCapacity(nodeCount);
+
+		// the node added for each mapped id
+		DagNode[] added = new DagNode[nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			DagNodeImpl node = getNodeImplementation(i);
+			if (node != null) {
+				added[i] = model.addNode(node.getName(), node.getCategory().getCategoryName());
+				copyAttributes(node, (DagItemImpl) added[i]);
+			}
+		}
+
+		for (int t = 1; t < types.length; t++)
+			model.getRelationshipType(types[t].getName());
+
+		for (int t = 0; t < types.length; t++) {
+			for (int i = 0; i < nodeCount; i++) {
+				if (added[i] == null)
+					continue;
+				
+				for (DagNodeConnector c : connectors(getNodeImplementation(i), types[t], true)) {
+					DagNode fromNode = added[c.getFromNode().getId()];
+					DagNode toNode = added[c.getToNode().getId()];
+					DagRelationship relationship;
+					if (t == 0)
+						relationship = model.addDefaultRelationship(fromNode, toNode);
+					else
+						relationship = model.addRelationship(fromNode, types[t].getName(), toNode);
+
+					copyAttributes(c.getRelationship(types[t]), (DagItemImpl) relationship);
+				}
+			}
+		}
+		return model;
+	}
+
+	private static void copyAttributes(DagItem from, DagItemImpl to) {
+		to.copyWeight(from);
+		to.setReferenceNo(from.getReferenceNo());
+		to.setData(from.getData());
+	}
+
+	private String readNodeName(int nodeId) {
+		return readString(nodeNameOffsets, nodeNameBytes, nodeId);
+	}
+
+	private int findType(DagRelationshipType relationshipType) {
+		for (int i = 0; i < types.length; i++) {
+			if (types[i] == relationshipType)
+				return i;
+		}
+		for (int i = 0; i < types.length; i++) {
+			if (types[i].equals(relationshipType))
+				return i;
+		}
+		return -1;
+	}
+
+	private boolean hasConnectors(MappedAdjacency[] adjacencies, int nodeId) {
+		for (MappedAdjacency adjacency : adjacencies) {
+			if (adjacency.getDegree(nodeId) > 0)
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public DagModel freeze() {
+		return this;
+	}
+
+	@Override
+	protected DagNodeImpl getNodeImplementation(String name) {
+		long low = 0;
+		long high = (nodeNameOrder.length() >>> 2) - 1;
+		while (low <= high) {
+			long middle = (low + high) >>> 1;
+			int nodeId = nodeNameOrder.getInt(middle);
+			int comparison = readNodeName(nodeId).compareTo(name);
+			if (comparison < 0)
+				low = middle + 1;
+			else if (comparison > 0)
+				high = middle - 1;
+			else
+				return getNodeImplementation(nodeId);
+		}
+		return null;
+	}
+
+	@Override
+	protected DagNodeImpl getNodeImplementation(int nodeId) {
+		if (nodeId < 0 || nodeId >= nodeCount)
+			return null;
+
+		int category = nodeCategories.getInt(nodeId);
+		if (category < 0)
+			return null;
+
+		return new MappedNode(nodeId, categories[category]);
+	}
+
+	@Override
+	protected DagNodeImpl resolveNode(DagNode node) {
+		if (node instanceof MappedNode && ((MappedNode) node).getModel() == this)
+			return (MappedNode) node;
+
+		return super.resolveNode(node);
+	}
+
+	@Override
+	protected Collection<DagNodeImpl> getNodeImplementations() {
+		return new AbstractList<DagNodeImpl>() {
+
+			@Override
+			public DagNodeImpl get(int index) {
+				return getNodeImplementation(index);
+			}
+
+			@Override
+			public int size() {
+				return nodeCount;
+			}
+		};
+	}
+
+	@Override
+	protected int getNodeCount() {
+		return nodeCount;
+	}
+
+	@Override
+	protected List<DagNodeConnector> getFromThisNodeConnectors(
+			DagNodeImpl node,
+			DagRelationshipType relationshipType) {
+
+		return connectors(node, relationshipType, true);
+	}
+
+	@Override
+	protected List<DagNodeConnector> getToThisNodeConnectors(
+			DagNodeImpl node,
+			DagRelationshipType relationshipType) {
+
+		return connectors(node, relationshipType, false);
+	}
+
+	/**
+	 * Return a view of the node's connectors. Each connector, its relationship and the node at the other end are created when the element is read.
+	 */
+	private List<DagNodeConnector> connectors(
+			DagNodeImpl node,
+			DagRelationshipType relationshipType,
+			boolean isFrom) {
+
+		int typeIndex = findType(relationshipType);
+		if (typeIndex < 0 || node == null || node.getId() < 0 || node.getId() >= nodeCount)
+			return Collections.emptyList();
+
+		DagRelationshipType type = types[typeIndex];
+		MappedAdjacency adjacency = isFrom ? fromAdjacencies[typeIndex] : toAdjacencies[typeIndex];
+		long start = adjacency.offsets.getLong(node.getId());
+		int size = (int) (adjacency.offsets.getLong(node.getId() + 1) - start);
+
+		return new AbstractList<DagNodeConnector>() {
+
+			@Override
+			public DagNodeConnector get(int index) {
+				if (index < 0 || index >= size)
+					throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+				long position = start + index;
+				DagNodeImpl otherNode = getNodeImplementation(adjacency.targets.getInt(position));
+
+				DagNodeConnector connector;
+				if (isFrom)
+					connector = new DagNodeConnector(node, type, otherNode);
+				else
+					connector = new DagNodeConnector(otherNode, type, node);
+
+				long forwardPosition = isFrom ? position : adjacency.positions.getLong(position);
+				readRelationship(connector.getRelationship(type), typeIndex, forwardPosition);
+
+				return connector;
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	private void readRelationship(DagRelationshipImpl relationship, int typeIndex, long forwardPosition) {
+		int first = FIRST_ADJACENCY_SECTION + typeIndex * SECTIONS_PER_TYPE;
+		readWeight(relationship, sections[first + FROM_WEIGHTS], forwardPosition);
+
+		int referenceNo = sections[first + FROM_REFERENCE_NOS].getInt(forwardPosition);
+		if (referenceNo != NULL_REFERENCE_NO)
+			relationship.setReferenceNo(referenceNo);
+
+		if (serializer != null)
+			relationship.setData(readData(sections[first + FROM_DATA_OFFSETS], sections[first + FROM_DATA_BYTES], forwardPosition));
+	}
+
+	private void readWeight(DagItemImpl item, DagMappedSection weights, long index) {
+		if (getWeightMode() == DagWeightMode.FIXED_POINT)
+			item.setFixedPointWeight(weights.getLong(index));
+		else
+			item.setWeight(weights.getDouble(index));
+	}
+
+	private DagData readData(DagMappedSection offsets, DagMappedSection bytes, long index) {
+		long start = offsets.getLong(index);
+		int length = (int) (offsets.getLong(index + 1) - start);
+		if (length == 0)
+			return null;
+
+		byte[] data = new byte[length];
+		bytes.getBytes(start, data);
+		return serializer.deserialize(data);
+	}
+
+	@Override
+	public List<DagNode> getNodes() {
+		ArrayList<DagNode> nodes = new ArrayList<>(nodeCount);
+		for (int i = 0; i < nodeCount; i++) {
+			DagNodeImpl node = getNodeImplementation(i);
+			if (node != null)
+				nodes.add(node);
+		}
+		return nodes;
+	}
+
+	@Override
+	public List<DagNode> findRootNodes() {
+		ArrayList<DagNode> roots = new ArrayList<>();
+		for (int i = 0; i < nodeCount; i++) {
+			if (hasConnectors(fromAdjacencies, i) && hasConnectors(toAdjacencies, i) == false)
+				roots.add(getNodeImplementation(i));
+		}
+		return roots;
+	}
+
+	@Override
+	public List<DagNode> findLeafNodes() {
+		ArrayList<DagNode> leaves = new ArrayList<>();
+		for (int i = 0; i < nodeCount; i++) {
+			if (hasConnectors(fromAdjacencies, i) == false && hasConnectors(toAdjacencies, i))
+				leaves.add(getNodeImplementation(i));
+		}
+		return leaves;
+	}
+
+	@Override
+	public List<DagNode> findSolitaryNodes() {
+		ArrayList<DagNode> solitary = new ArrayList<>();
+		for (int i = 0; i < nodeCount; i++) {
+			if (nodeCategories.getInt(i) >= 0 && hasConnectors(fromAdjacencies, i) == false && hasConnectors(toAdjacencies, i) == false)
+				solitary.add(getNodeImplementation(i));
+		}
+		return solitary;
+	}
+
+	@Override
+	public DagRelationshipType getDefaultRelationshipType() {
+		return types[0];
+	}
+
+	/**
+	 * Add only what is held on the heap, the sections, relationshipTypes and categories, and report the sections as mapped bytes.
+	 * Nodes are not walked as each would be materialized for the walk.
+	 */
+	@Override
+	protected void estimateFootprint(DagFootprintEstimator estimator) {
+		for (DagRelationshipType type : types) {
+			estimator.add(DagFootprint.Part.RELATIONSHIPS, DagFootprintEstimator.object(1, 4));
+			estimator.addName(type.getName());
+		}
+		for (DagNodeCategory category : categories) {
+			estimator.add(DagFootprint.Part.NODES, DagFootprintEstimator.object(1, 4));
+			estimator.addName(category.getCategoryName());
+		}
+
+		long bytes = DagFootprintEstimator.referenceArray(sections.length)
+				+ DagFootprintEstimator.array(8, checksums.length)
+				+ 2 * DagFootprintEstimator.referenceArray(fromAdjacencies.length)
+				+ (fromAdjacencies.length + toAdjacencies.length) * DagFootprintEstimator.object(3, 0);
+		for (DagMappedSection section : sections) {
+			bytes += section.estimateBytes();
+			estimator.addMapped(section.length());
+		}
+		estimator.add(DagFootprint.Part.INDEXES, bytes);
+	}
+
+	@Override
+	public List<DagRelationshipType> getRelationshipTypes() {
+		return Collections.unmodifiableList(Arrays.asList(types));
+	}
+
+	@Override
+	public DagNodeCategory getNodeCategory(String category) {
+		for (DagNodeCategory nodeCategory : categories) {
+			if (nodeCategory.getCategoryName().equals(category))
+				return nodeCategory;
+		}
+		return null;
+	}
+
+	/**
+	 * Return the relationships other than those of the default relationshipType, in from node order.
+	 * Every relationship is materialized so this should be avoided on large models.
+	 */
+	@Override
+	public List<DagRelationship> getRelationships() {
+		ArrayList<DagRelationship> relationships = new ArrayList<>();
+		for (int t = 1; t < types.length; t++) {
+			for (int i = 0; i < nodeCount; i++) {
+				for (DagNodeConnector c : connectors(getNodeImplementation(i), types[t], true))
+					relationships.add(c.getRelationship(types[t]));
+			}
+		}
+		return relationships;
+	}
+
+	@Override
+	public List<DagRelationship> getRelationships(DagNode fromNode) {
+		ArrayList<DagRelationship> list = new ArrayList<>();
+		for (DagNodeConnector c : connectors(resolveNode(fromNode), types[0], true))
+			list.add(c.getRelationship(types[0]));
+
+		return list;
+	}
+
+	@Override
+	public DagRelationship getDefaultRelationship(DagNode fromNode, DagNode toNode) {
+		DagNodeImpl from = resolveNode(fromNode);
+		DagNodeImpl to = resolveNode(toNode);
+		if (from == null || to == null)
+			return null;
+
+		MappedAdjacency adjacency = fromAdjacencies[0];
+		long start = adjacency.offsets.getLong(from.getId());
+		int degree = (int) adjacency.getDegree(from.getId());
+		for (int i = 0; i < degree; i++) {
+			if (adjacency.targets.getInt(start + i) == to.getId())
+				return connectors(from, types[0], true).get(i).getRelationship(types[0]);
+		}
+		return null;
+	}
+
+	@Override
+	public List<DagNodeCategory> getNodeCategories() {
+		return Collections.unmodifiableList(Arrays.asList(categories));
+	}
+
+	@Override
+	public DagNode getNode(String name) {
+		return getNodeImplementation(name);
+	}
+
+	@Override
+	public DagRelationshipType getRelationshipType(String relationshipTypeName) {
+		for (DagRelationshipType type : types) {
+			if (type.getName().equals(relationshipTypeName))
+				return type;
+		}
+		return new DagRelationshipType(relationshipTypeName);
+	}
+
+	@Override
+	public DagNode addNode(String nodeName) {
+		throw new DagGraphException("Mapped model is read-only");
+	}
+
+	@Override
+	public DagNode addNode(String nodeName, String category) {
+		throw new DagGraphException("Mapped model is read-only");
+	}
+
+	@Override
+	public DagRelationship addDefaultRelationship(DagNode fromNode, DagNode toNode) {
+		throw new DagGraphException("Mapped model is read-only");
+	}
+
+	@Override
+	public DagRelationship addRelationship(DagNode fromNode, String relationshipTypeName, DagNode toNode) {
+		throw new DagGraphException("Mapped model is read-only");
+	}
+
+	@Override
+	public DagRelationship addInverse(DagRelationship dagRelationship) {
+		throw new DagGraphException("Mapped model is read-only");
+	}
+
+	@Override
+	public boolean removeRelationship(DagRelationship relationship) {
+		throw new DagGraphException("Mapped model is read-only");
+	}
+
+	@Override
+	public boolean removeNode(DagNode node) {
+		throw new DagGraphException("Mapped model is read-only");
+	}
+
+	/**
+	 * A node read from the file. Its name is decoded the first time it is asked for.
+	 */
+	private class MappedNode extends DagNodeImpl {
+
+		private boolean isDataRead = false;
+
+		private MappedNode(int nodeId, DagNodeCategory category) {
+			super(null, category);
+			setId(nodeId);
+			setWeightMode(DagMappedModel.this.getWeightMode());
+			readWeight(this, nodeWeights, nodeId);
+
+			int referenceNo = nodeReferenceNos.getInt(nodeId);
+			if (referenceNo != NULL_REFERENCE_NO)
+				setReferenceNo(referenceNo);
+		}
+
+		private DagMappedModel getModel() {
+			return DagMappedModel.this;
+		}
+
+		@Override
+		public String getName() {
+			if (name == null)
+				name = readNodeName(getId());
+			return name;
+		}
+
+		@Override
+		public DagData getData() {
+			if (isDataRead == false) {
+				isDataRead = true;
+				if (serializer != null)
+					super.setData(readData(nodeDataOffsets, nodeDataBytes, getId()));
+			}
+			return super.getData();
+		}
+
+		@Override
+		public void setData(DagData data) {
+			isDataRead = true;
+			super.setData(data);
+		}
+
+		@Override
+		public boolean isLeaf() {
+			return hasConnectors(fromAdjacencies, getId()) == false && hasConnectors(toAdjacencies, getId());
+		}
+
+		@Override
+		public boolean isRoot() {
+			return hasConnectors(fromAdjacencies, getId()) && hasConnectors(toAdjacencies, getId()) == false;
+		}
+	}
+
+	/**
+	 * The mapped CSR sections for one relationshipType in one direction.
+	 * Reverse adjacencies also hold the forward position of each edge, where the relationship's attributes are found.
+	 */
+	private static class MappedAdjacency {
+		private final DagMappedSection offsets;
+		private final DagMappedSection targets;
+		private final DagMappedSection positions;
+
+		private MappedAdjacency(DagMappedSection offsets, DagMappedSection targets, DagMappedSection positions) {
+			this.offsets = offsets;
+			this.targets = targets;
+			this.positions = positions;
+		}
+
+		private long getDegree(int nodeId) {
+			return offsets.getLong(nodeId + 1) - offsets.getLong(nodeId);
+		}
+	}
+
+}
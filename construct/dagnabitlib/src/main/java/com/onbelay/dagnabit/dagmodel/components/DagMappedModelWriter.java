@@ -0,0 +1,471 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import com.onbelay.dagnabit.dagmodel.model.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+import static com.onbelay.dagnabit.dagmodel.components.DagMappedModel.*;
+
+/**
+ * Streams a model to the file layout read by DagMappedModel.
+ * Sections are written in a single pass over the model's nodes and connectors where possible. Sections whose values are
+ * only known out of order (offsets written alongside their bytes, the reverse CSR) are reserved in the file and filled through a mapping,
+ * so the only heap used beyond the model itself is a few arrays indexed by node id.
+ * Each section's CRC32 is recorded in the directory.
+ *
+ */
+class DagMappedModelWriter {
+
+	private final AbstractDagModel source;
+	private final DagDataSerializer serializer;
+
+	private final int nodeCount;
+	private final List<DagNodeCategory> categories;
+	private final Map<String, Integer> categoryIndexes = new HashMap<>();
+	private final LinkedHashMap<String, DagRelationshipType> typeMap = new LinkedHashMap<>();
+
+	private FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+	private final CRC32 crc = new CRC32();
+	private long position;
+
+	private long[] sectionOffsets;
+	private long[] sectionLengths;
+	private long[] sectionChecksums;
+
+	DagMappedModelWriter(AbstractDagModel source, DagDataSerializer serializer) {
+		this.source = source;
+		this.serializer = serializer;
+
+		nodeCount = source.getNodeCount();
+
+		categories = source.getNodeCategories();
+		for (DagNodeCategory category : categories)
+			categoryIndexes.put(category.getCategoryName(), categoryIndexes.size());
+
+		typeMap.put(source.getDefaultRelationshipType().getName(), source.getDefaultRelationshipType());
+		for (DagRelationshipType type : source.getRelationshipTypes())
+			typeMap.putIfAbsent(type.getName(), type);
+	}
+
+	/**
+	 * Write the model to a temporary file in the directory of the path, force it to the device and move it over the path.
+	 * The move is atomic, so a reader never sees a partly written file and a model already mapped from the path keeps its old contents.
+	 * The temporary file is created with the default permissions, or given those of the file it replaces, so the same users can map it.
+	 */
+	void write(Path path) throws IOException {
+		Path target = path.toAbsolutePath();
+		Path temporary = createTemporary(target);
+		try {
+			if (Files.exists(target) && Files.getFileStore(temporary).supportsFileAttributeView(PosixFileAttributeView.class))
+				Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(target));
+			writeFile(temporary);
+			Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Create an empty file beside the target. Files.createTempFile is not used as it makes the file readable by its owner only.
+	 */
+	private static Path createTemporary(Path target) throws IOException {
+		while (true) {
+			Path temporary = target.resolveSibling(
+					target.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+			try {
+				return Files.createFile(temporary);
+			} catch (FileAlreadyExistsException e) {
+				// name taken, try another
+			}
+		}
+	}
+
+	private void writeFile(Path path) throws IOException {
+		int sectionCount = FIRST_ADJACENCY_SECTION + typeMap.size() * SECTIONS_PER_TYPE;
+		sectionOffsets = new long[sectionCount];
+		sectionLengths = new long[sectionCount];
+		sectionChecksums = new long[sectionCount];
+
+		try (FileChannel fileChannel = FileChannel.open(
+				path,
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+
+			channel = fileChannel;
+			position = HEADER_SIZE + sectionCount * (long) DIRECTORY_ENTRY_SIZE;
+			channel.position(position);
+
+			beginSection(MODEL_NAME);
+			writeBytes(source.getModelName().getBytes(StandardCharsets.UTF_8));
+			endSection(MODEL_NAME);
+
+			writeNodes();
+
+			List<String> categoryNames = new ArrayList<>();
+			for (DagNodeCategory category : categories)
+				categoryNames.add(category.getCategoryName());
+			writeStrings(CATEGORY_NAME_OFFSETS, CATEGORY_NAME_BYTES, categoryNames);
+
+			writeStrings(TYPE_NAME_OFFSETS, TYPE_NAME_BYTES, new ArrayList<>(typeMap.keySet()));
+
+			int first = FIRST_ADJACENCY_SECTION;
+			for (DagRelationshipType type : typeMap.values()) {
+				writeAdjacency(type, first);
+				first += SECTIONS_PER_TYPE;
+			}
+
+			writeHeader(sectionCount);
+			channel.force(true);
+		}
+	}
+
+	private void writeNodes() throws IOException {
+
+		DagMappedSection nameOffsets = reserveSection(NODE_NAME_OFFSETS, (nodeCount + 1) * 8L);
+		beginSection(NODE_NAME_BYTES);
+		long offset = 0;
+		nameOffsets.putLong(0, offset);
+		for (int i = 0; i < nodeCount; i++) {
+			DagNodeImpl node = source.getNodeImplementation(i);
+			if (node != null) {
+				byte[] name = node.getName().getBytes(StandardCharsets.UTF_8);
+				writeBytes(name);
+				offset += name.length;
+			}
+			nameOffsets.putLong(i + 1, offset);
+		}
+		endSection(NODE_NAME_BYTES);
+		finishReservedSection(NODE_NAME_OFFSETS, nameOffsets);
+
+		beginSection(NODE_NAME_ORDER);
+		int[] order = new int[nodeCount];
+		String[] names = new String[nodeCount];
+		int named = 0;
+		for (int i = 0; i < nodeCount; i++) {
+			DagNodeImpl node = source.getNodeImplementation(i);
+			if (node != null) {
+				order[named++] = i;
+				names[i] = node.getName();
+			}
+		}
+		sortByName(order, named, names);
+		for (int i = 0; i < named; i++)
+			writeInt(order[i]);
+		endSection(NODE_NAME_ORDER);
+
+		beginSection(NODE_CATEGORIES);
+		for (int i = 0; i < nodeCount; i++) {
+			DagNodeImpl node = source.getNodeImplementation(i);
+			if (node == null)
+				writeInt(-1);
+			else
+				writeInt(categoryIndexes.get(node.getCategory().getCategoryName()));
+		}
+		endSection(NODE_CATEGORIES);
+
+		beginSection(NODE_WEIGHTS);
+		for (int i = 0; i < nodeCount; i++)
+			writeWeight(source.getNodeImplementation(i));
+		endSection(NODE_WEIGHTS);
+
+		beginSection(NODE_REFERENCE_NOS);
+		for (int i = 0; i < nodeCount; i++)
+			writeReferenceNo(source.getNodeImplementation(i));
+		endSection(NODE_REFERENCE_NOS);
+
+		DagMappedSection dataOffsets = reserveSection(NODE_DATA_OFFSETS, (nodeCount + 1) * 8L);
+		beginSection(NODE_DATA_BYTES);
+		offset = 0;
+		dataOffsets.putLong(0, offset);
+		for (int i = 0; i < nodeCount; i++) {
+			offset += writeData(source.getNodeImplementation(i));
+			dataOffsets.putLong(i + 1, offset);
+		}
+		endSection(NODE_DATA_BYTES);
+		finishReservedSection(NODE_DATA_OFFSETS, dataOffsets);
+	}
+
+	/**
+	 * Write the forward CSR with the relationship attributes, then the reverse CSR as a transpose of the forward one.
+	 * Each reverse edge records the forward position of its relationship.
+	 */
+	private void writeAdjacency(DagRelationshipType type, int first) throws IOException {
+
+		beginSection(first + FROM_OFFSETS);
+		long offset = 0;
+		writeLong(offset);
+		for (int i = 0; i < nodeCount; i++) {
+			for (DagNodeConnector c : connectorsOf(i, type, true))
+				offset++;
+			writeLong(offset);
+		}
+		endSection(first + FROM_OFFSETS);
+		long totalEdges = offset;
+
+		beginSection(first + FROM_TARGETS);
+		for (int i = 0; i < nodeCount; i++) {
+			for (DagNodeConnector c : connectorsOf(i, type, true))
+				writeInt(c.getToNode().getId());
+		}
+		endSection(first + FROM_TARGETS);
+
+		beginSection(first + FROM_WEIGHTS);
+		for (int i = 0; i < nodeCount; i++) {
+			for (DagNodeConnector c : connectorsOf(i, type, true))
+				writeWeight(c.getRelationship(type));
+		}
+		endSection(first + FROM_WEIGHTS);
+
+		beginSection(first + FROM_REFERENCE_NOS);
+		for (int i = 0; i < nodeCount; i++) {
+			for (DagNodeConnector c : connectorsOf(i, type, true))
+				writeReferenceNo(c.getRelationship(type));
+		}
+		endSection(first + FROM_REFERENCE_NOS);
+
+		DagMappedSection dataOffsets = reserveSection(first + FROM_DATA_OFFSETS, (totalEdges + 1) * 8);
+		beginSection(first + FROM_DATA_BYTES);
+		long dataOffset = 0;
+		long edge = 0;
+		dataOffsets.putLong(edge, dataOffset);
+		for (int i = 0; i < nodeCount; i++) {
+			for (DagNodeConnector c : connectorsOf(i, type, true)) {
+				dataOffset += writeData(c.getRelationship(type));
+				dataOffsets.putLong(++edge, dataOffset);
+			}
+		}
+		endSection(first + FROM_DATA_BYTES);
+		finishReservedSection(first + FROM_DATA_OFFSETS, dataOffsets);
+
+		long[] cursors = new long[nodeCount + 1];
+		for (int i = 0; i < nodeCount; i++) {
+			for (DagNodeConnector c : connectorsOf(i, type, true))
+				cursors[c.getToNode().getId() + 1]++;
+		}
+		beginSection(first + TO_OFFSETS);
+		writeLong(0);
+		for (int i = 0; i < nodeCount; i++) {
+			cursors[i + 1] += cursors[i];
+			writeLong(cursors[i + 1]);
+		}
+		endSection(first + TO_OFFSETS);
+
+		DagMappedSection sources = reserveSection(first + TO_SOURCES, totalEdges * 4);
+		DagMappedSection positions = reserveSection(first + TO_POSITIONS, totalEdges * 8);
+		long forwardPosition = 0;
+		for (int i = 0; i < nodeCount; i++) {
+			for (DagNodeConnector c : connectorsOf(i, type, true)) {
+				long slot = cursors[c.getToNode().getId()]++;
+				sources.putInt(slot, i);
+				positions.putLong(slot, forwardPosition++);
+			}
+		}
+		finishReservedSection(first + TO_SOURCES, sources);
+		finishReservedSection(first + TO_POSITIONS, positions);
+	}
+
+	private Iterable<DagNodeConnector> connectorsOf(int nodeId, DagRelationshipType type, boolean isFrom) {
+		DagNodeImpl node = source.getNodeImplementation(nodeId);
+		if (node == null)
+			return Collections.emptyList();
+		if (isFrom)
+			return source.getFromThisNodeConnectors(node, type);
+		else
+			return source.getToThisNodeConnectors(node, type);
+	}
+
+	private void writeWeight(DagItem item) throws IOException {
+		if (source.getWeightMode() == DagWeightMode.FIXED_POINT)
+			writeLong(item == null ? 0 : item.getFixedPointWeight());
+		else
+			writeDouble(item == null ? 0 : item.getWeightAsDouble());
+	}
+
+	private void writeReferenceNo(DagItem item) throws IOException {
+		if (item == null || item.getReferenceNo() == null)
+			writeInt(NULL_REFERENCE_NO);
+		else
+			writeInt(item.getReferenceNo());
+	}
+
+	/**
+	 * @return the number of bytes written.
+	 */
+	private int writeData(DagItem item) throws IOException {
+		if (serializer == null || item == null || item.getData() == null)
+			return 0;
+
+		byte[] data = serializer.serialize(item.getData());
+		writeBytes(data);
+		return data.length;
+	}
+
+	private void writeStrings(int offsetsSection, int bytesSection, List<String> strings) throws IOException {
+		List<byte[]> encoded = new ArrayList<>(strings.size());
+		for (String string : strings)
+			encoded.add(string.getBytes(StandardCharsets.UTF_8));
+
+		beginSection(offsetsSection);
+		long offset = 0;
+		writeLong(offset);
+		for (byte[] bytes : encoded) {
+			offset += bytes.length;
+			writeLong(offset);
+		}
+		endSection(offsetsSection);
+
+		beginSection(bytesSection);
+		for (byte[] bytes : encoded)
+			writeBytes(bytes);
+		endSection(bytesSection);
+	}
+
+	private void writeHeader(int sectionCount) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + sectionCount * DIRECTORY_ENTRY_SIZE);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(nodeCount);
+		header.putInt(categories.size());
+		header.putInt(typeMap.size());
+		header.putInt(source.getWeightMode().ordinal());
+		header.putInt(sectionCount);
+		for (int i = 0; i < sectionCount; i++) {
+			header.putLong(sectionOffsets[i]);
+			header.putLong(sectionLengths[i]);
+			header.putLong(sectionChecksums[i]);
+		}
+		header.flip();
+		long headerPosition = 0;
+		while (header.hasRemaining())
+			headerPosition += channel.write(header, headerPosition);
+	}
+
+	/**
+	 * Sort the node ids by name, the order DagMappedModel binary searches when looking up a node by name.
+	 */
+	private static void sortByName(int[] ids, int count, String[] names) {
+		int[] work = new int[count];
+		for (int width = 1; width < count; width <<= 1) {
+			for (int low = 0; low < count - width; low += width << 1) {
+				int middle = low + width;
+				int high = Math.min(low + (width << 1), count);
+				int left = low;
+				int right = middle;
+				int k = low;
+				while (left < middle && right < high) {
+					if (names[ids[left]].compareTo(names[ids[right]]) <= 0)
+						work[k++] = ids[left++];
+					else
+						work[k++] = ids[right++];
+				}
+				while (left < middle)
+					work[k++] = ids[left++];
+				while (right < high)
+					work[k++] = ids[right++];
+				System.arraycopy(work, low, ids, low, high - low);
+			}
+		}
+	}
+
+	private void beginSection(int section) throws IOException {
+		flush();
+		crc.reset();
+		sectionOffsets[section] = position;
+	}
+
+	private void endSection(int section) throws IOException {
+		flush();
+		sectionLengths[section] = position - sectionOffsets[section];
+		sectionChecksums[section] = crc.getValue();
+	}
+
+	/**
+	 * Reserve a section at the current position to be filled through a mapping.
+	 */
+	private DagMappedSection reserveSection(int section, long length) throws IOException {
+		flush();
+		sectionOffsets[section] = position;
+		sectionLengths[section] = length;
+		DagMappedSection reserved = new DagMappedSection(channel, FileChannel.MapMode.READ_WRITE, position, length);
+		position += length;
+		channel.position(position);
+		return reserved;
+	}
+
+	private void finishReservedSection(int section, DagMappedSection reserved) {
+		reserved.force();
+		sectionChecksums[section] = reserved.checksum();
+	}
+
+	private void writeInt(int value) throws IOException {
+		ensureRemaining(4);
+		buffer.putInt(value);
+		position += 4;
+	}
+
+	private void writeLong(long value) throws IOException {
+		ensureRemaining(8);
+		buffer.putLong(value);
+		position += 8;
+	}
+
+	private void writeDouble(double value) throws IOException {
+		ensureRemaining(8);
+		buffer.putDouble(value);
+		position += 8;
+	}
+
+	private void writeBytes(byte[] bytes) throws IOException {
+		int written = 0;
+		while (written < bytes.length) {
+			ensureRemaining(1);
+			int count = Math.min(bytes.length - written, buffer.remaining());
+			buffer.put(bytes, written, count);
+			written += count;
+		}
+		position += bytes.length;
+	}
+
+	private void ensureRemaining(int bytes) throws IOException {
+		if (buffer.remaining() < bytes)
+			flush();
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		crc.update(buffer.duplicate());
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+}
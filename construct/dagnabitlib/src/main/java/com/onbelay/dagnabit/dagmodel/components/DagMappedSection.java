@@ -0,0 +1,135 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * A region of a file mapped into memory and read as an array of ints, longs, doubles or bytes.
+ * A single MappedByteBuffer is limited to 2GB so the region is mapped in 1GB chunks. 
+ * The chunk size is a multiple of every element size so an element never spans two chunks.
+ *
+ */
+class DagMappedSection {
+
+	private static final int CHUNK_SHIFT = 30;
+	private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+	private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final MappedByteBuffer[] chunks;
+	private final long length;
+
+	DagMappedSection(FileChannel channel, long offset, long length) throws IOException {
+		this(channel, FileChannel.MapMode.READ_ONLY, offset, length);
+	}
+
+	/**
+	 * Map the region with the given mode. Mapping a READ_WRITE region beyond the end of the file extends the file.
+	 */
+	DagMappedSection(FileChannel channel, FileChannel.MapMode mode, long offset, long length) throws IOException {
+		this.length = length;
+
+		chunks = new MappedByteBuffer[(int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT)];
+		for (int i = 0; i < chunks.length; i++) {
+			long start = (long) i << CHUNK_SHIFT;
+			chunks[i] = channel.map(
+					mode,
+					offset + start,
+					Math.min(CHUNK_SIZE, length - start));
+		}
+	}
+
+	/**
+	 * @return the length of the section in bytes.
+	 */
+	long length() {
+		return length;
+	}
+
+	/**
+	 * @return the heap held by the section and its buffers, not the mapped bytes.
+	 */
+	long estimateBytes() {
+		// position, limit, capacity, address and the other fields of each direct buffer
+		return DagFootprintEstimator.object(1, 8)
+				+ DagFootprintEstimator.referenceArray(chunks.length)
+				+ chunks.length * DagFootprintEstimator.object(5, 36);
+	}
+
+	int getInt(long index) {
+		long position = index << 2;
+		return chunks[(int) (position >>> CHUNK_SHIFT)].getInt((int) (position & CHUNK_MASK));
+	}
+
+	long getLong(long index) {
+		long position = index << 3;
+		return chunks[(int) (position >>> CHUNK_SHIFT)].getLong((int) (position & CHUNK_MASK));
+	}
+
+	double getDouble(long index) {
+		long position = index << 3;
+		return chunks[(int) (position >>> CHUNK_SHIFT)].getDouble((int) (position & CHUNK_MASK));
+	}
+
+	void putInt(long index, int value) {
+		long position = index << 2;
+		chunks[(int) (position >>> CHUNK_SHIFT)].putInt((int) (position & CHUNK_MASK), value);
+	}
+
+	void putLong(long index, long value) {
+		long position = index << 3;
+		chunks[(int) (position >>> CHUNK_SHIFT)].putLong((int) (position & CHUNK_MASK), value);
+	}
+
+	/**
+	 * @return the CRC32 of the section's bytes.
+	 */
+	long checksum() {
+		CRC32 crc = new CRC32();
+		for (MappedByteBuffer chunk : chunks)
+			crc.update(chunk.duplicate().clear());
+		return crc.getValue();
+	}
+
+	/**
+	 * Write changes made to a READ_WRITE section to the file.
+	 */
+	void force() {
+		for (MappedByteBuffer chunk : chunks)
+			chunk.force();
+	}
+
+	/**
+	 * Copy bytes starting at position into bytes. The bytes may span two chunks.
+	 * @param position - byte position within the section
+	 * @param bytes
+	 */
+	void getBytes(long position, byte[] bytes) {
+		int copied = 0;
+		while (copied < bytes.length) {
+			MappedByteBuffer chunk = chunks[(int) (position >>> CHUNK_SHIFT)];
+			int chunkPosition = (int) (position & CHUNK_MASK);
+			int count = Math.min(bytes.length - copied, chunk.limit() - chunkPosition);
+			chunk.get(chunkPosition, bytes, copied, count);
+			copied += count;
+			position += count;
+		}
+	}
+
+}
@@ -3,7 +3,9 @@ package com.onbelay.dagnabit.dagmodel.components;
 import com.onbelay.dagnabit.dagmodel.model.DagNode;
 import com.onbelay.dagnabit.dagmodel.model.DagRelationship;
 import com.onbelay.dagnabit.dagmodel.model.DagRelationshipType;
+import com.onbelay.dagnabit.dagmodel.model.DagWeightMode;
 import com.onbelay.dagnabit.dagmodel.model.MinimumSpanningTreeFinder;
+import org.apache.commons.collections4.IterableUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,21 +18,26 @@ import java.util.stream.Collectors;
  * 
  * Optionally filter by toNode
  * Optionally provide a linkType (mstLinkType) that will be used to create subset of the original graph as a DAG with that mstLinkType.
+ * Weights are compared as primitives, as fixed point longs when the model uses the FIXED_POINT DagWeightMode.
  *
  */
 public class DagMinimumSpanningTreeFinder implements MinimumSpanningTreeFinder {
 	private static final Logger logger = LoggerFactory.getLogger(DagMinimumSpanningTreeFinder.class);
 	
-	private DagModelImpl model;
+	private AbstractDagModel model;
 	private DagRelationshipType relationshipType;
 	private DagRelationshipType mstRelationshipType;
 	
 	
 	private Predicate<DagNodeConnector> filterConnectorPredicate = c -> true;
+	
+	private int processedCount;
+	
+	private Comparator<DagRelationshipWrapper> weightComparator;
 
 	
 	protected DagMinimumSpanningTreeFinder(
-			DagModelImpl model, 
+			AbstractDagModel model, 
 			DagRelationshipType relationshipType) {
 		
 		this.model = model;
@@ -38,7 +45,7 @@ public class DagMinimumSpanningTreeFinder implements MinimumSpanningTreeFinder {
 	}
 
 	protected DagMinimumSpanningTreeFinder(
-			DagModelImpl model, 
+			AbstractDagModel model, 
 			DagRelationshipType relationshipType,
 			Predicate<DagNode> filterNodePredicate) {
 		
@@ -50,7 +57,7 @@ public class DagMinimumSpanningTreeFinder implements MinimumSpanningTreeFinder {
 
 	
 	protected DagMinimumSpanningTreeFinder(
-			DagModelImpl model, 
+			AbstractDagModel model, 
 			DagRelationshipType relationshipType,
 			DagRelationshipType mstRelationshipType) {
 		
@@ -60,7 +67,7 @@ public class DagMinimumSpanningTreeFinder implements MinimumSpanningTreeFinder {
 	}
 
 	protected DagMinimumSpanningTreeFinder(
-			DagModelImpl model, 
+			AbstractDagModel model, 
 			DagRelationshipType relationshipType,
 			DagRelationshipType mstRelationshipType,
 			Predicate<DagNode> filterNodePredicate) {
@@ -75,16 +82,21 @@ public class DagMinimumSpanningTreeFinder implements MinimumSpanningTreeFinder {
 
 	public List<DagRelationship> determineMinimumSpanningTree(DagNode startNodeIn) {
 		
-		DagNodeImpl startNode = model.getNodeImplementation(startNodeIn.getName());
+		DagNodeImpl startNode = model.resolveNode(startNodeIn);
+		
+		if (model.getWeightMode() == DagWeightMode.FIXED_POINT)
+			weightComparator = Comparator.comparingLong(c -> c.getRelationship().getFixedPointWeight());
+		else
+			weightComparator = Comparator.comparingDouble(c -> c.getRelationship().getWeightAsDouble());
 		
-		int totalNodes = model.getNodeMap().size();
+		int totalNodes = model.getNodeCount();
 		
-		Map<DagNode, DagNode> processed = new HashMap<DagNode, DagNode>();
-		processed.put(startNode, startNode);
+		BitSet processed = new BitSet(totalNodes);
+		processed.set(startNode.getId());
+		processedCount = 1;
 		
-		List<DagRelationshipWrapper> links = startNode.getFromThisNodeConnectors()
+		List<DagRelationshipWrapper> links = IterableUtils.toList(model.getFromThisNodeConnectors(startNode, relationshipType))
 												.stream()
-												.filter(c -> c.hasRelationship(relationshipType))
 												.filter(filterConnectorPredicate)
 												.map(c -> new DagRelationshipWrapper(c.getRelationship(relationshipType)))
 												.collect(Collectors.toList());
@@ -94,7 +106,7 @@ public class DagMinimumSpanningTreeFinder implements MinimumSpanningTreeFinder {
 			return new ArrayList<DagRelationship>();
 		}
 		
-		DagRelationshipWrapper minLink = Collections.min(links, Comparator.comparingDouble(c -> c.getRelationship().getWeight().doubleValue()) );
+		DagRelationshipWrapper minLink = Collections.min(links, weightComparator);
 		
 		ArrayList<DagRelationship> processedLinks = new ArrayList<DagRelationship>();
 		
@@ -104,8 +116,9 @@ public class DagMinimumSpanningTreeFinder implements MinimumSpanningTreeFinder {
 		if (mstRelationshipType != null)
 			model.addRelationship(startNodeIn, mstRelationshipType.getName(), minLink.getRelationship().getToNode());
 		
-		DagNodeImpl currentNode = model.getNodeImplementation(minLink.getRelationship().getToNode().getName());
-		processed.put(currentNode, currentNode);
+		DagNodeImpl currentNode = model.resolveNode(minLink.getRelationship().getToNode());
+		processed.set(currentNode.getId());
+		processedCount++;
 		
 		
 		followLinks(
@@ -119,80 +132,77 @@ public class DagMinimumSpanningTreeFinder implements MinimumSpanningTreeFinder {
 	}
 	
 	
+	/**
+	 * Add the cheapest relationship from the tree to a node not yet in it, until no such relationship remains or every node is in the tree.
+	 */
 	private void followLinks(
 			int totalNodes,
 			DagNodeImpl startNode,
-			Map<DagNode, DagNode> processed,
+			BitSet processed,
 			List<DagRelationship> processedLinks,
 			List<DagRelationshipWrapper> existingLinks) {
 	
 		DagNodeImpl currentNode = startNode;
-		existingLinks = existingLinks
-									.stream()
-									.filter(c -> c.isAvailable())
-									.collect(Collectors.toList());
-		
-		List<DagRelationshipWrapper> currentLinks = currentNode.getFromThisNodeConnectors()
-				.stream()
-				.filter(c -> c.hasRelationship(relationshipType))
-				.filter(filterConnectorPredicate)
-				.map(c -> new DagRelationshipWrapper(c.getRelationship(relationshipType)))
-				.collect(Collectors.toList());
+		while (true) {
+			existingLinks = existingLinks
+										.stream()
+										.filter(c -> c.isAvailable())
+										.collect(Collectors.toList());
+		
+			List<DagRelationshipWrapper> currentLinks = IterableUtils.toList(model.getFromThisNodeConnectors(currentNode, relationshipType))
+					.stream()
+					.filter(filterConnectorPredicate)
+					.map(c -> new DagRelationshipWrapper(c.getRelationship(relationshipType)))
+					.collect(Collectors.toList());
 
-		existingLinks.addAll(currentLinks);
+			existingLinks.addAll(currentLinks);
 		
-		if (existingLinks.size() == 0) {
-			logger.debug("emptyList");
-			return;
-		}
+			if (existingLinks.size() == 0) {
+				logger.debug("emptyList");
+				return;
+			}
 		
-		boolean found = false;
-		DagRelationshipWrapper minLink = null;
-		while (found == false) {
-			minLink = Collections.min(existingLinks, Comparator.comparingDouble( c -> c.getRelationship().getWeight().doubleValue()) );
-			if (minLink == null) {
-				found = true;
-			} else {	
-				if (processed.containsKey(minLink.getRelationship().getToNode())) {
-					logger.debug("Ignoring: " + minLink.toString());
-					minLink.setWasIgnored(true);
-					existingLinks = existingLinks
-							.stream()
-							.filter(c -> c.isAvailable())
-							.collect(Collectors.toList());
-				if (existingLinks.isEmpty())
-					return;
-				} else {
+			boolean found = false;
+			DagRelationshipWrapper minLink = null;
+			while (found == false) {
+				minLink = Collections.min(existingLinks, weightComparator);
+				if (minLink == null) {
 					found = true;
+				} else {	
+					if (processed.get(minLink.getRelationship().getToNode().getId())) {
+						logger.debug("Ignoring: " + minLink.toString());
+						minLink.setWasIgnored(true);
+						existingLinks = existingLinks
+								.stream()
+								.filter(c -> c.isAvailable())
+								.collect(Collectors.toList());
+					if (existingLinks.isEmpty())
+						return;
+					} else {
+						found = true;
+					}
 				}
 			}
-		}
 		
-		if (minLink == null) {
-			return;
-		} else {
-			logger.debug("processing: " + minLink.toString());
-			minLink.setWasProcessed(true);
-			processedLinks.add(minLink.getRelationship());
+			if (minLink == null) {
+				return;
+			} else {
+				logger.debug("processing: " + minLink.toString());
+				minLink.setWasProcessed(true);
+				processedLinks.add(minLink.getRelationship());
 			
-			if (mstRelationshipType != null)
-				model.addRelationship(minLink.getRelationship().getFromNode(), mstRelationshipType.getName(), minLink.getRelationship().getToNode());
+				if (mstRelationshipType != null)
+					model.addRelationship(minLink.getRelationship().getFromNode(), mstRelationshipType.getName(), minLink.getRelationship().getToNode());
 			
-			processed.put(minLink.getRelationship().getToNode(), minLink.getRelationship().getToNode());
-		}
-		
-		currentNode = model.getNodeImplementation(minLink.getRelationship().getToNode().getName());
+				processed.set(minLink.getRelationship().getToNode().getId());
+				processedCount++;
+			}
 		
-		if (processed.size() >= totalNodes)
-			return;
-		
-		followLinks(
-				totalNodes, 
-				currentNode, 
-				processed,
-				processedLinks,
-				existingLinks);
+			currentNode = model.resolveNode(minLink.getRelationship().getToNode());
 		
+			if (processedCount >= totalNodes)
+				return;
+		}
 
 	}
 	
@@ -0,0 +1,546 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import com.onbelay.dagnabit.dagmodel.exception.DagGraphException;
+import com.onbelay.dagnabit.dagmodel.model.*;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Builds a DagModel from nodes and relationships supplied in bulk (arrays, iterators or streams).
+ *
+ * Relationships are only recorded (as node ids) until build() is called. build() then removes duplicates and creates the
+ * forward and reverse connectors of every node in one sort based pass, sizing every list exactly.
+ * This avoids the per relationship bookkeeping done by DagModelImpl.addRelationship.
+ *
+ * The model returned is a regular DagModelImpl:
+ * <ul>
+ * <li> nodes have the ids returned by addNode, in the order they were added.
+ * <li> relationships using the default relationship type are added as default relationships (see DagModel.addDefaultRelationship)
+ * <li> a relationship that repeats the same from node, relationship type and to node is only added once.
+ * <li> getRelationships() is ordered by from node.
+ * </ul>
+ * A builder can only be built once.
+ */
+public class DagModelBuilder {
+
+	private String modelName;
+	private String defaultRelationshipName;
+	private DagWeightMode weightMode = DagWeightMode.DECIMAL;
+
+	private DagNameDictionary nodeNames = new DagNameDictionary();
+	private ArrayList<String> nodeCategoryNames = new ArrayList<>();
+	private BigDecimal[] nodeWeights;
+	private Integer[] nodeReferenceNos;
+
+	private DagNameDictionary relationshipTypeNames = new DagNameDictionary();
+
+	private int[] fromNodeIds = new int[16];
+	private int[] toNodeIds = new int[16];
+	private int[] relationshipTypes = new int[16];
+	private BigDecimal[] weights;
+	// NaN where no primitive weight was given
+	private double[] primitiveWeights;
+	private int relationshipCount;
+
+	private boolean isBuilt = false;
+
+	public DagModelBuilder(String modelName) {
+		this.modelName = modelName;
+	}
+
+	public DagModelBuilder(String modelName, String defaultRelationshipName) {
+		this.modelName = modelName;
+		this.defaultRelationshipName = defaultRelationshipName;
+	}
+
+	/**
+	 * Set how the built model stores weights. The default is DECIMAL.
+	 * @param weightMode
+	 * @return this builder
+	 */
+	public DagModelBuilder setWeightMode(DagWeightMode weightMode) {
+		checkNotBuilt();
+		this.weightMode = weightMode;
+		return this;
+	}
+
+	DagWeightMode getWeightMode() {
+		return weightMode;
+	}
+
+	/**
+	 * Pre-size the builder when the number of nodes and relationships is known.
+	 * @param totalNodes
+	 * @param totalRelationships
+	 * @return this builder
+	 */
+	public DagModelBuilder ensureCapacity(int totalNodes, int totalRelationships) {
+		checkNotBuilt();
+		nodeNames.ensureCapacity(totalNodes);
+		nodeCategoryNames.ensureCapacity(totalNodes);
+		growRelationships(totalRelationships);
+		return this;
+	}
+
+	/**
+	 * Add a node with the default category. Adding a name a second time returns the existing id.
+	 * @param nodeName
+	 * @return the id the node will have in the model.
+	 */
+	public int addNode(String nodeName) {
+		checkNotBuilt();
+		int id = nodeNames.find(nodeName);
+		if (id >= 0)
+			return id;
+
+		return addNewNode(nodeName, null);
+	}
+
+	/**
+	 * Add a node with a category. Adding a name a second time replaces the category and returns the existing id.
+	 * @param nodeName
+	 * @param categoryName
+	 * @return the id the node will have in the model.
+	 */
+	public int addNode(String nodeName, String categoryName) {
+		checkNotBuilt();
+		int id = nodeNames.find(nodeName);
+		if (id >= 0) {
+			nodeCategoryNames.set(id, categoryName);
+			return id;
+		}
+
+		return addNewNode(nodeName, categoryName);
+	}
+
+	private int addNewNode(String nodeName, String categoryName) {
+		int id = nodeNames.encode(nodeName);
+		nodeCategoryNames.add(categoryName);
+		return id;
+	}
+
+	public DagModelBuilder addNodes(String... names) {
+		nodeCategoryNames.ensureCapacity(nodeNames.size() + names.length);
+		for (String name : names)
+			addNode(name);
+		return this;
+	}
+
+	public DagModelBuilder addNodes(Iterator<String> names) {
+		while (names.hasNext())
+			addNode(names.next());
+		return this;
+	}
+
+	public DagModelBuilder addNodes(Stream<String> names) {
+		return addNodes(names.iterator());
+	}
+
+	/**
+	 * Set the weight of a node added to this builder.
+	 * @param nodeId
+	 * @param weight
+	 * @return this builder
+	 */
+	public DagModelBuilder setNodeWeight(int nodeId, BigDecimal weight) {
+		checkNode(nodeId);
+		if (nodeWeights == null)
+			nodeWeights = new BigDecimal[nodeNames.size()];
+		else if (nodeId >= nodeWeights.length)
+			nodeWeights = Arrays.copyOf(nodeWeights, Math.max(nodeNames.size(), nodeWeights.length * 2));
+
+		nodeWeights[nodeId] = weight;
+		return this;
+	}
+
+	/**
+	 * Set the referenceNo of a node added to this builder.
+	 * @param nodeId
+	 * @param referenceNo
+	 * @return this builder
+	 */
+	public DagModelBuilder setNodeReferenceNo(int nodeId, Integer referenceNo) {
+		checkNode(nodeId);
+		if (nodeReferenceNos == null)
+			nodeReferenceNos = new Integer[nodeNames.size()];
+		else if (nodeId >= nodeReferenceNos.length)
+			nodeReferenceNos = Arrays.copyOf(nodeReferenceNos, Math.max(nodeNames.size(), nodeReferenceNos.length * 2));
+
+		nodeReferenceNos[nodeId] = referenceNo;
+		return this;
+	}
+
+	/**
+	 * Return the id given to the node name.
+	 * @param nodeName
+	 * @return -1 if the node has not been added.
+	 */
+	public int getNodeId(String nodeName) {
+		checkNotBuilt();
+		return nodeNames.find(nodeName);
+	}
+
+	/**
+	 * Add a relationship between two nodes. Nodes not yet added are added with the default category.
+	 * @param fromNodeName
+	 * @param relationshipTypeName
+	 * @param toNodeName
+	 * @return this builder
+	 */
+	public DagModelBuilder addRelationship(
+			String fromNodeName,
+			String relationshipTypeName,
+			String toNodeName) {
+
+		return addRelationship(
+				addNode(fromNodeName),
+				relationshipTypeName,
+				addNode(toNodeName));
+	}
+
+	/**
+	 * Add a relationship between two nodes identified by the ids returned from addNode.
+	 * @param fromNodeId
+	 * @param relationshipTypeName
+	 * @param toNodeId
+	 * @return this builder
+	 */
+	public DagModelBuilder addRelationship(
+			int fromNodeId,
+			String relationshipTypeName,
+			int toNodeId) {
+
+		addRelationship(fromNodeId, typeOrdinal(relationshipTypeName), toNodeId);
+		return this;
+	}
+
+	/**
+	 * Add a weighted relationship between two nodes identified by the ids returned from addNode.
+	 * @param fromNodeId
+	 * @param relationshipTypeName
+	 * @param toNodeId
+	 * @param weight
+	 * @return this builder
+	 */
+	public DagModelBuilder addRelationship(
+			int fromNodeId,
+			String relationshipTypeName,
+			int toNodeId,
+			BigDecimal weight) {
+
+		int position = addRelationship(fromNodeId, typeOrdinal(relationshipTypeName), toNodeId);
+		if (weight != null) {
+			if (weights == null)
+				weights = new BigDecimal[fromNodeIds.length];
+			weights[position] = weight;
+		}
+		return this;
+	}
+
+	/**
+	 * Add a relationship between two nodes identified by the ids returned from addNode, with a weight that is held as a primitive until the model is built.
+	 * This avoids creating a BigDecimal per relationship when the model uses the DOUBLE or FIXED_POINT DagWeightMode.
+	 * @param fromNodeId
+	 * @param relationshipTypeName
+	 * @param toNodeId
+	 * @param weight
+	 * @return this builder
+	 */
+	public DagModelBuilder addRelationship(
+			int fromNodeId,
+			String relationshipTypeName,
+			int toNodeId,
+			double weight) {
+
+		int position = addRelationship(fromNodeId, typeOrdinal(relationshipTypeName), toNodeId);
+		if (primitiveWeights == null) {
+			primitiveWeights = new double[fromNodeIds.length];
+			Arrays.fill(primitiveWeights, Double.NaN);
+		}
+		primitiveWeights[position] = weight;
+		return this;
+	}
+
+	/**
+	 * Add relationships of one type from parallel arrays of node ids.
+	 * @param fromNodeIdArray
+	 * @param relationshipTypeName
+	 * @param toNodeIdArray - same length as the fromNodeIdArray
+	 * @return this builder
+	 */
+	public DagModelBuilder addRelationships(
+			int[] fromNodeIdArray,
+			String relationshipTypeName,
+			int[] toNodeIdArray) {
+
+		if (fromNodeIdArray.length != toNodeIdArray.length)
+			throw new DagGraphException("From and to node arrays must be the same length");
+
+		growRelationships(relationshipCount + fromNodeIdArray.length);
+		int type = typeOrdinal(relationshipTypeName);
+		for (int i = 0; i < fromNodeIdArray.length; i++)
+			addRelationship(fromNodeIdArray[i], type, toNodeIdArray[i]);
+
+		return this;
+	}
+
+	/**
+	 * Add relationships of one type from parallel arrays of node names.
+	 * @param fromNodeNames
+	 * @param relationshipTypeName
+	 * @param toNodeNames - same length as the fromNodeNames
+	 * @return this builder
+	 */
+	public DagModelBuilder addRelationships(
+			String[] fromNodeNames,
+			String relationshipTypeName,
+			String[] toNodeNames) {
+
+		if (fromNodeNames.length != toNodeNames.length)
+			throw new DagGraphException("From and to node arrays must be the same length");
+
+		growRelationships(relationshipCount + fromNodeNames.length);
+		int type = typeOrdinal(relationshipTypeName);
+		for (int i = 0; i < fromNodeNames.length; i++)
+			addRelationship(addNode(fromNodeNames[i]), type, addNode(toNodeNames[i]));
+
+		return this;
+	}
+
+	public DagModelBuilder addRelationships(Iterator<DagRelationshipDefinition> definitions) {
+		while (definitions.hasNext()) {
+			DagRelationshipDefinition definition = definitions.next();
+			addRelationship(
+					addNode(definition.getFromNodeName()),
+					definition.getRelationshipTypeName(),
+					addNode(definition.getToNodeName()),
+					definition.getWeight());
+		}
+		return this;
+	}
+
+	public DagModelBuilder addRelationships(Stream<DagRelationshipDefinition> definitions) {
+		return addRelationships(definitions.iterator());
+	}
+
+	private int typeOrdinal(String relationshipTypeName) {
+		return relationshipTypeNames.encode(relationshipTypeName);
+	}
+
+	private int addRelationship(int fromNodeId, int type, int toNodeId) {
+		checkNode(fromNodeId);
+		checkNode(toNodeId);
+
+		if (relationshipCount == fromNodeIds.length)
+			growRelationships(relationshipCount * 2);
+
+		fromNodeIds[relationshipCount] = fromNodeId;
+		toNodeIds[relationshipCount] = toNodeId;
+		relationshipTypes[relationshipCount] = type;
+		return relationshipCount++;
+	}
+
+	private void growRelationships(int capacity) {
+		checkNotBuilt();
+		if (capacity <= fromNodeIds.length)
+			return;
+
+		fromNodeIds = Arrays.copyOf(fromNodeIds, capacity);
+		toNodeIds = Arrays.copyOf(toNodeIds, capacity);
+		relationshipTypes = Arrays.copyOf(relationshipTypes, capacity);
+		if (weights != null)
+			weights = Arrays.copyOf(weights, capacity);
+		if (primitiveWeights != null) {
+			int previous = primitiveWeights.length;
+			primitiveWeights = Arrays.copyOf(primitiveWeights, capacity);
+			Arrays.fill(primitiveWeights, previous, capacity, Double.NaN);
+		}
+	}
+
+	private void checkNode(int nodeId) {
+		checkNotBuilt();
+		if (nodeId < 0 || nodeId >= nodeNames.size())
+			throw new DagGraphException("No node with id " + nodeId);
+	}
+
+	private void checkNotBuilt() {
+		if (isBuilt)
+			throw new DagGraphException("Model has already been built");
+	}
+
+	/**
+	 * Create the model.
+	 * @return a DagModel holding all the nodes and relationships added.
+	 */
+	public DagModel build() {
+		checkNotBuilt();
+		isBuilt = true;
+
+		DagModelImpl model;
+		if (defaultRelationshipName == null)
+			model = new DagModelImpl(modelName, weightMode);
+		else
+			model = new DagModelImpl(modelName, defaultRelationshipName, weightMode);
+
+		int totalNodes = nodeNames.size();
+		model.ensureNodeCapacity(totalNodes);
+
+		DagNodeImpl[] nodes = new DagNodeImpl[totalNodes];
+		for (int i = 0; i < totalNodes; i++) {
+			String categoryName = nodeCategoryNames.get(i);
+			if (categoryName == null)
+				nodes[i] = (DagNodeImpl) model.addNode(nodeNames.decode(i));
+			else
+				nodes[i] = (DagNodeImpl) model.addNode(nodeNames.decode(i), categoryName);
+
+			if (nodeWeights != null && i < nodeWeights.length && nodeWeights[i] != null)
+				nodes[i].setWeight(nodeWeights[i]);
+			if (nodeReferenceNos != null && i < nodeReferenceNos.length)
+				nodes[i].setReferenceNo(nodeReferenceNos[i]);
+		}
+		nodeNames = null;
+
+		DagRelationshipType defaultRelationshipType = model.getDefaultRelationshipType();
+		DagRelationshipType[] types = new DagRelationshipType[relationshipTypeNames.size()];
+		for (int i = 0; i < types.length; i++)
+			types[i] = model.getRelationshipType(relationshipTypeNames.decode(i));
+
+		// Stable counting sort of the relationships by from node.
+		int[] fromOffsets = new int[totalNodes + 1];
+		for (int e = 0; e < relationshipCount; e++)
+			fromOffsets[fromNodeIds[e] + 1]++;
+		for (int i = 0; i < totalNodes; i++)
+			fromOffsets[i + 1] += fromOffsets[i];
+
+		int[] sorted = new int[relationshipCount];
+		int[] cursor = Arrays.copyOf(fromOffsets, totalNodes);
+		for (int e = 0; e < relationshipCount; e++)
+			sorted[cursor[fromNodeIds[e]]++] = e;
+		cursor = null;
+
+		// One connector per (from, to) pair. stamp[to] holds the from node that last connected to it.
+		int[] stamp = new int[totalNodes];
+		Arrays.fill(stamp, -1);
+		int[] slot = new int[totalNodes];
+
+		DagNodeConnector[] connectors = new DagNodeConnector[relationshipCount];
+		int[] firstRelationship = new int[relationshipCount];
+		// connector holding each relationship, -1 for a duplicate
+		int[] relationshipConnector = new int[relationshipCount];
+		Arrays.fill(relationshipConnector, -1);
+		int[] connectorOffsets = new int[totalNodes + 1];
+		int connectorCount = 0;
+
+		ArrayList<DagRelationship> links = new ArrayList<>(relationshipCount);
+		ArrayList<DagRelationship> defaultLinks = new ArrayList<>();
+
+		for (int f = 0; f < totalNodes; f++) {
+			connectorOffsets[f] = connectorCount;
+
+			for (int p = fromOffsets[f]; p < fromOffsets[f + 1]; p++) {
+				int e = sorted[p];
+				int t = toNodeIds[e];
+				DagRelationshipType type = types[relationshipTypes[e]];
+
+				DagNodeConnector connector;
+				if (stamp[t] == f) {
+					connector = connectors[slot[t]];
+					if (connector.hasRelationship(type))
+						continue;
+					connector.addRelationshipName(type);
+				} else {
+					connector = new DagNodeConnector(nodes[f], type, nodes[t]);
+					stamp[t] = f;
+					slot[t] = connectorCount;
+					connectors[connectorCount] = connector;
+					firstRelationship[connectorCount] = e;
+					connectorCount++;
+				}
+
+				relationshipConnector[e] = slot[t];
+
+				DagRelationshipImpl relationship = connector.getRelationship(type);
+				if (weights != null && weights[e] != null)
+					relationship.setWeight(weights[e]);
+				else if (primitiveWeights != null && Double.isNaN(primitiveWeights[e]) == false)
+					relationship.setWeight(primitiveWeights[e]);
+
+				if (type.equals(defaultRelationshipType))
+					defaultLinks.add(relationship);
+				else
+					links.add(relationship);
+			}
+		}
+		connectorOffsets[totalNodes] = connectorCount;
+		stamp = null;
+		slot = null;
+
+		// Reverse connectors are listed in creation order, the order of the first relationship of each connector.
+		int[] toOffsets = new int[totalNodes + 1];
+		for (int c = 0; c < connectorCount; c++)
+			toOffsets[connectors[c].getToNode().getId() + 1]++;
+		for (int i = 0; i < totalNodes; i++)
+			toOffsets[i + 1] += toOffsets[i];
+
+		DagNodeConnector[] reverseConnectors = new DagNodeConnector[connectorCount];
+		cursor = Arrays.copyOf(toOffsets, totalNodes);
+		for (int e = 0; e < relationshipCount; e++) {
+			int c = relationshipConnector[e];
+			if (c >= 0 && firstRelationship[c] == e)
+				reverseConnectors[cursor[connectors[c].getToNode().getId()]++] = connectors[c];
+		}
+
+		List<DagNodeConnector> forward = Arrays.asList(connectors);
+		List<DagNodeConnector> reverse = Arrays.asList(reverseConnectors);
+		for (int i = 0; i < totalNodes; i++) {
+			nodes[i].installConnectors(
+					forward.subList(connectorOffsets[i], connectorOffsets[i + 1]),
+					reverse.subList(toOffsets[i], toOffsets[i + 1]));
+		}
+
+		// Partitions by relationshipType are in the order the relationships were supplied.
+		for (int f = 0; f < totalNodes; f++) {
+			for (int p = fromOffsets[f]; p < fromOffsets[f + 1]; p++) {
+				int c = relationshipConnector[sorted[p]];
+				if (c >= 0)
+					nodes[f].addFromThisNodePartition(types[relationshipTypes[sorted[p]]], connectors[c]);
+			}
+		}
+		for (int e = 0; e < relationshipCount; e++) {
+			int c = relationshipConnector[e];
+			if (c >= 0)
+				connectors[c].getToNode().addToThisNodePartition(types[relationshipTypes[e]], connectors[c]);
+		}
+
+		links.trimToSize();
+		model.installRelationships(links, defaultLinks);
+
+		fromNodeIds = null;
+		toNodeIds = null;
+		relationshipTypes = null;
+		weights = null;
+		primitiveWeights = null;
+		nodeWeights = null;
+		nodeReferenceNos = null;
+
+		return model;
+	}
+
+}
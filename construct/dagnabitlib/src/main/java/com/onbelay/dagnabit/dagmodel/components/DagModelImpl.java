@@ -17,219 +17,214 @@ package com.onbelay.dagnabit.dagmodel.components;
 
 import com.onbelay.dagnabit.dagmodel.model.*;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.function.BiPredicate;
+import java.util.Spliterator;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Implementation of the DagModel: Container for all Directed Acyclic Graph (DAG) elements such as nodes and links (relationship, edge).
  * See DagModel for documetation.
+ * 
+ * Removing a node or relationship unlinks its connectors at a cost in proportion to the connectors removed.
+ * The slot of a removed node is left as a tombstone, so the ids of the other nodes do not change until compact() is called.
+ * The ids of the nodes in each category are indexed, so category scoped queries visit only the nodes of the category.
+ * Root, leaf and solitary nodes are kept as relationships are added and removed, so finding them costs the size of the result.
+ * Lists of nodes, relationships, relationshipTypes and categories are read only views of the model rather than copies.
  */
-public class DagModelImpl implements DagModel {
+public class DagModelImpl extends AbstractDagModel {
 
-	private String modelName;
-    
     private HashMap<String, DagNodeImpl> nodeMap = new HashMap<String, DagNodeImpl>();
     
+    private ArrayList<DagNodeImpl> nodes = new ArrayList<DagNodeImpl>();
+    
     private Map<String, DagNodeCategory> nodeTypeMap = new HashMap<String, DagNodeCategory>();
     
+    // Ids of the nodes in each category, by category ordinal.
+    private ArrayList<BitSet> categoryNodes = new ArrayList<BitSet>();
+    
     private Map<String, DagRelationshipType> linkTypeMap = new  HashMap<>();
     
-    private List<DagRelationship> links  = new ArrayList<DagRelationship>();
+    private DagRelationshipList links  = new DagRelationshipList();
+    
+    private DagRelationshipList defaultLinks  = new DagRelationshipList();
+    
+    // Ids of removed nodes, left as null in nodes until compacted.
+    private int removedNodes;
     
-    private List<DagRelationship> defaultLinks  = new ArrayList<DagRelationship>();
+    // Positions in nodes of the live nodes, built on indexed access while there are removed nodes and dropped when nodes change.
+    private int[] livePositions;
     
-    private Map<String, DagRelationship> defaultLinkMap = new HashMap<String, DagRelationship>();
+    private DagNodeSet rootNodes = new DagNodeSet();
+    private DagNodeSet leafNodes = new DagNodeSet();
+    private DagNodeSet solitaryNodes = new DagNodeSet();
+    
+    private Map<DagRelationshipType, RelationshipTypeEnds> relationshipTypeEnds = new HashMap<DagRelationshipType, RelationshipTypeEnds>();
+    
+    // Read only views returned to callers in place of copies.
+    private ArrayList<DagRelationshipType> relationshipTypes = new ArrayList<DagRelationshipType>();
+    private List<DagRelationshipType> relationshipTypeView = Collections.unmodifiableList(relationshipTypes);
+    private ArrayList<DagNodeCategory> nodeCategories = new ArrayList<DagNodeCategory>();
+    private List<DagNodeCategory> nodeCategoryView = Collections.unmodifiableList(nodeCategories);
+    private List<DagRelationship> linkView = Collections.unmodifiableList(links);
+    private List<DagNode> nodeView = new NodeView();
 
-	@Override
-	public int compareTo(DagModel in) {
-		return modelName.compareTo(in.getModelName());
-	}
 
 	public DagModelImpl(String modelName) {
-		this.modelName = modelName;
+		super(modelName);
 
-		DagNodeCategory defaultNodeType = new DagNodeCategory(DagNodeCategory.DEFAULT_TYPE);
-		nodeTypeMap.put(DagNodeCategory.DEFAULT_TYPE, defaultNodeType);
+		registerNodeCategory(DagNodeCategory.DEFAULT_TYPE);
 
-		DagRelationshipType defaultLinkType = new DagRelationshipType(DagRelationshipType.DEFAULT_TYPE);
-		linkTypeMap.put(DagRelationshipType.DEFAULT_TYPE, defaultLinkType);
+		registerRelationshipType(DagRelationshipType.DEFAULT_TYPE);
 	}
 
 	public DagModelImpl(String modelName, String defaultRelationshipName) {
-		this.modelName = modelName;
+		super(modelName);
 
-    	DagNodeCategory defaultNodeType = new DagNodeCategory(DagNodeCategory.DEFAULT_TYPE);
-    	nodeTypeMap.put(DagNodeCategory.DEFAULT_TYPE, defaultNodeType);
+    	registerNodeCategory(DagNodeCategory.DEFAULT_TYPE);
     	
-    	DagRelationshipType defaultLinkType = new DagRelationshipType(defaultRelationshipName);
-    	linkTypeMap.put(defaultRelationshipName, defaultLinkType);
+    	registerRelationshipType(defaultRelationshipName);
     }
 
-	@Override
-	public String getModelName() {
-		return modelName;
+	/**
+	 * Create a model that stores weights in the given mode.
+	 * @param modelName
+	 * @param weightMode - see DagWeightMode
+	 */
+	public DagModelImpl(String modelName, DagWeightMode weightMode) {
+		this(modelName, DagRelationshipType.DEFAULT_TYPE, weightMode);
 	}
 
-	@Override
-    public DagNodeNavigator navigate() {
-    	return new DagNodeNavigatorImpl(this);
+	public DagModelImpl(String modelName, String defaultRelationshipName, DagWeightMode weightMode) {
+		super(modelName, weightMode);
+
+    	registerNodeCategory(DagNodeCategory.DEFAULT_TYPE);
+    	
+    	registerRelationshipType(defaultRelationshipName);
     }
+
+    @Override
+	public List<DagNode> getNodes() {
+		return nodeView;
+	}
     
     @Override
-    public LinkAnalyser analyse() {
-    	return new LinkAnalyserImpl(this);
+    public Stream<DagNode> nodeStream() {
+    	if (removedNodes == 0)
+    		return nodes.stream().map(node -> (DagNode) node);
+    	
+    	return nodes.stream().filter(node -> node != null).map(node -> (DagNode) node);
     }
 
+    /**
+     * Return a read only view of the root nodes that follows later changes to the model. Members are in no particular order.
+     */
     @Override
-    public ShortestPathFinder createShortestPathFinder(DagRelationshipType dagRelationshipType) {
-    	return new DagShortestPathRouteFinder(this, dagRelationshipType);
+	public List<DagNode> findRootNodes() {
+    	return rootNodes.view();
     }
     
+    /**
+     * Return a read only view of the leaf nodes that follows later changes to the model. Members are in no particular order.
+     */
     @Override
-    public MinimumSpanningTreeFinder createMinimumSpanningTreeFinder(DagRelationshipType linkType) {
-    	return new DagMinimumSpanningTreeFinder(this, linkType);
+    public List<DagNode> findLeafNodes() {
+    	return leafNodes.view();
     }
     
+    /**
+     * Return a read only view of the solitary nodes that follows later changes to the model. Members are in no particular order.
+     */
     @Override
-    public MinimumSpanningTreeFinder createMinimumSpanningTreeFinder(
-    		DagRelationshipType linkType,
-    		Predicate<DagNode> filterNodePredicate) {
-    	
-    	return new DagMinimumSpanningTreeFinder(
-    			this, 
-    			linkType, 
-    			filterNodePredicate);
+    public List<DagNode> findSolitaryNodes() {
+    	return solitaryNodes.view();
     }
     
+    /**
+     * Return a read only view of the root nodes of the relationshipType that follows later changes to the model.
+     * The first call for a relationshipType visits every node, after that its root and leaf nodes are kept as relationships change.
+     */
     @Override
-    public MinimumSpanningTreeFinder createMinimumSpanningTreeFinder(
-    		DagRelationshipType linkType,
-    		DagRelationshipType mstLinkType) {
-    	
-    	return new DagMinimumSpanningTreeFinder(
-    			this, 
-    			linkType, 
-    			mstLinkType);
+    public List<DagNode> findRootNodes(DagRelationshipType relationshipType) {
+    	RelationshipTypeEnds ends = trackRelationshipType(relationshipType);
+    	return ends == null ? Collections.<DagNode>emptyList() : ends.rootNodes.view();
     }
     
+    /**
+     * Return a read only view of the leaf nodes of the relationshipType that follows later changes to the model.
+     * See findRootNodes(DagRelationshipType).
+     */
     @Override
-    public MinimumSpanningTreeFinder createMinimumSpanningTreeFinder(
-    		DagRelationshipType linkType,
-    		DagRelationshipType mstLinkType,
-    		Predicate<DagNode> filterNodePredicate) {
-    	
-    	return new DagMinimumSpanningTreeFinder(
-    			this, 
-    			linkType, 
-    			mstLinkType, 
-    			filterNodePredicate);
+    public List<DagNode> findLeafNodes(DagRelationshipType relationshipType) {
+    	RelationshipTypeEnds ends = trackRelationshipType(relationshipType);
+    	return ends == null ? Collections.<DagNode>emptyList() : ends.leafNodes.view();
     }
     
-    
-    @Override
-    public LinkRouteFinder createDagLinkRouteFinder(
-    		DagRelationshipType dagRelationshipType) {
-    	
-    	DagLinkRouteFinder navigator = new DagLinkRouteFinder(
-    			this,
-				dagRelationshipType);
-    	
-    	
-    	return navigator;
-    }
-
-    @Override
-    public LinkRouteFinder createDagLinkRouteFinder(
-    		DagRelationshipType dagRelationshipType,
-    		DagContext context,
-    		NodeVisitor nodeVisitor) {
-    	
-    	DagLinkRouteFinder navigator = new DagLinkRouteFinder(
-    			this,
-				dagRelationshipType,
-    			context,
-    			nodeVisitor);
-    	
-    	
-    	return navigator;
-    }
-
-    @Override
-    public LinkRouteFinder createDagLinkRouteFinder(
-    		DagRelationshipType dagRelationshipType,
-    		DagContext context,
-    		NodeVisitor nodeVisitor,
-    		BiPredicate<DagContext, DagNode> endPredicate,
-    		Predicate<DagRelationship> filterLinkPredicate,
-    		Predicate<DagNode> filterNodePredicate) {
-    	
-    	DagLinkRouteFinder navigator = new DagLinkRouteFinder(
-    			this,
-				dagRelationshipType,
-    			context,
-    			nodeVisitor,
-    			endPredicate,
-    			filterLinkPredicate,
-    			filterNodePredicate);
+    private RelationshipTypeEnds trackRelationshipType(DagRelationshipType relationshipType) {
+    	DagRelationshipType registered = linkTypeMap.get(relationshipType.getName());
+    	if (registered == null)
+    		return null;
     	
-    	
-    	return navigator;
+    	RelationshipTypeEnds ends = relationshipTypeEnds.get(registered);
+    	if (ends == null) {
+    		ends = new RelationshipTypeEnds();
+    		for (DagNodeImpl node : getNodeImplementations())
+    			ends.update(node, registered);
+    		relationshipTypeEnds.put(registered, ends);
+    	}
+    	return ends;
     }
-
     
-    @Override
-    public LinkRouteFinder createDagLinkRouteFinder(
-    		DagRelationshipType dagRelationshipType,
-    		DagNodeCategory dagNodeCategory) {
-    	
-    	DagLinkRouteFinder navigator = new DagLinkRouteFinder(
-    			this,
-				dagRelationshipType,
-				dagNodeCategory);
-    	
+    /**
+     * Bring the root, leaf and solitary sets up to date for the nodes of a relationship just added or removed.
+     */
+    private void updateNodeStates(DagNodeImpl fromNode, DagRelationshipType relationshipType, DagNodeImpl toNode) {
+    	updateNodeState(fromNode);
+    	updateNodeState(toNode);
     	
-    	return navigator;
+    	RelationshipTypeEnds ends = relationshipTypeEnds.get(relationshipType);
+    	if (ends != null) {
+    		ends.update(fromNode, relationshipType);
+    		ends.update(toNode, relationshipType);
+    	}
     }
     
-    @Override
-	public List<DagNode> getNodes() {
-		return nodeMap.values().stream().collect(Collectors.toList());
-	}
-
-    @Override
-	public List<DagNode> findRootNodes() {
-    	return nodeMap
-    		.values()
-    		.stream()
-    		.filter(x -> x.isRoot())
-    		.collect(Collectors.toList());
-    	
+    private void updateNodeState(DagNodeImpl node) {
+    	rootNodes.set(node, node.isRoot());
+    	leafNodes.set(node, node.isLeaf());
+    	solitaryNodes.set(node, node.hasNoConnectors());
     }
     
-    @Override
-    public List<DagNode> findLeafNodes() {
-    	return nodeMap
-        		.values()
-        		.stream()
-        		.filter( e-> e.isLeaf())
-        		.collect(Collectors.toList());
-    	
+    private void removeNodeStates(DagNodeImpl node) {
+    	rootNodes.remove(node);
+    	leafNodes.remove(node);
+    	solitaryNodes.remove(node);
+    	for (RelationshipTypeEnds ends : relationshipTypeEnds.values()) {
+    		ends.rootNodes.remove(node);
+    		ends.leafNodes.remove(node);
+    	}
     }
     
-    @Override
-    public List<DagNode> findSolitaryNodes() {
-    	
-    	return nodeMap
-    		.values()
-    		.stream()
-    		.filter( e-> e.hasNoConnectors())
-    		.collect(Collectors.toList());
-    	
+    /**
+     * Rebuild the root, leaf and solitary sets after node ids or connectors have changed outside of add and remove.
+     * Sets by relationshipType are dropped and tracked again when next asked for.
+     */
+    private void rebuildNodeStates() {
+    	rootNodes.clear();
+    	leafNodes.clear();
+    	solitaryNodes.clear();
+    	relationshipTypeEnds.clear();
+    	for (DagNodeImpl node : getNodeImplementations())
+    		updateNodeState(node);
     }
     
     @Override
@@ -241,11 +236,7 @@ public class DagModelImpl implements DagModel {
     
     @Override
     public List<DagRelationshipType> getRelationshipTypes() {
-    	ArrayList<DagRelationshipType> types = new ArrayList<DagRelationshipType>();
-    	for (DagRelationshipType linkType : linkTypeMap.values()) {
-    		types.add(linkType);
-    	}
-    	return types;
+    	return relationshipTypeView;
     }
     
     @Override
@@ -255,11 +246,7 @@ public class DagModelImpl implements DagModel {
     
     @Override
     public List<DagNodeCategory> getNodeCategories() {
-    	ArrayList<DagNodeCategory> types = new ArrayList<DagNodeCategory>();
-    	for (DagNodeCategory nodeType : nodeTypeMap.values()) {
-    		types.add(nodeType);
-    	}
-    	return types;
+    	return nodeCategoryView;
     }
     
     @Override
@@ -268,9 +255,7 @@ public class DagModelImpl implements DagModel {
     			nodeName, 
     			nodeTypeMap.get(DagNodeCategory.DEFAULT_TYPE));
     	
-        nodeMap.put(node.getName(),node);
-        
-        addNodeToNodeTypeMap(node, DagNodeCategory.DEFAULT_TYPE);
+        registerNode(node);
         return node;
     }
     
@@ -278,29 +263,86 @@ public class DagModelImpl implements DagModel {
     public DagNode addNode(String nodeName, String nodeTypeName) {
     	
     	DagNodeCategory nodeType = nodeTypeMap.get(nodeTypeName);
-    	if (nodeType == null) {
-    		nodeType = new DagNodeCategory(nodeTypeName);
-    		nodeTypeMap.put(nodeTypeName, nodeType);
-    	}
+    	if (nodeType == null)
+    		nodeType = registerNodeCategory(nodeTypeName);
     	
     	DagNodeImpl node = new DagNodeImpl(
     			nodeName, 
     			nodeType);
     	
-        nodeMap.put(node.getName(),node);
-        
-        addNodeToNodeTypeMap(node, DagNodeCategory.DEFAULT_TYPE);
+        registerNode(node);
         return node;
     }
     
-    private void addNodeToNodeTypeMap(DagNodeImpl node, String typeName) {
-    	DagNodeCategory nodeType;
-    	if (nodeTypeMap.containsKey(typeName)) {
-    		nodeType= nodeTypeMap.get(typeName);
+    /**
+     * Assign the node the next id and register it. A node replacing one with the same name takes over its id.
+     */
+    private void registerNode(DagNodeImpl node) {
+    	node.setWeightMode(getWeightMode());
+    	DagNodeImpl existing = nodeMap.put(node.getName(), node);
+    	if (existing != null) {
+    		removeNodeStates(existing);
+    		categoryNodes.get(existing.getCategory().getOrdinal()).clear(existing.getId());
+    		node.setId(existing.getId());
+    		nodes.set(existing.getId(), node);
     	} else {
-    		nodeType = new DagNodeCategory(typeName);
-    		nodeTypeMap.put(typeName, nodeType);
+    		node.setId(nodes.size());
+    		nodes.add(node);
+    		livePositions = null;
     	}
+    	categoryNodes.get(node.getCategory().getOrdinal()).set(node.getId());
+    	updateNodeState(node);
+    }
+    
+    /**
+     * Create a category with the next ordinal and register it, along with its index of node ids.
+     */
+    private DagNodeCategory registerNodeCategory(String name) {
+    	DagNodeCategory nodeType = new DagNodeCategory(name, categoryNodes.size());
+    	nodeTypeMap.put(nodeType.getCategoryName(), nodeType);
+    	nodeCategories.add(nodeType);
+    	categoryNodes.add(new BitSet());
+    	return nodeType;
+    }
+    
+    /**
+     * Return the ids of the nodes in the category.
+     * @return null if the category is not registered with this model.
+     */
+    private BitSet getCategoryNodes(DagNodeCategory category) {
+    	DagNodeCategory registered = nodeTypeMap.get(category.getCategoryName());
+    	if (registered == null)
+    		return null;
+    	return categoryNodes.get(registered.getOrdinal());
+    }
+    
+    @Override
+    public List<DagNode> getNodes(DagNodeCategory category) {
+    	return findNodes(category, n -> true);
+    }
+    
+    @Override
+    public List<DagNode> findRootNodes(DagNodeCategory category) {
+    	return findNodes(category, n -> n.isRoot());
+    }
+    
+    @Override
+    public List<DagNode> findLeafNodes(DagNodeCategory category) {
+    	return findNodes(category, n -> n.isLeaf());
+    }
+    
+    private List<DagNode> findNodes(DagNodeCategory category, Predicate<DagNodeImpl> predicate) {
+    	ArrayList<DagNode> found = new ArrayList<DagNode>();
+    	BitSet ids = getCategoryNodes(category);
+    	if (ids == null)
+    		return found;
+    	
+    	for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+    		DagNodeImpl node = nodes.get(id);
+    		if (predicate.test(node))
+    			found.add(node);
+    	}
+    	return found;
     }
 
     @Override
@@ -308,9 +350,51 @@ public class DagModelImpl implements DagModel {
         return nodeMap.get(code);
     }
     
+    @Override
     protected DagNodeImpl getNodeImplementation(String code) {
     	return nodeMap.get(code);
     }
+
+    @Override
+    protected DagNodeImpl getNodeImplementation(int nodeId) {
+    	if (nodeId < 0 || nodeId >= nodes.size())
+    		return null;
+    	return nodes.get(nodeId);
+    }
+
+    @Override
+    protected Collection<DagNodeImpl> getNodeImplementations() {
+    	if (removedNodes == 0)
+    		return nodes;
+    	
+    	ArrayList<DagNodeImpl> live = new ArrayList<DagNodeImpl>(nodes.size() - removedNodes);
+    	for (DagNodeImpl node : nodes) {
+    		if (node != null)
+    			live.add(node);
+    	}
+    	return live;
+    }
+
+    @Override
+    protected int getNodeCount() {
+    	return nodes.size();
+    }
+
+    @Override
+    protected Iterable<DagNodeConnector> getFromThisNodeConnectors(
+    		DagNodeImpl node,
+    		DagRelationshipType relationshipType) {
+
+    	return node.getFromThisNodeConnectors(relationshipType);
+    }
+
+    @Override
+    protected Iterable<DagNodeConnector> getToThisNodeConnectors(
+    		DagNodeImpl node,
+    		DagRelationshipType relationshipType) {
+
+    	return node.getToThisNodeConnectors(relationshipType);
+    }
     
     @Override
     public DagRelationship addDefaultRelationship(
@@ -319,30 +403,22 @@ public class DagModelImpl implements DagModel {
     	
 	   	DagRelationshipType dagRelationshipType = linkTypeMap.get(DagRelationshipType.DEFAULT_TYPE);
 	   	if (dagRelationshipType == null) {
-	   		dagRelationshipType = new DagRelationshipType(DagRelationshipType.DEFAULT_TYPE);
-	   		linkTypeMap.put(DagRelationshipType.DEFAULT_TYPE, dagRelationshipType);
+	   		dagRelationshipType = registerRelationshipType(DagRelationshipType.DEFAULT_TYPE);
 	   	}
 	   	 
-	   	DagNodeImpl fromNode = nodeMap.get(fromNodeIn.getName());
-	   	DagNodeImpl toNode = nodeMap.get(toNodeIn.getName());
+	   	DagNodeImpl fromNode = resolveNode(fromNodeIn);
+	   	DagNodeImpl toNode = resolveNode(toNodeIn);
 	   	
 	   	DagNodeConnector connector = fromNode.addFromThisNodeRelationshipToNode(
 				dagRelationshipType,
 	       		 toNode);
         DagRelationship link = connector.getRelationship(dagRelationshipType);
         defaultLinks.add(link);
-        defaultLinkMap.put(
-        		createLinkKey(
-        				fromNode.getName(), 
-        				toNode.getName()), 
-        		link);
+        updateNodeStates(fromNode, dagRelationshipType, toNode);
         
         return link;
     }
     
-    private String createLinkKey(String fromNodeName, String toNodeName) {
-    	return fromNodeName + ":" + toNodeName;
-    }
     
     
     
@@ -350,16 +426,17 @@ public class DagModelImpl implements DagModel {
 	public DagRelationship addInverse(DagRelationship dagRelationship) {
    	 DagRelationshipType dagRelationshipType = linkTypeMap.get(dagRelationship.getRelationshipType().getName());
    	 
-   	 DagNodeImpl fromNode = nodeMap.get(dagRelationship.getToNode().getName());
-   	 DagNodeImpl toNode = nodeMap.get(dagRelationship.getFromNode().getName());
+   	 DagNodeImpl fromNode = resolveNode(dagRelationship.getToNode());
+   	 DagNodeImpl toNode = resolveNode(dagRelationship.getFromNode());
    	
         DagNodeConnector connector = fromNode.addFromThisNodeRelationshipToNode(
 				dagRelationshipType,
        		 toNode);
         
         DagRelationship link =  connector.getRelationship(dagRelationshipType);
-        link.setWeight(dagRelationship.getWeight());
+        ((DagItemImpl) link).copyWeight(dagRelationship);
         links.add(link);
+        updateNodeStates(fromNode, dagRelationshipType, toNode);
         return link;
 	}
 
@@ -372,12 +449,11 @@ public class DagModelImpl implements DagModel {
     	
     	 DagRelationshipType dagRelationshipType = linkTypeMap.get(relationshipTypeName);
     	 if (dagRelationshipType == null) {
-    		 dagRelationshipType = new DagRelationshipType(relationshipTypeName);
-    		 linkTypeMap.put(relationshipTypeName, dagRelationshipType);
+    		 dagRelationshipType = registerRelationshipType(relationshipTypeName);
     	 }
     	 
-    	 DagNodeImpl fromNode = nodeMap.get(fromNodeIn.getName());
-    	 DagNodeImpl toNode = nodeMap.get(toNodeIn.getName());
+    	 DagNodeImpl fromNode = resolveNode(fromNodeIn);
+    	 DagNodeImpl toNode = resolveNode(toNodeIn);
     	
          DagNodeConnector connector = fromNode.addFromThisNodeRelationshipToNode(
 				 dagRelationshipType,
@@ -385,22 +461,150 @@ public class DagModelImpl implements DagModel {
 
          DagRelationship link =  connector.getRelationship(dagRelationshipType);
          links.add(link);
+         updateNodeStates(fromNode, dagRelationshipType, toNode);
          return link;
     }
     
+    @Override
+    public boolean removeRelationship(DagRelationship relationship) {
+    	DagNodeImpl fromNode = resolveNode(relationship.getFromNode());
+    	DagNodeImpl toNode = resolveNode(relationship.getToNode());
+    	if (fromNode == null || toNode == null)
+    		return false;
+    	
+    	DagRelationshipImpl removed = fromNode.removeFromThisNodeRelationshipToNode(
+    			relationship.getRelationshipType(), 
+    			toNode);
+    	if (removed == null)
+    		return false;
+    	
+    	if (links.removeRelationship(removed) == false)
+    		defaultLinks.removeRelationship(removed);
+    	updateNodeStates(fromNode, removed.getRelationshipType(), toNode);
+    	return true;
+    }
+    
+    /**
+     * Add the name map, node slots, relationship lists, category index and root, leaf and solitary sets to the nodes and connectors.
+     */
+    @Override
+    protected void estimateFootprint(DagFootprintEstimator estimator) {
+    	super.estimateFootprint(estimator);
+    	
+    	long bytes = DagFootprintEstimator.hashMap(nodeMap.size())
+    			+ DagFootprintEstimator.arrayList(nodes.size())
+    			+ DagFootprintEstimator.hashMap(nodeTypeMap.size())
+    			+ DagFootprintEstimator.hashMap(linkTypeMap.size())
+    			+ links.estimateBytes()
+    			+ defaultLinks.estimateBytes()
+    			+ rootNodes.estimateBytes()
+    			+ leafNodes.estimateBytes()
+    			+ solitaryNodes.estimateBytes()
+    			+ DagFootprintEstimator.arrayList(categoryNodes.size());
+    	for (BitSet members : categoryNodes)
+    		bytes += DagFootprintEstimator.bitSet(members);
+    	for (RelationshipTypeEnds ends : relationshipTypeEnds.values())
+    		bytes += ends.rootNodes.estimateBytes() + ends.leafNodes.estimateBytes();
+    	estimator.add(DagFootprint.Part.INDEXES, bytes);
+    }
+    
+    @Override
+    public boolean removeNode(DagNode nodeIn) {
+    	DagNodeImpl node = resolveNode(nodeIn);
+    	if (node == null)
+    		return false;
+    	
+    	for (DagRelationshipImpl relationship : node.unlinkAllConnectors()) {
+    		if (links.removeRelationship(relationship) == false)
+    			defaultLinks.removeRelationship(relationship);
+    		updateNodeStates(
+    				(DagNodeImpl) relationship.getFromNode(), 
+    				relationship.getRelationshipType(), 
+    				(DagNodeImpl) relationship.getToNode());
+    	}
+    	
+    	nodeMap.remove(node.getName());
+    	removeNodeStates(node);
+    	categoryNodes.get(node.getCategory().getOrdinal()).clear(node.getId());
+    	nodes.set(node.getId(), null);
+    	removedNodes++;
+    	livePositions = null;
+    	return true;
+    }
+    
+    /**
+     * Drop the tombstones left by removed nodes and relationships.
+     * The remaining nodes are given consecutive ids in their current order, so the id of a node added after a removed one changes.
+     * Renumbers every node, so it is only run when called, at a time the caller chooses. The relationship lists also compact themselves once half of them are tombstones.
+     */
+    public void compact() {
+    	links.compact();
+    	defaultLinks.compact();
+    	if (removedNodes == 0)
+    		return;
+    	
+    	int live = 0;
+    	for (DagNodeImpl node : nodes) {
+    		if (node != null) {
+    			node.setId(live);
+    			nodes.set(live++, node);
+    		}
+    	}
+    	nodes.subList(live, nodes.size()).clear();
+    	removedNodes = 0;
+    	livePositions = null;
+    	
+    	for (BitSet ids : categoryNodes)
+    		ids.clear();
+    	for (DagNodeImpl node : nodes) {
+    		node.reindexConnectors();
+    		categoryNodes.get(node.getCategory().getOrdinal()).set(node.getId());
+    	}
+    	rebuildNodeStates();
+    }
+    
     @Override
     public DagRelationshipType getRelationshipType(String name) {
     	DagRelationshipType link =  linkTypeMap.get(name);
     	if (link == null) {
-    		link = new DagRelationshipType(name);
-    		linkTypeMap.put(name, link);
+    		link = registerRelationshipType(name);
     	}
     	return link;
     }
     
+    /**
+     * Create a relationshipType with the next ordinal and register it.
+     */
+    private DagRelationshipType registerRelationshipType(String name) {
+    	DagRelationshipType relationshipType = new DagRelationshipType(name, linkTypeMap.size());
+    	linkTypeMap.put(relationshipType.getName(), relationshipType);
+    	relationshipTypes.add(relationshipType);
+    	return relationshipType;
+    }
+    
     @Override
     public List<DagRelationship> getRelationships() {
-    	return links;
+    	return linkView;
+    }
+
+    /**
+     * Pre-size the node structures before adding a known number of nodes.
+     */
+    void ensureNodeCapacity(int totalNodes) {
+    	if (nodeMap.isEmpty())
+    		nodeMap = new HashMap<String, DagNodeImpl>(Math.max(16, (int) (totalNodes / 0.75f) + 1));
+    	nodes.ensureCapacity(totalNodes);
+    }
+    
+    /**
+     * Register relationships whose connectors have already been installed on the nodes. Used by the DagModelBuilder.
+     * @param relationships - relationships added as if by addRelationship
+     * @param defaultRelationships - relationships added as if by addDefaultRelationship
+     */
+    void installRelationships(List<DagRelationship> relationships, List<DagRelationship> defaultRelationships) {
+    	links.addAll(relationships);
+    	defaultLinks.addAll(defaultRelationships);
+    	rebuildNodeStates();
     }
 
     protected Map<String, DagNodeImpl> getNodeMap() {
@@ -414,7 +618,7 @@ public class DagModelImpl implements DagModel {
 	@Override
 	public List<DagRelationship> getRelationships(DagNode fromNode) {
 		
-		return getNodeImplementation(fromNode.getName())
+		return resolveNode(fromNode)
 				.getFromThisNodeConnectors()
 				.stream()
 				.map( c -> c.getRelationship(getDefaultRelationshipType()))
@@ -424,11 +628,77 @@ public class DagModelImpl implements DagModel {
 	@Override
 	public DagRelationship getDefaultRelationship(DagNode fromNode, DagNode toNode) {
 		
-		return defaultLinkMap.get(
-				createLinkKey(
-						fromNode.getName(),
-						toNode.getName()));
+		DagNodeImpl from = resolveNode(fromNode);
+		DagNodeImpl to = resolveNode(toNode);
+		if (from == null || to == null)
+			return null;
+		
+		DagNodeConnector connector = from.findFromThisNodeConnectorTo(to);
+		if (connector == null)
+			return null;
+		
+		return connector.getRelationship(getDefaultRelationshipType());
 	}
     
+    /**
+     * Read only view of the nodes, skipping the ids of removed nodes until they are compacted.
+     * Indexed access after a removal goes through the positions of the live nodes, built once until the nodes next change.
+     */
+    private class NodeView extends AbstractList<DagNode> {
+    	
+    	@Override
+    	public DagNode get(int index) {
+    		if (removedNodes == 0)
+    			return nodes.get(index);
+    		
+    		if (index < 0 || index >= size())
+    			throw new IndexOutOfBoundsException("Index " + index + " size " + size());
+    		if (livePositions == null) {
+    			int[] positions = new int[size()];
+    			int live = 0;
+    			for (int i = 0; i < nodes.size(); i++) {
+    				if (nodes.get(i) != null)
+    					positions[live++] = i;
+    			}
+    			livePositions = positions;
+    		}
+    		return nodes.get(livePositions[index]);
+    	}
+    	
+    	@Override
+    	public int size() {
+    		return nodes.size() - removedNodes;
+    	}
+    	
+    	@Override
+    	public Iterator<DagNode> iterator() {
+    		return nodeStream().iterator();
+    	}
+    	
+    	@Override
+    	public Spliterator<DagNode> spliterator() {
+    		return nodeStream().spliterator();
+    	}
+    	
+    	@Override
+    	public Stream<DagNode> stream() {
+    		return nodeStream();
+    	}
+    }
+    
+    /**
+     * The root and leaf nodes of one relationshipType.
+     */
+    private static class RelationshipTypeEnds {
+    	private final DagNodeSet rootNodes = new DagNodeSet();
+    	private final DagNodeSet leafNodes = new DagNodeSet();
+    	
+    	private void update(DagNodeImpl node, DagRelationshipType relationshipType) {
+    		boolean hasFrom = node.getFromThisNodeConnectors(relationshipType).isEmpty() == false;
+    		boolean hasTo = node.getToThisNodeConnectors(relationshipType).isEmpty() == false;
+    		rootNodes.set(node, hasFrom && hasTo == false);
+    		leafNodes.set(node, hasTo && hasFrom == false);
+    	}
+    }
     
 }
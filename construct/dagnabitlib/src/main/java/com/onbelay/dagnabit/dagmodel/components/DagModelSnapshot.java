@@ -0,0 +1,439 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import com.onbelay.dagnabit.dagmodel.exception.DagGraphException;
+import com.onbelay.dagnabit.dagmodel.model.*;
+
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A read-only DagModel compiled from another model into a compressed sparse row (CSR) layout.
+ * Each relationshipType has a forward (from) and reverse (to) DagAdjacencyIndex, indexed by node id, holding int offsets,
+ * int target ids and primitive weights so traversals touch contiguous arrays.
+ *
+ * The nodes, connectors and relationships are copied from the source model when the snapshot is created, so later changes
+ * to the source, including removals and weights, are not seen. Node ids are those of the source at that time.
+ * The indexes hold the weights as they were copied, weights later set on the snapshot's own relationships are not seen by them.
+ * See DagModel.freeze()
+ */
+public class DagModelSnapshot extends AbstractDagModel {
+
+	private DagNodeImpl[] nodes;
+
+	// nodes without the ids left unused by nodes removed from the source
+	private List<DagNodeImpl> liveNodes;
+
+	private Map<String, DagNodeImpl> nodeMap;
+
+	private Map<String, DagNodeCategory> nodeCategoryMap = new LinkedHashMap<>();
+
+	private Map<String, DagRelationshipType> relationshipTypeMap = new LinkedHashMap<>();
+
+	private DagRelationshipType defaultRelationshipType;
+
+	private List<DagRelationship> relationships;
+
+	private List<DagRelationshipType> relationshipTypes;
+
+	private List<DagNodeCategory> nodeCategories;
+
+	private Map<DagRelationshipType, DagAdjacencyIndex> fromIndexMap = new HashMap<>();
+
+	private Map<DagRelationshipType, DagAdjacencyIndex> toIndexMap = new HashMap<>();
+
+	protected DagModelSnapshot(AbstractDagModel source) {
+		super(source.getModelName(), source.getWeightMode());
+
+		nodes = new DagNodeImpl[source.getNodeCount()];
+		nodeMap = new HashMap<>(nodes.length);
+		List<DagNodeImpl> copies = new ArrayList<>(nodes.length);
+		for (DagNodeImpl node : source.getNodeImplementations()) {
+			DagNodeImpl copy = new DagNodeImpl(node.getName(), node.getCategory());
+			copy.setWeightMode(getWeightMode());
+			copy.copyItem(node);
+			copy.setId(node.getId());
+			nodes[node.getId()] = copy;
+			nodeMap.put(copy.getName(), copy);
+			copies.add(copy);
+		}
+		if (copies.size() == nodes.length)
+			liveNodes = Collections.unmodifiableList(Arrays.asList(nodes));
+		else
+			liveNodes = Collections.unmodifiableList(copies);
+
+		for (DagNodeCategory category : source.getNodeCategories())
+			nodeCategoryMap.put(category.getCategoryName(), category);
+
+		defaultRelationshipType = source.getDefaultRelationshipType();
+		relationshipTypeMap.put(defaultRelationshipType.getName(), defaultRelationshipType);
+		for (DagRelationshipType type : source.getRelationshipTypes())
+			relationshipTypeMap.put(type.getName(), type);
+
+		relationshipTypes = Collections.unmodifiableList(new ArrayList<>(relationshipTypeMap.values()));
+		nodeCategories = Collections.unmodifiableList(new ArrayList<>(nodeCategoryMap.values()));
+
+		for (DagRelationshipType type : relationshipTypeMap.values()) {
+			copyFromConnectors(source, type);
+			copyToConnectors(source, type);
+		}
+
+		ArrayList<DagRelationship> copiedRelationships = new ArrayList<>();
+		for (DagRelationship relationship : source.getRelationships())
+			copiedRelationships.add(findCopy(relationship));
+		relationships = Collections.unmodifiableList(copiedRelationships);
+
+		for (DagRelationshipType type : relationshipTypeMap.values()) {
+			fromIndexMap.put(type, buildIndex(type, true));
+			toIndexMap.put(type, buildIndex(type, false));
+		}
+	}
+
+	/**
+	 * Copy the relationships of the type leaving each node, in the order the source holds them.
+	 * A relationship between two nodes already joined by another type is added to the copy of their connector.
+	 */
+	private void copyFromConnectors(AbstractDagModel source, DagRelationshipType type) {
+		for (DagNodeImpl node : source.getNodeImplementations()) {
+			DagNodeImpl fromNode = nodes[node.getId()];
+			for (DagNodeConnector c : source.getFromThisNodeConnectors(node, type)) {
+				DagNodeImpl toNode = nodes[c.getToNode().getId()];
+
+				DagNodeConnector connector = fromNode.findFromThisNodeConnectorTo(toNode);
+				if (connector == null) {
+					connector = new DagNodeConnector(fromNode, type, toNode);
+					fromNode.addFromThisNodeConnector(connector);
+				} else {
+					connector.addRelationshipName(type);
+					fromNode.addFromThisNodePartition(type, connector);
+				}
+				connector.getRelationship(type).copyItem(c.getRelationship(type));
+			}
+		}
+	}
+
+	/**
+	 * Add the copied connectors carrying the type to the nodes they lead to, in the order the source holds them.
+	 */
+	private void copyToConnectors(AbstractDagModel source, DagRelationshipType type) {
+		for (DagNodeImpl node : source.getNodeImplementations()) {
+			DagNodeImpl toNode = nodes[node.getId()];
+			for (DagNodeConnector c : source.getToThisNodeConnectors(node, type)) {
+				DagNodeConnector connector = nodes[c.getFromNode().getId()].findFromThisNodeConnectorTo(toNode);
+				toNode.addToThisNodeRelationshipFromNode(connector);
+				toNode.addToThisNodePartition(type, connector);
+			}
+		}
+	}
+
+	private DagRelationshipImpl findCopy(DagRelationship relationship) {
+		DagNodeImpl fromNode = nodes[relationship.getFromNode().getId()];
+		DagNodeImpl toNode = nodes[relationship.getToNode().getId()];
+		return fromNode
+				.findFromThisNodeConnectorTo(toNode)
+				.getRelationship(relationship.getRelationshipType());
+	}
+
+	private DagAdjacencyIndex buildIndex(DagRelationshipType type, boolean isFrom) {
+
+		int[] offsets = new int[nodes.length + 1];
+		for (int i = 0; i < nodes.length; i++)
+			offsets[i + 1] = offsets[i] + connectorsOf(nodes[i], type, isFrom).size();
+
+		int total = offsets[nodes.length];
+		int[] targets = new int[total];
+		boolean isFixedPoint = getWeightMode() == DagWeightMode.FIXED_POINT;
+		double[] weights = isFixedPoint ? null : new double[total];
+		long[] fixedPointWeights = isFixedPoint ? new long[total] : null;
+		DagNodeConnector[] connectors = new DagNodeConnector[total];
+
+		int position = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			for (DagNodeConnector c : connectorsOf(nodes[i], type, isFrom)) {
+				targets[position] = isFrom ? c.getToNode().getId() : c.getFromNode().getId();
+				if (isFixedPoint)
+					fixedPointWeights[position] = c.getRelationship(type).getFixedPointWeight();
+				else
+					weights[position] = c.getRelationship(type).getWeightAsDouble();
+				connectors[position] = c;
+				position++;
+			}
+		}
+
+		return new DagAdjacencyIndex(offsets, targets, weights, fixedPointWeights, connectors);
+	}
+
+	private static List<DagNodeConnector> connectorsOf(
+			DagNodeImpl node,
+			DagRelationshipType type,
+			boolean isFrom) {
+
+		if (node == null)
+			return Collections.emptyList();
+		if (isFrom)
+			return node.getFromThisNodeConnectors(type);
+		else
+			return node.getToThisNodeConnectors(type);
+	}
+
+	/**
+	 * Add the CSR indexes, node array, name map and relationship list to the copied nodes.
+	 */
+	@Override
+	protected void estimateFootprint(DagFootprintEstimator estimator) {
+		super.estimateFootprint(estimator);
+
+		long bytes = DagFootprintEstimator.referenceArray(nodes.length)
+				+ DagFootprintEstimator.hashMap(nodeMap.size())
+				+ DagFootprintEstimator.arrayList(relationships.size());
+		if (liveNodes.size() != nodes.length)
+			bytes += DagFootprintEstimator.arrayList(liveNodes.size());
+		for (DagAdjacencyIndex index : fromIndexMap.values())
+			bytes += index.estimateBytes();
+		for (DagAdjacencyIndex index : toIndexMap.values())
+			bytes += index.estimateBytes();
+		estimator.add(DagFootprint.Part.INDEXES, bytes);
+	}
+
+	/**
+	 * Return the forward CSR index for the relationshipType.
+	 * @param relationshipType
+	 * @return null if the relationshipType was not registered when the snapshot was taken.
+	 */
+	public DagAdjacencyIndex getFromIndex(DagRelationshipType relationshipType) {
+		return fromIndexMap.get(relationshipType);
+	}
+
+	/**
+	 * Return the reverse CSR index for the relationshipType.
+	 * @param relationshipType
+	 * @return null if the relationshipType was not registered when the snapshot was taken.
+	 */
+	public DagAdjacencyIndex getToIndex(DagRelationshipType relationshipType) {
+		return toIndexMap.get(relationshipType);
+	}
+
+	@Override
+	public DagModel freeze() {
+		return this;
+	}
+
+	@Override
+	protected DagNodeImpl getNodeImplementation(String name) {
+		return nodeMap.get(name);
+	}
+
+	@Override
+	protected DagNodeImpl getNodeImplementation(int nodeId) {
+		if (nodeId < 0 || nodeId >= nodes.length)
+			return null;
+		return nodes[nodeId];
+	}
+
+	@Override
+	protected Collection<DagNodeImpl> getNodeImplementations() {
+		return liveNodes;
+	}
+
+	@Override
+	protected int getNodeCount() {
+		return nodes.length;
+	}
+
+	@Override
+	protected Iterable<DagNodeConnector> getFromThisNodeConnectors(
+			DagNodeImpl node,
+			DagRelationshipType relationshipType) {
+
+		return connectorsOf(copyOf(node), relationshipType, true);
+	}
+
+	@Override
+	protected Iterable<DagNodeConnector> getToThisNodeConnectors(
+			DagNodeImpl node,
+			DagRelationshipType relationshipType) {
+
+		return connectorsOf(copyOf(node), relationshipType, false);
+	}
+
+	/**
+	 * Return the copy in this snapshot of the node with the id of the node, which may be a node of the source model.
+	 */
+	private DagNodeImpl copyOf(DagNodeImpl node) {
+		if (node == null)
+			return null;
+		return getNodeImplementation(node.getId());
+	}
+
+	private boolean hasConnectors(Map<DagRelationshipType, DagAdjacencyIndex> indexMap, int id) {
+		for (DagAdjacencyIndex index : indexMap.values()) {
+			if (index.getDegree(id) > 0)
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public List<DagNode> getNodes() {
+		return Collections.unmodifiableList(liveNodes);
+	}
+
+	/**
+	 * Return a SIZED and SUBSIZED stream over the positions of the forward index of the relationshipType.
+	 */
+	@Override
+	public Stream<DagRelationship> relationshipStream(DagRelationshipType relationshipType) {
+		DagAdjacencyIndex index = fromIndexMap.get(relationshipType);
+		if (index == null)
+			return Stream.empty();
+
+		DagRelationshipType registered = relationshipTypeMap.get(relationshipType.getName());
+		return IntStream
+				.range(0, index.size())
+				.mapToObj(position -> index.getConnector(position).getRelationship(registered));
+	}
+
+	@Override
+	public List<DagNode> findRootNodes() {
+		ArrayList<DagNode> roots = new ArrayList<>();
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i] == null)
+				continue;
+			if (hasConnectors(fromIndexMap, i) && hasConnectors(toIndexMap, i) == false)
+				roots.add(nodes[i]);
+		}
+		return roots;
+	}
+
+	@Override
+	public List<DagNode> findLeafNodes() {
+		ArrayList<DagNode> leaves = new ArrayList<>();
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i] == null)
+				continue;
+			if (hasConnectors(fromIndexMap, i) == false && hasConnectors(toIndexMap, i))
+				leaves.add(nodes[i]);
+		}
+		return leaves;
+	}
+
+	@Override
+	public List<DagNode> findSolitaryNodes() {
+		ArrayList<DagNode> solitary = new ArrayList<>();
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i] == null)
+				continue;
+			if (hasConnectors(fromIndexMap, i) == false && hasConnectors(toIndexMap, i) == false)
+				solitary.add(nodes[i]);
+		}
+		return solitary;
+	}
+
+	@Override
+	public DagRelationshipType getDefaultRelationshipType() {
+		return defaultRelationshipType;
+	}
+
+	@Override
+	public List<DagRelationshipType> getRelationshipTypes() {
+		return relationshipTypes;
+	}
+
+	@Override
+	public DagNodeCategory getNodeCategory(String category) {
+		return nodeCategoryMap.get(category);
+	}
+
+	@Override
+	public List<DagRelationship> getRelationships() {
+		return relationships;
+	}
+
+	@Override
+	public List<DagRelationship> getRelationships(DagNode fromNode) {
+		ArrayList<DagRelationship> list = new ArrayList<>();
+		for (DagNodeConnector c : connectorsOf(resolveNode(fromNode), defaultRelationshipType, true))
+			list.add(c.getRelationship(defaultRelationshipType));
+
+		return list;
+	}
+
+	@Override
+	public DagRelationship getDefaultRelationship(DagNode fromNode, DagNode toNode) {
+		DagNodeImpl from = resolveNode(fromNode);
+		for (DagNodeConnector c : connectorsOf(from, defaultRelationshipType, true)) {
+			if (c.getToNode().getName().equals(toNode.getName()))
+				return c.getRelationship(defaultRelationshipType);
+		}
+		return null;
+	}
+
+	@Override
+	public List<DagNodeCategory> getNodeCategories() {
+		return nodeCategories;
+	}
+
+	@Override
+	public DagNode getNode(String name) {
+		return nodeMap.get(name);
+	}
+
+	@Override
+	public DagRelationshipType getRelationshipType(String relationshipTypeName) {
+		DagRelationshipType type = relationshipTypeMap.get(relationshipTypeName);
+		if (type == null)
+			return new DagRelationshipType(relationshipTypeName);
+		return type;
+	}
+
+	@Override
+	public DagNode addNode(String nodeName) {
+		throw new DagGraphException("Model snapshot is read-only");
+	}
+
+	@Override
+	public DagNode addNode(String nodeName, String category) {
+		throw new DagGraphException("Model snapshot is read-only");
+	}
+
+	@Override
+	public DagRelationship addDefaultRelationship(DagNode fromNode, DagNode toNode) {
+		throw new DagGraphException("Model snapshot is read-only");
+	}
+
+	@Override
+	public DagRelationship addRelationship(DagNode fromNode, String relationshipTypeName, DagNode toNode) {
+		throw new DagGraphException("Model snapshot is read-only");
+	}
+
+	@Override
+	public DagRelationship addInverse(DagRelationship dagRelationship) {
+		throw new DagGraphException("Model snapshot is read-only");
+	}
+
+	@Override
+	public boolean removeRelationship(DagRelationship relationship) {
+		throw new DagGraphException("Model snapshot is read-only");
+	}
+
+	@Override
+	public boolean removeNode(DagNode node) {
+		throw new DagGraphException("Model snapshot is read-only");
+	}
+
+}
@@ -0,0 +1,90 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A dictionary of names (node and relationshipType names read by the DagModelBuilder) that gives each distinct name a dense int code in the order it was first seen.
+ * Each name is held once, so repeated occurrences of a name share a single String.
+ *
+ */
+public class DagNameDictionary {
+
+	private HashMap<String, Integer> codes = new HashMap<>();
+	private ArrayList<String> names = new ArrayList<>();
+
+	/**
+	 * Pre-size the dictionary when the number of names is known.
+	 * @param totalNames
+	 */
+	public void ensureCapacity(int totalNames) {
+		if (names.isEmpty())
+			codes = new HashMap<>(Math.max(16, (int) (totalNames / 0.75f) + 1));
+
+		names.ensureCapacity(totalNames);
+	}
+
+	/**
+	 * Return the code for the name, adding the name if it is not yet in the dictionary.
+	 * @param name
+	 * @return the code of the name.
+	 */
+	public int encode(String name) {
+		Integer code = codes.get(name);
+		if (code != null)
+			return code;
+
+		code = names.size();
+		codes.put(name, code);
+		names.add(name);
+		return code;
+	}
+
+	/**
+	 * Return the code for the name.
+	 * @param name
+	 * @return -1 if the name is not in the dictionary.
+	 */
+	public int find(String name) {
+		Integer code = codes.get(name);
+		return code == null ? -1 : code;
+	}
+
+	/**
+	 * Return the name with the code.
+	 * @param code
+	 * @return the name
+	 */
+	public String decode(int code) {
+		return names.get(code);
+	}
+
+	/**
+	 * Return the dictionary's instance of the name, adding the name if it is not yet in the dictionary.
+	 * @param name
+	 * @return a String equal to name
+	 */
+	public String intern(String name) {
+		return names.get(encode(name));
+	}
+
+	public int size() {
+		return names.size();
+	}
+
+}
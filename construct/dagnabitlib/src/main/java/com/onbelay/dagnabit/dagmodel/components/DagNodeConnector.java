@@ -15,18 +15,28 @@
  */
 package com.onbelay.dagnabit.dagmodel.components;
 
+import com.onbelay.dagnabit.dagmodel.model.DagFootprint;
 import com.onbelay.dagnabit.dagmodel.model.DagRelationshipType;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
+/**
+ * Joins a fromNode to a toNode and holds one relationship for each relationshipType between them.
+ * 
+ * Relationships are kept in a small array. Those whose relationshipType has an ordinal below 64 (see DagRelationshipType.getOrdinal())
+ * are flagged in a bit mask and held first, in ordinal order, so their position is the count of lower bits set.
+ * Any other relationships follow and are found by a scan.
+ */
 public class DagNodeConnector {
+	
+	private static final DagRelationshipImpl[] NO_RELATIONSHIPS = new DagRelationshipImpl[0];
     
     private DagNodeImpl fromNode;
     private DagNodeImpl toNode;
-    private Map<DagRelationshipType, DagRelationshipImpl> relationshipMap = new HashMap<>();
+    private long typeMask;
+    private DagRelationshipImpl[] relationships = NO_RELATIONSHIPS;
     
     
     public DagNodeConnector(
@@ -34,15 +44,28 @@ public class DagNodeConnector {
     		DagRelationshipType dagRelationshipType,
     		DagNodeImpl toNode) {
         
-        relationshipMap.put(
-				dagRelationshipType,
-        		new DagRelationshipImpl(
-        				fromNode,
-						dagRelationshipType,
-        				toNode));
-        
         this.fromNode = fromNode;
         this.toNode = toNode;
+        addRelationshipName(dagRelationshipType);
+    }
+    
+    private DagNodeConnector(DagNodeConnector source) {
+    	this.fromNode = source.fromNode;
+    	this.toNode = source.toNode;
+    	this.typeMask = source.typeMask;
+    	this.relationships = source.relationships;
+    }
+    
+    /**
+     * Return a copy of this connector that also carries the relationshipType, leaving this connector unchanged.
+     * The copy shares the existing relationships. Used where connectors are replaced rather than changed in place (see DagConcurrentModel).
+     * @param dagRelationshipType
+     * @return a new connector
+     */
+    DagNodeConnector withRelationship(DagRelationshipType dagRelationshipType) {
+    	DagNodeConnector copy = new DagNodeConnector(this);
+    	copy.addRelationshipName(dagRelationshipType);
+    	return copy;
     }
     
     public DagNodeImpl getFromNode() {
@@ -59,29 +82,115 @@ public class DagNodeConnector {
         this.toNode = endNode;
     }
     
-    public Map<DagRelationshipType, DagRelationshipImpl> getRelationships() {
-    	return relationshipMap;
+    /**
+     * Return the relationships held by this connector. 
+     * @return a read only list
+     */
+    public List<DagRelationshipImpl> getRelationships() {
+    	return Collections.unmodifiableList(Arrays.asList(relationships));
     }
     
     public void addRelationships(DagNodeConnector fromSide) {
-    	relationshipMap.putAll(fromSide.getRelationships());
+    	if (fromSide == this)
+    		return;
+    	
+    	for (DagRelationshipImpl relationship : fromSide.relationships) {
+    		if (hasRelationship(relationship.getRelationshipType()) == false)
+    			insert(relationship);
+    	}
     }
 
     public void addRelationshipName(DagRelationshipType dagRelationshipType) {
     	
-    	if (relationshipMap.containsKey(dagRelationshipType) == false) {
-    		DagRelationshipImpl node = 	new DagRelationshipImpl(
+    	if (hasRelationship(dagRelationshipType) == false) {
+    		insert(new DagRelationshipImpl(
     				fromNode,
 					dagRelationshipType,
-    				toNode);
-	        relationshipMap.put(
-					dagRelationshipType,
-	        		node);
+    				toNode));
     	}
     }
     
+    private void insert(DagRelationshipImpl relationship) {
+    	int ordinal = relationship.getRelationshipType().getOrdinal();
+    	
+    	int position;
+    	if (isMasked(ordinal)) {
+    		position = Long.bitCount(typeMask & ((1L << ordinal) - 1));
+    		typeMask |= 1L << ordinal;
+    	} else {
+    		position = relationships.length;
+    	}
+    	
+    	DagRelationshipImpl[] expanded = new DagRelationshipImpl[relationships.length + 1];
+    	System.arraycopy(relationships, 0, expanded, 0, position);
+    	expanded[position] = relationship;
+    	System.arraycopy(relationships, position, expanded, position + 1, relationships.length - position);
+    	relationships = expanded;
+    }
+    
+    /**
+     * Remove the relationship of the relationshipType.
+     * @param dagRelationshipType
+     * @return the relationship removed or null if this connector does not carry the relationshipType.
+     */
+    DagRelationshipImpl removeRelationship(DagRelationshipType dagRelationshipType) {
+    	DagRelationshipImpl relationship = getRelationship(dagRelationshipType);
+    	if (relationship == null)
+    		return null;
+    	
+    	int position = 0;
+    	while (relationships[position] != relationship)
+    		position++;
+    	
+    	int ordinal = relationship.getRelationshipType().getOrdinal();
+    	if (isMasked(ordinal))
+    		typeMask &= ~(1L << ordinal);
+    	
+    	DagRelationshipImpl[] reduced = new DagRelationshipImpl[relationships.length - 1];
+    	System.arraycopy(relationships, 0, reduced, 0, position);
+    	System.arraycopy(relationships, position + 1, reduced, position, reduced.length - position);
+    	relationships = reduced;
+    	return relationship;
+    }
+    
+    /**
+     * Add this connector and its relationships to the estimator.
+     */
+    void estimateFootprint(DagFootprintEstimator estimator) {
+    	estimator.add(
+    			DagFootprint.Part.CONNECTORS,
+    			DagFootprintEstimator.object(3, 8) + (relationships.length == 0 ? 0 : DagFootprintEstimator.referenceArray(relationships.length)));
+    	for (DagRelationshipImpl relationship : relationships)
+    		estimator.addRelationship(relationship);
+    }
+    
+    public boolean hasRelationships() {
+    	return relationships.length > 0;
+    }
+    
+    private static boolean isMasked(int ordinal) {
+    	return ordinal >= 0 && ordinal < Long.SIZE;
+    }
+    
     public DagRelationshipImpl getRelationship(DagRelationshipType linkType) {
-    	return relationshipMap.get(linkType);
+    	if (linkType == null)
+    		return null;
+    	
+    	int ordinal = linkType.getOrdinal();
+    	if (isMasked(ordinal)) {
+    		if ((typeMask & (1L << ordinal)) != 0) {
+    			DagRelationshipImpl relationship = relationships[Long.bitCount(typeMask & ((1L << ordinal) - 1))];
+    			if (relationship.getRelationshipType() == linkType)
+    				return relationship;
+    		}
+    	}
+    	
+    	// A relationshipType not registered with this model, or registered with another one.
+    	for (DagRelationshipImpl relationship : relationships) {
+    		if (relationship.getRelationshipType().equals(linkType))
+    			return relationship;
+    	}
+    	return null;
     }
     
      
@@ -92,12 +201,10 @@ public class DagNodeConnector {
     public String toFullString() {
 		StringBuffer buffer = new StringBuffer(fromNode.getName());
 		buffer.append(" - [");
-		Set<DagRelationshipType> names = relationshipMap.keySet();
-		Iterator<DagRelationshipType> itor = names.iterator();
-		buffer.append(itor.next().getName());
-		while (itor.hasNext()) {
-			buffer.append(", ");
-			buffer.append(itor.next().getName());
+		for (int i = 0; i < relationships.length; i++) {
+			if (i > 0)
+				buffer.append(", ");
+			buffer.append(relationships[i].getRelationshipType().getName());
 		}
 		buffer.append("] -> ");
 		buffer.append(toNode.getName());
@@ -107,7 +214,7 @@ public class DagNodeConnector {
 
 	public boolean hasRelationship(DagRelationshipType traversalRelationship) {
 
-		return relationshipMap.containsKey(traversalRelationship);
+		return getRelationship(traversalRelationship) != null;
 	}
 
 }
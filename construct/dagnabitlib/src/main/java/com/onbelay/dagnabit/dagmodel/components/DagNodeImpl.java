@@ -15,6 +15,7 @@
  */
 package com.onbelay.dagnabit.dagmodel.components;
 
+import com.onbelay.dagnabit.dagmodel.model.DagFootprint;
 import com.onbelay.dagnabit.dagmodel.model.DagNode;
 import com.onbelay.dagnabit.dagmodel.model.DagNodeCategory;
 import com.onbelay.dagnabit.dagmodel.model.DagRelationshipType;
@@ -22,6 +23,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -38,19 +40,35 @@ import java.util.stream.Collectors;
  */
 public class DagNodeImpl extends DagItemImpl implements DagNode {
 	private static final Logger logger = LoggerFactory.getLogger(DagNodeImpl.class);
-
-    private List<DagNodeConnector> fromThisConnectorToNodes = new  ArrayList<DagNodeConnector>();
-    private List<DagNodeConnector> toThisConnectorFromNodes = new  ArrayList<DagNodeConnector>();
+	
+    private DagConnectorList fromThisConnectorToNodes = new DagConnectorList(true);
+    private DagConnectorList toThisConnectorFromNodes = new DagConnectorList(false);
+    
+    private DagConnectorPartitions fromThisConnectorPartitions;
+    private DagConnectorPartitions toThisConnectorPartitions;
     
     private DagNodeCategory nodeCategory;
     
+    private int id = -1;
+    
     public DagNodeImpl(String name, DagNodeCategory nodeCategory) {
        super(name);
         this.nodeCategory = nodeCategory;
     }
 
+    @Override
+    public int getId() {
+    	return id;
+    }
+
+    protected void setId(int id) {
+    	this.id = id;
+    }
+
     public void addFromThisNodeConnector(DagNodeConnector r) {
     	fromThisConnectorToNodes.add(r);
+    	for (DagRelationshipImpl relationship : r.getRelationships())
+    		addFromThisNodePartition(relationship.getRelationshipType(), r);
     }
     
     
@@ -59,7 +77,9 @@ public class DagNodeImpl extends DagItemImpl implements DagNode {
     		DagNodeImpl toNode) {
     	
         DagNodeConnector connector = findFromThisNodeConnectorTo(toNode);
+        boolean isNewRelationship = true;
         if (connector != null) {
+        	isNewRelationship = connector.hasRelationship(dagRelationshipType) == false;
         	connector.addRelationshipName(dagRelationshipType);
         } else {
         	connector = new DagNodeConnector(this, dagRelationshipType, toNode);
@@ -67,7 +87,12 @@ public class DagNodeImpl extends DagItemImpl implements DagNode {
         }
     	toNode.addToThisNodeRelationshipFromNode(connector);
     	
-    	if (toNode.checkForReciprical(this, dagRelationshipType)) {
+    	if (isNewRelationship) {
+    		addFromThisNodePartition(dagRelationshipType, connector);
+    		toNode.addToThisNodePartition(dagRelationshipType, connector);
+    	}
+    	
+    	if (logger.isDebugEnabled() && toNode.checkForReciprical(this, dagRelationshipType)) {
     		logger.debug("reciprical relationship exists " + this.getName() + "-" + dagRelationshipType.getName() + "-" + toNode.getName());
     	}
     			
@@ -85,6 +110,175 @@ public class DagNodeImpl extends DagItemImpl implements DagNode {
         return connector;
     }
     
+    /**
+     * Remove the relationship of the relationshipType from this node to the toNode, on both nodes.
+     * A connector left without relationships is unlinked from both nodes. Takes constant time once the nodes index their connectors.
+     * @param dagRelationshipType
+     * @param toNode
+     * @return the relationship removed or null if there was none.
+     */
+    DagRelationshipImpl removeFromThisNodeRelationshipToNode(
+    		DagRelationshipType dagRelationshipType,
+    		DagNodeImpl toNode) {
+    	
+    	DagNodeConnector connector = findFromThisNodeConnectorTo(toNode);
+    	if (connector == null)
+    		return null;
+    	
+    	DagNodeConnector toSide = toNode.findToThisNodeConnectorFrom(this);
+    	DagRelationshipImpl relationship = connector.removeRelationship(dagRelationshipType);
+    	if (relationship == null)
+    		return null;
+    	
+    	DagRelationshipType removedType = relationship.getRelationshipType();
+    	if (fromThisConnectorPartitions != null)
+    		fromThisConnectorPartitions.remove(removedType, connector);
+    	if (connector.hasRelationships() == false)
+    		unlinkFromThisNodeConnector(connector);
+    	
+    	if (toSide != null) {
+    		if (toSide != connector)
+    			toSide.removeRelationship(removedType);
+    		if (toNode.toThisConnectorPartitions != null && toNode.toThisConnectorPartitions.remove(removedType, connector) == false)
+    			toNode.toThisConnectorPartitions.remove(removedType, toSide);
+    		if (toSide.hasRelationships() == false)
+    			toNode.unlinkToThisNodeConnector(toSide);
+    	}
+    	return relationship;
+    }
+    
+    /**
+     * Unlink every connector of this node from the node at its other end and clear the connectors of this node.
+     * Used when this node is removed, so only the other ends are searched and the time taken is in proportion to the connectors of this node and its neighbours.
+     * @return the relationships from and to this node.
+     */
+    List<DagRelationshipImpl> unlinkAllConnectors() {
+    	List<DagRelationshipImpl> removed = new ArrayList<DagRelationshipImpl>();
+
+    	for (DagNodeConnector connector : fromThisConnectorToNodes) {
+    		removed.addAll(connector.getRelationships());
+    		DagNodeImpl toNode = connector.getToNode();
+    		if (toNode == this)
+    			continue;
+
+    		DagNodeConnector toSide = toNode.findToThisNodeConnectorFrom(this);
+    		if (toSide == null)
+    			continue;
+    		if (toNode.toThisConnectorPartitions != null) {
+    			for (DagRelationshipImpl relationship : toSide.getRelationships()) {
+    				if (toNode.toThisConnectorPartitions.remove(relationship.getRelationshipType(), connector) == false)
+    					toNode.toThisConnectorPartitions.remove(relationship.getRelationshipType(), toSide);
+    			}
+    		}
+    		toNode.unlinkToThisNodeConnector(toSide);
+    	}
+
+    	for (DagNodeConnector connector : toThisConnectorFromNodes) {
+    		DagNodeImpl fromNode = connector.getFromNode();
+    		if (fromNode == this)
+    			continue;
+
+    		DagNodeConnector fromSide = fromNode.findFromThisNodeConnectorTo(this);
+    		if (fromSide == null)
+    			continue;
+    		removed.addAll(fromSide.getRelationships());
+    		if (fromNode.fromThisConnectorPartitions != null) {
+    			for (DagRelationshipImpl relationship : fromSide.getRelationships())
+    				fromNode.fromThisConnectorPartitions.remove(relationship.getRelationshipType(), fromSide);
+    		}
+    		fromNode.unlinkFromThisNodeConnector(fromSide);
+    	}
+
+    	fromThisConnectorToNodes = new DagConnectorList(true);
+    	toThisConnectorFromNodes = new DagConnectorList(false);
+    	fromThisConnectorPartitions = null;
+    	toThisConnectorPartitions = null;
+    	return removed;
+    }
+
+    private void unlinkFromThisNodeConnector(DagNodeConnector connector) {
+    	fromThisConnectorToNodes.removeConnector(connector);
+    }
+    
+    private void unlinkToThisNodeConnector(DagNodeConnector connector) {
+    	toThisConnectorFromNodes.removeConnector(connector);
+    }
+    
+    /**
+     * Rebuild the indexes keyed by node id after the ids of connected nodes have changed (see DagModelImpl.compact()).
+     */
+    void reindexConnectors() {
+    	fromThisConnectorToNodes.reindex();
+    	toThisConnectorFromNodes.reindex();
+    	if (fromThisConnectorPartitions != null)
+    		fromThisConnectorPartitions.reindex();
+    	if (toThisConnectorPartitions != null)
+    		toThisConnectorPartitions.reindex();
+    }
+    
+    /**
+     * Replace the connectors of this node with copies of fully built lists. Used by the DagModelBuilder.
+     * @param fromThisConnectors - connectors from this node, not shared with any other node on the from side.
+     * @param toThisConnectors - connectors to this node.
+     */
+    void installConnectors(
+    		List<DagNodeConnector> fromThisConnectors,
+    		List<DagNodeConnector> toThisConnectors) {
+    	
+    	fromThisConnectorToNodes = new DagConnectorList(true, fromThisConnectors);
+    	toThisConnectorFromNodes = new DagConnectorList(false, toThisConnectors);
+    	fromThisConnectorPartitions = null;
+    	toThisConnectorPartitions = null;
+    }
+    
+    /**
+     * Add the connector to the partition of connectors from this node carrying the relationshipType.
+     */
+    void addFromThisNodePartition(DagRelationshipType relationshipType, DagNodeConnector connector) {
+    	if (fromThisConnectorPartitions == null)
+    		fromThisConnectorPartitions = new DagConnectorPartitions(true);
+    	fromThisConnectorPartitions.add(relationshipType, connector);
+    }
+    
+    /**
+     * Add the connector to the partition of connectors to this node carrying the relationshipType.
+     */
+    void addToThisNodePartition(DagRelationshipType relationshipType, DagNodeConnector connector) {
+    	if (toThisConnectorPartitions == null)
+    		toThisConnectorPartitions = new DagConnectorPartitions(false);
+    	toThisConnectorPartitions.add(relationshipType, connector);
+    }
+    
+    /**
+     * Add this node, its connector lists, indexes and partitions, and the connectors on both sides to the estimator.
+     */
+    @Override
+    void estimateFootprint(DagFootprintEstimator estimator) {
+    	estimator.add(DagFootprint.Part.NODES, shallowBytes());
+    	super.estimateFootprint(estimator);
+    	
+    	estimator.add(
+    			DagFootprint.Part.CONNECTORS,
+    			fromThisConnectorToNodes.estimateBytes() + toThisConnectorFromNodes.estimateBytes());
+    	if (fromThisConnectorPartitions != null)
+    		estimator.add(DagFootprint.Part.INDEXES, fromThisConnectorPartitions.estimateBytes());
+    	if (toThisConnectorPartitions != null)
+    		estimator.add(DagFootprint.Part.INDEXES, toThisConnectorPartitions.estimateBytes());
+    	
+    	for (DagNodeConnector connector : fromThisConnectorToNodes)
+    		estimator.addConnector(connector);
+    	for (DagNodeConnector connector : toThisConnectorFromNodes)
+    		estimator.addConnector(connector);
+    }
+    
+    /**
+     * Return the size of the node object itself.
+     */
+    long shallowBytes() {
+    	// name, weightMode, weight, attributes, the connector lists, indexes and partitions, nodeCategory, primitiveWeight and id
+    	return DagFootprintEstimator.object(11, 12);
+    }
+    
     public boolean isLeaf() {
     	return (hasFromThisNodeConnectors() == false && hasToThisNodeConnectors());
     }
@@ -121,36 +315,20 @@ public class DagNodeImpl extends DagItemImpl implements DagNode {
     }
 
     public boolean hasToConnectorFrom(DagNodeImpl fromNode) {
-        for (DagNodeConnector r: toThisConnectorFromNodes) {
-            if (r.getFromNode().equals(fromNode))
-                return true;
-        }
-        return false;
+        return findToThisNodeConnectorFrom(fromNode) != null;
     }
 
     public boolean hasFromConnectorTo(DagNodeImpl toNode) {
-        for (DagNodeConnector r: fromThisConnectorToNodes) {
-            if (r.getToNode().equals(toNode))
-                return true;
-        }
-        return false;
+        return findFromThisNodeConnectorTo(toNode) != null;
     }
 
 
     public DagNodeConnector findFromThisNodeConnectorTo(DagNodeImpl toNode) {
-        for (DagNodeConnector r: fromThisConnectorToNodes) {
-            if (r.getToNode().equals(toNode))
-                return r;
-        }
-        return null;
+    	return fromThisConnectorToNodes.find(toNode.getId());
     }
 
     public DagNodeConnector findToThisNodeConnectorFrom(DagNodeImpl fromNode) {
-        for (DagNodeConnector r: toThisConnectorFromNodes) {
-            if (r.getFromNode().equals(fromNode))
-                return r;
-        }
-        return null;
+    	return toThisConnectorFromNodes.find(fromNode.getId());
     }
 
     public List<DagNodeConnector> getFromThisNodeConnectors() {
@@ -171,8 +349,30 @@ public class DagNodeImpl extends DagItemImpl implements DagNode {
         return toThisConnectorFromNodes;
     }
     
+    /**
+     * Return the connectors from this node that carry the relationshipType, in the order the relationships were added until one is removed (see DagConnectorList).
+     * @param relationshipType
+     * @return
+     */
+    public List<DagNodeConnector> getFromThisNodeConnectors(DagRelationshipType relationshipType) {
+    	if (fromThisConnectorPartitions == null)
+    		return Collections.emptyList();
+    	return fromThisConnectorPartitions.get(relationshipType);
+    }
+    
+    /**
+     * Return the connectors to this node that carry the relationshipType, in the order the relationships were added until one is removed (see DagConnectorList).
+     * @param relationshipType
+     * @return
+     */
+    public List<DagNodeConnector> getToThisNodeConnectors(DagRelationshipType relationshipType) {
+    	if (toThisConnectorPartitions == null)
+    		return Collections.emptyList();
+    	return toThisConnectorPartitions.get(relationshipType);
+    }
+    
 	public int compareTo(DagNode c2) {
-		return name.compareTo(c2.getName());
+		return getName().compareTo(c2.getName());
 	}
 
 
@@ -17,11 +17,21 @@ package com.onbelay.dagnabit.dagmodel.components;
 
 import com.onbelay.dagnabit.dagmodel.exception.DagGraphException;
 import com.onbelay.dagnabit.dagmodel.model.*;
+import com.onbelay.dagnabit.enums.TransactionErrorCode;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
 import java.util.function.BiPredicate;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Concrete implementation of the DagNodeNavigator interface.
@@ -38,21 +48,28 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 
 	private BiPredicate<DagContext, DagNode> endPredicate;
 
-	private Predicate<DagNode> filterNodePredicate = c -> true;
+	private Predicate<DagNode> filterNodePredicate = DagLinkRouteFinder.ALL_NODES;
 
-	private Predicate<DagRelationship> filterLinkPredicate = c -> true;
+	private Predicate<DagRelationship> filterLinkPredicate = DagLinkRouteFinder.ALL_RELATIONSHIPS;
 
-	private NodeVisitor nodeVisitor = (c, n, l, e) -> { ; } ;
+	private NodeVisitor nodeVisitor = DagLinkRouteFinder.NO_VISITOR;
 
 	private Comparator<DagNode> nodeComparator = null;
 	
 	private boolean noBacktracking = true;
 	
-	private DagModelImpl model;
+	private int maxDepth = Integer.MAX_VALUE;
+	
+	// runs the search of each starting node as a task if set
+	private ExecutorService executor;
+	
+	private Supplier<DagContext> contextSupplier;
+	
+	private AbstractDagModel model;
 	
 	private TraversalDirectionType traversalDirectionType = TraversalDirectionType.TRAVERSE_DEPTH_FIRST;
 	
-	public DagNodeNavigatorImpl(DagModelImpl model) {
+	public DagNodeNavigatorImpl(AbstractDagModel model) {
 		super();
 		this.model = model;
 	}
@@ -62,14 +79,21 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 		this.startingNodes.clear();
 		
 		for (DagNode n : fromNodes)
-			startingNodes.add(model.getNodeImplementation(n.getName()));
+			startingNodes.add(model.resolveNode(n));
 		return this;
 	}
 
 	
 	@Override
 	public DagNodeNavigator from(DagNode fromNodeIn) {
-		startingNodes.add(model.getNodeImplementation(fromNodeIn.getName()));
+		startingNodes.add(model.resolveNode(fromNodeIn));
+		
+		return this;
+	}
+
+	@Override
+	public DagNodeNavigator from(int fromNodeId) {
+		startingNodes.add(model.getRequiredNodeImplementation(fromNodeId));
 		
 		return this;
 	}
@@ -83,6 +107,36 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 	}
 
 
+	@Override
+	public DagNodeNavigator parallel() {
+		return parallel(ForkJoinPool.commonPool());
+	}
+
+	@Override
+	public DagNodeNavigator parallel(ExecutorService executor) {
+		if (executor == null)
+			throw new DagGraphException("An executor is required");
+		
+		this.executor = executor;
+		return this;
+	}
+
+	@Override
+	public DagNodeNavigator contextPerTask(Supplier<DagContext> contextSupplier) {
+		this.contextSupplier = contextSupplier;
+		return this;
+	}
+
+	@Override
+	public DagNodeNavigator maxDepth(int maxDepth) {
+		if (maxDepth < 0)
+			throw new DagGraphException("maxDepth must not be negative: " + maxDepth);
+		
+		this.maxDepth = maxDepth;
+		return this;
+	}
+
+
 	@Override
 	public DagNodeNavigator by(DagRelationshipType relationshipType) {
 		this.relationshipType = relationshipType;
@@ -109,7 +163,7 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 
 	@Override
 	public DagNodeNavigator forOnly(DagNodeCategory nodeCategory) {
-		this.filterNodePredicate = c -> c.getCategory().equals(nodeCategory);
+		this.filterNodePredicate = model.categoryFilter(nodeCategory);
 		return this;
 	}
 	
@@ -145,9 +199,10 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 	public DagNodeNavigator reset() {
 		this.nodeComparator = null;
 		this.endPredicate = null;
-		this.filterLinkPredicate = c -> true;
-		this.filterNodePredicate = c -> true;
-		this.nodeVisitor = (c, n, l, e) -> { ; } ;
+		this.filterLinkPredicate = DagLinkRouteFinder.ALL_RELATIONSHIPS;
+		this.filterNodePredicate = DagLinkRouteFinder.ALL_NODES;
+		this.nodeVisitor = DagLinkRouteFinder.NO_VISITOR;
+		this.maxDepth = Integer.MAX_VALUE;
 		return this;
 	}
 	
@@ -157,26 +212,21 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 		
 		HashSet<DagNode> endingNodes = new HashSet<>();
 		
-		 startingNodes.forEach( startNode -> {
-			 
-		 	endingNodes.addAll(startNode
-				.getFromThisNodeConnectors()
-				.stream()
-				.filter(c -> c.hasRelationship(model.getDefaultRelationshipType()) && filterNodePredicate.test(c.getToNode()) && filterLinkPredicate.test(c.getRelationship(relationshipType)))
-				.map(d -> d.getToNode())
-				.collect(Collectors.toList()));
-		});
+		DagRelationshipType defaultRelationshipType = model.getDefaultRelationshipType();
+		
+		for (DagNodeImpl startNode : startingNodes) {
+			for (DagNodeConnector c : model.getFromThisNodeConnectors(startNode, defaultRelationshipType)) {
+				if (filterNodePredicate.test(c.getToNode()) && filterLinkPredicate.test(c.getRelationship(relationshipType)))
+					endingNodes.add(c.getToNode());
+			}
+		}
 
-		 startingNodes.forEach( startNode -> {
-			 
-			 	endingNodes.addAll(startNode
-					.getToThisNodeConnectors()
-					.stream()
-					.filter(c -> c.hasRelationship(model.getDefaultRelationshipType()) && filterNodePredicate.test(c.getToNode()) && filterLinkPredicate.test(c.getRelationship(relationshipType)))
-					.map(d -> d.getToNode())
-					.collect(Collectors.toList()));
-			});
- 
+		for (DagNodeImpl startNode : startingNodes) {
+			for (DagNodeConnector c : model.getToThisNodeConnectors(startNode, defaultRelationshipType)) {
+				if (filterNodePredicate.test(c.getToNode()) && filterLinkPredicate.test(c.getRelationship(relationshipType)))
+					endingNodes.add(c.getToNode());
+			}
+		}
 		 
 		if (nodeComparator == null)
 			return endingNodes.stream().collect(Collectors.toList());
@@ -203,16 +253,7 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 			return new ArrayList<DagNode>();
 		
 		ArrayList<DagNode> endingNodes = new ArrayList<>();
-		
-		 startingNodes.forEach( startNode -> {
-			 
-		 	endingNodes.addAll(startNode
-				.getFromThisNodeConnectors()
-				.stream()
-				.filter(c -> c.hasRelationship(relationshipType) && filterNodePredicate.test(c.getToNode()) && filterLinkPredicate.test(c.getRelationship(relationshipType)))
-				.map(d -> d.getToNode())
-				.collect(Collectors.toList()));
-		});
+		endingNodes.addAll(collectChildren());
 		
 		if (nodeComparator == null)
 			return endingNodes;
@@ -227,16 +268,8 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 			return new ArrayList<DagNode>();
 		
 		ArrayList<DagNode> endingNodes = new ArrayList<>();
-		
-		 startingNodes.forEach( startNode -> {
-			 
-		 	endingNodes.addAll(startNode
-				.getToThisNodeConnectors()
-				.stream()
-				.filter(c -> c.hasRelationship(relationshipType) && filterNodePredicate.test(c.getFromNode()) && filterLinkPredicate.test(c.getRelationship(relationshipType)))
-				.map(d -> d.getFromNode())
-				.collect(Collectors.toList()));
-		 });
+		endingNodes.addAll(collectParents());
+
 		if (nodeComparator == null)
 			return endingNodes;
 		else
@@ -248,17 +281,7 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 		if (startingNodes.isEmpty())
 			return this;
 		
-		ArrayList<DagNodeImpl> endingNodes = new ArrayList<>();
-		
-		startingNodes.forEach( startNode -> {
-			 
-		 	endingNodes.addAll(startNode
-				.getFromThisNodeConnectors()
-				.stream()
-				.filter(c -> c.hasRelationship(relationshipType) && filterNodePredicate.test(c.getToNode()) && filterLinkPredicate.test(c.getRelationship(relationshipType)))
-				.map(d -> d.getToNode())
-				.collect(Collectors.toList()));
-		});
+		List<DagNodeImpl> endingNodes = collectChildren();
 		
 		if (nodeComparator == null)
 			startingNodes = endingNodes;
@@ -274,17 +297,8 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 		if (startingNodes.isEmpty())
 			return this;
 		
-		ArrayList<DagNodeImpl> endingNodes = new ArrayList<>();
-		
-		startingNodes.forEach( startNode -> {
-			 
-		 	endingNodes.addAll(startNode
-				.getToThisNodeConnectors()
-				.stream()
-				.filter(c -> filterNodePredicate.test(c.getFromNode()) && filterLinkPredicate.test(c.getRelationship(relationshipType)))
-				.map(d -> d.getFromNode())
-				.collect(Collectors.toList()));
-		});
+		List<DagNodeImpl> endingNodes = collectParents();
+
 		if (nodeComparator == null)
 			startingNodes = endingNodes;
 		else
@@ -294,16 +308,36 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 
 	}
 	
+	private List<DagNodeImpl> collectChildren() {
+		ArrayList<DagNodeImpl> endingNodes = new ArrayList<>();
+		
+		for (DagNodeImpl startNode : startingNodes) {
+			for (DagNodeConnector c : model.getFromThisNodeConnectors(startNode, relationshipType)) {
+				if (filterNodePredicate.test(c.getToNode()) && filterLinkPredicate.test(c.getRelationship(relationshipType)))
+					endingNodes.add(c.getToNode());
+			}
+		}
+		return endingNodes;
+	}
+
+	private List<DagNodeImpl> collectParents() {
+		ArrayList<DagNodeImpl> endingNodes = new ArrayList<>();
+		
+		for (DagNodeImpl startNode : startingNodes) {
+			for (DagNodeConnector c : model.getToThisNodeConnectors(startNode, relationshipType)) {
+				if (filterNodePredicate.test(c.getFromNode()) && filterLinkPredicate.test(c.getRelationship(relationshipType)))
+					endingNodes.add(c.getFromNode());
+			}
+		}
+		return endingNodes;
+	}
 
 	@Override
 	public DagNodeNavigator visitBy(DagRelationshipType linkType, NodeVisitor visitor) {
 		
-		startingNodes.forEach( startNode -> {
+		for (DagNodeImpl startNode : startingNodes) {
 			 
-			for (DagNodeConnector c : startNode.getFromThisNodeConnectors()) { 
-				
-				if (c.hasRelationship(linkType) == false)
-					continue;
+			for (DagNodeConnector c : model.getFromThisNodeConnectors(startNode, linkType)) { 
 				
 				if (filterNodePredicate.test(c.getFromNode()) == false)
 					continue;
@@ -313,7 +347,7 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 				
 				visitor.accept(context, startNode, c.getRelationship(linkType), c.getToNode());
 			}
-		});
+		}
 
 		return this;
 	}
@@ -339,15 +373,72 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 	
 	
 	private LinkRouteFinder newLinkRouteFinder() {
+		return newLinkRouteFinder(context);
+	}
+	
+	private LinkRouteFinder newLinkRouteFinder(DagContext finderContext) {
 			return model.createDagLinkRouteFinder(
 					relationshipType,
-				context,
+				finderContext,
 				nodeVisitor,
 				endPredicate,
 				filterLinkPredicate,
 				filterNodePredicate);
 	}
 	
+	/**
+	 * Run the search from each starting node and return the results of all the searches, in the order of the starting nodes.
+	 * In parallel mode each search is a task on the executor. The searches share one route finder, which holds no state of its own
+	 * between searches, unless a contextSupplier is given, in which case each search has a route finder with its own context.
+	 */
+	private <T> List<T> searchEach(BiFunction<LinkRouteFinder, DagNodeImpl, List<T>> search) {
+		LinkRouteFinder sharedFinder = newLinkRouteFinder();
+		
+		List<Callable<List<T>>> tasks = new ArrayList<Callable<List<T>>>(startingNodes.size());
+		for (DagNodeImpl startNode : startingNodes) {
+			tasks.add(() -> search.apply(
+					contextSupplier == null ? sharedFinder : newLinkRouteFinder(contextSupplier.get()),
+					startNode));
+		}
+		
+		List<T> results = new ArrayList<T>();
+		try {
+			if (executor == null) {
+				for (Callable<List<T>> task : tasks)
+					results.addAll(task.call());
+			} else {
+				for (Future<List<T>> future : executor.invokeAll(tasks))
+					results.addAll(future.get());
+			}
+		} catch (ExecutionException e) {
+			Throwable thrown = thrownBy(e);
+			if (thrown instanceof RuntimeException)
+				throw (RuntimeException) thrown;
+			if (thrown instanceof Error)
+				throw (Error) thrown;
+			throw new DagGraphException(TransactionErrorCode.SYSTEM_FAILURE, "Unable to search from the starting nodes", thrown);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DagGraphException(TransactionErrorCode.SYSTEM_FAILURE, "Interrupted while searching", e);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new DagGraphException(TransactionErrorCode.SYSTEM_FAILURE, "Unable to search from the starting nodes", e);
+		}
+		return results;
+	}
+	
+	/**
+	 * Return the exception thrown by a search. A ForkJoinPool may rethrow an exception from another thread
+	 * as a new one of the same class caused by the original, which is returned instead.
+	 */
+	private static Throwable thrownBy(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause != null && cause.getCause() != null && cause.getCause().getClass() == cause.getClass())
+			return cause.getCause();
+		return cause;
+	}
+	
 	
 	
 
@@ -356,13 +447,7 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 		if (startingNodes.isEmpty())
 			throw new DagGraphException("Cycles require at least one starting node");
 		
-		ArrayList<DagNodePath> cycles = new ArrayList<DagNodePath>();
-		for (DagNodeImpl startNode : startingNodes) {
-			LinkRouteFinder routeFinder = newLinkRouteFinder();
-			NodeSearchResult result = routeFinder.discoverFromRelationships(startNode);
-			cycles.addAll(result.getCycles());
-		}
-		return cycles;
+		return searchEach((routeFinder, startNode) -> routeFinder.discoverFromRelationships(startNode).getCycles());
 	}
 
 	@Override
@@ -371,14 +456,7 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 		if (startingNodes.isEmpty() )
 			throw new DagGraphException("No startingNodes specified");
 		
-		LinkRouteFinder routeFinder = newLinkRouteFinder();
-		
-		List<DagNodePath> paths = new ArrayList<>();
-			
-		for (DagNodeImpl startNode : startingNodes)
-			paths.addAll(
-					routeFinder.findAllPathsFrom(startNode));
-		return paths;
+		return searchEach((routeFinder, startNode) -> routeFinder.findAllPathsFrom(startNode));
 	}
 
 
@@ -389,15 +467,67 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 			throw new DagGraphException("No startingNodes specified");
 		
 		
+		return searchEach((routeFinder, startNode) -> routeFinder.findAllPathsTo(startNode));
+	}
+	
+	
+	@Override
+	public Iterator<DagNodePath> pathIterator() {
+		
+		if (startingNodes.isEmpty() )
+			throw new DagGraphException("No startingNodes specified");
+		
 		LinkRouteFinder routeFinder = newLinkRouteFinder();
+		return concatenate(n -> routeFinder.pathIteratorFrom(n));
+	}
+
+	@Override
+	public Stream<DagNodePath> pathStream() {
+		return DagLinkRouteFinder.stream(pathIterator());
+	}
+
+	@Override
+	public Stream<DagNodePath> pathToStream() {
 		
-		List<DagNodePath> paths = new ArrayList<>();
+		if (startingNodes.isEmpty())
+			throw new DagGraphException("No startingNodes specified");
 		
-		for (DagNodeImpl startNode : startingNodes)
-			paths.addAll(
-					routeFinder.findAllPathsTo(startNode));
+		LinkRouteFinder routeFinder = newLinkRouteFinder();
+		return DagLinkRouteFinder.stream(concatenate(n -> routeFinder.pathIteratorTo(n)));
+	}
+
+	@Override
+	public Stream<DagNodePath> cycleStream() {
+		if (startingNodes.isEmpty())
+			throw new DagGraphException("Cycles require at least one starting node");
 		
-		return paths;
+		return DagLinkRouteFinder.stream(concatenate(n -> newLinkRouteFinder().cycleStreamFrom(n).iterator()));
+	}
+	
+	/**
+	 * Return the paths of each starting node in turn, starting the search of a node only when the paths of the one before are used up.
+	 */
+	private Iterator<DagNodePath> concatenate(Function<DagNodeImpl, Iterator<DagNodePath>> pathsOf) {
+		Iterator<DagNodeImpl> nodes = new ArrayList<DagNodeImpl>(startingNodes).iterator();
+		
+		return new Iterator<DagNodePath>() {
+			
+			private Iterator<DagNodePath> paths = Collections.emptyIterator();
+
+			@Override
+			public boolean hasNext() {
+				while (paths.hasNext() == false && nodes.hasNext())
+					paths = pathsOf.apply(nodes.next());
+				return paths.hasNext();
+			}
+
+			@Override
+			public DagNodePath next() {
+				if (hasNext() == false)
+					throw new NoSuchElementException();
+				return paths.next();
+			}
+		};
 	}
 	
 	
@@ -406,23 +536,15 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 		if (startingNodes.isEmpty())
 			throw new DagGraphException("Either a from() or a fromBreadthFirst() is required");
 		
-		LinkRouteFinder routeFinder = newLinkRouteFinder();
-		List<DagNode> nodeList = new ArrayList<>();
-		
-		for (DagNodeImpl startNode : startingNodes) {
-			NodeSearchResult result = routeFinder.discoverToRelationships(startNode);
-			LinkedHashSet<DagNode> nodeSet = new LinkedHashSet<DagNode>();
+		return searchEach((routeFinder, startNode) -> {
+			List<DagNode> ancestors;
+			if (maxDepth == Integer.MAX_VALUE)
+				ancestors = routeFinder.findAncestors(startNode);
+			else
+				ancestors = DagLinkRouteFinder.withoutStartNodes(routeFinder.findLevelsTo(startNode, maxDepth));
 			
-			for (DagNodePath path :result.getPaths()) {
-				for (DagRelationship link : path.getRelationships()) {
-					nodeSet.add(link.getFromNode());
-				}
-			}
-			nodeSet.removeAll(startingNodes);
-			nodeList.addAll(nodeSet);
-		}
-		
-		return nodeList;
+			return withoutStartingNodes(ancestors);
+		});
 	}
 
 	
@@ -431,30 +553,15 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 		if (startingNodes.isEmpty())
 			throw new DagGraphException("Either a from() or a fromBreadthFirst() is required");
 		
-		LinkRouteFinder routeFinder = newLinkRouteFinder();
-		
-		List<DagNode> nodeList = new ArrayList<>();
+		List<DagNode> nodeList;
 		
-		if (traversalDirectionType == TraversalDirectionType.TRAVERSE_DEPTH_FIRST) {
-			for (DagNodeImpl  startNode : startingNodes) {
-				NodeSearchResult result = routeFinder.discoverFromRelationships(startNode);
-				
-				LinkedHashSet<DagNode> nodeSet = new LinkedHashSet<DagNode>();
-				
-				for (DagNodePath path :result.getPaths()) {
-					nodeSet.add(path.getStartNode());
-					nodeSet.add(path.getEndNode());
-				}
-				nodeSet.removeAll(startingNodes);
-				nodeList.addAll(nodeSet);
-			}
+		if (traversalDirectionType == TraversalDirectionType.TRAVERSE_DEPTH_FIRST && maxDepth == Integer.MAX_VALUE) {
+			nodeList = searchEach((routeFinder, startNode) -> withoutStartingNodes(routeFinder.findDescendants(startNode)));
 			
 		} else {
 			
-			for (DagNodeImpl  startNode : startingNodes) {
-				nodeList.addAll(
-						routeFinder.findDescendantsBreadthFirst(startNode));
-			}
+			nodeList = searchEach((routeFinder, startNode) -> 
+						DagLinkRouteFinder.withoutStartNodes(routeFinder.findLevelsFrom(startNode, maxDepth)));
 			
 		}
 		if (nodeComparator == null)
@@ -464,6 +571,48 @@ public class DagNodeNavigatorImpl implements DagNodeNavigator {
 		
 	}
 	
+	@Override
+	public List<List<DagNode>> levels() {
+		if (startingNodes.isEmpty())
+			throw new DagGraphException("Either a from() or a fromBreadthFirst() is required");
+		
+		return sortLevels(newLinkRouteFinder().findLevelsFrom(new ArrayList<DagNode>(startingNodes), maxDepth));
+	}
+	
+	@Override
+	public List<List<DagNode>> levelsTo() {
+		if (startingNodes.isEmpty())
+			throw new DagGraphException("Either a from() or a fromBreadthFirst() is required");
+		
+		return sortLevels(newLinkRouteFinder().findLevelsTo(new ArrayList<DagNode>(startingNodes), maxDepth));
+	}
+	
+	private List<List<DagNode>> sortLevels(List<List<DagNode>> levels) {
+		if (nodeComparator != null) {
+			for (List<DagNode> level : levels)
+				level.sort(nodeComparator);
+		}
+		return levels;
+	}
+	
+	/**
+	 * Return the nodes that are not starting nodes, each once.
+	 */
+	private List<DagNode> withoutStartingNodes(List<DagNode> nodes) {
+		BitSet seen = new BitSet(model.getNodeCount());
+		for (DagNodeImpl n : startingNodes)
+			seen.set(n.getId());
+		
+		List<DagNode> nodeList = new ArrayList<DagNode>(nodes.size());
+		for (DagNode node : nodes) {
+			if (seen.get(node.getId()) == false) {
+				seen.set(node.getId());
+				nodeList.add(node);
+			}
+		}
+		return nodeList;
+	}
+	
 	public DagNodeNavigator findShortestPaths(DagNode toNode) {
 
 		ShortestPathFinder finder = model.createShortestPathFinder(relationshipType);
@@ -19,32 +19,39 @@ import com.onbelay.dagnabit.dagmodel.model.DagNode;
 import com.onbelay.dagnabit.dagmodel.model.DagRelationshipType;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * The state of a depth first search, shared by every step of the search.
+ * The path from the starting node to the current node is held on one stack of connectors and nodes, with the ids of the nodes on it in a bitset.
+ * Descending to a node pushes it and returning pops it, so a step costs no copying.
+ * Vectors and cycles are copied from the stack only when they are found.
+ *
+ */
 public class DagNodeSearchState {
     
-    private Map<String, DagNodeImpl> visited = new HashMap<String, DagNodeImpl>();
+    private BitSet visited = new BitSet();
     private DagRelationshipType dagRelationshipType;
-    private DagNodeVector vector;
+    
+    // nodes[0] is the starting node, connectors[i] leads from nodes[i] to nodes[i + 1]
+    private DagNodeImpl[] nodes = new DagNodeImpl[16];
+    private DagNodeConnector[] connectors = new DagNodeConnector[16];
+    private int depth;
+    
     private List<DagNodeVector> vectors = new ArrayList<DagNodeVector>();
     private List<DagNodeVector> cycles = new ArrayList<DagNodeVector>();
     
-    private boolean isHalting = false;
-    
     private DagNode endingNode;
-    
-    private DagNodeImpl previousNode;
-    private DagNodeImpl currentNode;
 
     public DagNodeSearchState(
     		DagRelationshipType dagRelationshipType,
     		DagNodeImpl currentNode) {
     	
     	this.dagRelationshipType = dagRelationshipType;
-        this.currentNode = currentNode;
-        visited.put(currentNode.getName(), currentNode);
+        nodes[0] = currentNode;
+        visited.set(currentNode.getId());
     }
     
     public DagNodeSearchState(
@@ -52,97 +59,113 @@ public class DagNodeSearchState {
     		DagNodeImpl currentNode,
     		DagNode endingNode) {
     	
+    	this(dagRelationshipType, currentNode);
     	this.endingNode = endingNode;
-    	this.dagRelationshipType = dagRelationshipType;
-        this.currentNode = currentNode;
-        visited.put(currentNode.getName(), currentNode);
     }
     
-    public DagNodeSearchState(
-    		DagNodeSearchState copy, 
-    		DagNodeImpl currentNode, 
-    		DagNodeConnector relationship) {
-    	
-    	this.endingNode = copy.endingNode;
-    	this.isHalting = copy.isHalting;
-    	this.dagRelationshipType = copy.dagRelationshipType;
-    	this.previousNode = copy.currentNode;
-        this.currentNode = currentNode;
-        this.visited.putAll(copy.visited);
-        this.vectors = copy.vectors;
-        this.vector = new DagNodeVector(dagRelationshipType, copy.vector);
-        addNodeRelationshipLink(relationship);
-        visited.put(currentNode.getName(), currentNode);
-        this.cycles = copy.cycles;
+    /**
+     * Move along the connector to the node, pushing both onto the path.
+     */
+    public void descend(DagNodeConnector connector, DagNodeImpl node) {
+    	if (depth + 1 == nodes.length) {
+    		nodes = Arrays.copyOf(nodes, nodes.length * 2);
+    		connectors = Arrays.copyOf(connectors, connectors.length * 2);
+    	}
+    	connectors[depth++] = connector;
+    	nodes[depth] = node;
+    	visited.set(node.getId());
+    }
+    
+    /**
+     * Return to the previous node, popping the current node and the connector to it from the path.
+     */
+    public void ascend() {
+    	visited.clear(nodes[depth].getId());
+    	nodes[depth] = null;
+    	connectors[--depth] = null;
     }
 
 	public boolean isCyclic() {
     	return cycles.size() > 0;
     }
     
-    public Map<String, DagNodeImpl> getVisited() {
+    /**
+     * Return the ids of the nodes on the path to the current node.
+     */
+    public BitSet getVisited() {
         return visited;
     }
 
-    public void addNodeRelationshipLink(DagNodeConnector connector) {
-        if (vector == null)
-            vector = new DagNodeVector(dagRelationshipType);
-        vector.add(connector);
-    }
-    
-    public DagNodeVector getVector() {
-        return vector;
-    }
-
     public DagNodeImpl getCurrentNode() {
-        return currentNode;
+        return nodes[depth];
     }
     
     public boolean hasPreviousNode() {
-    	return previousNode != null;
+    	return depth > 0;
     }
     
     public DagNodeImpl getPreviousNode() {
-    	return previousNode;
+    	return depth > 0 ? nodes[depth - 1] : null;
+    }
+    
+    public int getDepth() {
+    	return depth;
     }
 
 	public List<DagNodeVector> getVectors() {
         return vectors;
     }
     
+	/**
+	 * Add the path to the current node followed by the connector as a vector.
+	 */
     public void fixCurrentVector(DagNodeConnector connector) {
-    	if (vector != null) {
-    		vector.add(connector);
-    		vectors.add(vector);
-    	} else {
-	    	vector = new DagNodeVector(dagRelationshipType);
-	        vector.add(connector);
-	        vectors.add(vector);
-    	}
+    	vectors.add(createVector(connector));
     }
 
+    /**
+     * Add the path to the current node as a vector, unless the current node is the starting node.
+     */
     public void fixCurrentVector() {
-        if (vector != null)
-            vectors.add(vector);
-        
+        if (depth > 0)
+            vectors.add(createVector(null));
+    }
+    
+    public boolean hasVisited(int nodeId) {
+        return visited.get(nodeId);
     }
     
-    public boolean hasVisited(String code) {
-        return visited.get(code) != null;
+    /**
+     * Add the path to the current node followed by the connector, which returns to a node on the path, as a cycle.
+     */
+    public void addCycle(DagNodeConnector connector) {
+    	cycles.add(createVector(connector));
     }
     
-    public void addCycle(DagNodeVector currentVector, DagNodeConnector connector, DagRelationshipType linkType) {
-    	DagNodeVector cyclicVector = new DagNodeVector(linkType, currentVector);
-    	cyclicVector.add(connector);
-        cycles.add(cyclicVector);
+    private DagNodeVector createVector(DagNodeConnector connector) {
+    	DagNodeVector created = new DagNodeVector(dagRelationshipType, connectors, depth);
+    	if (connector != null)
+    		created.add(connector);
+    	return created;
     }
 
 	public List<DagNodeVector> getCycles() {
         return cycles;
     }
 
-    public void setCycles(ArrayList<DagNodeVector> cycles) {
-        this.cycles = cycles;
+    /**
+     * Return true if a vector or cycle has been added since they were last cleared.
+     */
+    public boolean hasResults() {
+    	return vectors.isEmpty() == false || cycles.isEmpty() == false;
+    }
+
+    /**
+     * Clear the vectors and cycles found so far, once they have been taken by a lazy search.
+     */
+    public void clearResults() {
+    	vectors.clear();
+    	cycles.clear();
     }
 
 	public DagRelationshipType getDagLinkType() {
@@ -153,12 +176,4 @@ public class DagNodeSearchState {
 		return endingNode;
 	}
 
-	public boolean isHalting() {
-		return isHalting;
-	}
-
-	public void setHalting(boolean isHalting) {
-		this.isHalting = isHalting;
-	}
-
 }
@@ -0,0 +1,125 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import com.onbelay.dagnabit.dagmodel.model.DagNode;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A set of nodes keyed by node id. Members are held in a dense array and the position of each is recorded by id,
+ * so adding, removing and testing a node take constant time and listing the set visits only its members.
+ * A removed member is replaced by the last one, members are in no particular order.
+ *
+ */
+class DagNodeSet {
+
+	private static final DagNodeImpl[] NO_NODES = new DagNodeImpl[0];
+
+	private DagNodeImpl[] members = NO_NODES;
+
+	// position + 1 of each member by node id, 0 when the node is not a member
+	private int[] positions = new int[0];
+
+	private int size;
+
+	private final List<DagNode> view = new AbstractList<DagNode>() {
+
+		@Override
+		public DagNode get(int index) {
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("Index " + index + " size " + size);
+			return members[index];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	};
+
+	boolean contains(DagNodeImpl node) {
+		int id = node.getId();
+		return id < positions.length && positions[id] > 0 && members[positions[id] - 1] == node;
+	}
+
+	/**
+	 * Add the node when isMember is true, otherwise remove it.
+	 */
+	void set(DagNodeImpl node, boolean isMember) {
+		if (isMember)
+			add(node);
+		else
+			remove(node);
+	}
+
+	void add(DagNodeImpl node) {
+		int id = node.getId();
+		if (id >= positions.length)
+			positions = Arrays.copyOf(positions, Math.max(id + 1, positions.length * 2));
+
+		if (positions[id] > 0) {
+			members[positions[id] - 1] = node;
+			return;
+		}
+
+		if (size == members.length)
+			members = Arrays.copyOf(members, Math.max(16, size * 2));
+		members[size++] = node;
+		positions[id] = size;
+	}
+
+	void remove(DagNodeImpl node) {
+		int id = node.getId();
+		if (id >= positions.length || positions[id] == 0 || members[positions[id] - 1] != node)
+			return;
+
+		int position = positions[id] - 1;
+		DagNodeImpl last = members[--size];
+		members[position] = last;
+		positions[last.getId()] = position + 1;
+		members[size] = null;
+		positions[id] = 0;
+	}
+
+	void clear() {
+		Arrays.fill(members, 0, size, null);
+		Arrays.fill(positions, 0);
+		size = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	long estimateBytes() {
+		// members, positions, view and size, then the view itself
+		return DagFootprintEstimator.object(3, 4)
+				+ DagFootprintEstimator.referenceArray(members.length)
+				+ DagFootprintEstimator.array(4, positions.length)
+				+ DagFootprintEstimator.object(1, 4);
+	}
+
+	/**
+	 * Return a read only view of the members that follows changes to the set.
+	 */
+	List<DagNode> view() {
+		return view;
+	}
+
+}
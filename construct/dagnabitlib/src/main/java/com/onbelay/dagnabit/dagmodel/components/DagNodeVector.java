@@ -16,13 +16,11 @@
 package com.onbelay.dagnabit.dagmodel.components;
 
 import com.onbelay.dagnabit.dagmodel.exception.DagGraphException;
-import com.onbelay.dagnabit.dagmodel.model.DagNode;
 import com.onbelay.dagnabit.dagmodel.model.DagNodePath;
 import com.onbelay.dagnabit.dagmodel.model.DagRelationship;
 import com.onbelay.dagnabit.dagmodel.model.DagRelationshipType;
 
 import java.util.ArrayList;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -45,6 +43,16 @@ public class DagNodeVector {
         connectors.add(connector);
     }
     
+    /**
+     * Create a vector holding the first length connectors of the array, with room for one more.
+     */
+    DagNodeVector(DagRelationshipType relationshipType, DagNodeConnector[] connectors, int length) {
+    	this.relationshipType = relationshipType;
+    	this.connectors = new ArrayList<DagNodeConnector>(length + 1);
+    	for (int i = 0; i < length; i++)
+    		this.connectors.add(connectors[i]);
+    }
+    
     public DagNodeVector(DagNodeVector vector, DagNodeConnector connector) {
         this.relationshipType = vector.relationshipType;
         connectors.addAll(vector.getConnectors());
@@ -100,26 +108,6 @@ public class DagNodeVector {
     	return paths;
     }
     
-    public List<DagNode> fetchDagNodesBreadthFirst(DagNode rootNode) {
-
-    	if (connectors.isEmpty( ))
-    		return new ArrayList<DagNode>();
-
-    	
-    	LinkedHashSet<DagNode> nodeSet = new LinkedHashSet<DagNode>();
-    	
-    	
-    	for (DagNodeConnector connector : connectors) {
-    		nodeSet.add(connector.getFromNode());
-    		nodeSet.add(connector.getToNode());
-    	}
-    	
-    	nodeSet.remove(rootNode);
-    	List<DagNode> list = new ArrayList<DagNode>();
-    	list.addAll(nodeSet);
-    	return list;
-    }
-    
     public List<DagNodePath> createToPaths() {
     	
     	ArrayList<DagNodePath> paths = new ArrayList<>();
@@ -17,6 +17,7 @@ package com.onbelay.dagnabit.dagmodel.components;
 
 import com.onbelay.dagnabit.dagmodel.model.DagNode;
 import com.onbelay.dagnabit.dagmodel.model.DagRelationship;
+import com.onbelay.dagnabit.dagmodel.model.DagFootprint;
 import com.onbelay.dagnabit.dagmodel.model.DagRelationshipType;
 
 public class DagRelationshipImpl extends DagItemImpl implements DagRelationship {
@@ -26,18 +27,39 @@ public class DagRelationshipImpl extends DagItemImpl implements DagRelationship
 	private DagNodeImpl fromNode;
 	private DagNodeImpl toNode;
 
+	// Slot held in the model's DagRelationshipList, -1 when not listed.
+	int listPosition = -1;
+
 	public DagRelationshipImpl(
 			DagNodeImpl fromNode, 
 			DagRelationshipType type,
 			DagNodeImpl toNode) {
 		
-		super(
-				fromNode.getName() + ":" + type.getName() + ":>" + toNode.getName()
-				);
+		super(null);
 		
 		this.fromNode = fromNode;
 		this.toNode = toNode;
 		this.type = type;
+		setWeightMode(fromNode.getWeightMode());
+	}
+
+	/**
+	 * Return the name of the relationship. Unless one has been set it is derived on each call
+	 * from the node and relationshipType names as fromNode:type:>toNode
+	 */
+	@Override
+	public String getName() {
+		if (name != null)
+			return name;
+		
+		return fromNode.getName() + ":" + type.getName() + ":>" + toNode.getName();
+	}
+
+	@Override
+	void estimateFootprint(DagFootprintEstimator estimator) {
+		// name, weightMode, weight, attributes, type, fromNode, toNode, primitiveWeight and listPosition
+		estimator.add(DagFootprint.Part.RELATIONSHIPS, DagFootprintEstimator.object(7, 12));
+		super.estimateFootprint(estimator);
 	}
 
 	public DagRelationshipType getRelationshipType() {
@@ -54,4 +76,31 @@ public class DagRelationshipImpl extends DagItemImpl implements DagRelationship
 		return toNode;
 	}
 
+	/**
+	 * Hash on the nodes and relationshipType rather than the derived name, so no String is built.
+	 */
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + fromNode.hashCode();
+		result = prime * result + type.hashCode();
+		result = prime * result + toNode.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		DagRelationshipImpl other = (DagRelationshipImpl) obj;
+		return fromNode.equals(other.fromNode)
+				&& type.equals(other.type)
+				&& toNode.equals(other.toNode);
+	}
+
 }
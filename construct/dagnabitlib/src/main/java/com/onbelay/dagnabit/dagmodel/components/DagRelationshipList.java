@@ -0,0 +1,157 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.components;
+
+import com.onbelay.dagnabit.dagmodel.model.DagRelationship;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * The relationships of a model in the order they were added.
+ * Each relationship records its slot, so removing one only leaves a tombstone (null) in the slot.
+ * Iteration skips tombstones. The slots are compacted once tombstones fill half of them, or before an access by index.
+ * A relationship is held by one list at a time.
+ *
+ */
+class DagRelationshipList extends AbstractList<DagRelationship> {
+
+	private DagRelationshipImpl[] slots = new DagRelationshipImpl[16];
+	private int used;
+	private int removed;
+
+	/**
+	 * Add the relationship to the end of the list.
+	 * @return false if the relationship is already held by a list.
+	 */
+	@Override
+	public boolean add(DagRelationship relationship) {
+		DagRelationshipImpl listed = (DagRelationshipImpl) relationship;
+		if (listed.listPosition >= 0)
+			return false;
+
+		if (used == slots.length)
+			slots = Arrays.copyOf(slots, slots.length * 2);
+
+		listed.listPosition = used;
+		slots[used++] = listed;
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * Remove the relationship, leaving a tombstone in its slot.
+	 * @return false if the relationship is not in this list.
+	 */
+	boolean removeRelationship(DagRelationshipImpl relationship) {
+		int position = relationship.listPosition;
+		if (position < 0 || position >= used || slots[position] != relationship)
+			return false;
+
+		slots[position] = null;
+		relationship.listPosition = -1;
+		removed++;
+		modCount++;
+		if (removed * 2 > used)
+			compact();
+		return true;
+	}
+
+	/**
+	 * Close up the tombstones, keeping the relationships in order.
+	 */
+	void compact() {
+		if (removed == 0)
+			return;
+
+		int live = 0;
+		for (int i = 0; i < used; i++) {
+			DagRelationshipImpl relationship = slots[i];
+			if (relationship != null) {
+				relationship.listPosition = live;
+				slots[live++] = relationship;
+			}
+		}
+		Arrays.fill(slots, live, used, null);
+		used = live;
+		removed = 0;
+		modCount++;
+	}
+
+	long estimateBytes() {
+		return DagFootprintEstimator.object(1, 12) + DagFootprintEstimator.referenceArray(slots.length);
+	}
+
+	@Override
+	public DagRelationship get(int index) {
+		compact();
+		if (index < 0 || index >= used)
+			throw new IndexOutOfBoundsException("Index " + index + " size " + used);
+		return slots[index];
+	}
+
+	@Override
+	public int size() {
+		return used - removed;
+	}
+
+	/**
+	 * Return a SIZED and SUBSIZED spliterator over the slots, compacting them first.
+	 */
+	@Override
+	public Spliterator<DagRelationship> spliterator() {
+		compact();
+		return Spliterators.<DagRelationship>spliterator(slots, 0, used, Spliterator.ORDERED | Spliterator.NONNULL);
+	}
+
+	@Override
+	public Iterator<DagRelationship> iterator() {
+		return new Iterator<DagRelationship>() {
+
+			private final int expectedModCount = modCount;
+			private int position = skip(0);
+
+			private int skip(int from) {
+				while (from < used && slots[from] == null)
+					from++;
+				return from;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return position < used;
+			}
+
+			@Override
+			public DagRelationship next() {
+				if (modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+				if (position >= used)
+					throw new NoSuchElementException();
+
+				DagRelationship relationship = slots[position];
+				position = skip(position + 1);
+				return relationship;
+			}
+		};
+	}
+
+}
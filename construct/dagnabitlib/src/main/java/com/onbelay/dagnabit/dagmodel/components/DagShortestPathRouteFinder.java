@@ -14,45 +14,55 @@ import java.util.stream.Collectors;
  * 
  * Note that is algorithm requires weights on the links and assumes a DAG. 
  * Weights must not be negative.
+ * Costs are accumulated as BigDecimal, double or fixed point long according to the model's DagWeightMode.
+ * On a DagModelSnapshot in the DOUBLE or FIXED_POINT mode the target ids and weights are read from its DagAdjacencyIndex.
  * @author lefeu
  *
  */
 public class DagShortestPathRouteFinder implements ShortestPathFinder {
 	private static final Logger logger = LoggerFactory.getLogger(DagShortestPathRouteFinder.class);
 	
-	private DagModelImpl model;
+	private AbstractDagModel model;
 	private DagRelationshipType relationshipType;
 	
 	private Comparator<DagNodeConnector> sorter;
 	
 	
-	protected DagShortestPathRouteFinder(DagModelImpl model, DagRelationshipType relationshipType) {
-		sorter = buildSorter();
+	protected DagShortestPathRouteFinder(AbstractDagModel model, DagRelationshipType relationshipType) {
 		this.model = model;
 		this.relationshipType = relationshipType;
+		sorter = buildSorter(model.getWeightMode());
 	}
 
 
 	@Override
 	public DagNodePath findShortestRoute(DagNode startNode, DagNode endNode) {
+		return findShortestRoute(model.resolveNode(startNode), model.resolveNode(endNode));
+	}
+
+	@Override
+	public DagNodePath findShortestRoute(int startNodeId, int endNodeId) {
+		return findShortestRoute(
+				model.getRequiredNodeImplementation(startNodeId),
+				model.getRequiredNodeImplementation(endNodeId));
+	}
+
+	private DagNodePath findShortestRoute(DagNodeImpl startNode, DagNodeImpl endNode) {
 
-		Map<DagNode, DagNode> parents = findShortestRouteParents(startNode, endNode);
+		ShortestRouteTree tree = findShortestRouteParents(startNode, endNode);
 
 		
-		if (parents.containsKey(endNode) == false) {
+		if (tree.isReached(endNode) == false) {
 			logger.error("There is no path from " + startNode.getName() + " to " + endNode.getName());
 			return new DagNodePath(startNode, new ArrayList<DagRelationship>(), endNode);
 		}
 
 		ArrayDeque<DagRelationship> stack = new ArrayDeque<DagRelationship>();
 		
-		DagNode currentNode = endNode;
-		DagNode parent = parents.get(currentNode);
+		DagNodeConnector parent = tree.parents[endNode.getId()];
 		while (parent != null) {
-			DagRelationship link = model.getDefaultRelationship(parent, currentNode);
-			stack.push(link);
-			currentNode = parent;
-			parent = parents.get(currentNode);
+			stack.push(parent.getRelationship(relationshipType));
+			parent = tree.parents[parent.getFromNode().getId()];
 		}
 		
 		return new DagNodePath(
@@ -63,90 +73,101 @@ public class DagShortestPathRouteFinder implements ShortestPathFinder {
 
 	@Override
 	public List<DagNode> findShortestPath(DagNode startNode, DagNode endNode) {
+		return findShortestPath(model.resolveNode(startNode), model.resolveNode(endNode));
+	}
+
+	@Override
+	public List<DagNode> findShortestPath(int startNodeId, int endNodeId) {
+		return findShortestPath(
+				model.getRequiredNodeImplementation(startNodeId),
+				model.getRequiredNodeImplementation(endNodeId));
+	}
+
+	private List<DagNode> findShortestPath(DagNodeImpl startNode, DagNodeImpl endNode) {
 		
-		Map<DagNode, DagNode> parents = findShortestRouteParents(startNode, endNode);
+		ShortestRouteTree tree = findShortestRouteParents(startNode, endNode);
 		
-		if (parents.containsKey(endNode) == false) {
+		if (tree.isReached(endNode) == false) {
 			logger.error("There is no path from " + startNode.getName() + " to " + endNode.getName());
 			return new ArrayList<DagNode>();
 		}
 		
 		ArrayDeque<DagNode> stack = new ArrayDeque<DagNode>();
 		stack.push(endNode);
-		DagNode parent = parents.get(endNode);
+		DagNodeConnector parent = tree.parents[endNode.getId()];
 		
 		while (parent != null) {
-			stack.push(parent);
-			parent = parents.get(parent);
+			stack.push(parent.getFromNode());
+			parent = tree.parents[parent.getFromNode().getId()];
 		}
 		
 		return stack.stream().collect(Collectors.toList());
 	}
 	
 
-	private Map<DagNode, DagNode> findShortestRouteParents(DagNode startNodeIn, DagNode endNode) {
+	private ShortestRouteTree findShortestRouteParents(DagNodeImpl startNode, DagNodeImpl endNode) {
 		
-		Map<DagNode, DagNode> parents = new HashMap<>();
-		Map<DagNode, BigDecimal> costs = new HashMap<>();
-		Map<DagNode, DagNode> processed = new HashMap<>();
+		ShortestRouteTree tree = newRouteTree(model.getNodeCount());
+		BitSet processed = new BitSet(model.getNodeCount());
 		
-		DagNodeImpl startNode = model.getNodeImplementation(startNodeIn.getName());
-		costs.put(startNode, BigDecimal.ZERO);
-		parents.put(startNode, null);
+		tree.setStart(startNode.getId());
 		
-		if (startNode.hasFromThisNodeConnectors() == false)
-			return null;
+		if (model.getFromThisNodeConnectors(startNode, relationshipType).iterator().hasNext() == false)
+			return tree;
 		
-		followLinks(
-				startNode,
-				endNode,
-				processed,
-				parents,
-				costs);
+		DagAdjacencyIndex index = primitiveIndex();
+		if (index != null)
+			followIndex(index, startNode.getId(), endNode.getId(), processed, tree);
+		else
+			followLinks(
+					startNode,
+					endNode,
+					processed,
+					tree);
 		
-		logger.debug("Start -> Finsh cost: " + costs.get(endNode));
+		if (logger.isDebugEnabled())
+			logger.debug("Start -> Finsh cost: " + tree.getCost(endNode.getId()));
 		
-		return parents;
+		return tree;
 	}
 	
 	
 	
 	
 	
+	/**
+	 * Relax the connectors of each node in order of weight, moving depth first to each node not yet processed
+	 * before relaxing the next connector. The nodes still to be followed are held on a DagConnectorStack rather than the thread's stack.
+	 */
 	private void followLinks(
-			DagNodeImpl currentNode,
-			DagNode endNode,
-			Map<DagNode, DagNode> processed,
-			Map<DagNode, DagNode> parents,
-			Map<DagNode, BigDecimal> costs) {
+			DagNodeImpl startNode,
+			DagNodeImpl endNode,
+			BitSet processed,
+			ShortestRouteTree tree) {
 	
+		DagConnectorStack stack = new DagConnectorStack();
+		stack.push(startNode, model.getFromThisNodeConnectors(startNode, relationshipType));
+		stack.sort(sorter);
 		
-		for (DagNodeConnector connector : currentNode.getSortedFromThisNodeConnectors(sorter)) {
-			
-			BigDecimal cost = costs.get(currentNode).add(connector.getRelationship(relationshipType).getWeight(), MathContext.DECIMAL128);
+		while (stack.isEmpty() == false) {
 			
-			if (costs.containsKey(connector.getToNode())) {
-				if (cost.compareTo(costs.get(connector.getToNode())) < 0) {
-					costs.put(connector.getToNode(), cost);
-					parents.put(connector.getToNode(), currentNode);
-				}
-			} else {
-				costs.put(connector.getToNode(), cost);
-				parents.put(connector.getToNode(), currentNode);
+			if (stack.hasNext() == false) {
+				stack.pop();
+				continue;
 			}
 			
-			if (endNode.equals(connector.getToNode()) == false) {
+			DagNodeConnector connector = stack.next();
+			int toNodeId = connector.getToNode().getId();
+			tree.relax(stack.getNode().getId(), connector, connector.getRelationship(relationshipType));
+			
+			if (toNodeId != endNode.getId()) {
 				
 				// Don't process what you have already processed once
-				if (processed.containsKey(connector.getToNode()) == false) {
+				if (processed.get(toNodeId) == false) {
 				
-					processed.put(connector.getToNode(), connector.getToNode());
-					followLinks(
-							connector.getToNode(),
-							endNode,
-							processed,
-							parents,
-							costs);
+					processed.set(toNodeId);
+					stack.push(connector.getToNode(), model.getFromThisNodeConnectors(connector.getToNode(), relationshipType));
+					stack.sort(sorter);
 				}
 			}
 		}
@@ -154,13 +175,254 @@ public class DagShortestPathRouteFinder implements ShortestPathFinder {
 		
 	}
 	
-	private Comparator<DagNodeConnector> buildSorter() {
-		return (c, d) -> {
-			BigDecimal cWeight = c.getRelationship(model.getDefaultRelationshipType()).getWeight();
-			BigDecimal dWeight = d.getRelationship(model.getDefaultRelationshipType()).getWeight();
-			return cWeight.compareTo(dWeight);
-		};
+	/**
+	 * As followLinks, reading the edges of each node from the index of a snapshot. The positions of each node are sorted by weight,
+	 * keeping the order of equal weights as the sorter does.
+	 */
+	private void followIndex(
+			DagAdjacencyIndex index,
+			int startNodeId,
+			int endNodeId,
+			BitSet processed,
+			ShortestRouteTree tree) {
+		
+		// node, positions sorted by weight and the next of them for each node being followed
+		int[] nodeIds = new int[16];
+		int[][] positions = new int[16][];
+		int[] nexts = new int[16];
+		int depth = 0;
+		nodeIds[0] = startNodeId;
+		positions[0] = sortedPositions(index, startNodeId);
+		
+		while (depth >= 0) {
+			if (nexts[depth] == positions[depth].length) {
+				positions[depth] = null;
+				depth--;
+				continue;
+			}
+			
+			int position = positions[depth][nexts[depth]++];
+			int toNodeId = index.getTarget(position);
+			tree.relax(nodeIds[depth], index, position);
+			
+			// Don't process what you have already processed once
+			if (toNodeId != endNodeId && processed.get(toNodeId) == false) {
+				processed.set(toNodeId);
+				
+				depth++;
+				if (depth == nodeIds.length) {
+					nodeIds = Arrays.copyOf(nodeIds, depth * 2);
+					positions = Arrays.copyOf(positions, depth * 2);
+					nexts = Arrays.copyOf(nexts, depth * 2);
+				}
+				nodeIds[depth] = toNodeId;
+				positions[depth] = sortedPositions(index, toNodeId);
+				nexts[depth] = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Return the positions of the edges of the node in order of weight, by an insertion sort as nodes have few edges.
+	 */
+	private static int[] sortedPositions(DagAdjacencyIndex index, int nodeId) {
+		int start = index.getStart(nodeId);
+		int[] sorted = new int[index.getDegree(nodeId)];
+		for (int i = 0; i < sorted.length; i++) {
+			int position = start + i;
+			int j = i;
+			while (j > 0 && index.compareWeights(sorted[j - 1], position) > 0) {
+				sorted[j] = sorted[j - 1];
+				j--;
+			}
+			sorted[j] = position;
+		}
+		return sorted;
+	}
+	
+	/**
+	 * Return the index of the relationshipType if the model is a DagModelSnapshot holding primitive weights, otherwise null.
+	 */
+	private DagAdjacencyIndex primitiveIndex() {
+		if (model instanceof DagModelSnapshot == false || model.getWeightMode() == DagWeightMode.DECIMAL)
+			return null;
+		
+		return ((DagModelSnapshot) model).getFromIndex(relationshipType);
+	}
+	
+	private Comparator<DagNodeConnector> buildSorter(DagWeightMode weightMode) {
+		switch (weightMode) {
+		case DOUBLE:
+			return (c, d) -> Double.compare(
+					c.getRelationship(relationshipType).getWeightAsDouble(),
+					d.getRelationship(relationshipType).getWeightAsDouble());
+		case FIXED_POINT:
+			return (c, d) -> Long.compare(
+					c.getRelationship(relationshipType).getFixedPointWeight(),
+					d.getRelationship(relationshipType).getFixedPointWeight());
+		default:
+			return (c, d) -> {
+				BigDecimal cWeight = c.getRelationship(relationshipType).getWeight();
+				BigDecimal dWeight = d.getRelationship(relationshipType).getWeight();
+				return cWeight.compareTo(dWeight);
+			};
+		}
+	}
+	
+	private ShortestRouteTree newRouteTree(int totalNodes) {
+		switch (model.getWeightMode()) {
+		case DOUBLE:
+			return new DoubleRouteTree(totalNodes);
+		case FIXED_POINT:
+			return new FixedPointRouteTree(totalNodes);
+		default:
+			return new DecimalRouteTree(totalNodes);
+		}
+	}
+	
+	/**
+	 * Costs and the connector used to reach each node, indexed by node id.
+	 */
+	private static abstract class ShortestRouteTree {
+		protected final BitSet reached;
+		protected final DagNodeConnector[] parents;
+		
+		private ShortestRouteTree(int totalNodes) {
+			reached = new BitSet(totalNodes);
+			parents = new DagNodeConnector[totalNodes];
+		}
+		
+		private boolean isReached(DagNode node) {
+			return reached.get(node.getId());
+		}
+		
+		protected abstract void setStart(int nodeId);
+		
+		/**
+		 * Reach the connector's toNode through the connector if that is cheaper than the best cost found so far.
+		 */
+		protected abstract void relax(int fromNodeId, DagNodeConnector connector, DagRelationship relationship);
+		
+		/**
+		 * As relax, for the edge at the position of a snapshot's index, reading its target and weight from the index.
+		 */
+		protected abstract void relax(int fromNodeId, DagAdjacencyIndex index, int position);
+		
+		protected abstract Object getCost(int nodeId);
+	}
+	
+	private static class DecimalRouteTree extends ShortestRouteTree {
+		private final BigDecimal[] costs;
+		
+		private DecimalRouteTree(int totalNodes) {
+			super(totalNodes);
+			costs = new BigDecimal[totalNodes];
+		}
+		
+		protected void setStart(int nodeId) {
+			costs[nodeId] = BigDecimal.ZERO;
+			reached.set(nodeId);
+		}
+		
+		protected void relax(int fromNodeId, DagNodeConnector connector, DagRelationship relationship) {
+			int toNodeId = connector.getToNode().getId();
+			BigDecimal cost = costs[fromNodeId].add(relationship.getWeight(), MathContext.DECIMAL128);
+			
+			if (costs[toNodeId] == null || cost.compareTo(costs[toNodeId]) < 0) {
+				costs[toNodeId] = cost;
+				parents[toNodeId] = connector;
+				reached.set(toNodeId);
+			}
+		}
+		
+		/**
+		 * Not used, DECIMAL weights are read from the relationships (see primitiveIndex()).
+		 */
+		protected void relax(int fromNodeId, DagAdjacencyIndex index, int position) {
+			throw new UnsupportedOperationException("DECIMAL weights are not held by the index");
+		}
+		
+		protected Object getCost(int nodeId) {
+			return costs[nodeId];
+		}
+	}
+	
+	private static class DoubleRouteTree extends ShortestRouteTree {
+		private final double[] costs;
+		
+		private DoubleRouteTree(int totalNodes) {
+			super(totalNodes);
+			costs = new double[totalNodes];
+		}
+		
+		protected void setStart(int nodeId) {
+			reached.set(nodeId);
+		}
+		
+		protected void relax(int fromNodeId, DagNodeConnector connector, DagRelationship relationship) {
+			int toNodeId = connector.getToNode().getId();
+			double cost = costs[fromNodeId] + relationship.getWeightAsDouble();
+			
+			if (reached.get(toNodeId) == false || cost < costs[toNodeId]) {
+				costs[toNodeId] = cost;
+				parents[toNodeId] = connector;
+				reached.set(toNodeId);
+			}
+		}
+		
+		protected void relax(int fromNodeId, DagAdjacencyIndex index, int position) {
+			int toNodeId = index.getTarget(position);
+			double cost = costs[fromNodeId] + index.getWeight(position);
+			
+			if (reached.get(toNodeId) == false || cost < costs[toNodeId]) {
+				costs[toNodeId] = cost;
+				parents[toNodeId] = index.getConnector(position);
+				reached.set(toNodeId);
+			}
+		}
+		
+		protected Object getCost(int nodeId) {
+			return reached.get(nodeId) ? costs[nodeId] : null;
+		}
 	}
 	
+	private static class FixedPointRouteTree extends ShortestRouteTree {
+		private final long[] costs;
+		
+		private FixedPointRouteTree(int totalNodes) {
+			super(totalNodes);
+			costs = new long[totalNodes];
+		}
+		
+		protected void setStart(int nodeId) {
+			reached.set(nodeId);
+		}
+		
+		protected void relax(int fromNodeId, DagNodeConnector connector, DagRelationship relationship) {
+			int toNodeId = connector.getToNode().getId();
+			long cost = costs[fromNodeId] + relationship.getFixedPointWeight();
+			
+			if (reached.get(toNodeId) == false || cost < costs[toNodeId]) {
+				costs[toNodeId] = cost;
+				parents[toNodeId] = connector;
+				reached.set(toNodeId);
+			}
+		}
+		
+		protected void relax(int fromNodeId, DagAdjacencyIndex index, int position) {
+			int toNodeId = index.getTarget(position);
+			long cost = costs[fromNodeId] + index.getFixedPointWeight(position);
+			
+			if (reached.get(toNodeId) == false || cost < costs[toNodeId]) {
+				costs[toNodeId] = cost;
+				parents[toNodeId] = index.getConnector(position);
+				reached.set(toNodeId);
+			}
+		}
+		
+		protected Object getCost(int nodeId) {
+			return reached.get(nodeId) ? DagWeightMode.fromFixedPoint(costs[nodeId]) : null;
+		}
+	}
 
 }
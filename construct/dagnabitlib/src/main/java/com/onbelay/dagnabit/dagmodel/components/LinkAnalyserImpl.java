@@ -22,11 +22,11 @@ public class LinkAnalyserImpl implements LinkAnalyser {
 	private DagRelationshipType relationshipType;
 	private DagNodeCategory nodeCategory;
 	
-	private DagModelImpl model;
+	private AbstractDagModel model;
 	
 	
 	
-	public LinkAnalyserImpl(DagModelImpl model) {
+	public LinkAnalyserImpl(AbstractDagModel model) {
 		super();
 		this.model = model;
 	}
@@ -48,12 +48,12 @@ public class LinkAnalyserImpl implements LinkAnalyser {
     	LinkAnalysisImpl analysisResult = new LinkAnalysisImpl();
     	
     	if (relationshipType == null) {
-	    	for (DagRelationshipType linkType : model.getLinkTypeMap().values()) {
+	    	for (DagRelationshipType linkType : model.getRelationshipTypes()) {
 	        	DagLinkRouteFinder finder = new DagLinkRouteFinder(
 	        			model,
 	        			linkType,
 						nodeCategory);
-	        	NavigationResult result = traverseFromRoot(finder);
+	        	NavigationResult result = traverseFromRoot(finder, linkType);
 	        	
 	        	for (NodeSearchResult nodeSearchResult : result.getNodeSearchResults().values()) {
 	        		analysisResult.addCycleByLinkType(
@@ -67,7 +67,7 @@ public class LinkAnalyserImpl implements LinkAnalyser {
         			model,
 					relationshipType,
 					nodeCategory);
-        	NavigationResult result = traverseFromRoot(finder);
+        	NavigationResult result = traverseFromRoot(finder, relationshipType);
         	
         	for (NodeSearchResult nodeSearchResult : result.getNodeSearchResults().values()) {
         		analysisResult.addCycleByLinkType(
@@ -79,11 +79,14 @@ public class LinkAnalyserImpl implements LinkAnalyser {
     	
 	}
 	
-	private NavigationResult traverseFromRoot(DagLinkRouteFinder finder) {
+	private NavigationResult traverseFromRoot(DagLinkRouteFinder finder, DagRelationshipType type) {
 		
 		NavigationResult navigationResult = new NavigationResult();
 		
-		for (DagNodeImpl node : model.getNodeMap().values()) {
+		// A cycle need not be reachable from a root, so every node that starts a relationship of the type is searched.
+		for (DagNodeImpl node : model.getNodeImplementations()) {
+			if (model.hasConnectors(node, type, true) == false)
+				continue;
 			navigationResult.add(
 					node, 
 					finder.discoverFromRelationships(node));
@@ -15,8 +15,12 @@
  */
 package com.onbelay.dagnabit.dagmodel.exception;
 
+import com.onbelay.dagnabit.enums.TransactionErrorCode;
+
 public class DagGraphException extends RuntimeException {
 
+	private TransactionErrorCode errorCode = TransactionErrorCode.SYSTEM_FAILURE;
+
 	public DagGraphException() {
 		super();
 		// TODO Auto-generated constructor stub
@@ -42,6 +46,21 @@ public class DagGraphException extends RuntimeException {
 		// TODO Auto-generated constructor stub
 	}
 
-	
-	
+	public DagGraphException(TransactionErrorCode errorCode, String message) {
+		super(message);
+		this.errorCode = errorCode;
+	}
+
+	public DagGraphException(TransactionErrorCode errorCode, String message, Throwable cause) {
+		super(message, cause);
+		this.errorCode = errorCode;
+	}
+
+	/**
+	 * @return the code of the error, SYSTEM_FAILURE unless the exception was created with another code.
+	 */
+	public TransactionErrorCode getErrorCode() {
+		return errorCode;
+	}
+
 }
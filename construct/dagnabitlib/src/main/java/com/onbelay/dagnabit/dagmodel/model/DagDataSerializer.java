@@ -0,0 +1,29 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.model;
+
+/**
+ * Converts the DagData attached to nodes and relationships to and from bytes when a model is written to or read from a file.
+ * An empty array is read back as no data.
+ *
+ */
+public interface DagDataSerializer {
+
+	public byte[] serialize(DagData data);
+
+	public DagData deserialize(byte[] bytes);
+
+}
@@ -0,0 +1,113 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.model;
+
+/**
+ * An estimate of the heap retained by a model, in bytes, broken down by the part of the model holding it.
+ * See DagModel.footprint().
+ * <ul>
+ * <li> NODES - the node objects.
+ * <li> CONNECTORS - the connectors between nodes and the lists holding them on each node.
+ * <li> RELATIONSHIPS - the relationship objects.
+ * <li> NAMES - the name strings of nodes, relationships, relationshipTypes and categories.
+ * <li> WEIGHTS - BigDecimal weights. Weights held as primitives are part of their node or relationship.
+ * <li> DATA - the holders of DagData and referenceNo. The DagData objects themselves are not walked.
+ * <li> INDEXES - maps, lookup indexes, node sets and compressed rows kept by the model to answer queries.
+ * </ul>
+ * Memory-mapped models also report the bytes mapped from their file, which are not on the heap and not part of the total.
+ */
+public class DagFootprint {
+
+	public enum Part {
+		NODES,
+		CONNECTORS,
+		RELATIONSHIPS,
+		NAMES,
+		WEIGHTS,
+		DATA,
+		INDEXES
+	}
+
+	private long[] bytes = new long[Part.values().length];
+
+	private long mappedBytes;
+
+	private int nodeCount;
+
+	private int connectorCount;
+
+	private int relationshipCount;
+
+	public void add(Part part, long partBytes) {
+		bytes[part.ordinal()] += partBytes;
+	}
+
+	public long getBytes(Part part) {
+		return bytes[part.ordinal()];
+	}
+
+	/**
+	 * Return the estimated heap retained by the model, the sum of all parts.
+	 */
+	public long getTotalBytes() {
+		long total = 0;
+		for (long partBytes : bytes)
+			total += partBytes;
+		return total;
+	}
+
+	public long getMappedBytes() {
+		return mappedBytes;
+	}
+
+	public void addMappedBytes(long mappedBytes) {
+		this.mappedBytes += mappedBytes;
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	public void addNode() {
+		nodeCount++;
+	}
+
+	public int getConnectorCount() {
+		return connectorCount;
+	}
+
+	public void addConnector() {
+		connectorCount++;
+	}
+
+	public int getRelationshipCount() {
+		return relationshipCount;
+	}
+
+	public void addRelationship() {
+		relationshipCount++;
+	}
+
+	public String toString() {
+		StringBuilder builder = new StringBuilder("DagFootprint[total=").append(getTotalBytes());
+		for (Part part : Part.values())
+			builder.append(", ").append(part.name().toLowerCase()).append('=').append(getBytes(part));
+		if (mappedBytes > 0)
+			builder.append(", mapped=").append(mappedBytes);
+		return builder.append(']').toString();
+	}
+
+}
@@ -14,6 +14,29 @@ public interface DagItem {
 
     public BigDecimal getWeight();
 
+    /**
+     * Set the weight without creating a BigDecimal when the model uses a primitive DagWeightMode.
+     * @param weight
+     */
+    public void setWeight(double weight);
+
+    /**
+     * Return the weight as a double. This does not allocate when the model uses a primitive DagWeightMode.
+     * @return 0 if there is no weight.
+     */
+    public double getWeightAsDouble();
+
+    /**
+     * Return the weight scaled by 10^DagWeightMode.FIXED_POINT_SCALE. This does not allocate in the FIXED_POINT mode.
+     * @return 0 if there is no weight.
+     */
+    public long getFixedPointWeight();
+
+    /**
+     * @return how the weight is stored. This is set by the model that created the item.
+     */
+    public DagWeightMode getWeightMode();
+
     public Integer getReferenceNo();
 
     public void setReferenceNo(Integer referenceNo);
@@ -18,6 +18,7 @@ package com.onbelay.dagnabit.dagmodel.model;
 import java.util.List;
 import java.util.function.BiPredicate;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 
 
@@ -31,6 +32,12 @@ public interface DagModel extends Comparable<DagModel> {
 
     public String getModelName();
 
+    /**
+     * Return how the weights of this model's nodes and relationships are stored.
+     * @return DECIMAL unless the model was created with another mode.
+     */
+    public DagWeightMode getWeightMode();
+
 	/**
 	 * Create a navigator to be used in the fluent style of navigating this model.
 	 * See DagNodeNavigor for more information.
@@ -144,10 +151,24 @@ public interface DagModel extends Comparable<DagModel> {
 
     /**
      * Return a list of all the nodes added to this model.
-     * @return
+     * @return a read only list. Models that can change return a view that is not copied (see DagModelImpl).
      */
     public List<DagNode> getNodes();
     
+    /**
+     * Return a stream of the nodes without collecting them into a list. Where the model knows the number of nodes
+     * the stream is SIZED and SUBSIZED, so it splits evenly when run in parallel.
+     * @return a stream
+     */
+    public Stream<DagNode> nodeStream();
+    
+    /**
+     * Return a stream of the relationships of the relationshipType, by from node. Parallel streams split by from node.
+     * @param relationshipType - the default relationshipType is allowed.
+     * @return a stream
+     */
+    public Stream<DagRelationship> relationshipStream(DagRelationshipType relationshipType);
+    
     /**
      * Return a list of nodes which have only "From" relationships but no "To" relationships.
      * @return
@@ -160,6 +181,37 @@ public interface DagModel extends Comparable<DagModel> {
      */
     public List<DagNode> findLeafNodes();
     
+    /**
+     * Return the nodes of the category.
+     * @param category - matched by name.
+     * @return an empty list if the category is not used in this model.
+     */
+    public List<DagNode> getNodes(DagNodeCategory category);
+    
+    /**
+     * Return the root nodes (see findRootNodes()) of the category.
+     * @param category - matched by name.
+     */
+    public List<DagNode> findRootNodes(DagNodeCategory category);
+    
+    /**
+     * Return the leaf nodes (see findLeafNodes()) of the category.
+     * @param category - matched by name.
+     */
+    public List<DagNode> findLeafNodes(DagNodeCategory category);
+    
+    /**
+     * Return a list of nodes which have "From" relationships of the relationshipType but no "To" relationships of it.
+     * @param relationshipType - matched by name.
+     */
+    public List<DagNode> findRootNodes(DagRelationshipType relationshipType);
+    
+    /**
+     * Return a list of nodes which have "To" relationships of the relationshipType but no "From" relationships of it.
+     * @param relationshipType - matched by name.
+     */
+    public List<DagNode> findLeafNodes(DagRelationshipType relationshipType);
+    
     /**
      * Return a list of nodes that have no "From" or "To" relationships
      * @return
@@ -186,7 +238,7 @@ public interface DagModel extends Comparable<DagModel> {
     
     /**
      * Return a list of all the relationships (links) added to the model.
-     * @return
+     * @return a read only list.
      */
     public List<DagRelationship> getRelationships();
 
@@ -209,7 +261,7 @@ public interface DagModel extends Comparable<DagModel> {
     
     /**
      * Return a list of all the node types registered in th model.
-     * @return
+     * @return a read only list.
      */
     public List<DagNodeCategory> getNodeCategories();
     
@@ -237,6 +289,13 @@ public interface DagModel extends Comparable<DagModel> {
      * @return null or a DagNode.
      */
     public DagNode getNode(String name);
+
+    /**
+     * Return the node identified by its id. See DagNode.getId()
+     * @param nodeId - node id
+     * @return null or a DagNode.
+     */
+    public DagNode getNode(int nodeId);
     
     /**
      * Explicitly add a default relationship between the two nodes. Note that the default behaviour is to add
@@ -261,6 +320,20 @@ public interface DagModel extends Comparable<DagModel> {
     		String relationshipTypeName,
     		DagNode toNode);
     
+    /**
+     * Remove the relationship from the model. The connector between the two nodes is removed once it holds no relationships.
+     * @param relationship - identifies the fromNode, relationshipType and toNode of the relationship.
+     * @return true if the relationship was in the model.
+     */
+    public boolean removeRelationship(DagRelationship relationship);
+    
+    /**
+     * Remove the node and every relationship to or from it. The ids of the remaining nodes do not change until DagModelImpl.compact() is called.
+     * @param node
+     * @return true if the node was in the model.
+     */
+    public boolean removeNode(DagNode node);
+    
     /**
      * Return a DagRelationshipType for a previously registered relationshipTypeName. Note adding a relationship with a new
      * @param relationshipTypeName - name of the relationshipType
@@ -269,6 +342,30 @@ public interface DagModel extends Comparable<DagModel> {
     public DagRelationshipType getRelationshipType(String relationshipTypeName);
 
     
+    /**
+     * Compile the model into an immutable, read-only snapshot laid out as compressed sparse rows (CSR) per relationshipType.
+     * Navigators, route finders, shortest path and minimum spanning tree finders created from the snapshot traverse contiguous arrays
+     * rather than the per node connector lists. Nodes, connectors and relationships are copied when the snapshot is taken, so changes
+     * made to this model afterwards, including removals and weights, are not visible to it. Its nodes keep the ids they had in this model.
+     * @return a read-only DagModel. Methods that modify the model will throw a DagGraphException.
+     */
+    public DagModel freeze();
+
+    /**
+     * Return a read-only view of the model as it is now. Models written while being read, such as DagConcurrentModel,
+     * return a view pinned to the current version that shares nodes and connectors with the model. Other models return freeze().
+     * @return a read-only DagModel. Methods that modify the model will throw a DagGraphException.
+     */
+    public DagModel snapshot();
+
+    /**
+     * Estimate the heap retained by this model, walking its nodes, connectors, relationships and indexes and sizing each from its field layout.
+     * No heap dump is taken, the walk costs time in proportion to the size of the model.
+     * Structure shared with another model, such as the nodes a snapshot() view shares with its model, is counted in both.
+     * @return the estimate broken down by part of the model, see DagFootprint.
+     */
+    public DagFootprint footprint();
+    
     /**
      * Add the inverse of the link given in dagLink;
      * @param dagRelationship - identifies a link.
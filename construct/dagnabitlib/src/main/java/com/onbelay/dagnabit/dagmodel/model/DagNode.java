@@ -2,6 +2,14 @@ package com.onbelay.dagnabit.dagmodel.model;
 
 public interface DagNode extends DagItem{
 
+	/**
+	 * Return the dense integer id assigned to this node when it was added to the model.
+	 * Ids start at zero and are stable until the model is compacted after nodes are removed (see DagModelImpl.compact()).
+	 * Re-adding a node with the same name keeps the id.
+	 * @return the node id
+	 */
+	public int getId();
+
 	public DagNodeCategory getCategory();
 	
 	public boolean isLeaf();
@@ -20,11 +20,33 @@ public class DagNodeCategory {
 
 	private String categoryName;
 	
+	private int ordinal = -1;
+	
 	public DagNodeCategory(String categoryName) {
 		super();
 		this.categoryName = categoryName;
 	}
 	
+	/**
+	 * Create a category registered with a model.
+	 * @param categoryName
+	 * @param ordinal - small number, unique within the model, used to index the category.
+	 */
+	public DagNodeCategory(String categoryName, int ordinal) {
+		super();
+		this.categoryName = categoryName;
+		this.ordinal = ordinal;
+	}
+	
+	/**
+	 * Return the ordinal given to this category by the model that registered it.
+	 * Ordinals are not part of equality, two categories with the same name are equal.
+	 * @return -1 if the category was created outside of a model.
+	 */
+	public int getOrdinal() {
+		return ordinal;
+	}
+	
 
 	public String getCategoryName() {
 		return categoryName;
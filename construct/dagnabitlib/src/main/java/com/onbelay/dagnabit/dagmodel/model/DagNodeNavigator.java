@@ -16,9 +16,13 @@
 package com.onbelay.dagnabit.dagmodel.model;
 
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.function.BiPredicate;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * Responsible for navigating the Directed Acyclic Graph (DAG) as defined in a DagModel.
@@ -54,6 +58,13 @@ public interface DagNodeNavigator {
 	 */
 	public DagNodeNavigator from (DagNode fromNode);
 	
+	/**
+	 * Variation of from that takes the id of the node. See DagNode.getId()
+	 * @param fromNodeId
+	 * @return a DagNodeNavigator set with the fromNode
+	 */
+	public DagNodeNavigator from (int fromNodeId);
+	
 
 	/**
 	 * Change the default traversal strategy to breadth first from depth first. 
@@ -61,6 +72,37 @@ public interface DagNodeNavigator {
 	 * @return
 	 */
 	public DagNodeNavigator breadthFirst();
+	
+	/**
+	 * Limit descendants, ancestors and levels to the nodes within maxDepth relationships of the starting nodes.
+	 * Nodes at maxDepth are not followed. Descendants and ancestors limited by depth are found breadth first.
+	 * @param maxDepth - 0 or more. Integer.MAX_VALUE, the default, for no limit.
+	 * @return
+	 */
+	public DagNodeNavigator maxDepth(int maxDepth);
+	
+	/**
+	 * Search from each starting node as a separate task on the common ForkJoinPool.
+	 * Applies to paths, pathsTo, cycles, descendants and ancestors. Results are merged in the order of the starting nodes, as when run sequentially.
+	 * The visitor may be called from several threads at once, so it and the context it is given must be thread-safe, or see contextPerTask.
+	 * The model must not be changed during the search.
+	 * @return
+	 */
+	public DagNodeNavigator parallel();
+	
+	/**
+	 * Variation of parallel that runs the tasks on the given executor.
+	 * @param executor - required
+	 * @return
+	 */
+	public DagNodeNavigator parallel(ExecutorService executor);
+	
+	/**
+	 * Give the search from each starting node its own context, created by the supplier, in place of the context set by using.
+	 * @param contextSupplier - called once for each starting node, on the thread of its task
+	 * @return
+	 */
+	public DagNodeNavigator contextPerTask(Supplier<DagContext> contextSupplier);
 
 	
 	/**
@@ -94,7 +136,7 @@ public interface DagNodeNavigator {
 	public DagNodeNavigator sorted(Comparator<DagNode> comparator);
 	
 	/**
-	 * Reset all the visitors, predicates and sort criteria
+	 * Reset all the visitors, predicates, sort criteria and the maxDepth
 	 * @return
 	 */
 	public DagNodeNavigator reset();
@@ -178,6 +220,21 @@ public interface DagNodeNavigator {
 	 * @return
 	 */
 	public List<DagNode> descendants();
+	
+	/**
+	 * End Result
+	 * Search breadth first from the starting nodes, following the from relationships, and return the nodes found by their distance.
+	 * Level 0 holds the starting nodes and level n the nodes n relationships from the nearest of them, up to the maxDepth.
+	 * @return a list of levels, each sorted if a sort is specified
+	 */
+	public List<List<DagNode>> levels();
+	
+	/**
+	 * End Result
+	 * Variation of levels that follows the to relationships (ancestors).
+	 * @return a list of levels
+	 */
+	public List<List<DagNode>> levelsTo();
 
 	
 	/**
@@ -250,6 +307,34 @@ public interface DagNodeNavigator {
 	 * @return
 	 */
 	public List<DagNodePath> cycles();
+	
+	/**
+	 * End Result
+	 * Lazy variant of paths(). Paths are found as the iterator is consumed, one starting node after another.
+	 * @return an iterator over the paths returned by paths()
+	 */
+	public Iterator<DagNodePath> pathIterator();
+	
+	/**
+	 * End Result
+	 * Return the paths of pathIterator() as a stream. limit() and other short-circuiting operations stop the traversal.
+	 * @return a stream of the paths returned by paths()
+	 */
+	public Stream<DagNodePath> pathStream();
+	
+	/**
+	 * End Result
+	 * Lazy variant of pathsTo().
+	 * @return a stream of the paths returned by pathsTo()
+	 */
+	public Stream<DagNodePath> pathToStream();
+	
+	/**
+	 * End Result
+	 * Lazy variant of cycles().
+	 * @return a stream of the paths returned by cycles()
+	 */
+	public Stream<DagNodePath> cycleStream();
 
 	
 	/**
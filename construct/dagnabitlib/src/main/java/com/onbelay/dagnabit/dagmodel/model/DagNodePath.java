@@ -17,12 +17,15 @@ package com.onbelay.dagnabit.dagmodel.model;
 
 import java.math.BigDecimal;
 import java.math.MathContext;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * DagNodePath defines a path from the fromNode to the toNode as a set of zero to many DagLinks.
  * The list of DagLinks will be empty if there is no path between the two nodes.
+ * A path built by extending a shorter path shares the shorter path's relationships rather than copying them.
  * @author lefeu
  *
  */
@@ -31,7 +34,21 @@ public class DagNodePath {
     private DagNode startNode;
     private DagNode endNode;
     
-    private List<DagRelationship> relationships = new ArrayList<>();
+    // a path built from a shorter one holds only its last relationship and a reference to the shorter path, whose relationships it shares
+    private DagNodePath parent;
+    private DagRelationship lastRelationship;
+    
+    // the number of relationships when the path was created, held by the path and its parents
+    private int length;
+    
+    // created from the parents on first use, unless given when the path was created
+    private List<DagRelationship> relationships;
+    
+    // the total weight of the first length relationships, cached on first use
+    private boolean isTotalCached;
+    private double doubleTotal;
+    private long fixedPointTotal;
+    private BigDecimal decimalTotal = BigDecimal.ZERO;
     
     public DagNodePath(
     		DagNode startNode, 
@@ -40,6 +57,7 @@ public class DagNodePath {
     	
     	this.startNode = startNode;
     	this.relationships = relationships;
+    	this.length = relationships.size();
     	this.endNode = endNode;
     	
     }
@@ -52,28 +70,34 @@ public class DagNodePath {
         super();
         this.startNode = startNode;
         this.endNode = endNode;
-        relationships.add(link);
+        this.lastRelationship = link;
+        this.length = 1;
     }
     
+    /**
+     * Create a path that extends lastPath by the link. The relationships of lastPath are shared rather than copied,
+     * so creating every prefix of a path of n relationships takes memory linear in n.
+     */
     public DagNodePath(
     		DagNode startNode, 
     		DagNodePath lastPath, 
     		DagRelationship link,
     		DagNode endNode) {
     	
-    	relationships.addAll(lastPath.getRelationships());
         this.startNode = startNode;
         this.endNode = endNode;
-        relationships.add(link);
+        this.parent = lastPath;
+        this.lastRelationship = link;
+        this.length = lastPath.length + 1;
     }
 
     public void addPathLink(DagRelationship v) {
-    	relationships.add(v);
+    	getRelationships().add(v);
     }
     
     public void addToPathLink(DagRelationship v) {
     	this.startNode = v.getFromNode();
-    	relationships.add(v);
+    	getRelationships().add(v);
     }
     
     /**
@@ -81,16 +105,48 @@ public class DagNodePath {
      * @return true if path exists
      */
     public boolean pathExists() {
-    	return relationships.isEmpty() == false;
+    	return getLength() > 0;
+    }
+    
+    /**
+     * Return the number of relationships in the path.
+     */
+    public int getLength() {
+    	return relationships == null ? length : relationships.size();
     }
     
     /**
      * Returns a list of DagLinks that describes the path in order from the fromNode to the toNode.
+     * The list is created from the relationships shared with shorter paths on the first call.
      * @return a list of DagLinks. The list will be empty if there is no path.
      */
     public List<DagRelationship> getRelationships() {
+    	if (relationships == null)
+    		relationships = new ArrayList<DagRelationship>(Arrays.asList(toArray()));
         return relationships;
     }
+    
+    /**
+     * Return the relationships of the path, walking the parents if they have not been created as a list.
+     */
+    private DagRelationship[] toArray() {
+    	if (relationships != null)
+    		return relationships.toArray(new DagRelationship[relationships.size()]);
+    	
+    	DagRelationship[] links = new DagRelationship[length];
+    	int i = length;
+    	DagNodePath path = this;
+    	while (path.relationships == null) {
+    		links[--i] = path.lastRelationship;
+    		path = path.parent;
+    		if (path == null)
+    			return links;
+    	}
+    	// the list may have been extended since the path was created, only its first i relationships are shared
+    	for (int j = 0; j < i; j++)
+    		links[j] = path.relationships.get(j);
+    	return links;
+    }
 
     public DagNode getStartNode() {
         return startNode;
@@ -102,13 +158,130 @@ public class DagNodePath {
     
     /**
      * Calculate the total weight of the path based on the weights of the links.
+     * The total is cached with the path and shared by longer paths built from it, so weights changed after it is first calculated are not reflected.
      * @return 0 if no links or total weight.
      */
     public BigDecimal calculateTotalWeight() {
-		BigDecimal totalWeight = BigDecimal.ZERO;
-    	for (DagRelationship c : relationships) {
-    		totalWeight = totalWeight.add(c.getWeight(), MathContext.DECIMAL128);
+    	if (pathExists() == false)
+    		return BigDecimal.ZERO;
+    	
+    	switch (getWeightMode()) {
+    	case DOUBLE:
+    		return BigDecimal.valueOf(calculateTotalWeightAsDouble());
+    	case FIXED_POINT:
+    		return DagWeightMode.fromFixedPoint(calculateTotalFixedPointWeight());
+    	default:
+    		if (isExtended())
+    			return sumDecimal(relationships);
+    		cacheTotal();
+    		return decimalTotal;
     	}
+    }
+    
+    /**
+     * Calculate the total weight of the path as a double. Nothing is allocated when the model uses a primitive DagWeightMode.
+     * @return 0 if no links or total weight.
+     */
+    public double calculateTotalWeightAsDouble() {
+    	if (pathExists() == false)
+    		return 0;
+    	
+    	if (getWeightMode() == DagWeightMode.FIXED_POINT)
+    		return DagWeightMode.fixedPointToDouble(calculateTotalFixedPointWeight());
+    	
+    	if (isExtended())
+    		return sumDouble(relationships);
+    	cacheTotal();
+    	return doubleTotal;
+    }
+    
+    private long calculateTotalFixedPointWeight() {
+    	if (isExtended())
+    		return sumFixedPoint(relationships);
+    	cacheTotal();
+    	return fixedPointTotal;
+    }
+    
+    private DagWeightMode getWeightMode() {
+    	if (lastRelationship != null)
+    		return lastRelationship.getWeightMode();
+    	return relationships.get(0).getWeightMode();
+    }
+    
+    /**
+     * Return true if relationships have been added since the path was created, so its total is not the cached one.
+     */
+    private boolean isExtended() {
+    	return relationships != null && relationships.size() != length;
+    }
+    
+    /**
+     * Cache the total weight of this path and of each parent up to the nearest one with its total cached,
+     * adding the weight of each path's last relationship to the total of its parent.
+     */
+    private void cacheTotal() {
+    	if (isTotalCached)
+    		return;
+    	
+    	ArrayDeque<DagNodePath> uncached = new ArrayDeque<DagNodePath>();
+    	DagNodePath path = this;
+    	while (path != null && path.isTotalCached == false) {
+    		uncached.push(path);
+    		path = path.lastRelationship == null ? null : path.parent;
+    	}
+    	
+    	DagWeightMode weightMode = getWeightMode();
+    	double doubleWeight = path == null ? 0 : path.doubleTotal;
+    	long fixedPointWeight = path == null ? 0 : path.fixedPointTotal;
+    	BigDecimal decimalWeight = path == null ? BigDecimal.ZERO : path.decimalTotal;
+    	
+    	for (DagNodePath next : uncached) {
+    		if (next.lastRelationship == null) {
+    			List<DagRelationship> links = next.relationships.subList(0, next.length);
+    			doubleWeight = sumDouble(links);
+    			fixedPointWeight = weightMode == DagWeightMode.FIXED_POINT ? sumFixedPoint(links) : 0;
+    			decimalWeight = weightMode == DagWeightMode.DECIMAL ? sumDecimal(links) : BigDecimal.ZERO;
+    		} else {
+    			switch (weightMode) {
+    			case FIXED_POINT:
+    				fixedPointWeight += next.lastRelationship.getFixedPointWeight();
+    				break;
+    			case DECIMAL:
+    				decimalWeight = decimalWeight.add(next.lastRelationship.getWeight(), MathContext.DECIMAL128);
+    				doubleWeight += next.lastRelationship.getWeightAsDouble();
+    				break;
+    			default:
+    				doubleWeight += next.lastRelationship.getWeightAsDouble();
+    			}
+    		}
+    		next.doubleTotal = doubleWeight;
+    		next.fixedPointTotal = fixedPointWeight;
+    		next.decimalTotal = decimalWeight;
+    		next.isTotalCached = true;
+    	}
+    }
+    
+    private static double sumDouble(List<DagRelationship> links) {
+    	double totalWeight = 0;
+    	for (int i = 0; i < links.size(); i++)
+    		totalWeight += links.get(i).getWeightAsDouble();
+    	
+    	return totalWeight;
+    }
+    
+    private static long sumFixedPoint(List<DagRelationship> links) {
+    	long totalWeight = 0;
+    	for (int i = 0; i < links.size(); i++)
+    		totalWeight += links.get(i).getFixedPointWeight();
+    	
+    	return totalWeight;
+    }
+    
+    private static BigDecimal sumDecimal(List<DagRelationship> links) {
+    	BigDecimal totalWeight = BigDecimal.ZERO;
+    	for (DagRelationship c : links)
+    		totalWeight = totalWeight.add(c.getWeight(), MathContext.DECIMAL128);
+    	
     	return totalWeight;
     }
 
@@ -132,13 +305,14 @@ public class DagNodePath {
 	    	buffer.append(getEndNode().getName());
 	    	buffer.append("]     Via: ");
 	    	
-	    	DagRelationship c = relationships.get(0);
+	    	DagRelationship[] links = toArray();
+	    	DagRelationship c = links[0];
     		buffer.append(c.getFromNode().getName());
     		buffer.append(" -> ");
     		buffer.append(c.getToNode().getName());
 	    	
-	    	for (int i = 1; i < relationships.size(); i++) {
-	    		c = relationships.get(i);
+	    	for (int i = 1; i < links.length; i++) {
+	    		c = links[i];
 	    		buffer.append(", ");
 	    		buffer.append(c.getFromNode().getName());
 	    		buffer.append(" -> ");
@@ -153,7 +327,7 @@ public class DagNodePath {
     public String toStringWithWeights() {
     	if (pathExists()) {
 	    	StringBuffer buffer = new StringBuffer(getStartNode().getName());
-	    	for (DagRelationship c : relationships) {
+	    	for (DagRelationship c : toArray()) {
 	    		buffer.append(" - ");
 	    		buffer.append(c.getWeight());
 	    		buffer.append(" > ");
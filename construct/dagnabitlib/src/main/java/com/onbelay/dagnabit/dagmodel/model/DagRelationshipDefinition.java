@@ -0,0 +1,74 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Describes a relationship by node names so it can be supplied in bulk (iterators, streams) to a model builder.
+ *
+ */
+public class DagRelationshipDefinition {
+
+	private String fromNodeName;
+	private String relationshipTypeName;
+	private String toNodeName;
+	private BigDecimal weight;
+
+	public DagRelationshipDefinition(
+			String fromNodeName,
+			String relationshipTypeName,
+			String toNodeName) {
+
+		this.fromNodeName = fromNodeName;
+		this.relationshipTypeName = relationshipTypeName;
+		this.toNodeName = toNodeName;
+	}
+
+	public DagRelationshipDefinition(
+			String fromNodeName,
+			String relationshipTypeName,
+			String toNodeName,
+			BigDecimal weight) {
+
+		this(fromNodeName, relationshipTypeName, toNodeName);
+		this.weight = weight;
+	}
+
+	public String getFromNodeName() {
+		return fromNodeName;
+	}
+
+	public String getRelationshipTypeName() {
+		return relationshipTypeName;
+	}
+
+	public String getToNodeName() {
+		return toNodeName;
+	}
+
+	/**
+	 * @return null if the relationship should keep the default weight.
+	 */
+	public BigDecimal getWeight() {
+		return weight;
+	}
+
+	public String toString() {
+		return fromNodeName + ":" + relationshipTypeName + ":>" + toNodeName;
+	}
+
+}
@@ -19,17 +19,39 @@ public class DagRelationshipType {
 	public static final String DEFAULT_TYPE = "link";
 
 	private String name;
+	
+	private int ordinal = -1;
 
 	public DagRelationshipType(String name) {
 		super();
 		this.name = name;
 	}
 
+	/**
+	 * Create a relationshipType registered with a model.
+	 * @param name
+	 * @param ordinal - small number, unique within the model, used to index the relationshipType.
+	 */
+	public DagRelationshipType(String name, int ordinal) {
+		super();
+		this.name = name;
+		this.ordinal = ordinal;
+	}
+
 	public String getName() {
 		return name;
 	};
 	
 	
+	/**
+	 * Return the ordinal given to this relationshipType by the model that registered it.
+	 * Ordinals are not part of equality, two relationshipTypes with the same name are equal.
+	 * @return -1 if the relationshipType was created outside of a model.
+	 */
+	public int getOrdinal() {
+		return ordinal;
+	}
+	
 	public String toString() {
 		return name;
 	}
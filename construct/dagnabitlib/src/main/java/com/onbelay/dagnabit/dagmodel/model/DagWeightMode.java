@@ -0,0 +1,62 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * How a model stores the weights of its nodes and relationships.
+ * <ul>
+ * <li> DECIMAL - weights are held as BigDecimal and added with DECIMAL128 precision. This is the default.
+ * <li> DOUBLE - weights are held as a primitive double.
+ * <li> FIXED_POINT - weights are held as a long scaled by 10^FIXED_POINT_SCALE, so sums are exact to that number of decimal places.
+ * </ul>
+ * In the DOUBLE and FIXED_POINT modes path costing, shortest path and minimum spanning tree run on primitives.
+ * getWeight() still returns a BigDecimal, created on each call.
+ */
+public enum DagWeightMode {
+	
+	DECIMAL,
+	DOUBLE,
+	FIXED_POINT;
+	
+	public static final int FIXED_POINT_SCALE = 6;
+	
+	private static final double FIXED_POINT_FACTOR = 1_000_000d;
+	
+	/**
+	 * Convert a weight to the scaled long used in the FIXED_POINT mode. Digits beyond FIXED_POINT_SCALE are rounded half even.
+	 * @param weight
+	 * @return the scaled weight
+	 */
+	public static long toFixedPoint(BigDecimal weight) {
+		return weight.setScale(FIXED_POINT_SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+	}
+	
+	public static long toFixedPoint(double weight) {
+		return Math.round(weight * FIXED_POINT_FACTOR);
+	}
+	
+	public static BigDecimal fromFixedPoint(long weight) {
+		return BigDecimal.valueOf(weight, FIXED_POINT_SCALE);
+	}
+	
+	public static double fixedPointToDouble(long weight) {
+		return weight / FIXED_POINT_FACTOR;
+	}
+
+}
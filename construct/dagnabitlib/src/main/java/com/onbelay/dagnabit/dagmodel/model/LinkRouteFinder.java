@@ -15,8 +15,10 @@
  */
 package com.onbelay.dagnabit.dagmodel.model;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * A lower level method of navigating the DagModel.
@@ -50,15 +52,78 @@ public interface LinkRouteFinder {
 	 * @return a list of nodes processed in order of search
 	 */
 	public List<DagNode> findDescendantsBreadthFirst(DagNode startNode);
+	
+	/**
+	 * Variation of findDescendantsBreadthFirst that takes the id of the start node.
+	 * @param startNodeId - id of the node to start traversal from.
+	 * @return a list of nodes processed in order of search
+	 */
+	public List<DagNode> findDescendantsBreadthFirst(int startNodeId);
 
 
 	/**
-	 * Return a list of descendants based on the default depth-first strategy
+	 * Search breadth first from the startNode, following the from relationships, and return the nodes found by their distance from it.
+	 * Nodes maxDepth relationships away are not followed, so only the nodes within maxDepth are visited.
+	 * @param startNode - node to start traversal from.
+	 * @param maxDepth - the most relationships to follow from the startNode, Integer.MAX_VALUE for no limit.
+	 * @return a list of levels. Level 0 holds the startNode and level n the nodes n relationships from it.
+	 */
+	public List<List<DagNode>> findLevelsFrom(DagNode startNode, int maxDepth);
+	
+	/**
+	 * Variation of findLevelsFrom that searches from several nodes at once. Each node is placed at its distance from the nearest of the startNodes.
+	 * @param startNodes - nodes to start traversal from, all at level 0.
+	 * @param maxDepth - the most relationships to follow from the startNodes.
+	 * @return a list of levels
+	 */
+	public List<List<DagNode>> findLevelsFrom(List<DagNode> startNodes, int maxDepth);
+	
+	/**
+	 * Variation of findLevelsFrom that follows the to relationships (ancestors).
+	 * @param startNode - node to start traversal from.
+	 * @param maxDepth - the most relationships to follow from the startNode.
+	 * @return a list of levels
+	 */
+	public List<List<DagNode>> findLevelsTo(DagNode startNode, int maxDepth);
+	
+	/**
+	 * Variation of findLevelsTo that searches from several nodes at once.
+	 * @param startNodes - nodes to start traversal from, all at level 0.
+	 * @param maxDepth - the most relationships to follow from the startNodes.
+	 * @return a list of levels
+	 */
+	public List<List<DagNode>> findLevelsTo(List<DagNode> startNodes, int maxDepth);
+
+	/**
+	 * Return a list of descendants based on the default depth-first strategy.
+	 * Each node is visited once, in time linear in the nodes and relationships reached, however many paths lead to it.
 	 * @param startNode - node to start traversal from
 	 * @return a list of descendant nodes in order of search
 	 */
 	public List<DagNode> findDescendants(DagNode startNode);
 	
+	/**
+	 * Variation of findDescendants that takes the id of the start node.
+	 * @param startNodeId - id of the node to start traversal from
+	 * @return a list of descendant nodes in order of search
+	 */
+	public List<DagNode> findDescendants(int startNodeId);
+	
+	/**
+	 * Return a list of ancestors based on the default depth-first strategy, following the to relationships.
+	 * As with findDescendants each node is visited once, so paths are not enumerated.
+	 * @param startNode - node to start traversal from
+	 * @return a list of ancestor nodes in order of search
+	 */
+	public List<DagNode> findAncestors(DagNode startNode);
+	
+	/**
+	 * Variation of findAncestors that takes the id of the start node.
+	 * @param startNodeId - id of the node to start traversal from
+	 * @return a list of ancestor nodes in order of search
+	 */
+	public List<DagNode> findAncestors(int startNodeId);
+	
 	/**
 	 * Return a NodeSearchResult that contains the paths and any cycles from this startNode.
 	 * The paths are the same paths returned by findAllPathsFrom.
@@ -67,12 +132,26 @@ public interface LinkRouteFinder {
 	 */
 	public NodeSearchResult discoverFromRelationships(DagNode startNode);
 	
+	/**
+	 * Variation of discoverFromRelationships that takes the id of the start node.
+	 * @param startNodeId - id of the node to start the traversal from
+	 * @return a NodeSearchResult
+	 */
+	public NodeSearchResult discoverFromRelationships(int startNodeId);
+	
 	/**
 	 * Return a NodeSearchResult that contains the paths and any cycles to this startNode
 	 * @param startNode - the node to start traversing the "To" relationships.
 	 * @return a NodeSearchResult
 	 */
 	public NodeSearchResult discoverToRelationships(DagNode startNode);
+	
+	/**
+	 * Variation of discoverToRelationships that takes the id of the start node.
+	 * @param startNodeId - id of the node to start traversing the "To" relationships.
+	 * @return a NodeSearchResult
+	 */
+	public NodeSearchResult discoverToRelationships(int startNodeId);
 
 	/**
 	 * Return a NodeSearchResult that contains the paths and any cycles to this startNode from the end node
@@ -90,12 +169,62 @@ public interface LinkRouteFinder {
 	 */
 	public List<DagNodePath> findAllPathsFrom(DagNode startNode);
 	
+	/**
+	 * Variation of findAllPathsFrom that takes the id of the start node.
+	 * @param startNodeId id of the node to start traversing the from relationships from.
+	 * @return
+	 */
+	public List<DagNodePath> findAllPathsFrom(int startNodeId);
+	
 	/**
 	 * Return a list of paths to the provided end node. (navigates the to relationship to the ancestors.)
 	 * @param startNode - node to start traversing the to relationships from.
 	 * @return a list of zero or more paths
 	 */
 	public List<DagNodePath> findAllPathsTo(DagNode startNode);
+	
+	/**
+	 * Variation of findAllPathsTo that takes the id of the start node.
+	 * @param startNodeId - id of the node to start traversing the to relationships from.
+	 * @return a list of zero or more paths
+	 */
+	public List<DagNodePath> findAllPathsTo(int startNodeId);
+	
+	/**
+	 * Lazy variant of findAllPathsFrom. The search is suspended between paths and advances only as the iterator is consumed,
+	 * so a caller needing the first few paths does not pay for the rest.
+	 * @param startNode node to start traversing the from relationships from.
+	 * @return an iterator over the same paths, in the same order, as findAllPathsFrom
+	 */
+	public Iterator<DagNodePath> pathIteratorFrom(DagNode startNode);
+	
+	/**
+	 * Return the paths of pathIteratorFrom as a sequential, ordered stream. Short-circuiting operations such as limit() and findFirst() end the search.
+	 * @param startNode node to start traversing the from relationships from.
+	 * @return a stream of the paths returned by findAllPathsFrom
+	 */
+	public Stream<DagNodePath> pathStreamFrom(DagNode startNode);
+	
+	/**
+	 * Lazy variant of findAllPathsTo, see pathIteratorFrom.
+	 * @param startNode - node to start traversing the to relationships from.
+	 * @return an iterator over the same paths, in the same order, as findAllPathsTo
+	 */
+	public Iterator<DagNodePath> pathIteratorTo(DagNode startNode);
+	
+	/**
+	 * Return the paths of pathIteratorTo as a sequential, ordered stream.
+	 * @param startNode - node to start traversing the to relationships from.
+	 * @return a stream of the paths returned by findAllPathsTo
+	 */
+	public Stream<DagNodePath> pathStreamTo(DagNode startNode);
+	
+	/**
+	 * Return the cycles found by discoverFromRelationships as a lazy stream.
+	 * @param startNode - node to start traversing the from relationships from.
+	 * @return a stream of paths each ending with the relationship that returns to a node already on it
+	 */
+	public Stream<DagNodePath> cycleStreamFrom(DagNode startNode);
 
 	
 	/**
@@ -19,6 +19,14 @@ public interface ShortestPathFinder {
 	 * @return a DagNodePath if there is any with one to many links from start to end.
 	 */
 	public DagNodePath findShortestRoute(DagNode startNode, DagNode endNode);
+	
+	/**
+	 * Variation of findShortestRoute that takes node ids.
+	 * @param startNodeId
+	 * @param endNodeId
+	 * @return a DagNodePath if there is any with one to many links from start to end.
+	 */
+	public DagNodePath findShortestRoute(int startNodeId, int endNodeId);
 
 	
 	/**
@@ -28,4 +36,12 @@ public interface ShortestPathFinder {
 	 * @return list with dagNodes in order.
 	 */
 	public List<DagNode> findShortestPath(DagNode startNode, DagNode endNode);
+	
+	/**
+	 * Variation of findShortestPath that takes node ids.
+	 * @param startNodeId
+	 * @param endNodeId
+	 * @return list with dagNodes in order.
+	 */
+	public List<DagNode> findShortestPath(int startNodeId, int endNodeId);
 }
@@ -3,6 +3,7 @@ package com.onbelay.dagnabit.dagmodel.examples.shortestpath;
 import com.onbelay.dagnabit.dagmodel.components.DagModelImpl;
 import com.onbelay.dagnabit.dagmodel.model.DagModel;
 import com.onbelay.dagnabit.dagmodel.model.DagRelationship;
+import com.onbelay.dagnabit.dagmodel.model.DagWeightMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,7 +13,11 @@ public class ModelFixture {
 	private static Logger logger = LoggerFactory.getLogger(ModelFixture.class);
 
 	public static DagModel buildModel() {
-		DagModel model = new DagModelImpl("test");
+		return buildModel(DagWeightMode.DECIMAL);
+	}
+	
+	public static DagModel buildModel(DagWeightMode weightMode) {
+		DagModel model = new DagModelImpl("test", weightMode);
 		
 		model.addNode("start");
 		
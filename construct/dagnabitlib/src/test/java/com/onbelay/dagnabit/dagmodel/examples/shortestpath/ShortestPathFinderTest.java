@@ -23,6 +23,7 @@ import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -135,6 +136,69 @@ public class ShortestPathFinderTest  {
 	}
 	
 	
+	@Test
+	public void testFindShortestRouteWithPrimitiveWeights() {
+		
+		for (DagWeightMode weightMode : new DagWeightMode[] {DagWeightMode.DOUBLE, DagWeightMode.FIXED_POINT}) {
+			model = ModelFixture.buildModel(weightMode);
+			assertEquals(weightMode, model.getWeightMode());
+			
+			ShortestPathFinder finder = model.createShortestPathFinder(model.getDefaultRelationshipType());
+			
+			DagNodePath path = finder.findShortestRoute(model.getNode("start"), model.getNode("finish"));
+			assertEquals("[start:link:>B, B:link:>A, A:link:>finish]", path.getRelationships().toString());
+			assertEquals(weightMode, path.getRelationships().get(0).getWeightMode());
+			assertEquals(0, path.calculateTotalWeight().compareTo(BigDecimal.valueOf(6)));
+			assertEquals(6, path.calculateTotalWeightAsDouble(), 0);
+			
+			DagRelationship link = path.getRelationships().get(0);
+			link.setWeight(new BigDecimal("2.25"));
+			assertEquals(2.25, link.getWeightAsDouble(), 0);
+			assertEquals(2250000, link.getFixedPointWeight());
+			assertEquals(0, link.getWeight().compareTo(new BigDecimal("2.25")));
+		}
+	}
+	
+	
+	@Test
+	public void testFindFrozenShortestRouteWithPrimitiveWeights() {
+		
+		for (DagWeightMode weightMode : new DagWeightMode[] {DagWeightMode.DOUBLE, DagWeightMode.FIXED_POINT}) {
+			model = ModelFixture.buildModel(weightMode);
+			DagModel frozen = model.freeze();
+		
+			model.getDefaultRelationship(model.getNode("start"), model.getNode("B")).setWeight(100);
+		
+			ShortestPathFinder finder = frozen.createShortestPathFinder(frozen.getDefaultRelationshipType());
+			DagNodePath path = finder.findShortestRoute(frozen.getNode("start"), frozen.getNode("finish"));
+			assertEquals("[start:link:>B, B:link:>A, A:link:>finish]", path.getRelationships().toString());
+			assertEquals(6, path.calculateTotalWeightAsDouble(), 0);
+		
+			// a snapshot of the changed model finds the route the model finds through its connectors
+			DagModel refrozen = model.freeze();
+			assertEquals(
+					model.createShortestPathFinder(model.getDefaultRelationshipType())
+						.findShortestRoute(model.getNode("start"), model.getNode("finish")).getRelationships().toString(),
+					refrozen.createShortestPathFinder(refrozen.getDefaultRelationshipType())
+						.findShortestRoute(refrozen.getNode("start"), refrozen.getNode("finish")).getRelationships().toString());
+		}
+	}
+	
+	
+	@Test
+	public void testFindShortestPathById() {
+		model = ModelFixture.buildModel();
+		
+		ShortestPathFinder finder = model.createShortestPathFinder(model.getDefaultRelationshipType());
+		
+		List<DagNode> nodes = finder.findShortestPath(model.getNode("start").getId(), model.getNode("finish").getId());
+		assertEquals("[start, B, A, finish]", nodes.stream().map(n -> n.getName()).collect(Collectors.toList()).toString());
+		
+		DagNodePath path = finder.findShortestRoute(model.getNode("start").getId(), model.getNode("finish").getId());
+		assertEquals(3, path.getRelationships().size());
+	}
+	
+	
 	@Test
 	public void testFindShortestPathComplex() {
 		model = ModelFixture.buildComplexModel();
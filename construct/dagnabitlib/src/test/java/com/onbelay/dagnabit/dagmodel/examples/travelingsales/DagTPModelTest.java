@@ -26,8 +26,10 @@ import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class DagTPModelTest  {
@@ -85,6 +87,29 @@ public class DagTPModelTest  {
 	}
 	
 	
+	@Test
+	public void testFirstPathsLargeModel() {
+
+		model = TPFixture.buildLargeTPMode();
+		
+		AtomicInteger visits = new AtomicInteger();
+		
+		List<DagNodePath> paths = model
+									.navigate()
+									.from(model.getNode("1"))
+									.by(model.getRelationshipType("connects"))
+									.visitWith((c, f, r, t) -> visits.incrementAndGet())
+									.pathStream()
+									.filter(p -> p.getRelationships().size() == 7)
+									.limit(10)
+									.collect(Collectors.toList());
+		
+		assertEquals(10, paths.size());
+		// the search stops at the tenth path, long before every path of the model is followed
+		assertTrue(visits.get() < 1000);
+	}
+	
+	
 	@Test
 	/*
 	 * Should find 
@@ -0,0 +1,299 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.model;
+
+import com.onbelay.dagnabit.dagmodel.components.DagConcurrentModel;
+import com.onbelay.dagnabit.dagmodel.components.DagModelImpl;
+import com.onbelay.dagnabit.dagmodel.exception.DagGraphException;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the concurrent model answers like DagModelImpl and stays consistent while read and written by several threads.
+ * Test snapshots see a fixed version of the model.
+ *
+ */
+public class DagConcurrentModelTest {
+
+	@Test
+	public void testMatchesModelImpl() {
+		DagModel model = new DagModelImpl("test");
+		DagModel concurrent = new DagConcurrentModel("test");
+
+		for (DagModel m : new DagModel[] {model, concurrent}) {
+			m.addNode("S", "special");
+			m.addNode("A");
+			m.addNode("B");
+			m.addNode("C");
+			m.addNode("D");
+			m.addRelationship(m.getNode("A"), "benchesTo", m.getNode("D")).setWeight(BigDecimal.valueOf(9));
+			m.addRelationship(m.getNode("A"), "benchesTo", m.getNode("B")).setWeight(BigDecimal.valueOf(2));
+			m.addRelationship(m.getNode("B"), "benchesTo", m.getNode("C")).setWeight(BigDecimal.valueOf(1));
+			m.addRelationship(m.getNode("C"), "benchesTo", m.getNode("D")).setWeight(BigDecimal.valueOf(3));
+			m.addRelationship(m.getNode("C"), "basisTo", m.getNode("D"));
+			m.addDefaultRelationship(m.getNode("A"), m.getNode("S"));
+		}
+
+		assertEquals(names(model.getNodes()), names(concurrent.getNodes()));
+		assertEquals(names(model.findRootNodes()), names(concurrent.findRootNodes()));
+		assertEquals(names(model.findLeafNodes()), names(concurrent.findLeafNodes()));
+		assertEquals(relationshipNames(model.getRelationships()), relationshipNames(concurrent.getRelationships()));
+		assertNotNull(concurrent.getDefaultRelationship(concurrent.getNode("A"), concurrent.getNode("S")));
+
+		DagRelationshipType benchesTo = concurrent.getRelationshipType("benchesTo");
+		assertEquals(
+				names(model.navigate().from(model.getNode("A")).by(model.getRelationshipType("benchesTo")).descendants()),
+				names(concurrent.navigate().from(concurrent.getNode("A")).by(benchesTo).descendants()));
+
+		assertEquals(
+				names(model.navigate().from(model.getNode("D")).by(model.getRelationshipType("benchesTo")).ancestors()),
+				names(concurrent.navigate().from(concurrent.getNode("D")).by(benchesTo).ancestors()));
+
+		DagNodePath route = concurrent
+				.createShortestPathFinder(benchesTo)
+				.findShortestRoute(concurrent.getNode("A"), concurrent.getNode("D"));
+		assertEquals("[A:benchesTo:>B, B:benchesTo:>C, C:benchesTo:>D]", route.getRelationships().toString());
+
+		assertSame(concurrent.getNode("A"), concurrent.addNode("A"));
+		assertSame(
+				concurrent.getRelationships().get(0),
+				concurrent.addRelationship(concurrent.getNode("A"), "benchesTo", concurrent.getNode("D")));
+	}
+
+
+	@Test
+	public void testReadersDuringWrites() throws Throwable {
+		int writers = 4;
+		int chainLength = 500;
+
+		DagConcurrentModel model = new DagConcurrentModel("test");
+		DagRelationshipType benchesTo = model.getRelationshipType("benchesTo");
+		DagRelationshipType basisTo = model.getRelationshipType("basisTo");
+		DagNode root = model.addNode("root");
+
+		ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+		AtomicBoolean isWriting = new AtomicBoolean(true);
+		try {
+			List<Future<?>> writes = new ArrayList<>();
+			for (int w = 0; w < writers; w++) {
+				int chain = w;
+				writes.add(executor.submit(() -> {
+					DagNode previous = root;
+					for (int i = 0; i < chainLength; i++) {
+						DagNode node = model.addNode("N" + chain + "-" + i);
+						model.addRelationship(previous, "benchesTo", node);
+						model.addRelationship(previous, "basisTo", node);
+						previous = node;
+					}
+				}));
+			}
+
+			List<Future<?>> reads = new ArrayList<>();
+			for (int r = 0; r < 2; r++) {
+				reads.add(executor.submit(() -> {
+					while (isWriting.get()) {
+						List<DagNode> descendants = model.navigate().from(root).by(benchesTo).descendants();
+						for (DagNode node : descendants) {
+							// A connector seen through basisTo always carries its basisTo relationship.
+							for (DagNode child : model.navigate().from(node).by(basisTo).children())
+								assertNotNull(model.getNode(child.getName()));
+						}
+						assertTrue(descendants.size() <= writers * chainLength);
+					}
+				}));
+			}
+
+			for (Future<?> write : writes)
+				write.get(60, TimeUnit.SECONDS);
+			isWriting.set(false);
+			for (Future<?> read : reads)
+				read.get(60, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(writers * chainLength + 1, model.getNodes().size());
+		assertEquals(writers * chainLength * 2, model.getRelationships().size());
+		assertEquals(writers * chainLength, model.navigate().from(root).by(benchesTo).descendants().size());
+		assertEquals(writers * chainLength, model.navigate().from(root).by(basisTo).descendants().size());
+		for (DagNode node : model.getNodes())
+			assertEquals(node, model.getNode(node.getId()));
+	}
+
+
+	@Test
+	public void testConcurrentAddNodeGivesOneNode() throws Throwable {
+		DagConcurrentModel model = new DagConcurrentModel("test");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Callable<List<DagNode>>> tasks = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				tasks.add(() -> {
+					List<DagNode> added = new ArrayList<>();
+					for (int i = 0; i < 1000; i++)
+						added.add(model.addNode("N" + i));
+					return added;
+				});
+			}
+			List<DagNode> first = null;
+			for (Future<List<DagNode>> result : executor.invokeAll(tasks)) {
+				if (first == null)
+					first = result.get();
+				else
+					assertEquals(first, result.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(1000, model.getNodes().size());
+	}
+
+
+	@Test
+	public void testSnapshotIsPinnedToItsVersion() {
+		DagConcurrentModel model = new DagConcurrentModel("test");
+		model.addNode("A");
+		model.addNode("B");
+		model.addRelationship(model.getNode("A"), "benchesTo", model.getNode("B")).setWeight(BigDecimal.valueOf(2));
+		DagRelationshipType benchesTo = model.getRelationshipType("benchesTo");
+
+		try (DagConcurrentModel.Snapshot snapshot = model.snapshot()) {
+			model.addNode("C");
+			model.addRelationship(model.getNode("B"), "benchesTo", model.getNode("C")).setWeight(BigDecimal.valueOf(3));
+			model.addRelationship(model.getNode("A"), "basisTo", model.getNode("B"));
+
+			assertEquals("[A, B]", names(snapshot.getNodes()).toString());
+			assertNull(snapshot.getNode("C"));
+			assertEquals("[A:benchesTo:>B]", relationshipNames(snapshot.getRelationships()).toString());
+			assertEquals("[B]", names(snapshot.findLeafNodes()).toString());
+			assertEquals("[B]", names(snapshot.navigate().from(snapshot.getNode("A")).by(benchesTo).descendants()).toString());
+			assertFalse(snapshot.analyse().by(benchesTo).result().isCyclic());
+			assertEquals(
+					"[A:benchesTo:>B]",
+					snapshot.createMinimumSpanningTreeFinder(benchesTo)
+							.determineMinimumSpanningTree(snapshot.getNode("A"))
+							.toString());
+			assertEquals(
+					"[A:benchesTo:>B]",
+					snapshot.createShortestPathFinder(benchesTo)
+							.findShortestRoute(snapshot.getNode("A"), snapshot.getNode("B"))
+							.getRelationships()
+							.toString());
+
+			assertEquals("[A, B, C]", names(model.getNodes()).toString());
+			assertEquals("[C]", names(model.findLeafNodes()).toString());
+			assertEquals(2, model.navigate().from(model.getNode("A")).by(benchesTo).descendants().size());
+
+			try {
+				snapshot.addNode("D");
+				fail("Snapshot was changed");
+			} catch (DagGraphException e) {
+				assertEquals("Snapshot is read-only", e.getMessage());
+			}
+		}
+
+		try (DagConcurrentModel.Snapshot snapshot = model.snapshot()) {
+			assertEquals("[A, B, C]", names(snapshot.getNodes()).toString());
+			assertEquals(2, snapshot.navigate().from(snapshot.getNode("A")).by(benchesTo).descendants().size());
+		}
+	}
+
+
+	@Test
+	public void testSnapshotSeesAllOrNoneOfABatch() throws Throwable {
+		int batches = 200;
+		int batchSize = 20;
+
+		DagConcurrentModel model = new DagConcurrentModel("test");
+		DagNode root = model.addNode("root");
+		for (int b = 0; b < batches; b++) {
+			for (int i = 0; i < batchSize; i++)
+				model.addNode("N" + b + "-" + i);
+		}
+		DagRelationshipType benchesTo = model.getRelationshipType("benchesTo");
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> write = executor.submit(() -> {
+				for (int b = 0; b < batches; b++) {
+					DagConcurrentModel.Batch batch = model.newBatch();
+					for (int i = 0; i < batchSize; i++)
+						batch.addRelationship(root, "benchesTo", model.getNode("N" + b + "-" + i));
+					assertEquals(batchSize, batch.commit().size());
+				}
+			});
+
+			while (write.isDone() == false) {
+				try (DagConcurrentModel.Snapshot snapshot = model.snapshot()) {
+					int children = snapshot.navigate().from(root).by(benchesTo).children().size();
+					assertEquals(0, children % batchSize);
+					assertEquals(children, snapshot.getRelationships().size());
+				}
+			}
+			write.get(60, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(batches * batchSize, model.getRelationships().size());
+	}
+
+
+	@Test
+	public void testClosedSnapshotVersionsArePruned() {
+		DagConcurrentModel model = new DagConcurrentModel("test");
+		DagNode a = model.addNode("A");
+		model.addNode("B");
+		model.addNode("C");
+
+		DagConcurrentModel.Snapshot snapshot = model.snapshot();
+		model.addRelationship(a, "benchesTo", model.getNode("B"));
+		DagConcurrentModel.Snapshot later = model.snapshot();
+		model.addRelationship(a, "benchesTo", model.getNode("C"));
+
+		assertTrue(snapshot.findSolitaryNodes().contains(snapshot.getNode("A")));
+		assertEquals(1, later.getRelationships().size());
+
+		snapshot.close();
+		later.close();
+		model.addRelationship(a, "basisTo", model.getNode("B"));
+
+		try {
+			later.getRelationships();
+			fail("Closed snapshot versions were not pruned");
+		} catch (DagGraphException e) {
+			assertTrue(e.getMessage(), e.getMessage().endsWith("has been released"));
+		}
+		assertEquals(3, model.getRelationships().size());
+	}
+
+
+	private static List<String> names(List<DagNode> nodes) {
+		return nodes.stream().map(n -> n.getName()).sorted().collect(Collectors.toList());
+	}
+
+	private static List<String> relationshipNames(List<DagRelationship> relationships) {
+		return relationships.stream().map(r -> r.getName()).sorted().collect(Collectors.toList());
+	}
+
+}
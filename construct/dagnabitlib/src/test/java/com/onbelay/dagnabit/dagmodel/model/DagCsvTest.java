@@ -0,0 +1,205 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.model;
+
+import com.onbelay.dagnabit.dagmodel.components.DagCsvExporter;
+import com.onbelay.dagnabit.dagmodel.components.DagCsvImporter;
+import com.onbelay.dagnabit.dagmodel.components.DagModelBuilder;
+import com.onbelay.dagnabit.dagmodel.components.DagModelImpl;
+import com.onbelay.dagnabit.dagmodel.exception.DagGraphException;
+import com.onbelay.dagnabit.enums.TransactionErrorCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test models written to and read from node and relationship CSV files.
+ *
+ */
+public class DagCsvTest {
+
+	private Path nodeFile;
+	private Path relationshipFile;
+
+	@Before
+	public void beforeRun() throws Throwable {
+		nodeFile = Files.createTempFile("dagnabit", ".nodes.csv");
+		relationshipFile = Files.createTempFile("dagnabit", ".relationships.csv");
+	}
+
+	@After
+	public void afterRun() throws Throwable {
+		Files.deleteIfExists(nodeFile);
+		Files.deleteIfExists(relationshipFile);
+	}
+
+
+	@Test
+	public void testExportAndImport() {
+		DagModel model = new DagModelImpl("test");
+		model.addNode("S", "special").setReferenceNo(42);
+		model.addNode("A").setWeight(new BigDecimal("2.25"));
+		model.addNode("B, Ltd.");
+		model.addNode("say \"C\"");
+		model.addNode("D\u00e9");
+
+		model.addRelationship(model.getNode("A"), "benchesTo", model.getNode("B, Ltd.")).setWeight(new BigDecimal("1.5"));
+		model.addRelationship(model.getNode("B, Ltd."), "benchesTo", model.getNode("say \"C\""));
+		model.addRelationship(model.getNode("say \"C\""), "basisTo", model.getNode("D\u00e9")).setWeight(BigDecimal.valueOf(-3));
+		model.addDefaultRelationship(model.getNode("A"), model.getNode("S"));
+
+		DagCsvExporter exporter = new DagCsvExporter(model);
+		exporter.writeNodes(nodeFile);
+		exporter.writeRelationships(relationshipFile);
+
+		DagModelBuilder builder = new DagModelBuilder("copy");
+		new DagCsvImporter(builder)
+				.readNodes(nodeFile)
+				.readRelationships(relationshipFile);
+		DagModel copy = builder.build();
+
+		assertEquals(names(model.getNodes()), names(copy.getNodes()));
+		assertEquals("special", copy.getNode("S").getCategory().getCategoryName());
+		assertEquals(Integer.valueOf(42), copy.getNode("S").getReferenceNo());
+		assertEquals(0, copy.getNode("A").getWeight().compareTo(new BigDecimal("2.25")));
+		assertEquals(
+				relationships(model),
+				relationships(copy));
+		assertNotNull(copy.getDefaultRelationship(copy.getNode("A"), copy.getNode("S")));
+	}
+
+
+	@Test
+	public void testParallelChunks() throws Throwable {
+		StringBuilder text = new StringBuilder("from,type,to,weight\r\n");
+		for (int i = 0; i < 2000; i++) {
+			text.append("N").append(i).append(",benchesTo,N").append(i + 1).append(',').append(i).append(".5\r\n");
+			if (i % 100 == 0)
+				text.append("\n");
+		}
+		text.append("N0,basisTo,N2000,1e3");
+		Files.write(relationshipFile, text.toString().getBytes(StandardCharsets.UTF_8));
+
+		DagModelBuilder sequential = new DagModelBuilder("test").setWeightMode(DagWeightMode.FIXED_POINT);
+		new DagCsvImporter(sequential).setParallelism(1).readRelationships(relationshipFile);
+		DagModel expected = sequential.build();
+
+		DagModelBuilder parallel = new DagModelBuilder("test").setWeightMode(DagWeightMode.FIXED_POINT);
+		new DagCsvImporter(parallel)
+				.setParallelism(4)
+				.setChunkSize(64)
+				.readRelationships(relationshipFile);
+		DagModel model = parallel.build();
+
+		assertEquals(2001, model.getNodes().size());
+		assertEquals(2001, model.getRelationships().size());
+		for (int i = 0; i < 2001; i++)
+			assertEquals("N" + i, model.getNode(i).getName());
+
+		assertEquals(relationships(expected), relationships(model));
+		assertTrue(relationships(model).contains("N1999:benchesTo:>N2000=1999.5"));
+		assertTrue(relationships(model).contains("N0:basisTo:>N2000=1000"));
+	}
+
+
+	@Test
+	public void testInvalidLineIsReported() throws Throwable {
+		Files.write(relationshipFile, "from,type,to,weight\nA,benchesTo,B,1\n\nA,benchesTo,C,one\n".getBytes(StandardCharsets.UTF_8));
+
+		try {
+			new DagCsvImporter(new DagModelBuilder("test").setWeightMode(DagWeightMode.DOUBLE)).readRelationships(relationshipFile);
+			fail("Invalid weight was not reported");
+		} catch (DagGraphException e) {
+			assertEquals(TransactionErrorCode.INVALID_FILE, e.getErrorCode());
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid weight on line 4 of "));
+		}
+	}
+
+
+	@Test
+	public void testWriteFailureIsReported() {
+		DagModel model = new DagModelImpl("test");
+		model.addNode("A");
+
+		try {
+			new DagCsvExporter(model).writeNodes(nodeFile.getParent());
+			fail("Write to a directory was not reported");
+		} catch (DagGraphException e) {
+			assertEquals(TransactionErrorCode.NODE_FILE_WRITE_FAILED, e.getErrorCode());
+		}
+	}
+
+
+	@Test
+	public void testLineBreakInNameIsRejected() throws Throwable {
+		DagModel model = new DagModelImpl("test");
+		model.addNode("A");
+		model.addNode("two\nlines");
+		model.addRelationship(model.getNode("A"), "benchesTo", model.getNode("two\nlines"));
+		DagCsvExporter exporter = new DagCsvExporter(model);
+
+		try {
+			exporter.writeNodes(nodeFile);
+			fail("Line break in a node name was not reported");
+		} catch (DagGraphException e) {
+			assertEquals(TransactionErrorCode.NODE_FILE_WRITE_FAILED, e.getErrorCode());
+			assertEquals("Line break in name two\\nlines", e.getCause().getMessage());
+		}
+
+		try {
+			exporter.writeRelationships(relationshipFile);
+			fail("Line break in a relationship end was not reported");
+		} catch (DagGraphException e) {
+			assertEquals(TransactionErrorCode.RELATIONSHIP_FILE_WRITE_FAILED, e.getErrorCode());
+		}
+
+		model.removeNode(model.getNode("two\nlines"));
+		model.addNode("two\tcolumns, \"quoted\"");
+		model.addRelationship(model.getNode("A"), "benchesTo", model.getNode("two\tcolumns, \"quoted\""));
+		exporter.writeNodes(nodeFile);
+		exporter.writeRelationships(relationshipFile);
+
+		DagModelBuilder builder = new DagModelBuilder("copy");
+		new DagCsvImporter(builder)
+				.readNodes(nodeFile)
+				.readRelationships(relationshipFile);
+		DagModel copy = builder.build();
+		assertEquals(names(model.getNodes()), names(copy.getNodes()));
+		assertEquals(relationships(model), relationships(copy));
+	}
+
+
+	private static List<String> names(List<DagNode> nodes) {
+		return nodes.stream().map(n -> n.getName()).sorted().collect(Collectors.toList());
+	}
+
+	private static List<String> relationships(DagModel model) {
+		return model.getRelationships().stream()
+				.map(r -> r.getName() + "=" + (r.getWeight() == null ? null : r.getWeight().stripTrailingZeros().toPlainString()))
+				.sorted()
+				.collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.onbelay.dagnabit.dagmodel.model;
+
+import com.onbelay.dagnabit.dagmodel.components.DagModelImpl;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Traverse a chain a million nodes deep. Traversals hold their work on the heap, so none of them may overflow the thread's stack.
+ *
+ */
+public class DagDeepChainTest {
+
+	private static final int DEPTH = 1_000_000;
+
+	private static DagModel model;
+	private static DagRelationshipType parentOf;
+	private static DagNode first;
+	private static DagNode last;
+
+	@BeforeClass
+	public static void beforeClass() {
+		model = new DagModelImpl("chain", DagWeightMode.DOUBLE);
+		first = model.addNode("N0");
+		DagNode previous = first;
+		for (int i = 1; i <= DEPTH; i++) {
+			DagNode node = model.addNode("N" + i);
+			model.addRelationship(previous, "parentOf", node).setWeight(1);
+			previous = node;
+		}
+		last = previous;
+		parentOf = model.getRelationshipType("parentOf");
+	}
+
+
+	@Test
+	public void testDescendants() {
+		LinkRouteFinder routeFinder = model.createDagLinkRouteFinder(parentOf);
+
+		assertEquals(DEPTH, routeFinder.findDescendants(first).size());
+		assertEquals(DEPTH, routeFinder.findDescendantsBreadthFirst(first).size());
+	}
+
+
+	@Test
+	public void testWithinHops() {
+		AtomicInteger visits = new AtomicInteger();
+		List<List<DagNode>> levels = model
+				.navigate()
+				.from(first)
+				.by(parentOf)
+				.visitWith((c, f, r, t) -> visits.incrementAndGet())
+				.maxDepth(3)
+				.levels();
+
+		assertEquals(4, levels.size());
+		assertEquals("N3", levels.get(3).get(0).getName());
+		assertEquals(3, visits.get());
+		assertEquals(3, model.navigate().from(last).by(parentOf).maxDepth(3).ancestors().size());
+	}
+
+
+	@Test
+	public void testPathsFrom() {
+		List<DagNodePath> paths = model.createDagLinkRouteFinder(parentOf).findAllPathsFrom(first);
+
+		assertEquals(DEPTH, paths.size());
+		DagNodePath longest = paths.get(DEPTH - 1);
+		assertEquals(DEPTH, longest.getLength());
+		assertEquals(DEPTH, longest.calculateTotalWeightAsDouble(), 0);
+		assertSame(last, longest.getEndNode());
+		assertSame(last, longest.getRelationships().get(DEPTH - 1).getToNode());
+	}
+
+
+	@Test
+	public void testPathsTo() {
+		List<DagNodePath> paths = model.createDagLinkRouteFinder(parentOf).findAllPathsTo(last);
+
+		assertEquals(1, paths.size());
+		assertEquals(DEPTH, paths.get(0).getRelationships().size());
+		assertSame(first, paths.get(0).getStartNode());
+	}
+
+
+	@Test
+	public void testShortestRoute() {
+		DagNodePath route = model.createShortestPathFinder(parentOf).findShortestRoute(first, last);
+
+		assertEquals(DEPTH, route.getRelationships().size());
+		assertEquals(DEPTH, route.calculateTotalWeightAsDouble(), 0);
+	}
+
+
+	@Test
+	public void testMinimumSpanningTree() {
+		List<DagRelationship> tree = model.createMinimumSpanningTreeFinder(parentOf).determineMinimumSpanningTree(first);
+
+		assertEquals(DEPTH, tree.size());
+		assertSame(last, tree.get(DEPTH - 1).getToNode());
+	}
+
+}
@@ -0,0 +1,329 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.  
+ */
+package com.onbelay.dagnabit.dagmodel.model;
+
+import com.onbelay.dagnabit.dagmodel.components.DagMappedModel;
+import com.onbelay.dagnabit.dagmodel.components.DagModelImpl;
+import com.onbelay.dagnabit.dagmodel.exception.DagGraphException;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test a model written to and mapped from a file gives the same answers as the model it was written from.
+ *
+ */
+public class DagMappedModelTest {
+
+	private DagModel model;
+	
+	private Path path;
+	
+	@Before
+	public void beforeRun() throws Throwable {
+		model = new DagModelImpl("test", DagWeightMode.FIXED_POINT);
+		model.addNode("S", "special");
+		
+		model.addNode("A");
+		model.addNode("B");
+		model.addNode("C");
+		model.addNode("D");
+		
+		model.addRelationship(
+				model.getNode("A"), 
+				"benchesTo", 
+				model.getNode("D")).setWeight(BigDecimal.valueOf(9));
+		
+		model.addRelationship(
+				model.getNode("A"), 
+				"benchesTo", 
+				model.getNode("B")).setWeight(BigDecimal.valueOf(2));
+		
+		model.addRelationship(
+				model.getNode("B"), 
+				"benchesTo", 
+				model.getNode("C")).setWeight(new BigDecimal("1.5"));
+		
+		model.addRelationship(
+				model.getNode("C"), 
+				"benchesTo", 
+				model.getNode("D")).setWeight(BigDecimal.valueOf(3));
+		
+		model.addRelationship(
+				model.getNode("C"), 
+				"basisTo", 
+				model.getNode("D"));
+		
+		model.addDefaultRelationship(
+				model.getNode("A"), 
+				model.getNode("S"));
+		
+		path = Files.createTempFile("dagnabit", ".dag");
+		DagMappedModel.write(model, path);
+	}
+	
+	@After
+	public void afterRun() throws Throwable {
+		Files.deleteIfExists(path);
+	}
+	
+	
+	@Test
+	public void testMappedNodes() {
+		DagModel mapped = DagMappedModel.open(path);
+		
+		assertEquals("test", mapped.getModelName());
+		assertEquals(DagWeightMode.FIXED_POINT, mapped.getWeightMode());
+		assertEquals(names(model.getNodes()), names(mapped.getNodes()));
+		
+		for (DagNode node : model.getNodes()) {
+			DagNode mappedNode = mapped.getNode(node.getName());
+			assertEquals(node.getId(), mappedNode.getId());
+			assertEquals(node.getName(), mapped.getNode(node.getId()).getName());
+			assertEquals(node.getCategory(), mappedNode.getCategory());
+		}
+		assertNull(mapped.getNode("Z"));
+		assertEquals("special", mapped.getNode("S").getCategory().getCategoryName());
+		
+		assertEquals(names(model.findRootNodes()), names(mapped.findRootNodes()));
+		assertEquals(names(model.findLeafNodes()), names(mapped.findLeafNodes()));
+		assertEquals(names(model.findSolitaryNodes()), names(mapped.findSolitaryNodes()));
+	}
+	
+	
+	@Test
+	public void testMappedNavigation() {
+		DagModel mapped = DagMappedModel.open(path);
+		
+		DagRelationshipType benchesTo = mapped.getRelationshipType("benchesTo");
+		
+		assertEquals(
+				names(model.navigate().from(model.getNode("A")).by(benchesTo).descendants()),
+				names(mapped.navigate().from(mapped.getNode("A")).by(benchesTo).descendants()));
+		
+		assertEquals(
+				names(model.navigate().from(model.getNode("D")).by(benchesTo).ancestors()),
+				names(mapped.navigate().from(mapped.getNode("D")).by(benchesTo).ancestors()));
+		
+		assertEquals(
+				names(model.navigate().from(model.getNode("C")).by(model.getRelationshipType("basisTo")).children()),
+				names(mapped.navigate().from(mapped.getNode("C")).by(mapped.getRelationshipType("basisTo")).children()));
+		
+		assertEquals(
+				model.getRelationships().stream().map(r -> r.getName()).collect(Collectors.toList()),
+				mapped.getRelationships().stream().map(r -> r.getName()).collect(Collectors.toList()));
+		
+		assertNotNull(mapped.getDefaultRelationship(mapped.getNode("A"), mapped.getNode("S")));
+		assertNull(mapped.getDefaultRelationship(mapped.getNode("A"), mapped.getNode("B")));
+	}
+	
+	
+	@Test
+	public void testMappedShortestPath() {
+		DagModel mapped = DagMappedModel.open(path);
+		
+		DagNodePath route = mapped
+				.createShortestPathFinder(mapped.getRelationshipType("benchesTo"))
+				.findShortestRoute(mapped.getNode("A"), mapped.getNode("D"));
+		
+		assertEquals("[A:benchesTo:>B, B:benchesTo:>C, C:benchesTo:>D]", route.getRelationships().toString());
+		assertEquals(0, route.calculateTotalWeight().compareTo(new BigDecimal("6.5")));
+	}
+	
+	
+	@Test
+	public void testMappedFootprint() throws Throwable {
+		DagFootprint footprint = DagMappedModel.open(path).footprint();
+		
+		assertTrue(footprint.getMappedBytes() <= Files.size(path));
+		assertTrue(footprint.getMappedBytes() > 0);
+		assertEquals(0, footprint.getNodeCount());
+		assertTrue(footprint.getTotalBytes() > 0);
+	}
+	
+	
+	@Test(expected = DagGraphException.class)
+	public void testMappedModelIsReadOnly() {
+		DagModel mapped = DagMappedModel.open(path);
+		mapped.addNode("E");
+	}
+	
+	
+	@Test(expected = DagGraphException.class)
+	public void testOpenRejectsOtherFiles() throws Throwable {
+		Files.write(path, new byte[] {1, 2, 3});
+		DagMappedModel.open(path);
+	}
+	
+	
+	@Test
+	public void testMappedAttributes() {
+		model.getNode("A").setReferenceNo(7);
+		model.getNode("B").setData(new LabelData("bee"));
+		DagRelationship relationship = model.getRelationships().get(1);
+		relationship.setReferenceNo(12);
+		relationship.setData(new LabelData("a to b"));
+		DagMappedModel.write(model, path, new LabelSerializer());
+		
+		DagModel mapped = DagMappedModel.open(path, new LabelSerializer());
+		assertEquals(Integer.valueOf(7), mapped.getNode("A").getReferenceNo());
+		assertNull(mapped.getNode("B").getReferenceNo());
+		assertEquals("bee", ((LabelData) mapped.getNode("B").getData()).label);
+		assertNull(mapped.getNode("A").getData());
+		
+		DagRelationship mappedRelationship = mapped.getRelationships().get(1);
+		assertEquals("A:benchesTo:>B", mappedRelationship.getName());
+		assertEquals(Integer.valueOf(12), mappedRelationship.getReferenceNo());
+		assertEquals("a to b", ((LabelData) mappedRelationship.getData()).label);
+		
+		assertNull(DagMappedModel.open(path).getNode("B").getData());
+	}
+	
+	
+	@Test
+	public void testCorruptWeightModeIsReported() throws Throwable {
+		byte[] bytes = Files.readAllBytes(path);
+		bytes[20] = 0x7F;
+		Files.write(path, bytes);
+		
+		try {
+			DagMappedModel.open(path);
+			fail("Corrupt weight mode was not detected");
+		} catch (DagGraphException e) {
+			assertTrue(e.getMessage().startsWith("Corrupt header"));
+		}
+	}
+	
+	
+	@Test
+	public void testVerifyChecksums() throws Throwable {
+		DagMappedModel.open(path).verifyChecksums();
+		
+		byte[] bytes = Files.readAllBytes(path);
+		bytes[bytes.length - 1] ^= 0x7F;
+		Files.write(path, bytes);
+		
+		try {
+			DagMappedModel.open(path).verifyChecksums();
+			fail("Corrupt file was not detected");
+		} catch (DagGraphException e) {
+			assertTrue(e.getMessage().startsWith("Checksum mismatch"));
+		}
+	}
+	
+	
+	@Test
+	public void testToModel() {
+		model.getNode("C").setReferenceNo(3);
+		DagMappedModel.write(model, path);
+		
+		DagModelImpl copy = DagMappedModel.open(path).toModel();
+		copy.addNode("E");
+		
+		assertEquals(names(model.getNodes()), names(copy.getNodes()).stream().filter(n -> n.equals("E") == false).collect(Collectors.toList()));
+		assertEquals(Integer.valueOf(3), copy.getNode("C").getReferenceNo());
+		assertEquals(
+				model.getRelationships().stream().map(r -> r.getName() + "=" + r.getWeight()).collect(Collectors.toList()),
+				copy.getRelationships().stream().map(r -> r.getName() + "=" + r.getWeight()).collect(Collectors.toList()));
+		assertNotNull(copy.getDefaultRelationship(copy.getNode("A"), copy.getNode("S")));
+	}
+	
+	
+	@Test
+	public void testToModelAfterRemovedNode() {
+		model.removeNode(model.getNode("B"));
+		DagMappedModel.write(model, path);
+		
+		DagModelImpl copy = DagMappedModel.open(path).toModel();
+		
+		assertEquals(names(model.getNodes()), names(copy.getNodes()));
+		assertEquals(
+				model.getRelationships().stream().map(r -> r.getName() + "=" + r.getWeight()).sorted().collect(Collectors.toList()),
+				copy.getRelationships().stream().map(r -> r.getName() + "=" + r.getWeight()).sorted().collect(Collectors.toList()));
+		for (DagNode node : copy.getNodes())
+			assertEquals(node.getName(), copy.getNode(node.getId()).getName());
+		assertNotNull(copy.getDefaultRelationship(copy.getNode("A"), copy.getNode("S")));
+	}
+	
+	
+	@Test
+	public void testWriteReplacesFile() throws Throwable {
+		DagModel mapped = DagMappedModel.open(path);
+		
+		model.addNode("E");
+		DagMappedModel.write(model, path);
+		
+		assertNull(mapped.getNode("E"));
+		assertEquals("[A, B, C, D, S]", names(mapped.getNodes()).toString());
+		assertNotNull(DagMappedModel.open(path).getNode("E"));
+		try (Stream<Path> files = Files.list(path.getParent())) {
+			assertFalse(files.anyMatch(p -> p.getFileName().toString().startsWith(path.getFileName().toString() + ".")));
+		}
+	}
+	
+	
+	@Test
+	public void testWriteKeepsPermissions() throws Throwable {
+		Assume.assumeTrue(Files.getFileStore(path).supportsFileAttributeView(PosixFileAttributeView.class));
+		
+		Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+		Files.setPosixFilePermissions(path, permissions);
+		DagMappedModel.write(model, path);
+		
+		assertEquals(permissions, Files.getPosixFilePermissions(path));
+	}
+	
+	
+	private static List<String> names(List<DagNode> nodes) {
+		return nodes.stream().map(n -> n.getName()).sorted().collect(Collectors.toList());
+	}
+
+	
+	private static class LabelData implements DagData {
+		private final String label;
+		
+		private LabelData(String label) {
+			this.label = label;
+		}
+	}
+	
+	private static class LabelSerializer implements DagDataSerializer {
+		
+		public byte[] serialize(DagData data) {
+			return ((LabelData) data).label.getBytes(StandardCharsets.UTF_8);
+		}
+		
+		public DagData deserialize(byte[] bytes) {
+			return new LabelData(new String(bytes, StandardCharsets.UTF_8));
+		}
+	}
+
+}
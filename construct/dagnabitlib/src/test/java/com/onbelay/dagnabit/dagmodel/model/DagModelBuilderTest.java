@@ -0,0 +1,183 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.  
+ */
+package com.onbelay.dagnabit.dagmodel.model;
+
+import com.onbelay.dagnabit.dagmodel.components.DagModelBuilder;
+import com.onbelay.dagnabit.dagmodel.components.DagModelImpl;
+import com.onbelay.dagnabit.dagmodel.components.DagNameDictionary;
+import com.onbelay.dagnabit.dagmodel.exception.DagGraphException;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test a model created in bulk by the DagModelBuilder behaves the same as one built incrementally.
+ *
+ */
+public class DagModelBuilderTest {
+
+	@Test
+	public void testBuildMatchesIncrementalModel() {
+		
+		DagModel model = new DagModelImpl("test");
+		model.addNode("S", "special");
+		model.addNode("A");
+		model.addNode("B");
+		model.addNode("C");
+		model.addNode("D");
+		model.addRelationship(model.getNode("A"), "benchesTo", model.getNode("D"));
+		model.addRelationship(model.getNode("C"), "basisTo", model.getNode("D"));
+		model.addRelationship(model.getNode("A"), "benchesTo", model.getNode("B"));
+		model.addRelationship(model.getNode("B"), "benchesTo", model.getNode("C"));
+		model.addRelationship(model.getNode("A"), "basisTo", model.getNode("C"));
+		model.addRelationship(model.getNode("B"), "basisTo", model.getNode("D"));
+		
+		DagModelBuilder builder = new DagModelBuilder("test");
+		builder.addNode("S", "special");
+		builder.addNodes("A", "B", "C", "D");
+		builder.addRelationship("A", "benchesTo", "D");
+		builder.addRelationship("C", "basisTo", "D");
+		builder.addRelationships(
+				new String[] {"A", "B"}, 
+				"benchesTo", 
+				new String[] {"B", "C"});
+		builder.addRelationship(builder.getNodeId("A"), "basisTo", builder.getNodeId("C"));
+		builder.addRelationship(builder.getNodeId("B"), "basisTo", builder.getNodeId("D"));
+		DagModel built = builder.build();
+		
+		assertEquals(5, built.getNodes().size());
+		assertEquals(model.getRelationships().size(), built.getRelationships().size());
+		assertEquals("special", built.getNode("S").getCategory().getCategoryName());
+		assertEquals(4, built.getNode("D").getId());
+		
+		for (DagNode node : model.getNodes()) {
+			for (DagRelationshipType type : model.getRelationshipTypes()) {
+				assertEquals(
+						names(model.navigate().from(node).by(type).children()),
+						names(built.navigate().from(built.getNode(node.getName())).by(built.getRelationshipType(type.getName())).children()));
+				
+				assertEquals(
+						names(model.navigate().from(node).by(type).parents()),
+						names(built.navigate().from(built.getNode(node.getName())).by(built.getRelationshipType(type.getName())).parents()));
+			}
+		}
+		
+		assertEquals(names(model.findRootNodes()), names(built.findRootNodes()));
+		assertEquals(names(model.findLeafNodes()), names(built.findLeafNodes()));
+	}
+	
+	
+	@Test
+	public void testDuplicatesAreAddedOnce() {
+		
+		DagModelBuilder builder = new DagModelBuilder("test");
+		int a = builder.addNode("A");
+		int b = builder.addNode("B");
+		
+		builder.addRelationships(
+				new int[] {a, a, a}, 
+				"benchesTo", 
+				new int[] {b, b, b});
+		builder.addRelationship(a, "basisTo", b);
+		
+		DagModel model = builder.build();
+		
+		assertEquals(2, model.getRelationships().size());
+		assertEquals(1, model.navigate().from(a).by(model.getRelationshipType("benchesTo")).children().size());
+	}
+	
+	
+	@Test
+	public void testBuildFromStreamWithWeights() {
+		
+		DagModel model = new DagModelBuilder("test")
+			.addRelationships(
+				Stream.of(
+					new DagRelationshipDefinition("start", DagRelationshipType.DEFAULT_TYPE, "A", BigDecimal.valueOf(6)),
+					new DagRelationshipDefinition("start", DagRelationshipType.DEFAULT_TYPE, "B", BigDecimal.valueOf(2)),
+					new DagRelationshipDefinition("B", DagRelationshipType.DEFAULT_TYPE, "A", BigDecimal.valueOf(3)),
+					new DagRelationshipDefinition("A", DagRelationshipType.DEFAULT_TYPE, "finish", BigDecimal.valueOf(1)),
+					new DagRelationshipDefinition("B", DagRelationshipType.DEFAULT_TYPE, "finish", BigDecimal.valueOf(5))))
+			.build();
+		
+		assertEquals(0, model.getDefaultRelationship(model.getNode("B"), model.getNode("A")).getWeight().compareTo(BigDecimal.valueOf(3)));
+		
+		ShortestPathFinder finder = model.createShortestPathFinder(model.getDefaultRelationshipType());
+		List<DagNode> path = finder.findShortestPath(model.getNode("start"), model.getNode("finish"));
+		assertEquals("[start, B, A, finish]", path.stream().map(n -> n.getName()).collect(Collectors.toList()).toString());
+	}
+	
+	
+	@Test
+	public void testReverseConnectorOrder() {
+		
+		DagModel model = new DagModelImpl("test");
+		model.addNode("A");
+		model.addNode("B");
+		model.addNode("C");
+		model.addRelationship(model.getNode("C"), "feeds", model.getNode("A"));
+		model.addRelationship(model.getNode("B"), "feeds", model.getNode("A"));
+		
+		DagModel built = new DagModelBuilder("test")
+			.addRelationships(
+				new String[] {"C", "B"}, 
+				"feeds", 
+				new String[] {"A", "A"})
+			.build();
+		
+		DagRelationshipType feeds = model.getRelationshipType("feeds");
+		assertEquals(
+				model.navigate().from(model.getNode("A")).by(feeds).parents().stream().map(n -> n.getName()).collect(Collectors.toList()),
+				built.navigate().from(built.getNode("A")).by(feeds).parents().stream().map(n -> n.getName()).collect(Collectors.toList()));
+	}
+	
+	
+	@Test(expected = DagGraphException.class)
+	public void testBuildOnlyOnce() {
+		DagModelBuilder builder = new DagModelBuilder("test");
+		builder.addNode("A");
+		builder.build();
+		builder.addNode("B");
+	}
+	
+	
+	private static List<String> names(List<DagNode> nodes) {
+		return nodes.stream().map(n -> n.getName()).collect(Collectors.toList());
+	}
+
+
+	@Test
+	public void testNameDictionary() {
+		DagNameDictionary dictionary = new DagNameDictionary();
+		assertEquals(0, dictionary.encode("A"));
+		assertEquals(1, dictionary.encode("B"));
+		assertEquals(0, dictionary.encode(new String("A")));
+		assertEquals(2, dictionary.size());
+
+		assertEquals("B", dictionary.decode(1));
+		assertEquals(-1, dictionary.find("C"));
+
+		String name = dictionary.intern("C");
+		assertSame(name, dictionary.intern(new String("C")));
+		assertEquals(2, dictionary.find("C"));
+	}
+
+}
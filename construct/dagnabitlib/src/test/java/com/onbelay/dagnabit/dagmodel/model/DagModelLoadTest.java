@@ -0,0 +1,65 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.  
+ */
+package com.onbelay.dagnabit.dagmodel.model;
+
+import com.onbelay.dagnabit.dagmodel.components.DagModelImpl;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Load star shaped graphs (one hub with many children) and check the hub's connectors are found on both sides.
+ * The timing of larger loads is checked by DagModelLoadBenchmark in the benchmark source set.
+ *
+ */
+public class DagModelLoadTest {
+	
+	@Test
+	public void testStarGraphConnectors() {
+		DagModel model = new DagModelImpl("star");
+		DagNode hub = model.addNode("hub");
+		
+		for (int i = 0; i < 100; i++) {
+			DagNode child = model.addNode("child" + i);
+			model.addRelationship(hub, "contains", child);
+			model.addRelationship(hub, "owns", child);
+			model.addRelationship(child, "reportsTo", hub);
+		}
+		
+		assertEquals(100, model.navigate().from(hub).by(model.getRelationshipType("contains")).children().size());
+		assertEquals(100, model.navigate().from(hub).by(model.getRelationshipType("owns")).children().size());
+		assertEquals(100, model.navigate().from(hub).by(model.getRelationshipType("reportsTo")).parents().size());
+		assertEquals(300, model.getRelationships().size());
+	}
+	
+	@Test
+	public void testStarGraphDefaultRelationships() {
+		DagModel model = new DagModelImpl("star");
+		DagNode hub = model.addNode("hub");
+		
+		for (int i = 0; i < 1000; i++)
+			model.addDefaultRelationship(hub, model.addNode("child" + i));
+		
+		for (int i = 0; i < 1000; i++) {
+			DagNode child = model.getNode("child" + i);
+			assertNotNull(model.getDefaultRelationship(hub, child));
+			assertNull(model.getDefaultRelationship(child, hub));
+		}
+	}
+
+}
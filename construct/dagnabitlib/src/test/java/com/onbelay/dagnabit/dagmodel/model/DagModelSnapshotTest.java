@@ -0,0 +1,236 @@
+/*
+ Copyright 2019, OnBelay Consulting Ltd.
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.  
+ */
+package com.onbelay.dagnabit.dagmodel.model;
+
+import com.onbelay.dagnabit.dagmodel.components.DagAdjacencyIndex;
+import com.onbelay.dagnabit.dagmodel.components.DagModelImpl;
+import com.onbelay.dagnabit.dagmodel.components.DagModelSnapshot;
+import com.onbelay.dagnabit.dagmodel.exception.DagGraphException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test a frozen (CSR) snapshot of a model gives the same answers as the model it was taken from.
+ *
+ */
+public class DagModelSnapshotTest {
+
+	private DagModel model;
+	
+	@Before
+	public void beforeRun() throws Throwable {
+		model = new DagModelImpl("test");
+		model.addNode("S", "special");
+		
+		model.addNode("A");
+		model.addNode("B");
+		model.addNode("C");
+		model.addNode("D");
+		
+		model.addRelationship(
+				model.getNode("A"), 
+				"benchesTo", 
+				model.getNode("D"));
+		
+		model.addRelationship(
+				model.getNode("A"), 
+				"benchesTo", 
+				model.getNode("B"));
+		
+		model.addRelationship(
+				model.getNode("B"), 
+				"benchesTo", 
+				model.getNode("C"));
+		
+		model.addRelationship(
+				model.getNode("C"), 
+				"basisTo", 
+				model.getNode("D"));
+	}
+	
+	
+	@Test
+	public void testFrozenNavigation() {
+		DagModel frozen = model.freeze();
+		
+		DagRelationshipType benchesTo = frozen.getRelationshipType("benchesTo");
+		
+		List<DagNodePath> paths = frozen
+				.navigate()
+				.from(frozen.getNode("A"))
+				.by(benchesTo)
+				.paths();
+		
+		List<String> routes = paths.stream().map(p -> p.getRouteId()).collect(Collectors.toList());
+		assertTrue(routes.contains("A:B"));
+		assertTrue(routes.contains("A:C"));
+		assertTrue(routes.contains("A:D"));
+		
+		assertEquals(
+				names(model.navigate().from(model.getNode("A")).by(benchesTo).descendants()),
+				names(frozen.navigate().from(frozen.getNode("A")).by(benchesTo).descendants()));
+		
+		assertEquals(
+				names(model.navigate().from(model.getNode("C")).by(benchesTo).ancestors()),
+				names(frozen.navigate().from(frozen.getNode("C")).by(benchesTo).ancestors()));
+		
+		assertEquals(
+				names(model.navigate().from(model.getNode("A")).breadthFirst().by(benchesTo).descendants()),
+				names(frozen.navigate().from(frozen.getNode("A")).breadthFirst().by(benchesTo).descendants()));
+	}
+	
+	
+	@Test
+	public void testFrozenRootsAndLeaves() {
+		DagModel frozen = model.freeze();
+		
+		assertEquals(names(model.findRootNodes()), names(frozen.findRootNodes()));
+		assertEquals(names(model.findLeafNodes()), names(frozen.findLeafNodes()));
+		assertEquals(names(model.findSolitaryNodes()), names(frozen.findSolitaryNodes()));
+	}
+	
+	
+	@Test
+	public void testAdjacencyIndex() {
+		DagModelSnapshot frozen = (DagModelSnapshot) model.freeze();
+		
+		DagAdjacencyIndex index = frozen.getFromIndex(frozen.getRelationshipType("benchesTo"));
+		assertEquals(3, index.size());
+		
+		int a = frozen.getNode("A").getId();
+		assertEquals(2, index.getDegree(a));
+		
+		int c = frozen.getNode("C").getId();
+		DagAdjacencyIndex reverse = frozen.getToIndex(frozen.getRelationshipType("benchesTo"));
+		assertEquals(1, reverse.getDegree(c));
+		assertEquals("B", reverse.getConnector(reverse.getStart(c)).getFromNode().getName());
+		assertEquals("B", frozen.getNode(reverse.getTarget(reverse.getStart(c))).getName());
+		assertEquals(1, reverse.getWeight(reverse.getStart(c)), 0);
+	}
+	
+	
+	@Test
+	public void testIndexedSearchMatchesFilteredSearch() {
+		DagModel frozen = model.freeze();
+		DagRelationshipType benchesTo = frozen.getRelationshipType("benchesTo");
+		
+		// a filter that passes everything makes the search read the connectors rather than the target ids
+		assertEquals(
+				frozen.navigate().from(frozen.getNode("A")).by(benchesTo).filterBy(r -> true).descendants(),
+				frozen.navigate().from(frozen.getNode("A")).by(benchesTo).descendants());
+		assertEquals(
+				frozen.navigate().from(frozen.getNode("C")).by(benchesTo).filterBy(r -> true).ancestors(),
+				frozen.navigate().from(frozen.getNode("C")).by(benchesTo).ancestors());
+		assertEquals(
+				frozen.navigate().from(frozen.getNode("A")).breadthFirst().by(benchesTo).filterBy(r -> true).descendants(),
+				frozen.navigate().from(frozen.getNode("A")).breadthFirst().by(benchesTo).descendants());
+	}
+	
+	
+	@Test
+	public void testSnapshotIsNotChangedByModel() {
+		DagModel frozen = model.freeze();
+		
+		model.addRelationship(
+				model.getNode("D"), 
+				"benchesTo", 
+				model.getNode("S"));
+		
+		assertEquals(4, model.navigate().from(model.getNode("A")).by(model.getRelationshipType("benchesTo")).descendants().size());
+		assertEquals(3, frozen.navigate().from(frozen.getNode("A")).by(frozen.getRelationshipType("benchesTo")).descendants().size());
+	}
+	
+	
+	@Test
+	public void testSnapshotIsNotChangedByRemovals() {
+		DagModel source = new DagModelImpl("removals");
+		for (int i = 0; i < 6; i++)
+			source.addNode("n" + i);
+		source.addRelationship(source.getNode("n4"), "parentOf", source.getNode("n5"));
+		
+		DagModel frozen = source.freeze();
+		DagRelationshipType parentOf = frozen.getRelationshipType("parentOf");
+		
+		for (int i = 0; i < 4; i++)
+			source.removeNode(source.getNode("n" + i));
+		((DagModelImpl) source).compact();
+		
+		assertEquals(6, frozen.getNodes().size());
+		assertEquals("[n5]", names(frozen.navigate().from(frozen.getNode("n4")).by(parentOf).children()).toString());
+		assertEquals("[n4]", names(frozen.navigate().from(frozen.getNode("n5")).by(parentOf).parents()).toString());
+		for (int i = 0; i < 6; i++)
+			assertEquals("n" + i, frozen.getNode(frozen.getNode("n" + i).getId()).getName());
+		
+		assertEquals("[n5]", names(source.navigate().from(source.getNode("n4")).by(source.getRelationshipType("parentOf")).children()).toString());
+	}
+	
+	
+	@Test
+	public void testSnapshotIsIsolatedFromSource() {
+		DagModel source = new DagModelImpl("isolated");
+		source.addNode("A");
+		source.addNode("B");
+		source.addNode("C");
+		DagRelationship ab = source.addRelationship(source.getNode("A"), "parentOf", source.getNode("B"));
+		source.addRelationship(source.getNode("B"), "parentOf", source.getNode("C"));
+		ab.setWeight(BigDecimal.valueOf(2));
+		
+		DagModel frozen = source.freeze();
+		DagRelationshipType parentOf = frozen.getRelationshipType("parentOf");
+		
+		source.removeRelationship(ab);
+		source.addRelationship(source.getNode("B"), "ownerOf", source.getNode("C"));
+		source.getNode("B").setWeight(BigDecimal.TEN);
+		
+		assertEquals(
+				"[A:B, A:C]",
+				frozen.navigate().from(frozen.getNode("A")).by(parentOf).paths()
+					.stream().map(p -> p.getRouteId()).sorted().collect(Collectors.toList()).toString());
+		assertTrue(frozen.getNode("A").isRoot());
+		assertFalse(frozen.getNode("B").isRoot());
+		assertTrue(frozen.getNode("C").isLeaf());
+		assertEquals(1, frozen.getNode("B").getWeight().intValue());
+		assertTrue(frozen.navigate().from(frozen.getNode("B")).by(frozen.getRelationshipType("ownerOf")).children().isEmpty());
+		
+		assertEquals(2, frozen.getRelationships().size());
+		assertEquals(2, frozen.getRelationships().get(0).getWeight().intValue());
+		assertEquals(
+				"[parentOf]",
+				frozen.getRelationships().stream().map(r -> r.getRelationshipType().getName()).distinct().collect(Collectors.toList()).toString());
+		
+		assertFalse(source.getNode("A").isRoot());
+		assertNotSame(source.getNode("B"), frozen.getNode("B"));
+	}
+	
+	
+	@Test(expected = DagGraphException.class)
+	public void testSnapshotIsReadOnly() {
+		DagModel frozen = model.freeze();
+		frozen.addNode("E");
+	}
+	
+	
+	private static List<String> names(List<DagNode> nodes) {
+		return nodes.stream().map(n -> n.getName()).sorted().collect(Collectors.toList());
+	}
+
+}
@@ -21,10 +21,21 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Spliterator;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Test the basic methods to build a graph model and the methods to interrogate it.
@@ -102,6 +113,315 @@ public class DagModelTest  {
 	}
 	
 	
+	@Test
+	public void testNodeIds() {
+		
+		assertEquals(0, model.getNode("S").getId());
+		assertEquals(2, model.getNode("A").getId());
+		assertEquals("A", model.getNode(2).getName());
+		assertNull(model.getNode(99));
+		
+		// Re-adding a node keeps its id
+		model.addNode("A");
+		assertEquals(2, model.getNode("A").getId());
+		assertEquals(8, model.getNodes().size());
+	}
+	
+	
+	@Test
+	public void testChildrenAndParentsByRelationshipType() {
+		
+		// A -> C carries both benchesTo and basisTo
+		model.addRelationship(
+				model.getNode("A"), 
+				"benchesTo", 
+				model.getNode("C"));
+		
+		List<DagNode> benchesTo = model.navigate().from(model.getNode("A")).by(model.getRelationshipType("benchesTo")).children();
+		assertEquals("[D, B, C]", benchesTo.stream().map(n -> n.getName()).collect(Collectors.toList()).toString());
+		
+		List<DagNode> basisTo = model.navigate().from(model.getNode("A")).by(model.getRelationshipType("basisTo")).children();
+		assertEquals("[C]", basisTo.stream().map(n -> n.getName()).collect(Collectors.toList()).toString());
+		
+		List<DagNode> parents = model.navigate().from(model.getNode("D")).by(model.getRelationshipType("basisTo")).parents();
+		assertEquals("[C]", parents.stream().map(n -> n.getName()).collect(Collectors.toList()).toString());
+		
+		assertEquals(0, model.navigate().from(model.getNode("A")).by(model.getRelationshipType("unused")).children().size());
+	}
+	
+	
+	@Test
+	public void testRelationshipTypesWithoutOrdinals() {
+		
+		// Created outside the model, found by name
+		DagRelationshipType benchesTo = new DagRelationshipType("benchesTo");
+		assertEquals(-1, benchesTo.getOrdinal());
+		assertEquals(2, model.navigate().from(model.getNode("A")).by(benchesTo).children().size());
+		
+		// More relationshipTypes than fit in the connector bit mask
+		for (int i = 0; i < 70; i++)
+			model.addRelationship(model.getNode("A"), "type" + i, model.getNode("B"));
+		
+		assertEquals(1, model.navigate().from(model.getNode("A")).by(model.getRelationshipType("type3")).children().size());
+		assertEquals(1, model.navigate().from(model.getNode("A")).by(model.getRelationshipType("type69")).children().size());
+		assertEquals(2, model.navigate().from(model.getNode("A")).by(benchesTo).children().size());
+		assertEquals("type69", model.getRelationships().get(model.getRelationships().size() - 1).getRelationshipType().getName());
+	}
+	
+	
+	@Test
+	public void testRelationshipNames() {
+		
+		DagRelationship relationship = model.getRelationships().get(0);
+		assertEquals("A:benchesTo:>D", relationship.getName());
+		assertEquals("A:benchesTo:>D", relationship.toString());
+		
+		DagRelationship defaultRelationship = model.addDefaultRelationship(model.getNode("B"), model.getNode("D"));
+		assertSame(defaultRelationship, model.getDefaultRelationship(model.getNode("B"), model.getNode("D")));
+		assertNull(model.getDefaultRelationship(model.getNode("A"), model.getNode("D")));
+		assertNull(model.getDefaultRelationship(model.getNode("D"), model.getNode("B")));
+	}
+	
+	
+	@Test
+	public void testRemoveRelationship() {
+		
+		DagRelationshipType benchesTo = model.getRelationshipType("benchesTo");
+		DagRelationship aToB = model.getRelationships().get(1);
+		assertEquals("A:benchesTo:>B", aToB.getName());
+		
+		assertTrue(model.removeRelationship(aToB));
+		assertFalse(model.removeRelationship(aToB));
+		assertEquals(5, model.getRelationships().size());
+		assertFalse(model.getRelationships().contains(aToB));
+		assertEquals("[D]", names(model.navigate().from(model.getNode("A")).by(benchesTo).children()));
+		assertEquals(0, model.navigate().from(model.getNode("B")).by(benchesTo).parents().size());
+		assertEquals("[A, B, V]", names(model.findRootNodes()));
+		
+		// A -> C keeps its connector while it carries another relationship
+		model.addRelationship(model.getNode("A"), "benchesTo", model.getNode("C"));
+		assertTrue(model.removeRelationship(model.getRelationships().get(model.getRelationships().size() - 1)));
+		assertEquals("[C]", names(model.navigate().from(model.getNode("A")).by(model.getRelationshipType("basisTo")).children()));
+		assertEquals("[D]", names(model.navigate().from(model.getNode("A")).by(benchesTo).children()));
+		
+		DagRelationship defaultRelationship = model.addDefaultRelationship(model.getNode("B"), model.getNode("D"));
+		assertTrue(model.removeRelationship(defaultRelationship));
+		assertNull(model.getDefaultRelationship(model.getNode("B"), model.getNode("D")));
+	}
+	
+	
+	@Test
+	public void testRemoveNode() {
+		
+		DagRelationshipType benchesTo = model.getRelationshipType("benchesTo");
+		
+		assertTrue(model.removeNode(model.getNode("B")));
+		assertNull(model.getNode("B"));
+		assertEquals(7, model.getNodes().size());
+		assertEquals(4, model.getRelationships().size());
+		assertEquals("[D]", names(model.navigate().from(model.getNode("A")).by(benchesTo).children()));
+		assertEquals(0, model.navigate().from(model.getNode("C")).by(benchesTo).parents().size());
+		
+		// Ids are kept until the model is compacted
+		assertEquals(5, model.getNode("D").getId());
+		assertNull(model.getNode(3));
+		for (String name : new String[] {"S", "R", "V", "Y"})
+			assertTrue(model.removeNode(model.getNode(name)));
+		assertEquals(5, model.getNode("D").getId());
+		assertEquals("[A, C, D]", names(model.getNodes()));
+		((DagModelImpl) model).compact();
+		assertEquals(2, model.getNode("D").getId());
+		assertSame(model.getNode("D"), model.getNode(2));
+		assertEquals("[D]", names(model.findLeafNodes()));
+		assertEquals("[C, D]", names(model.navigate().from(model.getNode("A")).by(model.getRelationshipType("basisTo")).descendants()));
+		assertEquals(
+				"[A:benchesTo:>D, A:basisTo:>C, C:basisTo:>D]",
+				model.getRelationships().toString());
+		
+		model.addNode("B");
+		assertEquals(3, model.getNode("B").getId());
+	}
+	
+	
+	@Test
+	public void testRemoveFromIndexedConnectors() {
+		
+		DagNode hub = model.addNode("hub");
+		for (int i = 0; i < 40; i++)
+			model.addRelationship(hub, "benchesTo", model.addNode("N" + i));
+		
+		for (int i = 0; i < 40; i += 3)
+			assertTrue(model.removeNode(model.getNode("N" + i)));
+		
+		DagRelationshipType benchesTo = model.getRelationshipType("benchesTo");
+		assertEquals(26, model.navigate().from(hub).by(benchesTo).children().size());
+		for (int i = 0; i < 40; i++) {
+			DagNode node = model.getNode("N" + i);
+			if (i % 3 == 0) {
+				assertNull(node);
+			} else {
+				assertEquals("[hub]", names(model.navigate().from(node).by(benchesTo).parents()));
+				assertTrue(model.removeRelationship(model.getRelationships().stream().filter(r -> r.getToNode() == node).findFirst().get()));
+			}
+		}
+		assertEquals(0, model.navigate().from(hub).by(benchesTo).children().size());
+		assertTrue(model.findSolitaryNodes().contains(hub));
+	}
+	
+	
+	@Test
+	public void testRemoveHubNode() {
+		
+		DagNode hub = model.addNode("hub");
+		for (int i = 0; i < 40; i++) {
+			DagNode spoke = model.addNode("N" + i);
+			model.addRelationship(hub, "benchesTo", spoke);
+			model.addRelationship(spoke, "basisTo", hub);
+		}
+		model.addRelationship(hub, "benchesTo", model.getNode("A"));
+		model.addRelationship(hub, "basisTo", model.getNode("A"));
+		int relationships = model.getRelationships().size();
+		
+		assertTrue(model.removeNode(hub));
+		assertEquals(relationships - 82, model.getRelationships().size());
+		
+		DagRelationshipType benchesTo = model.getRelationshipType("benchesTo");
+		DagRelationshipType basisTo = model.getRelationshipType("basisTo");
+		for (int i = 0; i < 40; i++) {
+			DagNode spoke = model.getNode("N" + i);
+			assertEquals(0, model.navigate().from(spoke).by(benchesTo).parents().size());
+			assertEquals(0, model.navigate().from(spoke).by(basisTo).children().size());
+			assertTrue(model.findSolitaryNodes().contains(spoke));
+		}
+		assertEquals("[C, D]", names(model.navigate().from(model.getNode("A")).by(basisTo).descendants()));
+		assertEquals(0, model.navigate().from(model.getNode("A")).by(benchesTo).parents().size());
+		
+		model.addRelationship(model.getNode("N1"), "benchesTo", model.getNode("N2"));
+		assertEquals("[N2]", names(model.navigate().from(model.getNode("N1")).by(benchesTo).children()));
+	}
+	
+	
+	@Test
+	public void testRemoveLeavesOfHub() {
+		
+		DagNode hub = model.addNode("hub");
+		for (int i = 0; i < 1000; i++) {
+			DagNode child = model.addNode("N" + i);
+			model.addRelationship(hub, "benchesTo", child);
+			if (i % 2 == 0)
+				model.addRelationship(hub, "basisTo", child);
+		}
+		
+		List<String> benches = new ArrayList<String>();
+		List<String> basis = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++) {
+			if (i % 3 == 0) {
+				assertTrue(model.removeNode(model.getNode("N" + i)));
+			} else {
+				benches.add("N" + i);
+				if (i % 2 == 0)
+					basis.add("N" + i);
+			}
+		}
+		Collections.sort(benches);
+		Collections.sort(basis);
+		
+		DagRelationshipType benchesTo = model.getRelationshipType("benchesTo");
+		DagRelationshipType basisTo = model.getRelationshipType("basisTo");
+		assertEquals(benches.toString(), names(model.navigate().from(hub).by(benchesTo).children()));
+		assertEquals(basis.toString(), names(model.navigate().from(hub).by(basisTo).children()));
+		for (String name : benches)
+			assertEquals("[hub]", names(model.navigate().from(model.getNode(name)).by(benchesTo).parents()));
+		
+		model.addRelationship(hub, "basisTo", model.getNode("N1"));
+		assertTrue(model.navigate().from(hub).by(basisTo).children().contains(model.getNode("N1")));
+	}
+	
+	
+	@Test
+	public void testRelationshipEquality() {
+		
+		DagModel other = new DagModelImpl("other");
+		other.addNode("A");
+		other.addNode("B");
+		DagRelationship copy = other.addRelationship(other.getNode("A"), "benchesTo", other.getNode("B"));
+		DagRelationship basisTo = other.addRelationship(other.getNode("A"), "basisTo", other.getNode("B"));
+		
+		DagRelationship original = model.getRelationships().stream().filter(r -> r.getName().equals("A:benchesTo:>B")).findFirst().get();
+		assertEquals(original, copy);
+		assertEquals(original.hashCode(), copy.hashCode());
+		assertNotEquals(original, basisTo);
+		assertNotEquals(copy, other.addRelationship(other.getNode("B"), "benchesTo", other.getNode("A")));
+	}
+	
+	
+	@Test
+	public void testIndexedNodesAfterRemoval() {
+		
+		DagModel frozen = model.freeze();
+		for (int i = 0; i < 20; i++)
+			model.addNode("N" + i);
+		for (int i = 0; i < 20; i += 2)
+			assertTrue(model.removeNode(model.getNode("N" + i)));
+		assertIndexedNodesMatch(model.getNodes());
+		
+		model.addNode("E");
+		assertTrue(model.removeNode(model.getNode("B")));
+		assertIndexedNodesMatch(model.getNodes());
+		assertEquals("E", model.getNodes().get(model.getNodes().size() - 1).getName());
+		
+		try {
+			model.getNodes().get(model.getNodes().size());
+			fail("Index past the end was not reported");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		assertEquals(8, frozen.getNodes().size());
+	}
+	
+	private static void assertIndexedNodesMatch(List<DagNode> nodes) {
+		List<DagNode> iterated = nodes.stream().collect(Collectors.toList());
+		assertEquals(iterated.size(), nodes.size());
+		for (int i = 0; i < iterated.size(); i++)
+			assertSame(iterated.get(i), nodes.get(i));
+	}
+	
+	
+	@Test
+	public void testCategoryQueries() {
+		
+		DagNodeCategory special = new DagNodeCategory("special");
+		DagNodeCategory node = new DagNodeCategory(DagNodeCategory.DEFAULT_TYPE);
+		model.addNode("T", "special");
+		model.addRelationship(model.getNode("S"), "benchesTo", model.getNode("A"));
+		model.addRelationship(model.getNode("B"), "benchesTo", model.getNode("T"));
+		
+		assertEquals("[S, T]", names(model.getNodes(special)));
+		assertEquals("[S]", names(model.findRootNodes(special)));
+		assertEquals("[T]", names(model.findLeafNodes(special)));
+		assertEquals("[V]", names(model.findRootNodes(node)));
+		assertEquals("[D, Y]", names(model.findLeafNodes(node)));
+		assertEquals(0, model.getNodes(new DagNodeCategory("unused")).size());
+		
+		DagModel frozen = model.freeze();
+		assertEquals("[S, T]", names(frozen.getNodes(special)));
+		assertEquals("[D, Y]", names(frozen.findLeafNodes(node)));
+		
+		assertEquals(
+				"[T]",
+				names(model.navigate()
+						.from(model.getNode("B"))
+						.by(model.getRelationshipType("benchesTo"))
+						.forOnly(special)
+						.children()));
+		
+		assertTrue(model.removeNode(model.getNode("T")));
+		model.addNode("S", "ordinary");
+		assertEquals(0, model.getNodes(special).size());
+		assertEquals("[R, S]", names(model.getNodes(new DagNodeCategory("ordinary"))));
+	}
+	
+	
 	@Test
 	/*
 	 * Note this will find the default link type as well.
@@ -152,6 +472,135 @@ public class DagModelTest  {
 		
 	}
 	
+	@Test
+	public void testRootLeafAndSolitaryNodesFollowChanges() {
+		List<DagNode> rootNodes = model.findRootNodes();
+		List<DagNode> solitaryNodes = model.findSolitaryNodes();
+		
+		model.addRelationship(model.getNode("S"), "benchesTo", model.getNode("A"));
+		assertEquals("[S, V]", names(rootNodes));
+		assertEquals("[R]", names(solitaryNodes));
+		
+		model.removeRelationship(model.getRelationships().get(model.getRelationships().size() - 1));
+		assertEquals("[A, V]", names(rootNodes));
+		assertEquals("[R, S]", names(solitaryNodes));
+		
+		model.removeNode(model.getNode("Y"));
+		assertEquals("[A]", names(rootNodes));
+		assertEquals("[R, S, V]", names(solitaryNodes));
+		assertEquals("[D]", names(model.findLeafNodes()));
+		
+		try {
+			rootNodes.clear();
+			fail("Root nodes were changed");
+		} catch (UnsupportedOperationException e) {
+			// read only
+		}
+	}
+	
+	
+	@Test
+	public void testRootAndLeafNodesByRelationshipType() {
+		DagRelationshipType basisTo = model.getRelationshipType("basisTo");
+		DagRelationshipType benchesTo = new DagRelationshipType("benchesTo");
+		
+		assertEquals("[A]", names(model.findRootNodes(basisTo)));
+		assertEquals("[D]", names(model.findLeafNodes(basisTo)));
+		assertEquals("[A, V]", names(model.findRootNodes(benchesTo)));
+		assertEquals("[C, D, Y]", names(model.findLeafNodes(benchesTo)));
+		
+		model.addRelationship(model.getNode("D"), "basisTo", model.getNode("R"));
+		assertEquals("[R]", names(model.findLeafNodes(basisTo)));
+		assertEquals("[A]", names(model.findRootNodes(basisTo)));
+		
+		assertEquals("[C, D, Y]", names(model.freeze().findLeafNodes(benchesTo)));
+		assertEquals(0, model.findRootNodes(new DagRelationshipType("unused")).size());
+	}
+
+	
+	@Test
+	public void testNodeAndRelationshipStreams() {
+		assertTrue(model.nodeStream().spliterator().hasCharacteristics(Spliterator.SIZED));
+		assertEquals(8, model.nodeStream().parallel().count());
+		
+		DagRelationshipType benchesTo = model.getRelationshipType("benchesTo");
+		assertEquals(
+				"[A:benchesTo:>B, A:benchesTo:>D, B:benchesTo:>C, V:benchesTo:>Y]",
+				relationshipNames(model.relationshipStream(benchesTo)));
+		
+		DagModel frozen = model.freeze();
+		assertTrue(frozen.relationshipStream(benchesTo).spliterator().hasCharacteristics(Spliterator.SIZED));
+		assertEquals(
+				"[A:basisTo:>C, C:basisTo:>D]",
+				relationshipNames(frozen.relationshipStream(frozen.getRelationshipType("basisTo"))));
+		
+		model.removeNode(model.getNode("B"));
+		assertEquals(7, model.nodeStream().count());
+		assertEquals("[A, C, D, R, S, V, Y]", names(model.freeze().getNodes()));
+		assertEquals(0, model.freeze().getNodes().stream().filter(n -> n == null).count());
+	}
+	
+	
+	@Test
+	public void testFootprint() {
+		DagFootprint footprint = model.footprint();
+		assertEquals(8, footprint.getNodeCount());
+		assertEquals(6, footprint.getConnectorCount());
+		assertEquals(6, footprint.getRelationshipCount());
+		assertTrue(footprint.getBytes(DagFootprint.Part.NODES) >= 8 * 24);
+		assertTrue(footprint.getBytes(DagFootprint.Part.NAMES) > 0);
+		assertEquals(0, footprint.getBytes(DagFootprint.Part.DATA));
+		assertEquals(0, footprint.getMappedBytes());
+		
+		model.getNode("A").setReferenceNo(1000);
+		model.getNode("B").setWeight(new BigDecimal("12345678901234567890.5"));
+		for (int i = 0; i < 100; i++)
+			model.addRelationship(model.getNode("A"), "benchesTo", model.addNode("N" + i));
+		
+		DagFootprint grown = model.footprint();
+		assertEquals(108, grown.getNodeCount());
+		assertEquals(106, grown.getRelationshipCount());
+		assertTrue(grown.getBytes(DagFootprint.Part.DATA) > 0);
+		assertTrue(grown.getBytes(DagFootprint.Part.WEIGHTS) > footprint.getBytes(DagFootprint.Part.WEIGHTS));
+		assertTrue(grown.getBytes(DagFootprint.Part.INDEXES) > footprint.getBytes(DagFootprint.Part.INDEXES));
+		assertTrue(grown.getTotalBytes() - footprint.getTotalBytes() > 100 * 100);
+		
+		DagFootprint frozen = model.freeze().footprint();
+		assertEquals(grown.getRelationshipCount(), frozen.getRelationshipCount());
+		assertEquals(grown.getBytes(DagFootprint.Part.RELATIONSHIPS), frozen.getBytes(DagFootprint.Part.RELATIONSHIPS));
+		
+		DagModel primitive = new DagModelImpl("test", DagWeightMode.DOUBLE);
+		primitive.addNode("A").setWeight(new BigDecimal("2.5"));
+		assertEquals(0, primitive.footprint().getBytes(DagFootprint.Part.WEIGHTS));
+	}
+	
+	
+	@Test
+	public void testViewsAreReadOnlyAndLive() {
+		List<DagNode> nodes = model.getNodes();
+		List<DagRelationship> relationships = model.getRelationships();
+		List<DagRelationshipType> types = model.getRelationshipTypes();
+		
+		try {
+			nodes.add(model.getNode("A"));
+			fail("Node view was changed");
+		} catch (UnsupportedOperationException e) {
+		}
+		try {
+			relationships.clear();
+			fail("Relationship view was changed");
+		} catch (UnsupportedOperationException e) {
+		}
+		
+		model.addNode("E");
+		model.addRelationship(model.getNode("D"), "feeds", model.getNode("E"));
+		assertEquals(9, nodes.size());
+		assertTrue(nodes.contains(model.getNode("E")));
+		assertEquals(7, relationships.size());
+		assertTrue(types.contains(model.getRelationshipType("feeds")));
+	}
+	
+	
 	@Test
 	public void testFindLeafNodes() {
 		List<DagNode> leafNodes = model.findLeafNodes();
@@ -162,4 +611,13 @@ public class DagModelTest  {
 		assertEquals(1, leafNodes.stream().filter( n -> n.getName().equals("Y")).collect(Collectors.toList()).size());
 	}
 	
+	
+	private static String names(List<DagNode> nodes) {
+		return nodes.stream().map(n -> n.getName()).sorted().collect(Collectors.toList()).toString();
+	}
+	
+	private static String relationshipNames(Stream<DagRelationship> relationships) {
+		return relationships.map(r -> r.getName()).sorted().collect(Collectors.toList()).toString();
+	}
+	
 }
@@ -21,7 +21,14 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -217,6 +224,23 @@ public class DagNavigatorTest  {
 		}
 	}
 	
+	@Test
+	public void testNavigateToDescendantsById() {
+		
+		List<DagNode> nodes = model
+				.navigate()
+				.from(model.getNode("A").getId())
+				.by(model.getRelationshipType("benchesTo"))
+				.descendants();
+	
+		assertEquals(3, nodes.size());
+		
+		LinkRouteFinder routeFinder = model.createDagLinkRouteFinder(
+				model.getRelationshipType("benchesTo"));
+		
+		assertEquals(1, routeFinder.findAllPathsTo(model.getNode("C").getId()).size());
+	}
+	
 	@Test
 	public void testNavigateToDescendantsSorted() {
 		
@@ -320,6 +344,204 @@ public class DagNavigatorTest  {
 	}
 
 
+	@Test
+	public void testPathStreamsMatchPathLists() {
+		model.addRelationship(
+				model.getNode("C"), 
+				"benchesTo", 
+				model.getNode("A"));
+		
+		DagRelationshipType benchesTo = model.getRelationshipType("benchesTo");
+		List<DagNode> startingNodes = List.of(model.getNode("A"), model.getNode("V"));
+		
+		assertEquals(
+				model.navigate().from(startingNodes).by(benchesTo).paths(),
+				model.navigate().from(startingNodes).by(benchesTo).pathStream().collect(Collectors.toList()));
+		
+		assertEquals(
+				model.navigate().from(model.getNode("C")).by(benchesTo).pathsTo(),
+				model.navigate().from(model.getNode("C")).by(benchesTo).pathToStream().collect(Collectors.toList()));
+		
+		List<DagNodePath> cycles = model.navigate().from(startingNodes).by(benchesTo).cycleStream().collect(Collectors.toList());
+		assertEquals(model.navigate().from(startingNodes).by(benchesTo).cycles(), cycles);
+		assertEquals(1, cycles.size());
+		
+		Iterator<DagNodePath> iterator = model.navigate().from(model.getNode("V")).by(benchesTo).pathIterator();
+		assertEquals("V:Y", iterator.next().getRouteId());
+		assertEquals("V:X", iterator.next().getRouteId());
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testPathsSharePrefixes() {
+		DagNode nodeA = model.getNode("A");
+		DagNode nodeB = model.getNode("B");
+		DagNode nodeC = model.getNode("C");
+		DagRelationship aToB = model.getRelationships().stream().filter(r -> r.getName().equals("A:benchesTo:>B")).findFirst().get();
+		DagRelationship bToC = model.getRelationships().stream().filter(r -> r.getName().equals("B:benchesTo:>C")).findFirst().get();
+		aToB.setWeight(BigDecimal.valueOf(2));
+		bToC.setWeight(BigDecimal.valueOf(3));
+		
+		DagNodePath pathToB = new DagNodePath(nodeA, aToB, nodeB);
+		DagNodePath pathToC = new DagNodePath(nodeA, pathToB, bToC, nodeC);
+		
+		assertEquals(2, pathToC.getLength());
+		assertEquals(List.of(aToB, bToC), pathToC.getRelationships());
+		assertEquals(0, BigDecimal.valueOf(5).compareTo(pathToC.calculateTotalWeight()));
+		
+		// extending the shorter path leaves the longer one unchanged
+		pathToB.addPathLink(bToC);
+		assertEquals(2, pathToB.getLength());
+		assertEquals(0, BigDecimal.valueOf(5).compareTo(pathToB.calculateTotalWeight()));
+		assertEquals(List.of(aToB, bToC), pathToC.getRelationships());
+		assertEquals(0, BigDecimal.valueOf(5).compareTo(pathToC.calculateTotalWeight()));
+		assertEquals(List.of(aToB, bToC), new DagNodePath(nodeA, pathToB, bToC, nodeC).getRelationships());
+	}
+
+	@Test
+	public void testDescendantsOfStackedDiamonds() {
+		// 2^50 paths lead from the top to the bottom node, but each node and relationship is visited once
+		DagModel diamonds = new DagModelImpl("diamonds");
+		int count = 50;
+		DagNode top = diamonds.addNode("D0");
+		DagNode previous = top;
+		for (int i = 1; i <= count; i++) {
+			DagNode next = diamonds.addNode("D" + i);
+			for (String side : List.of("L", "R")) {
+				DagNode middle = diamonds.addNode(side + i);
+				diamonds.addRelationship(previous, "feeds", middle);
+				diamonds.addRelationship(middle, "feeds", next);
+			}
+			previous = next;
+		}
+		DagNode bottom = previous;
+		DagRelationshipType feeds = diamonds.getRelationshipType("feeds");
+		
+		AtomicInteger visits = new AtomicInteger();
+		List<DagNode> descendants = diamonds
+				.navigate()
+				.from(top)
+				.by(feeds)
+				.visitWith((c, f, r, t) -> visits.incrementAndGet())
+				.descendants();
+		
+		assertEquals(3 * count, descendants.size());
+		assertEquals(4 * count, visits.get());
+		assertEquals("L1", descendants.get(0).getName());
+		
+		assertEquals(3 * count, diamonds.navigate().from(bottom).by(feeds).ancestors().size());
+		assertEquals(3 * count, diamonds.navigate().from(top).breadthFirst().by(feeds).descendants().size());
+		assertEquals(3 * count, diamonds.createDagLinkRouteFinder(feeds).findAncestors(bottom).size());
+		
+		List<DagNode> untilMiddle = diamonds
+				.navigate()
+				.from(top)
+				.by(feeds)
+				.until((c, n) -> n.getName().equals("D" + (count / 2)))
+				.descendants();
+		assertEquals(3 * count / 2, untilMiddle.size());
+	}
+
+	@Test
+	public void testLevels() {
+		DagRelationshipType benchesTo = model.getRelationshipType("benchesTo");
+		DagNode nodeA = model.getNode("A");
+		
+		assertEquals("[[A], [B, D], [C]]", levelNames(model.navigate().from(nodeA).by(benchesTo).sorted().levels()));
+		assertEquals("[[A], [B, D]]", levelNames(model.navigate().from(nodeA).by(benchesTo).maxDepth(1).sorted().levels()));
+		assertEquals("[[A]]", levelNames(model.navigate().from(nodeA).by(benchesTo).maxDepth(0).levels()));
+		assertEquals("[[C], [B], [A]]", levelNames(model.navigate().from(model.getNode("C")).by(benchesTo).levelsTo()));
+		
+		// each node is at its distance from the nearest starting node
+		assertEquals("[[A, B], [C, D]]", levelNames(model.navigate().from(List.of(nodeA, model.getNode("B"))).by(benchesTo).sorted().levels()));
+		
+		assertEquals(2, model.navigate().from(nodeA).by(benchesTo).maxDepth(1).descendants().size());
+		assertEquals(3, model.navigate().from(nodeA).by(benchesTo).maxDepth(1).reset().descendants().size());
+		assertEquals(1, model.navigate().from(model.getNode("C")).by(benchesTo).maxDepth(1).ancestors().size());
+	}
+	
+	private static String levelNames(List<List<DagNode>> levels) {
+		return levels
+				.stream()
+				.map(l -> l.stream().map(DagNode::getName).collect(Collectors.toList()))
+				.collect(Collectors.toList())
+				.toString();
+	}
+
+	@Test
+	public void testParallelMatchesSequential() {
+		DagModel grid = new DagModelImpl("grid");
+		int size = 12;
+		for (int row = 0; row < size; row++) {
+			for (int column = 0; column < size; column++) {
+				DagNode node = grid.addNode("G" + row + "." + column);
+				if (row > 0)
+					grid.addRelationship(grid.getNode("G" + (row - 1) + "." + column), "feeds", node);
+				if (column > 0)
+					grid.addRelationship(grid.getNode("G" + row + "." + (column - 1)), "feeds", node);
+			}
+		}
+		DagRelationshipType feeds = grid.getRelationshipType("feeds");
+		List<DagNode> startingNodes = grid.getNodes().subList(0, 3 * size);
+		
+		AtomicInteger sequentialVisits = new AtomicInteger();
+		AtomicInteger parallelVisits = new AtomicInteger();
+		
+		assertEquals(
+				grid.navigate().from(startingNodes).by(feeds).visitWith((c, f, r, t) -> sequentialVisits.incrementAndGet()).descendants(),
+				grid.navigate().from(startingNodes).by(feeds).visitWith((c, f, r, t) -> parallelVisits.incrementAndGet()).parallel().descendants());
+		assertEquals(sequentialVisits.get(), parallelVisits.get());
+		
+		List<DagNode> bottomRow = grid.getNodes().subList(size * (size - 1), size * size);
+		assertEquals(
+				grid.navigate().from(bottomRow).by(feeds).ancestors(),
+				grid.navigate().from(bottomRow).by(feeds).parallel().ancestors());
+		
+		List<DagNode> corner = grid.getNodes().subList(size * size - 3 * size, size * size);
+		assertEquals(
+				grid.navigate().from(corner).by(feeds).paths(),
+				grid.navigate().from(corner).by(feeds).parallel().paths());
+		List<DagNode> topRows = grid.getNodes().subList(0, 2 * size);
+		assertEquals(
+				grid.navigate().from(topRows).by(feeds).pathsTo(),
+				grid.navigate().from(topRows).by(feeds).parallel(ForkJoinPool.commonPool()).pathsTo());
+		
+		// each starting node's search is given its own context
+		List<DagTestContext> contexts = Collections.synchronizedList(new ArrayList<DagTestContext>());
+		grid
+			.navigate()
+			.from(startingNodes)
+			.by(feeds)
+			.contextPerTask(() -> {
+				DagTestContext context = new DagTestContext();
+				contexts.add(context);
+				return context;
+			})
+			.visitWith((c, f, r, t) -> ((DagTestContext) c).push(t.getName()))
+			.parallel()
+			.descendants();
+		assertEquals(startingNodes.size(), contexts.size());
+		assertEquals(sequentialVisits.get(), contexts.stream().mapToInt(c -> c.getNames().size()).sum());
+	}
+
+	@Test
+	public void testParallelErrorIsNotWrapped() {
+		LinkageError failure = new LinkageError("visit failed");
+		
+		try {
+			model
+				.navigate()
+				.from(model.getNode("A"))
+				.by(model.getRelationshipType("benchesTo"))
+				.visitWith((c, f, r, t) -> { throw failure; })
+				.parallel()
+				.descendants();
+			fail("Error in a parallel search was not thrown");
+		} catch (LinkageError e) {
+			assertSame(failure, e);
+		}
+	}
+
 	@Test
 	public void testToLinksWithOneCycle() {
 		// add additional path
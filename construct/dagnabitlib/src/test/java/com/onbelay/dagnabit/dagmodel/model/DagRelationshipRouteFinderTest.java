@@ -300,6 +300,38 @@ public class DagRelationshipRouteFinderTest {
 		
 	}
 	
+	@Test
+	public void testDeepChainWithDiamondAndCycle() {
+		DagModel chainModel = new DagModelImpl("chain");
+		int length = 1000;
+		DagNode previous = chainModel.addNode("N0");
+		for (int i = 1; i <= length; i++) {
+			DagNode node = chainModel.addNode("N" + i);
+			chainModel.addRelationship(previous, "parentOf", node);
+			previous = node;
+		}
+		// a diamond at the start, N0 -> X -> N2 beside N0 -> N1 -> N2
+		chainModel.addRelationship(chainModel.getNode("N0"), "parentOf", chainModel.addNode("X"));
+		chainModel.addRelationship(chainModel.getNode("X"), "parentOf", chainModel.getNode("N2"));
+		
+		DagRelationshipType parentOf = chainModel.getRelationshipType("parentOf");
+		LinkRouteFinder routeFinder = chainModel.createDagLinkRouteFinder(parentOf);
+		
+		NodeSearchResult result = routeFinder.discoverFromRelationships(chainModel.getNode("N0"));
+		assertFalse(result.isCyclic());
+		assertEquals(2 * length, result.getPaths().size());
+		assertEquals(length + 1, routeFinder.findDescendants(chainModel.getNode("N0")).size());
+		
+		List<DagNodePath> toPaths = routeFinder.findAllPathsTo(chainModel.getNode("N" + length));
+		assertEquals(2, toPaths.size());
+		assertEquals(length, toPaths.get(0).getRelationships().size());
+		
+		chainModel.addRelationship(previous, "parentOf", chainModel.getNode("N1"));
+		result = chainModel.createDagLinkRouteFinder(parentOf).discoverFromRelationships(chainModel.getNode("N0"));
+		assertTrue(result.isCyclic());
+		assertEquals(2, result.getCycles().size());
+	}
+	
 	@Test
 	public void testNavigateRelationship() {
 		